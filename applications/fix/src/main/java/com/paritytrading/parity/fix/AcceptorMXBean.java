@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.fix;
+
+/**
+ * The statistics of a connection acceptor.
+ */
+public interface AcceptorMXBean {
+
+    /**
+     * Get the number of times accepting a connection has failed, for
+     * example because the process has run out of file descriptors.
+     *
+     * @return the number of failures to accept a connection
+     */
+    long getAcceptFailures();
+
+}
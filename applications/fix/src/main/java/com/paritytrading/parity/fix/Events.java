@@ -15,114 +15,262 @@
  */
 package com.paritytrading.parity.fix;
 
-import java.io.Closeable;
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPClient;
+import com.paritytrading.parity.util.WaitStrategy;
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-class Events {
+/*
+ * An event loop that serves FIX sessions on its own selector.
+ *
+ * The event loop either accepts the FIX connections itself or receives them
+ * from an acceptor thread. The sessions of an event loop are confined to its
+ * thread.
+ */
+class Events implements Runnable {
 
     private static final int TIMEOUT = 500;
 
-    static void process(FIXAcceptor fix) throws IOException {
-        Selector selector = Selector.open();
+    private static final long KEEP_ALIVE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final FIXAcceptor fix;
+
+    private final OrderEntryPool pool;
+
+    private final boolean      spin;
+    private final WaitStrategy waitStrategy;
+
+    private final Selector selector;
+
+    private final ConcurrentLinkedQueue<SocketChannel> channels;
+
+    private final AtomicInteger sessionCount;
 
-        final List<Session> toKeepAlive = new ArrayList<>();
-        final List<Session> toCleanUp   = new ArrayList<>();
+    private final List<Session> toKeepAlive;
+    private final List<Session> toCleanUp;
 
+    private long lastKeepAliveNanos;
+
+    /*
+     * In the spin mode, poll the selector instead of blocking in it and wait
+     * for work with the wait strategy.
+     */
+    Events(FIXAcceptor fix, OrderEntryPool pool, boolean spin,
+            WaitStrategy waitStrategy) throws IOException {
+        this.fix  = fix;
+        this.pool = pool;
+
+        this.spin         = spin;
+        this.waitStrategy = waitStrategy;
+
+        this.selector = Selector.open();
+
+        this.channels = new ConcurrentLinkedQueue<>();
+
+        this.sessionCount = new AtomicInteger();
+
+        this.toKeepAlive = new ArrayList<>();
+        this.toCleanUp   = new ArrayList<>();
+
+        if (pool != null)
+            pool.register(selector);
+    }
+
+    /*
+     * Accept the FIX connections on this event loop.
+     */
+    void listen() throws IOException {
         fix.getServerChannel().register(selector, SelectionKey.OP_ACCEPT);
+    }
 
+    /*
+     * Hand a FIX connection over to this event loop. Call this from the
+     * acceptor thread.
+     */
+    void assign(SocketChannel channel) {
+        sessionCount.incrementAndGet();
+
+        channels.add(channel);
+
+        if (!spin)
+            selector.wakeup();
+    }
+
+    int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    @Override
+    public void run() {
+        try {
+            process();
+        } catch (IOException e) {
+            fatal(e);
+        }
+    }
+
+    private void process() throws IOException {
         while (true) {
-            int numKeys = selector.select(TIMEOUT);
-
-            if (numKeys > 0) {
-                for (SelectionKey key : selector.selectedKeys()) {
-                    if (key.isAcceptable()) {
-                        final Session session = fix.accept();
-                        if (session == null)
-                            continue;
-
-                        session.getFIX().getChannel().register(selector,
-                                SelectionKey.OP_READ, new Receiver() {
-
-                                    @Override
-                                    public void close() {
-                                        toCleanUp.add(session);
-                                    }
-
-                                    @Override
-                                    public int receive() throws IOException {
-                                        return session.getFIX().receive();
-                                    }
-
-                                });
-
-                        session.getOrderEntry().getChannel().register(selector,
-                                SelectionKey.OP_READ, new Receiver() {
-
-                                    @Override
-                                    public void close() {
-                                        toCleanUp.add(session);
-                                    }
-
-                                    @Override
-                                    public int receive() throws IOException {
-                                        return session.getOrderEntry().receive();
-                                    }
-
-                                });
-
-                        toKeepAlive.add(session);
-                    } else {
-                        Receiver receiver = (Receiver)key.attachment();
-
-                        try {
-                            if (receiver.receive() < 0)
-                                receiver.close();
-                        } catch (IOException e1) {
-                            try {
-                                receiver.close();
-                            } catch (IOException e2) {
-                            }
-                        }
+            int numKeys = spin ? selector.selectNow() : selector.select(TIMEOUT);
+
+            int work = numKeys + open();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+
+                if (key.isAcceptable()) {
+                    Session session = fix.accept(pool);
+                    if (session != null) {
+                        sessionCount.incrementAndGet();
+
+                        register(session);
                     }
+                } else if (key.isConnectable()) {
+                    pool.finishConnect(key);
+                } else {
+                    receive(key);
                 }
 
-                selector.selectedKeys().clear();
+                keys.remove();
             }
 
-            for (int i = 0; i < toKeepAlive.size(); i++) {
-                Session session = toKeepAlive.get(i);
+            if (spin && work == 0)
+                waitStrategy.idle();
 
-                session.getFIX().updateCurrentTimestamp();
+            long now = System.nanoTime();
 
-                try {
-                    session.getOrderEntry().keepAlive();
-                    session.getFIX().keepAlive();
-                } catch (IOException e) {
-                    toCleanUp.add(session);
-                }
+            if (now - lastKeepAliveNanos >= KEEP_ALIVE_INTERVAL_NANOS) {
+                keepAlive();
+
+                lastKeepAliveNanos = now;
             }
 
-            if (toCleanUp.isEmpty())
-                continue;
+            cleanUp();
+        }
+    }
 
-            for (int i = 0; i < toCleanUp.size(); i++) {
-                try (Session session = toCleanUp.get(i)) {
-                    toKeepAlive.remove(session);
-                }
+    private int open() {
+        int count = 0;
+
+        SocketChannel channel = channels.poll();
+
+        while (channel != null) {
+            Session session = fix.open(channel, pool);
+            if (session != null)
+                register(session);
+            else
+                sessionCount.decrementAndGet();
+
+            count++;
+
+            channel = channels.poll();
+        }
+
+        return count;
+    }
+
+    private void register(Session session) {
+        try {
+            session.getFIX().getChannel().register(selector, SelectionKey.OP_READ, session);
+
+            if (session.hasOwnOrderEntry())
+                session.getOrderEntry().getChannel().register(selector, SelectionKey.OP_READ, session);
+        } catch (IOException e) {
+            toCleanUp.add(session);
+        }
+
+        toKeepAlive.add(session);
+    }
+
+    /*
+     * The FIX and order entry channels of a session share the session as
+     * their attachment, while the shared order entry connections have
+     * their clients as their attachments.
+     */
+    private void receive(SelectionKey key) {
+        Object attachment = key.attachment();
+
+        if (attachment instanceof Session) {
+            Session session = (Session)attachment;
+
+            session.getFIX().updateCurrentTimestamp();
+
+            try {
+                int bytes;
+
+                if (key.channel() == session.getFIX().getChannel())
+                    bytes = session.getFIX().receive();
+                else
+                    bytes = session.getOrderEntry().receive();
+
+                if (bytes < 0)
+                    toCleanUp.add(session);
+            } catch (IOException e) {
+                toCleanUp.add(session);
             }
+        } else {
+            SoupBinTCPClient connection = (SoupBinTCPClient)attachment;
 
-            toCleanUp.clear();
+            try {
+                if (connection.receive() < 0)
+                    pool.lost(connection);
+            } catch (IOException e) {
+                pool.lost(connection);
+            }
         }
     }
 
-    private interface Receiver extends Closeable {
+    private void keepAlive() {
+        for (int i = 0; i < toKeepAlive.size(); i++) {
+            Session session = toKeepAlive.get(i);
+
+            session.getFIX().updateCurrentTimestamp();
+
+            try {
+                if (session.hasOwnOrderEntry())
+                    session.getOrderEntry().keepAlive();
+
+                session.getFIX().keepAlive();
 
-        int receive() throws IOException;
+                if (session.isTerminated())
+                    toCleanUp.add(session);
+            } catch (IOException e) {
+                toCleanUp.add(session);
+            }
+        }
+
+        if (pool != null)
+            pool.keepAlive();
+    }
+
+    private void cleanUp() throws IOException {
+        if (toCleanUp.isEmpty())
+            return;
+
+        for (int i = 0; i < toCleanUp.size(); i++) {
+            Session session = toCleanUp.get(i);
+
+            if (!toKeepAlive.remove(session))
+                continue;
+
+            sessionCount.decrementAndGet();
+
+            session.close();
+        }
 
+        toCleanUp.clear();
     }
 
 }
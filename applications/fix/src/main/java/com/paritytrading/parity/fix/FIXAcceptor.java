@@ -24,8 +24,13 @@ import java.net.InetSocketAddress;
 import java.net.StandardSocketOptions;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
-class FIXAcceptor {
+class FIXAcceptor implements AcceptorMXBean {
+
+    private static final long ACCEPT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
     private final OrderEntryFactory orderEntry;
 
@@ -35,6 +40,8 @@ class FIXAcceptor {
 
     private final Instruments instruments;
 
+    private final AtomicLong acceptFailures;
+
     private FIXAcceptor(OrderEntryFactory orderEntry,
             ServerSocketChannel serverChannel, String senderCompId,
             Instruments instruments) {
@@ -48,6 +55,8 @@ class FIXAcceptor {
             .build();
 
         this.instruments = instruments;
+
+        this.acceptFailures = new AtomicLong();
     }
 
     static FIXAcceptor open(OrderEntryFactory orderEntry,
@@ -65,25 +74,85 @@ class FIXAcceptor {
         return serverChannel;
     }
 
-    Session accept() {
+    /*
+     * Accept a FIX connection on an event loop.
+     */
+    Session accept(OrderEntryPool pool) {
         try {
             SocketChannel fix = serverChannel.accept();
             if (fix == null)
                 return null;
 
+            return open(fix, pool);
+        } catch (IOException e) {
+            acceptFailed();
+
+            return null;
+        }
+    }
+
+    /*
+     * Accept FIX connections on the current thread and hand each of them
+     * over to the event loop with the fewest sessions. If accepting a
+     * connection fails, for example because the process has run out of
+     * file descriptors, count the failure and pause before trying again.
+     */
+    void accept(Events[] loops) throws IOException {
+        serverChannel.configureBlocking(true);
+
+        while (true) {
+            SocketChannel fix;
+
             try {
-                fix.setOption(StandardSocketOptions.TCP_NODELAY, true);
-                fix.configureBlocking(false);
+                fix = serverChannel.accept();
+            } catch (IOException e) {
+                acceptFailed();
 
-                return new Session(orderEntry, fix, config, instruments);
-            } catch (IOException e1) {
-                fix.close();
+                LockSupport.parkNanos(ACCEPT_BACKOFF_NANOS);
+                continue;
+            }
 
-                return null;
+            Events loop = loops[0];
+
+            for (int i = 1; i < loops.length; i++) {
+                if (loops[i].getSessionCount() < loop.getSessionCount())
+                    loop = loops[i];
             }
-        } catch (IOException e2) {
+
+            loop.assign(fix);
+        }
+    }
+
+    /*
+     * Open a session for an accepted FIX connection.
+     */
+    Session open(SocketChannel fix, OrderEntryPool pool) {
+        try {
+            fix.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            fix.configureBlocking(false);
+
+            return new Session(orderEntry, pool, fix, config, instruments);
+        } catch (IOException e1) {
+            try {
+                fix.close();
+            } catch (IOException e2) {
+            }
+
             return null;
         }
     }
 
+    @Override
+    public long getAcceptFailures() {
+        return acceptFailures.get();
+    }
+
+    /*
+     * Connections are accepted either on the only event loop or on the
+     * acceptor thread, never both, so the count has a single writer.
+     */
+    private void acceptFailed() {
+        acceptFailures.lazySet(acceptFailures.get() + 1);
+    }
+
 }
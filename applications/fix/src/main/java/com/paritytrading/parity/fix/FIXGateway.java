@@ -18,16 +18,30 @@ package com.paritytrading.parity.fix;
 import static org.jvirtanen.util.Applications.*;
 
 import com.paritytrading.parity.util.Instruments;
+import com.paritytrading.parity.util.WaitStrategy;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigException;
+import com.typesafe.config.ConfigUtil;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import org.jvirtanen.config.Configs;
 
 class FIXGateway {
 
+    /*
+     * The lengths of the Username and Password fields of a SoupBinTCP
+     * Login Request.
+     */
+    private static final int USERNAME_LENGTH = 6;
+    private static final int PASSWORD_LENGTH = 10;
+
     public static void main(String[] args) {
         if (args.length != 1)
             usage("parity-fix <configuration-file>");
@@ -45,7 +59,78 @@ class FIXGateway {
         OrderEntryFactory orderEntry = orderEntry(config);
         FIXAcceptor       fix        = fix(orderEntry, config);
 
-        Events.process(fix);
+        register(fix);
+
+        boolean      spin         = spin(config);
+        WaitStrategy waitStrategy = waitStrategy(config);
+
+        int threads = config.hasPath("fix.threads") ? config.getInt("fix.threads") : 0;
+        if (threads < 0)
+            throw new ConfigException.BadValue(config.origin(), "fix.threads", "Negative number of threads");
+
+        if (threads == 0) {
+            Events events = new Events(fix, pool(config, 0, 1), spin, waitStrategy);
+
+            events.listen();
+
+            Thread.currentThread().setName("parity-fix");
+
+            events.run();
+        } else {
+            Events[] loops = new Events[threads];
+
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new Events(fix, pool(config, i, threads), spin, waitStrategy);
+
+                new Thread(loops[i], "parity-fix-" + i).start();
+            }
+
+            Thread.currentThread().setName("parity-acceptor");
+
+            fix.accept(loops);
+        }
+    }
+
+    /*
+     * Expose the statistics of the acceptor through JMX as
+     * "com.paritytrading.parity.fix:type=Acceptor,name=fix".
+     */
+    private static void register(FIXAcceptor fix) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(fix,
+                    new ObjectName("com.paritytrading.parity.fix:type=Acceptor,name=fix"));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean spin(Config config) {
+        if (!config.hasPath("fix.event-loop"))
+            return false;
+
+        String value = config.getString("fix.event-loop");
+
+        switch (value) {
+        case "select":
+            return false;
+        case "spin":
+            return true;
+        default:
+            throw new ConfigException.BadValue(config.origin(), "fix.event-loop", "Unknown event loop: " + value);
+        }
+    }
+
+    private static WaitStrategy waitStrategy(Config config) {
+        if (!config.hasPath("fix.wait-strategy"))
+            return WaitStrategy.YIELD;
+
+        String value = config.getString("fix.wait-strategy");
+
+        try {
+            return WaitStrategy.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigException.BadValue(config.origin(), "fix.wait-strategy", e.getMessage());
+        }
     }
 
     private static OrderEntryFactory orderEntry(Config config) {
@@ -55,6 +140,48 @@ class FIXGateway {
         return new OrderEntryFactory(new InetSocketAddress(address, port));
     }
 
+    /*
+     * The event loops partition the order entry IDs among their pools, so
+     * that the IDs are unique across the gateway.
+     */
+    private static OrderEntryPool pool(Config config, int loop, int loops) throws IOException {
+        if (!config.hasPath("order-entry.connections"))
+            return null;
+
+        int connections = config.getInt("order-entry.connections");
+        if (connections == 0)
+            return null;
+
+        InetAddress address  = Configs.getInetAddress(config, "order-entry.address");
+        int         port     = Configs.getPort(config, "order-entry.port");
+        String      username = config.getString("order-entry.username");
+        String      password = config.getString("order-entry.password");
+
+        if (username.length() > USERNAME_LENGTH)
+            throw new ConfigException.BadValue(config.origin(), "order-entry.username", "Username too long");
+
+        if (password.length() > PASSWORD_LENGTH)
+            throw new ConfigException.BadValue(config.origin(), "order-entry.password", "Password too long");
+
+        Map<String, String> users = users(config.getConfig("order-entry.pool.users"));
+
+        try {
+            return OrderEntryPool.open(new InetSocketAddress(address, port), connections,
+                    username, password, users, loop + 1, loops);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigException.BadValue(config.origin(), "order-entry.connections", e.getMessage());
+        }
+    }
+
+    private static Map<String, String> users(Config config) {
+        Map<String, String> users = new HashMap<>();
+
+        for (String username : config.root().keySet())
+            users.put(username, config.getString(ConfigUtil.joinPath(username)));
+
+        return users;
+    }
+
     private static FIXAcceptor fix(OrderEntryFactory orderEntry, Config config) throws IOException {
         InetAddress address      = Configs.getInetAddress(config, "fix.address");
         int         port         = Configs.getPort(config, "fix.port");
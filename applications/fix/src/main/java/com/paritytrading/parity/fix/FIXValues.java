@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.fix;
+
+import com.paritytrading.philadelphia.FIXValue;
+
+/*
+ * Garbage-free conversions of FIX values. The values are read in place from
+ * their bytes.
+ */
+class FIXValues {
+
+    private static final long MAX_SCALED = (Long.MAX_VALUE - 9) / 10;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = 10 * POWERS_OF_TEN[i - 1];
+    }
+
+    private FIXValues() {
+    }
+
+    /*
+     * Pack a value of at most eight bytes into a long as left-justified
+     * ASCII characters padded with spaces. A longer value is rejected
+     * instead of truncated, so that it cannot alias a shorter one.
+     */
+    static long packLong(FIXValue value) {
+        int length = value.length();
+        if (length > 8)
+            throw new IllegalArgumentException("Value too long");
+
+        long x = 0;
+
+        for (int i = 0; i < length; i++)
+            x = (x << 8) | (value.byteAt(i) & 0xff);
+
+        for (int i = length; i < 8; i++)
+            x = (x << 8) | ' ';
+
+        return x;
+    }
+
+    /*
+     * Parse a decimal value into a long scaled by the given number of
+     * fraction digits. Fraction digits beyond them are truncated.
+     */
+    static long asScaledLong(FIXValue value, int fractionDigits) {
+        int length = value.length();
+
+        int i = 0;
+
+        boolean negative = length > 0 && value.byteAt(0) == '-';
+        if (negative)
+            i++;
+
+        long x = 0;
+
+        int digits = -1;
+
+        boolean empty = true;
+
+        for (; i < length; i++) {
+            byte b = value.byteAt(i);
+
+            if (b == '.' && digits < 0) {
+                digits = 0;
+
+                continue;
+            }
+
+            if (b < '0' || b > '9')
+                throw new IllegalArgumentException("Malformed decimal");
+
+            empty = false;
+
+            if (digits >= fractionDigits)
+                continue;
+
+            if (x > MAX_SCALED)
+                throw new IllegalArgumentException("Decimal out of range");
+
+            x = 10 * x + (b - '0');
+
+            if (digits >= 0)
+                digits++;
+        }
+
+        if (empty)
+            throw new IllegalArgumentException("Empty decimal");
+
+        for (digits = Math.max(digits, 0); digits < fractionDigits; digits++) {
+            if (x > MAX_SCALED)
+                throw new IllegalArgumentException("Decimal out of range");
+
+            x *= 10;
+        }
+
+        return negative ? -x : x;
+    }
+
+    /*
+     * Format a long scaled by the given number of fraction digits as a
+     * decimal into a string builder. Unlike FIXValue#setFloat(double, int),
+     * the value never goes through a double.
+     */
+    static void formatScaledLong(long x, int fractionDigits, StringBuilder s) {
+        s.setLength(0);
+
+        if (fractionDigits == 0) {
+            s.append(x);
+            return;
+        }
+
+        long factor = POWERS_OF_TEN[fractionDigits];
+
+        long integer  = x / factor;
+        long fraction = Math.abs(x % factor);
+
+        if (x < 0)
+            s.append('-');
+
+        s.append(Math.abs(integer));
+        s.append('.');
+
+        for (int i = fractionDigits - 1; i > 0 && fraction < POWERS_OF_TEN[i]; i--)
+            s.append('0');
+
+        s.append(fraction);
+    }
+
+    /*
+     * Copy a value into a string builder.
+     */
+    static void copy(FIXValue value, StringBuilder s) {
+        s.setLength(0);
+
+        for (int i = 0; i < value.length(); i++)
+            s.append((char)(value.byteAt(i) & 0xff));
+    }
+
+    static boolean contentEquals(FIXValue value, CharSequence s) {
+        if (s == null || value.length() != s.length())
+            return false;
+
+        for (int i = 0; i < s.length(); i++) {
+            if ((value.byteAt(i) & 0xff) != s.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+}
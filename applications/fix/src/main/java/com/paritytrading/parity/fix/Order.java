@@ -17,59 +17,83 @@ package com.paritytrading.parity.fix;
 
 import static com.paritytrading.philadelphia.fix44.FIX44Enumerations.*;
 
+import com.paritytrading.parity.util.Instrument;
+import com.paritytrading.philadelphia.FIXValue;
+
+/*
+ * An order is pooled: it is initialized when taken from the pool, and its
+ * ClOrdID(11) values are held in reused string builders. An empty
+ * ClOrdID(11) is absent.
+ *
+ * The quantities are in the size units and the prices in the price units of
+ * the instrument, as in the order entry protocol.
+ */
 class Order {
 
-    private final long   orderEntryId;
-    private       long   orderId;
-    private       String nextClOrdId;
-    private       String clOrdId;
-    private       String origClOrdId;
-    private       char   ordStatus;
-    private final String account;
-    private final char   side;
-    private final String symbol;
-    private       double orderQty;
-    private       double cumQty;
-    private       double avgPx;
-    private       char   cxlRejResponseTo;
-
-    Order(long orderEntryId, String clOrdId, String account, char side,
-            String symbol, double orderQty) {
+    private static final int CL_ORD_ID_CAPACITY = 32;
+
+    private long          orderEntryId;
+    private long          orderId;
+    private StringBuilder nextClOrdId;
+    private StringBuilder clOrdId;
+    private StringBuilder origClOrdId;
+    private char          ordStatus;
+    private String        account;
+    private char          side;
+    private Instrument    instrument;
+    private long          orderQty;
+    private long          cumQty;
+    private long          cumAmount;
+    private char          cxlRejResponseTo;
+
+    Order() {
+        this.nextClOrdId = new StringBuilder(CL_ORD_ID_CAPACITY);
+        this.clOrdId     = new StringBuilder(CL_ORD_ID_CAPACITY);
+        this.origClOrdId = new StringBuilder(CL_ORD_ID_CAPACITY);
+    }
+
+    void init(long orderEntryId, FIXValue clOrdId, String account, char side,
+            Instrument instrument, long orderQty) {
         this.orderEntryId     = orderEntryId;
         this.orderId          = 0;
-        this.nextClOrdId      = null;
-        this.clOrdId          = clOrdId;
-        this.origClOrdId      = null;
         this.ordStatus        = OrdStatusValues.New;
-        this.account          = null;
+        this.account          = account;
         this.side             = side;
-        this.symbol           = symbol;
+        this.instrument       = instrument;
         this.orderQty         = orderQty;
         this.cumQty           = 0;
-        this.avgPx            = 0.0;
+        this.cumAmount        = 0;
         this.cxlRejResponseTo = CxlRejResponseToValues.OrderCancelRequest;
+
+        this.nextClOrdId.setLength(0);
+        this.origClOrdId.setLength(0);
+
+        FIXValues.copy(clOrdId, this.clOrdId);
     }
 
     void orderAccepted(long orderNumber) {
         orderId = orderNumber;
     }
 
-    void orderExecuted(double quantity, double price) {
-        avgPx = (cumQty * avgPx + quantity * price) / (cumQty + quantity);
+    void orderExecuted(long quantity, long price) {
+        cumAmount += quantity * price;
 
         cumQty += quantity;
 
         ordStatus = getLeavesQty() == 0 ? OrdStatusValues.Filled : OrdStatusValues.PartiallyFilled;
     }
 
-    void orderCanceled(double canceledQuantity) {
+    void orderCanceled(long canceledQuantity) {
         orderQty -= canceledQuantity;
 
+        StringBuilder previous = origClOrdId;
+
         origClOrdId = clOrdId;
 
         clOrdId = nextClOrdId;
 
-        nextClOrdId = null;
+        nextClOrdId = previous;
+        nextClOrdId.setLength(0);
     }
 
     long getOrderEntryID() {
@@ -80,19 +104,19 @@ class Order {
         return orderId;
     }
 
-    String getClOrdID() {
+    CharSequence getClOrdID() {
         return clOrdId;
     }
 
-    String getOrigClOrdID() {
+    CharSequence getOrigClOrdID() {
         return origClOrdId;
     }
 
-    void setNextClOrdID(String nextClOrdId) {
-        this.nextClOrdId = nextClOrdId;
+    void setNextClOrdID(FIXValue nextClOrdId) {
+        FIXValues.copy(nextClOrdId, this.nextClOrdId);
     }
 
-    String getNextClOrdID() {
+    CharSequence getNextClOrdID() {
         return nextClOrdId;
     }
 
@@ -108,24 +132,30 @@ class Order {
         return side;
     }
 
-    String getSymbol() {
-        return symbol;
+    Instrument getInstrument() {
+        return instrument;
     }
 
-    double getOrderQty() {
+    long getOrderQty() {
         return orderQty;
     }
 
-    double getCumQty() {
+    long getCumQty() {
         return cumQty;
     }
 
-    double getLeavesQty() {
+    long getLeavesQty() {
         return orderQty - cumQty;
     }
 
-    double getAvgPx() {
-        return avgPx;
+    /*
+     * Return the average price rounded half up to the price units.
+     */
+    long getAvgPx() {
+        if (cumQty == 0)
+            return 0;
+
+        return (cumAmount + cumQty / 2) / cumQty;
     }
 
     void setCxlRejResponseTo(char cxlRejResponseTo) {
@@ -137,7 +167,7 @@ class Order {
     }
 
     boolean isInPendingStatus() {
-        return nextClOrdId != null;
+        return nextClOrdId.length() > 0;
     }
 
 }
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.fix;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCP;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPClient;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPClientStatusListener;
+import com.paritytrading.parity.net.poe.POE;
+import com.paritytrading.parity.net.poe.POEClientListener;
+import com.paritytrading.parity.net.poe.POEClientParser;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A pool of order entry connections shared by the FIX sessions of an event
+ * loop.
+ *
+ * Each session is assigned to a logged in connection in turn. The orders of
+ * all sessions are numbered by the pool, so that the order entry IDs are
+ * unique across its connections, and the order entry messages received on
+ * the connections are routed back to the sessions by their order entry IDs.
+ * The pools of several event loops number their orders from different
+ * first IDs with a common stride, so that the IDs do not overlap between
+ * the pools either.
+ *
+ * All connections log in with the same username, so the trading system
+ * sees the orders of all sessions as the orders of one participant. The
+ * identity of a FIX session cannot be carried over a shared connection, as
+ * the order entry protocol identifies participants only by their login.
+ * Instead, the FIX sessions log in with the usernames and passwords of the
+ * users of the pool, which are verified by the pool itself.
+ *
+ * When a connection is lost, its sessions are logged out and the connection
+ * is reconnected on the event loop in the background.
+ */
+class OrderEntryPool {
+
+    private static final long RECONNECT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final InetSocketAddress address;
+
+    private final SoupBinTCP.LoginRequest loginRequest;
+
+    private final Map<String, String> users;
+
+    private final Connection[] connections;
+
+    private final Long2ObjectOpenHashMap<Session> routes;
+
+    private Selector selector;
+
+    private final long orderEntryIdStride;
+
+    private long nextOrderEntryId;
+
+    private int nextConnection;
+
+    private OrderEntryPool(InetSocketAddress address, SoupBinTCP.LoginRequest loginRequest,
+            Map<String, String> users, int connections, long firstOrderEntryId,
+            long orderEntryIdStride) {
+        this.address = address;
+
+        this.loginRequest = loginRequest;
+
+        this.users = users;
+
+        this.connections = new Connection[connections];
+
+        this.routes = new Long2ObjectOpenHashMap<>();
+
+        this.orderEntryIdStride = orderEntryIdStride;
+
+        this.nextOrderEntryId = firstOrderEntryId;
+
+        this.nextConnection = 0;
+    }
+
+    /*
+     * Open the connections and send their login requests. The users map the
+     * usernames of the FIX sessions to their passwords. The order entry IDs
+     * start from the first ID and advance by the stride.
+     */
+    static OrderEntryPool open(InetSocketAddress address, int connections,
+            String username, String password, Map<String, String> users,
+            long firstOrderEntryId, long orderEntryIdStride) throws IOException {
+        if (connections < 1)
+            throw new IllegalArgumentException("Number of connections must be positive");
+
+        SoupBinTCP.LoginRequest loginRequest = new SoupBinTCP.LoginRequest();
+
+        ASCII.putLeft(loginRequest.username, username);
+        ASCII.putLeft(loginRequest.password, password);
+        ASCII.putRight(loginRequest.requestedSession, "");
+        ASCII.putLongRight(loginRequest.requestedSequenceNumber, 0);
+
+        OrderEntryPool pool = new OrderEntryPool(address, loginRequest, users, connections,
+                firstOrderEntryId, orderEntryIdStride);
+
+        for (int i = 0; i < connections; i++) {
+            Connection connection = pool.new Connection();
+
+            SocketChannel channel = SocketChannel.open();
+
+            channel.connect(address);
+
+            connection.open(channel);
+
+            pool.connections[i] = connection;
+        }
+
+        return pool;
+    }
+
+    /*
+     * Register the connections with the selector of the event loop. A
+     * connected connection has its order entry client as its attachment.
+     */
+    void register(Selector selector) throws IOException {
+        this.selector = selector;
+
+        for (int i = 0; i < connections.length; i++) {
+            SoupBinTCPClient client = connections[i].client;
+
+            client.getChannel().register(selector, SelectionKey.OP_READ, client);
+        }
+    }
+
+    /*
+     * Assign a session to the next logged in connection. If no connection
+     * is logged in, return null.
+     */
+    SoupBinTCPClient assign(Session session) {
+        for (int i = 0; i < connections.length; i++) {
+            Connection connection = connections[nextConnection];
+
+            nextConnection = (nextConnection + 1) % connections.length;
+
+            if (connection.loggedIn) {
+                connection.sessions.add(session);
+
+                return connection.client;
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * Unassign a closed session.
+     */
+    void unassign(Session session) {
+        for (int i = 0; i < connections.length; i++)
+            connections[i].sessions.remove(session);
+    }
+
+    /*
+     * Check the username and password of a FIX session against the users of
+     * the pool. The passwords are compared in constant time.
+     */
+    boolean authenticate(String username, String password) {
+        String expected = users.get(username);
+        if (expected == null)
+            return false;
+
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+                password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    boolean isLoggedIn(SoupBinTCPClient client) {
+        Connection connection = find(client);
+
+        return connection != null && connection.loggedIn;
+    }
+
+    /*
+     * Allocate an order entry ID and route the messages for it to a session.
+     */
+    long route(Session session) {
+        long orderEntryId = nextOrderEntryId;
+
+        nextOrderEntryId += orderEntryIdStride;
+
+        routes.put(orderEntryId, session);
+
+        return orderEntryId;
+    }
+
+    void unroute(long orderEntryId) {
+        routes.remove(orderEntryId);
+    }
+
+    /*
+     * Keep the connections alive and start reconnecting the lost ones. Call
+     * this periodically on the event loop.
+     */
+    void keepAlive() {
+        long now = System.nanoTime();
+
+        for (int i = 0; i < connections.length; i++) {
+            Connection connection = connections[i];
+
+            if (connection.client != null) {
+                try {
+                    connection.client.keepAlive();
+                } catch (IOException e) {
+                    connection.lost = true;
+                }
+
+                if (connection.lost)
+                    lost(connection);
+            } else if (connection.connecting == null && now - connection.reconnectNanos >= 0) {
+                connection.reconnect();
+            }
+        }
+    }
+
+    /*
+     * Handle a connection that has been lost: log out its sessions and
+     * close it, so that it is reconnected later.
+     */
+    void lost(SoupBinTCPClient client) {
+        Connection connection = find(client);
+        if (connection != null)
+            lost(connection);
+    }
+
+    /*
+     * Complete a connection attempt. Call this when the selection key of a
+     * reconnecting connection becomes connectable.
+     */
+    void finishConnect(SelectionKey key) {
+        ((Connection)key.attachment()).finishConnect(key);
+    }
+
+    private void lost(Connection connection) {
+        SoupBinTCPClient client = connection.client;
+
+        connection.endOfSession(client);
+
+        connection.client = null;
+        connection.lost   = false;
+
+        connection.reconnectNanos = System.nanoTime() + RECONNECT_INTERVAL_NANOS;
+
+        try {
+            client.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private Connection find(SoupBinTCPClient client) {
+        if (client == null)
+            return null;
+
+        for (int i = 0; i < connections.length; i++) {
+            if (connections[i].client == client)
+                return connections[i];
+        }
+
+        return null;
+    }
+
+    private class Connection implements POEClientListener, SoupBinTCPClientStatusListener {
+
+        private final List<Session> sessions;
+
+        private SoupBinTCPClient client;
+
+        private SocketChannel connecting;
+
+        private boolean loggedIn;
+
+        private boolean lost;
+
+        private long reconnectNanos;
+
+        Connection() {
+            this.sessions = new ArrayList<>();
+
+            this.loggedIn = false;
+        }
+
+        /*
+         * Start a connection attempt without blocking the event loop.
+         */
+        void reconnect() {
+            SocketChannel channel = null;
+
+            try {
+                channel = SocketChannel.open();
+
+                channel.configureBlocking(false);
+
+                if (channel.connect(address)) {
+                    open(channel);
+
+                    client.getChannel().register(selector, SelectionKey.OP_READ, client);
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, this);
+
+                    connecting = channel;
+                }
+            } catch (IOException e) {
+                failed(channel);
+            }
+        }
+
+        void finishConnect(SelectionKey key) {
+            SocketChannel channel = connecting;
+
+            connecting = null;
+
+            try {
+                channel.finishConnect();
+
+                open(channel);
+
+                key.interestOps(SelectionKey.OP_READ);
+                key.attach(client);
+            } catch (IOException e) {
+                failed(channel);
+            }
+        }
+
+        void open(SocketChannel channel) throws IOException {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+
+            client = new SoupBinTCPClient(channel, POE.MAX_OUTBOUND_MESSAGE_LENGTH,
+                    new POEClientParser(this), this);
+
+            client.login(loginRequest);
+        }
+
+        private void failed(SocketChannel channel) {
+            client = null;
+
+            reconnectNanos = System.nanoTime() + RECONNECT_INTERVAL_NANOS;
+
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+
+        @Override
+        public void orderAccepted(POE.OrderAccepted message) throws IOException {
+            Session session = route(message.orderId);
+            if (session != null)
+                session.getOrderEntryListener().orderAccepted(message);
+        }
+
+        @Override
+        public void orderRejected(POE.OrderRejected message) throws IOException {
+            Session session = route(message.orderId);
+            if (session != null)
+                session.getOrderEntryListener().orderRejected(message);
+        }
+
+        @Override
+        public void orderExecuted(POE.OrderExecuted message) throws IOException {
+            Session session = route(message.orderId);
+            if (session != null)
+                session.getOrderEntryListener().orderExecuted(message);
+        }
+
+        @Override
+        public void orderCanceled(POE.OrderCanceled message) throws IOException {
+            Session session = route(message.orderId);
+            if (session != null)
+                session.getOrderEntryListener().orderCanceled(message);
+        }
+
+        private Session route(byte[] orderId) {
+            Session session = routes.get(ASCII.getLong(orderId));
+            if (session != null)
+                session.getFIX().updateCurrentTimestamp();
+
+            return session;
+        }
+
+        /*
+         * A session whose FIX connection fails here is cleaned up by its
+         * keepalive. The connection itself is closed and reconnected after
+         * the keepalive.
+         */
+        @Override
+        public void heartbeatTimeout(SoupBinTCPClient client) {
+            for (int i = 0; i < sessions.size(); i++) {
+                try {
+                    sessions.get(i).getOrderEntryStatusListener().heartbeatTimeout(client);
+                } catch (IOException e) {
+                }
+            }
+
+            sessions.clear();
+
+            loggedIn = false;
+
+            lost = true;
+        }
+
+        @Override
+        public void loginAccepted(SoupBinTCPClient client, SoupBinTCP.LoginAccepted payload) {
+            loggedIn = true;
+        }
+
+        @Override
+        public void loginRejected(SoupBinTCPClient client, SoupBinTCP.LoginRejected payload) {
+            loggedIn = false;
+        }
+
+        @Override
+        public void endOfSession(SoupBinTCPClient client) {
+            loggedIn = false;
+
+            for (int i = 0; i < sessions.size(); i++) {
+                try {
+                    sessions.get(i).getOrderEntryStatusListener().endOfSession(client);
+                } catch (IOException e) {
+                }
+            }
+
+            sessions.clear();
+        }
+
+    }
+
+}
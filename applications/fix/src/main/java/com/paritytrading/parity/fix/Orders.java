@@ -15,52 +15,221 @@
  */
 package com.paritytrading.parity.fix;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.paritytrading.philadelphia.FIXValue;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.util.Collection;
 
+/*
+ * The working orders of a session, indexed both by order entry ID and by
+ * ClOrdID(11), and a pool of orders to reuse.
+ *
+ * The ClOrdID(11) index is an open addressing hash table of orders keyed by
+ * their current ClOrdID(11). It is probed with the bytes of a FIX value, so
+ * that looking up an incoming ClOrdID(11) does not allocate.
+ */
 class Orders {
 
-    private final List<Order> orders;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int POOL_CAPACITY = 1024;
+
+    private final Long2ObjectOpenHashMap<Order> byOrderEntryId;
+
+    private Order[] byClOrdId;
+
+    private int size;
+
+    private final Order[] pool;
+
+    private int poolCount;
 
     Orders() {
-        orders = new ArrayList<>();
+        byOrderEntryId = new Long2ObjectOpenHashMap<>();
+
+        byClOrdId = new Order[INITIAL_CAPACITY];
+
+        size = 0;
+
+        pool = new Order[POOL_CAPACITY];
+
+        poolCount = 0;
+    }
+
+    /*
+     * Take an order from the pool. If the pool is empty, allocate one.
+     */
+    Order allocate() {
+        if (poolCount == 0)
+            return new Order();
+
+        Order order = pool[--poolCount];
+
+        pool[poolCount] = null;
+
+        return order;
+    }
+
+    /*
+     * Return a removed order to the pool.
+     */
+    void release(Order order) {
+        if (poolCount < pool.length)
+            pool[poolCount++] = order;
     }
 
     void add(Order order) {
-        orders.add(order);
+        byOrderEntryId.put(order.getOrderEntryID(), order);
+
+        put(order);
     }
 
-    Order findByClOrdID(String clOrdId) {
-        for (int i = 0; i < orders.size(); i++) {
-            Order order = orders.get(i);
+    Order findByClOrdID(FIXValue clOrdId) {
+        int mask = byClOrdId.length - 1;
+        int slot = hash(clOrdId) & mask;
+
+        Order order = byClOrdId[slot];
 
-            if (clOrdId.equals(order.getClOrdID()))
+        while (order != null) {
+            if (FIXValues.contentEquals(clOrdId, order.getClOrdID()))
                 return order;
+
+            slot = (slot + 1) & mask;
+
+            order = byClOrdId[slot];
         }
 
         return null;
     }
 
+    Collection<Order> getOrders() {
+        return byOrderEntryId.values();
+    }
+
     Order findByOrderEntryID(long orderEntryId) {
-        for (int i = 0; i < orders.size(); i++) {
-            Order order = orders.get(i);
+        return byOrderEntryId.get(orderEntryId);
+    }
 
-            if (orderEntryId == order.getOrderEntryID())
-                return order;
-        }
+    /*
+     * Remove an order. Release it once it is no longer needed.
+     */
+    Order removeByOrderEntryID(long orderEntryId) {
+        Order order = byOrderEntryId.remove(orderEntryId);
+        if (order == null)
+            return null;
 
-        return null;
+        remove(order, order.getClOrdID());
+
+        return order;
+    }
+
+    /*
+     * Move an order to its new ClOrdID(11) after a cancel or a replace has
+     * taken effect.
+     */
+    void updateClOrdID(Order order) {
+        remove(order, order.getOrigClOrdID());
+
+        put(order);
     }
 
-    void removeByOrderEntryID(long orderEntryId) {
-        for (int i = 0; i < orders.size(); i++) {
-            Order order = orders.get(i);
+    private void put(Order order) {
+        CharSequence clOrdId = order.getClOrdID();
+        if (clOrdId.length() == 0)
+            return;
 
-            if (orderEntryId == order.getOrderEntryID()) {
-                orders.remove(i);
-                break;
+        if (2 * (size + 1) > byClOrdId.length)
+            rehash(2 * byClOrdId.length);
+
+        int mask = byClOrdId.length - 1;
+        int slot = hash(clOrdId) & mask;
+
+        while (byClOrdId[slot] != null)
+            slot = (slot + 1) & mask;
+
+        byClOrdId[slot] = order;
+
+        size++;
+    }
+
+    private void remove(Order order, CharSequence clOrdId) {
+        if (clOrdId.length() == 0)
+            return;
+
+        int mask = byClOrdId.length - 1;
+        int slot = hash(clOrdId) & mask;
+
+        while (byClOrdId[slot] != order) {
+            if (byClOrdId[slot] == null)
+                return;
+
+            slot = (slot + 1) & mask;
+        }
+
+        size--;
+
+        /*
+         * Shift the following orders of the probe sequence back so that
+         * no lookup stops at the emptied slot too early.
+         */
+        int next = (slot + 1) & mask;
+
+        while (byClOrdId[next] != null) {
+            int home = hash(byClOrdId[next].getClOrdID()) & mask;
+
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                byClOrdId[slot] = byClOrdId[next];
+
+                slot = next;
             }
+
+            next = (next + 1) & mask;
+        }
+
+        byClOrdId[slot] = null;
+    }
+
+    private void rehash(int capacity) {
+        Order[] orders = byClOrdId;
+
+        byClOrdId = new Order[capacity];
+
+        int mask = capacity - 1;
+
+        for (int i = 0; i < orders.length; i++) {
+            Order order = orders[i];
+            if (order == null)
+                continue;
+
+            int slot = hash(order.getClOrdID()) & mask;
+
+            while (byClOrdId[slot] != null)
+                slot = (slot + 1) & mask;
+
+            byClOrdId[slot] = order;
         }
     }
 
+    /*
+     * ClOrdID(11) is an ASCII string, so hashing its characters and hashing
+     * its bytes give the same result.
+     */
+    private static int hash(CharSequence clOrdId) {
+        int h = 0;
+
+        for (int i = 0; i < clOrdId.length(); i++)
+            h = 31 * h + (clOrdId.charAt(i) & 0xff);
+
+        return HashCommon.mix(h);
+    }
+
+    private static int hash(FIXValue clOrdId) {
+        int h = 0;
+
+        for (int i = 0; i < clOrdId.length(); i++)
+            h = 31 * h + (clOrdId.byteAt(i) & 0xff);
+
+        return HashCommon.mix(h);
+    }
+
 }
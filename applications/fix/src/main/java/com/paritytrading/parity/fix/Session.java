@@ -33,7 +33,6 @@ import com.paritytrading.philadelphia.FIXConnectionStatusListener;
 import com.paritytrading.philadelphia.FIXMessage;
 import com.paritytrading.philadelphia.FIXMessageListener;
 import com.paritytrading.philadelphia.FIXValue;
-import com.paritytrading.philadelphia.FIXValueFormatException;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -43,15 +42,23 @@ class Session implements Closeable {
 
     private static final String UNKNOWN_ORDER_ID = "NONE";
 
-    private static final SoupBinTCP.LoginRequest loginRequest = new SoupBinTCP.LoginRequest();
+    private static final int DECIMAL_CAPACITY = 32;
 
-    private static final POE.EnterOrder enterOrder = new POE.EnterOrder();
+    /*
+     * The message buffers are per session, as the sessions run on several
+     * event loop threads.
+     */
+    private final SoupBinTCP.LoginRequest loginRequest;
 
-    private static final POE.CancelOrder cancelOrder = new POE.CancelOrder();
+    private final POE.EnterOrder enterOrder;
 
-    private static final FIXMessage txMessage = new FIXMessage(64, 64);
+    private final POE.CancelOrder cancelOrder;
 
-    private static final ByteBuffer txBuffer = ByteBuffer.allocateDirect(POE.MAX_INBOUND_MESSAGE_LENGTH);
+    private final FIXMessage txMessage;
+
+    private final ByteBuffer txBuffer;
+
+    private final StringBuilder decimal;
 
     private long nextOrderEntryId;
 
@@ -59,31 +66,102 @@ class Session implements Closeable {
 
     private final FIXConnection fix;
 
+    private final OrderEntryListener orderEntryListener;
+
     private final SoupBinTCPClient orderEntry;
 
+    private final OrderEntryPool pool;
+
     private final Instruments instruments;
 
-    Session(OrderEntryFactory orderEntry, SocketChannel fix,
+    private String account;
+
+    private boolean terminated;
+
+    private boolean closed;
+
+    /*
+     * With a pool, the session shares an order entry connection of the pool
+     * with other sessions. Otherwise, it opens an order entry connection of
+     * its own. If no connection of the pool is logged in, the session has
+     * no order entry connection, and its Logon(A) is rejected.
+     */
+    Session(OrderEntryFactory orderEntry, OrderEntryPool pool, SocketChannel fix,
             FIXConfig config, Instruments instruments) throws IOException {
+        this.loginRequest = new SoupBinTCP.LoginRequest();
+
+        this.enterOrder = new POE.EnterOrder();
+
+        this.cancelOrder = new POE.CancelOrder();
+
+        this.txMessage = new FIXMessage(64, 64);
+
+        this.txBuffer = ByteBuffer.allocate(POE.MAX_INBOUND_MESSAGE_LENGTH);
+
+        this.decimal = new StringBuilder(DECIMAL_CAPACITY);
+
         this.nextOrderEntryId = 1;
 
         this.orders = new Orders();
 
-        OrderEntryListener orderEntryListener = new OrderEntryListener();
+        this.orderEntryListener = new OrderEntryListener();
+
+        this.pool = pool;
 
-        this.orderEntry = orderEntry.create(orderEntryListener, orderEntryListener);
+        if (pool != null)
+            this.orderEntry = pool.assign(this);
+        else
+            this.orderEntry = orderEntry.create(orderEntryListener, orderEntryListener);
 
         FIXListener fixListener = new FIXListener();
 
         this.fix = new FIXConnection(fix, config, fixListener, fixListener);
 
         this.instruments = instruments;
+
+        this.terminated = false;
+
+        this.closed = false;
     }
 
+    /*
+     * With a pool, cancel the working orders of the session, as closing a
+     * shared order entry connection is not possible. If the shared
+     * connection has been lost, the trading system has canceled them
+     * already.
+     */
     @Override
     public void close() throws IOException {
         fix.close();
-        orderEntry.close();
+
+        if (pool == null) {
+            orderEntry.close();
+            return;
+        }
+
+        if (closed)
+            return;
+
+        closed = true;
+
+        pool.unassign(this);
+
+        boolean cancel = pool.isLoggedIn(orderEntry);
+
+        for (Order order : orders.getOrders()) {
+            if (cancel) {
+                ASCII.putLongLeft(cancelOrder.orderId, order.getOrderEntryID());
+                cancelOrder.quantity = 0;
+
+                try {
+                    send(cancelOrder);
+                } catch (IOException e) {
+                    cancel = false;
+                }
+            }
+
+            pool.unroute(order.getOrderEntryID());
+        }
     }
 
     FIXConnection getFIX() {
@@ -94,6 +172,29 @@ class Session implements Closeable {
         return orderEntry;
     }
 
+    POEClientListener getOrderEntryListener() {
+        return orderEntryListener;
+    }
+
+    SoupBinTCPClientStatusListener getOrderEntryStatusListener() {
+        return orderEntryListener;
+    }
+
+    boolean hasOwnOrderEntry() {
+        return pool == null;
+    }
+
+    boolean isTerminated() {
+        return terminated;
+    }
+
+    private Order remove(long orderEntryId) {
+        if (pool != null)
+            pool.unroute(orderEntryId);
+
+        return orders.removeByOrderEntryID(orderEntryId);
+    }
+
     private void send(POE.InboundMessage message) throws IOException {
         txBuffer.clear();
         message.put(txBuffer);
@@ -102,6 +203,20 @@ class Session implements Closeable {
         orderEntry.send(txBuffer);
     }
 
+    /*
+     * Return the previous account if the value is the same, so that the
+     * orders of a session share one string per account.
+     */
+    private String account(FIXValue value) {
+        if (value == null)
+            return null;
+
+        if (!FIXValues.contentEquals(value, account))
+            account = value.asString();
+
+        return account;
+    }
+
     private class FIXListener implements FIXMessageListener, FIXConnectionStatusListener {
 
         @Override
@@ -175,17 +290,6 @@ class Session implements Closeable {
             if (requiredTagMissing(message, priceValue, "Price(44)"))
                 return;
 
-            long orderEntryId = nextOrderEntryId++;
-
-            ASCII.putLongLeft(enterOrder.orderId, orderEntryId);
-
-            String clOrdId = clOrdIdValue.asString();
-
-            String account = null;
-
-            if (accountValue != null)
-                account = accountValue.asString();
-
             char side = sideValue.asChar();
 
             switch (side) {
@@ -200,63 +304,71 @@ class Session implements Closeable {
                 return;
             }
 
-            String symbol = symbolValue.asString();
-
             try {
-                enterOrder.instrument = ASCII.packLong(symbol);
+                enterOrder.instrument = FIXValues.packLong(symbolValue);
             } catch (IllegalArgumentException e) {
                 incorrectDataFormatForValue(message, "Expected 'String' in Symbol(55)");
                 return;
             }
 
-            double orderQty = 0.0;
+            Instrument config = instruments.get(enterOrder.instrument);
+
+            long quantity = 0;
 
             try {
-                orderQty = orderQtyValue.asFloat();
-            } catch (FIXValueFormatException e) {
+                quantity = FIXValues.asScaledLong(orderQtyValue, config != null ? config.getSizeFractionDigits() : 0);
+            } catch (IllegalArgumentException e) {
                 incorrectDataFormatForValue(message, "Expected 'float' in OrderQty(38)");
                 return;
             }
 
-            if (orderQty < 0.0) {
-                sendOrderRejected(clOrdId, OrdRejReasonValues.IncorrectQuantity, account,
-                        symbol, side, orderQty);
+            if (quantity < 0) {
+                sendOrderRejected(clOrdIdValue.asString(), OrdRejReasonValues.IncorrectQuantity,
+                        account(accountValue), symbolValue.asString(), side, quantity);
                 return;
             }
 
-            Instrument config = instruments.get(enterOrder.instrument);
             if (config == null) {
-                sendOrderRejected(clOrdId, OrdRejReasonValues.UnknownSymbol, account,
-                        symbol, side, orderQty);
+                sendOrderRejected(clOrdIdValue.asString(), OrdRejReasonValues.UnknownSymbol,
+                        account(accountValue), symbolValue.asString(), side, quantity);
                 return;
             }
 
-            enterOrder.quantity = (long)(orderQty * config.getSizeFactor());
+            enterOrder.quantity = quantity;
 
-            double price = 0.0;
+            long price = 0;
 
             try {
-                price = priceValue.asFloat();
-            } catch (FIXValueFormatException e) {
+                price = FIXValues.asScaledLong(priceValue, config.getPriceFractionDigits());
+            } catch (IllegalArgumentException e) {
                 incorrectDataFormatForValue(message, "Expected 'float' in Price(44)");
                 return;
             }
 
-            if (price < 0.0) {
-                sendOrderRejected(clOrdId, OrdRejReasonValues.BrokerCredit, account,
-                        symbol, side, orderQty);
+            if (price < 0) {
+                sendOrderRejected(clOrdIdValue.asString(), OrdRejReasonValues.BrokerCredit,
+                        account(accountValue), config.asString(), side, quantity);
                 return;
             }
 
-            Order order = orders.findByClOrdID(clOrdId);
+            Order order = orders.findByClOrdID(clOrdIdValue);
             if (order != null) {
                 sendOrderRejected(order, OrdRejReasonValues.DuplicateOrder);
                 return;
             }
 
-            enterOrder.price = (long)(price * config.getPriceFactor());
+            enterOrder.price = price;
+
+            long orderEntryId = pool != null ? pool.route(Session.this) : nextOrderEntryId++;
+
+            ASCII.putLongLeft(enterOrder.orderId, orderEntryId);
+
+            order = orders.allocate();
 
-            orders.add(new Order(orderEntryId, clOrdId, account, side, symbol, orderQty));
+            order.init(orderEntryId, clOrdIdValue, account(accountValue), side,
+                    config, quantity);
+
+            orders.add(order);
 
             send(enterOrder);
         }
@@ -296,47 +408,42 @@ class Session implements Closeable {
             if (msgType == OrderCancelReplaceRequest)
                 cxlRejResponseTo = CxlRejResponseToValues.OrderCancel;
 
-            String origClOrdId = origClOrdIdValue.asString();
-            String clOrdId     = clOrdIdValue.asString();
-
-            Order order = orders.findByClOrdID(origClOrdId);
+            Order order = orders.findByClOrdID(origClOrdIdValue);
             if (order == null) {
-                sendOrderCancelReject(clOrdId, origClOrdId, cxlRejResponseTo);
+                sendOrderCancelReject(clOrdIdValue.asString(), origClOrdIdValue.asString(),
+                        cxlRejResponseTo);
 
                 return;
             } else if (order.isInPendingStatus()) {
-                sendOrderCancelReject(order, clOrdId, cxlRejResponseTo,
+                sendOrderCancelReject(order, clOrdIdValue.asString(), cxlRejResponseTo,
                         CxlRejReasonValues.OrderAlreadyInPendingStatus);
 
                 return;
             }
 
-            if (orders.findByClOrdID(clOrdId) != null) {
-                sendOrderCancelReject(order, clOrdId, cxlRejResponseTo,
+            if (orders.findByClOrdID(clOrdIdValue) != null) {
+                sendOrderCancelReject(order, clOrdIdValue.asString(), cxlRejResponseTo,
                         CxlRejReasonValues.DuplicateClOrdID);
                 return;
             }
 
-            double orderQty = 0.0;
+            long orderQty = 0;
 
             if (msgType == OrderCancelReplaceRequest) {
                 try {
-                    orderQty = orderQtyValue.asFloat();
-                } catch (FIXValueFormatException e) {
+                    orderQty = FIXValues.asScaledLong(orderQtyValue,
+                            order.getInstrument().getSizeFractionDigits());
+                } catch (IllegalArgumentException e) {
                     incorrectDataFormatForValue(message, "Expected 'float' in OrderQty(38)");
                     return;
                 }
             }
 
-            double qty = Math.max(orderQty - order.getCumQty(), 0);
-
-            Instrument config = instruments.get(order.getSymbol());
-
-            order.setNextClOrdID(clOrdId);
+            order.setNextClOrdID(clOrdIdValue);
             order.setCxlRejResponseTo(cxlRejResponseTo);
 
             ASCII.putLongLeft(cancelOrder.orderId, order.getOrderEntryID());
-            cancelOrder.quantity = (long)(qty * config.getSizeFactor());
+            cancelOrder.quantity = Math.max(orderQty - order.getCumQty(), 0);
 
             send(cancelOrder);
 
@@ -353,7 +460,10 @@ class Session implements Closeable {
 
         @Override
         public void close(FIXConnection connection, String message) throws IOException {
-            orderEntry.close();
+            if (pool != null)
+                terminated = true;
+            else
+                orderEntry.close();
         }
 
         @Override
@@ -373,6 +483,23 @@ class Session implements Closeable {
 
             fix.updateCompID(message);
 
+            /*
+             * With a pool, the gateway answers the Logon(A) itself after
+             * verifying Username(553) and Password(554) against the users
+             * of the pool, and the orders go out under the username of the
+             * pool.
+             */
+            if (pool != null) {
+                if (!pool.authenticate(username.asString(), password.asString()))
+                    fix.sendLogout("Invalid username or password");
+                else if (pool.isLoggedIn(orderEntry))
+                    fix.sendLogon(false);
+                else
+                    fix.sendLogout("Trading system not available");
+
+                return;
+            }
+
             ASCII.putLeft(loginRequest.username, username.asString());
             ASCII.putLeft(loginRequest.password, password.asString());
             ASCII.putRight(loginRequest.requestedSession, "");
@@ -385,7 +512,10 @@ class Session implements Closeable {
         public void logout(FIXConnection connection, FIXMessage message) throws IOException {
             fix.sendLogout();
 
-            orderEntry.logout();
+            if (pool != null)
+                terminated = true;
+            else
+                orderEntry.logout();
         }
 
         @Override
@@ -467,12 +597,10 @@ class Session implements Closeable {
     private void sendOrderAccepted(Order order) throws IOException {
         fix.prepare(txMessage, ExecutionReport);
 
-        String symbol = order.getSymbol();
-
-        Instrument config = instruments.get(symbol);
+        Instrument instrument = order.getInstrument();
 
-        int priceFractionDigits = config.getPriceFractionDigits();
-        int sizeFractionDigits  = config.getSizeFractionDigits();
+        int priceFractionDigits = instrument.getPriceFractionDigits();
+        int sizeFractionDigits  = instrument.getSizeFractionDigits();
 
         txMessage.addField(OrderID).setInt(order.getOrderID());
         txMessage.addField(ClOrdID).setString(order.getClOrdID());
@@ -483,12 +611,12 @@ class Session implements Closeable {
         if (order.getAccount() != null)
             txMessage.addField(Account).setString(order.getAccount());
 
-        txMessage.addField(Symbol).setString(symbol);
+        txMessage.addField(Symbol).setString(instrument.asString());
         txMessage.addField(Side).setChar(order.getSide());
-        txMessage.addField(OrderQty).setFloat(order.getOrderQty(), sizeFractionDigits);
-        txMessage.addField(LeavesQty).setFloat(order.getLeavesQty(), sizeFractionDigits);
-        txMessage.addField(CumQty).setFloat(order.getCumQty(), sizeFractionDigits);
-        txMessage.addField(AvgPx).setFloat(order.getAvgPx(), priceFractionDigits);
+        setDecimal(txMessage.addField(OrderQty), order.getOrderQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(LeavesQty), order.getLeavesQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(CumQty), order.getCumQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(AvgPx), order.getAvgPx(), priceFractionDigits);
 
         fix.send(txMessage);
     }
@@ -496,12 +624,10 @@ class Session implements Closeable {
     private void sendOrderRejected(Order order, int ordRejReason) throws IOException {
         fix.prepare(txMessage, ExecutionReport);
 
-        String symbol = order.getSymbol();
+        Instrument instrument = order.getInstrument();
 
-        Instrument config = instruments.get(symbol);
-
-        int priceFractionDigits = config.getPriceFractionDigits();
-        int sizeFractionDigits  = config.getSizeFractionDigits();
+        int priceFractionDigits = instrument.getPriceFractionDigits();
+        int sizeFractionDigits  = instrument.getSizeFractionDigits();
 
         txMessage.addField(OrderID).setInt(order.getOrderID());
         txMessage.addField(ClOrdID).setString(order.getClOrdID());
@@ -513,28 +639,28 @@ class Session implements Closeable {
         if (order.getAccount() != null)
             txMessage.addField(Account).setString(order.getAccount());
 
-        txMessage.addField(Symbol).setString(symbol);
+        txMessage.addField(Symbol).setString(instrument.asString());
         txMessage.addField(Side).setChar(order.getSide());
-        txMessage.addField(OrderQty).setFloat(order.getOrderQty(), sizeFractionDigits);
-        txMessage.addField(LeavesQty).setFloat(0.0, sizeFractionDigits);
-        txMessage.addField(CumQty).setFloat(order.getCumQty(), sizeFractionDigits);
-        txMessage.addField(AvgPx).setFloat(order.getAvgPx(), priceFractionDigits);
+        setDecimal(txMessage.addField(OrderQty), order.getOrderQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(LeavesQty), 0, sizeFractionDigits);
+        setDecimal(txMessage.addField(CumQty), order.getCumQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(AvgPx), order.getAvgPx(), priceFractionDigits);
 
         fix.send(txMessage);
     }
 
     private void sendOrderRejected(String clOrdId, int ordRejReason,
-            String account, String symbol, char side, double orderQty) throws IOException {
+            String account, String symbol, char side, long orderQty) throws IOException {
         fix.prepare(txMessage, ExecutionReport);
 
-        Instrument config = instruments.get(symbol);
+        Instrument instrument = instruments.get(symbol);
 
         int priceFractionDigits = 0;
         int sizeFractionDigits  = 0;
 
-        if (config != null) {
-            priceFractionDigits = config.getPriceFractionDigits();
-            sizeFractionDigits  = config.getSizeFractionDigits();
+        if (instrument != null) {
+            priceFractionDigits = instrument.getPriceFractionDigits();
+            sizeFractionDigits  = instrument.getSizeFractionDigits();
         }
 
         txMessage.addField(OrderID).setString(UNKNOWN_ORDER_ID);
@@ -549,19 +675,21 @@ class Session implements Closeable {
 
         txMessage.addField(Symbol).setString(symbol);
         txMessage.addField(Side).setChar(side);
-        txMessage.addField(OrderQty).setFloat(orderQty, sizeFractionDigits);
-        txMessage.addField(LeavesQty).setFloat(0.0, sizeFractionDigits);
-        txMessage.addField(CumQty).setFloat(0.0, sizeFractionDigits);
-        txMessage.addField(AvgPx).setFloat(0.0, priceFractionDigits);
+        setDecimal(txMessage.addField(OrderQty), orderQty, sizeFractionDigits);
+        setDecimal(txMessage.addField(LeavesQty), 0, sizeFractionDigits);
+        setDecimal(txMessage.addField(CumQty), 0, sizeFractionDigits);
+        setDecimal(txMessage.addField(AvgPx), 0, priceFractionDigits);
 
         fix.send(txMessage);
     }
 
-    private void sendOrderExecuted(Order order, double lastQty, double lastPx, Instrument config) throws IOException {
+    private void sendOrderExecuted(Order order, long lastQty, long lastPx) throws IOException {
         fix.prepare(txMessage, ExecutionReport);
 
-        int priceFractionDigits = config.getPriceFractionDigits();
-        int sizeFractionDigits  = config.getSizeFractionDigits();
+        Instrument instrument = order.getInstrument();
+
+        int priceFractionDigits = instrument.getPriceFractionDigits();
+        int sizeFractionDigits  = instrument.getSizeFractionDigits();
 
         txMessage.addField(OrderID).setInt(order.getOrderID());
         txMessage.addField(ClOrdID).setString(order.getClOrdID());
@@ -572,14 +700,14 @@ class Session implements Closeable {
         if (order.getAccount() != null)
             txMessage.addField(Account).setString(order.getAccount());
 
-        txMessage.addField(Symbol).setString(order.getSymbol());
+        txMessage.addField(Symbol).setString(instrument.asString());
         txMessage.addField(Side).setChar(order.getSide());
-        txMessage.addField(OrderQty).setFloat(order.getOrderQty(), sizeFractionDigits);
-        txMessage.addField(LastQty).setFloat(lastQty, sizeFractionDigits);
-        txMessage.addField(LastPx).setFloat(lastPx, priceFractionDigits);
-        txMessage.addField(LeavesQty).setFloat(order.getLeavesQty(), sizeFractionDigits);
-        txMessage.addField(CumQty).setFloat(order.getCumQty(), sizeFractionDigits);
-        txMessage.addField(AvgPx).setFloat(order.getAvgPx(), priceFractionDigits);
+        setDecimal(txMessage.addField(OrderQty), order.getOrderQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(LastQty), lastQty, sizeFractionDigits);
+        setDecimal(txMessage.addField(LastPx), lastPx, priceFractionDigits);
+        setDecimal(txMessage.addField(LeavesQty), order.getLeavesQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(CumQty), order.getCumQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(AvgPx), order.getAvgPx(), priceFractionDigits);
 
         fix.send(txMessage);
     }
@@ -587,12 +715,10 @@ class Session implements Closeable {
     private void sendOrderCancelAcknowledgement(Order order, char execType, char ordStatus) throws IOException {
         fix.prepare(txMessage, ExecutionReport);
 
-        String symbol = order.getSymbol();
+        Instrument instrument = order.getInstrument();
 
-        Instrument config = instruments.get(symbol);
-
-        int priceFractionDigits = config.getPriceFractionDigits();
-        int sizeFractionDigits  = config.getSizeFractionDigits();
+        int priceFractionDigits = instrument.getPriceFractionDigits();
+        int sizeFractionDigits  = instrument.getSizeFractionDigits();
 
         txMessage.addField(OrderID).setInt(order.getOrderID());
         txMessage.addField(ClOrdID).setString(order.getNextClOrdID());
@@ -604,21 +730,23 @@ class Session implements Closeable {
         if (order.getAccount() != null)
             txMessage.addField(Account).setString(order.getAccount());
 
-        txMessage.addField(Symbol).setString(symbol);
+        txMessage.addField(Symbol).setString(instrument.asString());
         txMessage.addField(Side).setChar(order.getSide());
-        txMessage.addField(OrderQty).setFloat(order.getOrderQty(), sizeFractionDigits);
-        txMessage.addField(LeavesQty).setFloat(order.getLeavesQty(), sizeFractionDigits);
-        txMessage.addField(CumQty).setFloat(order.getCumQty(), sizeFractionDigits);
-        txMessage.addField(AvgPx).setFloat(order.getAvgPx(), priceFractionDigits);
+        setDecimal(txMessage.addField(OrderQty), order.getOrderQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(LeavesQty), order.getLeavesQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(CumQty), order.getCumQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(AvgPx), order.getAvgPx(), priceFractionDigits);
 
         fix.send(txMessage);
     }
 
-    private void sendOrderCanceled(Order order, Instrument config) throws IOException {
+    private void sendOrderCanceled(Order order) throws IOException {
         fix.prepare(txMessage, ExecutionReport);
 
-        int priceFractionDigits = config.getPriceFractionDigits();
-        int sizeFractionDigits  = config.getSizeFractionDigits();
+        Instrument instrument = order.getInstrument();
+
+        int priceFractionDigits = instrument.getPriceFractionDigits();
+        int sizeFractionDigits  = instrument.getSizeFractionDigits();
 
         char execType  = ExecTypeValues.Canceled;
         char ordStatus = OrdStatusValues.Canceled;
@@ -638,16 +766,29 @@ class Session implements Closeable {
         if (order.getAccount() != null)
             txMessage.addField(Account).setString(order.getAccount());
 
-        txMessage.addField(Symbol).setString(order.getSymbol());
+        txMessage.addField(Symbol).setString(instrument.asString());
         txMessage.addField(Side).setChar(order.getSide());
-        txMessage.addField(OrderQty).setFloat(order.getOrderQty(), sizeFractionDigits);
-        txMessage.addField(LeavesQty).setFloat(order.getLeavesQty(), sizeFractionDigits);
-        txMessage.addField(CumQty).setFloat(order.getCumQty(), sizeFractionDigits);
-        txMessage.addField(AvgPx).setFloat(order.getAvgPx(), priceFractionDigits);
+        setDecimal(txMessage.addField(OrderQty), order.getOrderQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(LeavesQty), order.getLeavesQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(CumQty), order.getCumQty(), sizeFractionDigits);
+        setDecimal(txMessage.addField(AvgPx), order.getAvgPx(), priceFractionDigits);
 
         fix.send(txMessage);
     }
 
+    /*
+     * The quantities and prices are kept as fixed-point longs and formatted
+     * without going through a double. The execution reports are encoded
+     * field by field. A template per order, with the header and the
+     * constant fields encoded once, was no faster in the session benchmark,
+     * as sending the reports dominates.
+     */
+    private void setDecimal(FIXValue value, long x, int fractionDigits) {
+        FIXValues.formatScaledLong(x, fractionDigits, decimal);
+
+        value.setString(decimal);
+    }
+
     private class OrderEntryListener implements POEClientListener, SoupBinTCPClientStatusListener {
 
         @Override
@@ -686,7 +827,9 @@ class Session implements Closeable {
                 break;
             }
 
-            orders.removeByOrderEntryID(orderEntryId);
+            remove(orderEntryId);
+
+            orders.release(order);
         }
 
         @Override
@@ -697,20 +840,17 @@ class Session implements Closeable {
             if (order == null)
                 return;
 
-            Instrument config = instruments.get(order.getSymbol());
-
-            double lastQty = message.quantity / config.getSizeFactor();
-            double lastPx  = message.price    / config.getPriceFactor();
+            order.orderExecuted(message.quantity, message.price);
 
-            order.orderExecuted(lastQty, lastPx);
-
-            sendOrderExecuted(order, lastQty, lastPx, config);
+            sendOrderExecuted(order, message.quantity, message.price);
 
             if (order.getLeavesQty() == 0) {
-                orders.removeByOrderEntryID(orderEntryId);
+                remove(orderEntryId);
 
                 if (order.isInPendingStatus())
                     sendOrderCancelReject(order);
+
+                orders.release(order);
             }
         }
 
@@ -722,14 +862,17 @@ class Session implements Closeable {
             if (order == null)
                 return;
 
-            Instrument config = instruments.get(order.getSymbol());
+            order.orderCanceled(message.canceledQuantity);
 
-            order.orderCanceled(message.canceledQuantity / config.getSizeFactor());
+            orders.updateClOrdID(order);
 
-            sendOrderCanceled(order, config);
+            sendOrderCanceled(order);
 
-            if (order.getLeavesQty() == 0)
-                orders.removeByOrderEntryID(orderEntryId);
+            if (order.getLeavesQty() == 0) {
+                remove(orderEntryId);
+
+                orders.release(order);
+            }
         }
 
         @Override
@@ -18,6 +18,7 @@ package com.paritytrading.parity.reporter;
 import com.paritytrading.parity.util.Instrument;
 import com.paritytrading.parity.util.Instruments;
 import com.paritytrading.parity.util.TableHeader;
+import com.paritytrading.parity.util.Timestamps;
 
 class DisplayFormat extends TradeListener {
 
@@ -46,7 +47,7 @@ class DisplayFormat extends TradeListener {
     void trade(Trade event) {
         Instrument instrument = instruments.get(event.instrument);
 
-        printf("%12s %-8s ", event.timestamp, event.instrument);
+        printf("%12s %-8s ", Timestamps.format(event.timestamp), event.instrument);
         printf(instrument.getSizeFormat(), event.quantity / instrument.getSizeFactor());
         printf(" ");
         printf(instrument.getPriceFormat(), event.price / instrument.getPriceFactor());
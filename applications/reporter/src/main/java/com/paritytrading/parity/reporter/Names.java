@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.reporter;
+
+import com.paritytrading.foundation.ASCII;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/*
+ * A cache of usernames and instruments, so that each packed username or
+ * instrument is unpacked into a string only once.
+ */
+class Names {
+
+    private final Long2ObjectOpenHashMap<String> names;
+
+    Names() {
+        this.names = new Long2ObjectOpenHashMap<>();
+    }
+
+    String get(long packed) {
+        String name = names.get(packed);
+
+        if (name == null) {
+            name = ASCII.unpackLong(packed).trim();
+
+            names.put(packed, name);
+        }
+
+        return name;
+    }
+
+}
@@ -17,6 +17,7 @@ package com.paritytrading.parity.reporter;
 
 import com.paritytrading.parity.util.Instrument;
 import com.paritytrading.parity.util.Instruments;
+import com.paritytrading.parity.util.Timestamps;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -56,7 +57,7 @@ class TSVFormat extends TradeListener {
 
     @Override
     void trade(Trade event) {
-        printf("%s\t%d\t%s\t", event.timestamp, event.matchNumber, event.instrument);
+        printf("%s\t%d\t%s\t", Timestamps.format(event.timestamp), event.matchNumber, event.instrument);
 
         Instrument instrument = instruments.get(event.instrument);
 
@@ -17,7 +17,7 @@ package com.paritytrading.parity.reporter;
 
 class Trade {
 
-    String timestamp;
+    long   timestamp;
     long   matchNumber;
     String instrument;
     long   quantity;
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.reporter;
+
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.parity.net.pmr.PMR;
+import com.paritytrading.parity.net.pmr.PMRListener;
+import com.paritytrading.parity.net.pmr.PMRParser;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * A trade processor for a PMR file in the BinaryFILE format.
+ *
+ * The file is processed in two passes. The first pass reads the file
+ * sequentially, indexes the entered orders by their order numbers and
+ * splits the file into segments at message boundaries. The second pass
+ * resolves the trades of the segments against the index in parallel on a
+ * fork-join pool and merges them in match number order. The trades are
+ * then passed to the trade listener in that order.
+ *
+ * Unlike the live trade processor, the file processor does not need the
+ * remaining quantities of the orders, as the index is complete before any
+ * trade is resolved. Trades of orders entered before the file starts are
+ * skipped.
+ */
+class TradeFileProcessor {
+
+    static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int READ_BUFFER_CAPACITY = 1024 * 1024;
+
+    private static final int LENGTH_PREFIX = 2;
+
+    private final File file;
+
+    private final long segmentSize;
+
+    TradeFileProcessor(File file, long segmentSize) {
+        if (segmentSize < 1)
+            throw new IllegalArgumentException("Segment size must be positive");
+
+        this.file        = file;
+        this.segmentSize = segmentSize;
+    }
+
+    void process(TradeListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Orders orders = new Orders();
+
+            LongArrayList boundaries = index(channel, orders);
+
+            Trades trades;
+
+            try {
+                trades = ForkJoinPool.commonPool().invoke(new Resolve(channel, orders,
+                            boundaries, 0, boundaries.size() - 1));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            emit(trades, listener);
+        }
+    }
+
+    /*
+     * Index the entered orders and return the segment boundaries: the file
+     * offsets of the first message of each segment followed by the end of
+     * the last complete message.
+     */
+    private LongArrayList index(FileChannel channel, Orders orders) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_CAPACITY);
+
+        PMRParser parser = new PMRParser(new Indexer(orders));
+
+        LongArrayList boundaries = new LongArrayList();
+
+        boundaries.add(0);
+
+        long bufferOffset = 0;
+        long nextBoundary = segmentSize;
+
+        while (true) {
+            int bytes = channel.read(buffer);
+
+            buffer.flip();
+
+            while (buffer.remaining() >= LENGTH_PREFIX) {
+                int length = buffer.getShort(buffer.position()) & 0xffff;
+                if (buffer.remaining() < LENGTH_PREFIX + length)
+                    break;
+
+                long offset = bufferOffset + buffer.position();
+
+                if (offset >= nextBoundary) {
+                    boundaries.add(offset);
+
+                    nextBoundary = offset + segmentSize;
+                }
+
+                parse(parser, buffer, buffer.position() + LENGTH_PREFIX, length);
+            }
+
+            bufferOffset += buffer.position();
+
+            buffer.compact();
+
+            if (bytes < 0)
+                break;
+        }
+
+        boundaries.add(bufferOffset);
+
+        return boundaries;
+    }
+
+    private static void emit(Trades trades, TradeListener listener) {
+        Names names = new Names();
+
+        Trade trade = new Trade();
+
+        for (int i = 0; i < trades.size; i++) {
+            trade.timestamp       = trades.timestamps[i];
+            trade.matchNumber     = trades.matchNumbers[i];
+            trade.instrument      = names.get(trades.instruments[i]);
+            trade.quantity        = trades.quantities[i];
+            trade.price           = trades.prices[i];
+            trade.buyer           = names.get(trades.buyers[i]);
+            trade.buyOrderNumber  = trades.buyOrderNumbers[i];
+            trade.seller          = names.get(trades.sellers[i]);
+            trade.sellOrderNumber = trades.sellOrderNumbers[i];
+
+            listener.trade(trade);
+        }
+    }
+
+    /*
+     * Parse a message in place and position the buffer after it.
+     */
+    private static void parse(PMRParser parser, ByteBuffer buffer, int position,
+            int length) throws IOException {
+        int limit = buffer.limit();
+
+        buffer.limit(position + length);
+        buffer.position(position);
+
+        parser.message(buffer);
+
+        buffer.limit(limit);
+        buffer.position(position + length);
+    }
+
+    /*
+     * Resolve the trades of a range of segments.
+     */
+    private static class Resolve extends RecursiveTask<Trades> {
+
+        private final FileChannel channel;
+
+        private final Orders orders;
+
+        private final LongArrayList boundaries;
+
+        private final int fromSegment;
+        private final int toSegment;
+
+        Resolve(FileChannel channel, Orders orders, LongArrayList boundaries,
+                int fromSegment, int toSegment) {
+            this.channel    = channel;
+            this.orders     = orders;
+            this.boundaries = boundaries;
+
+            this.fromSegment = fromSegment;
+            this.toSegment   = toSegment;
+        }
+
+        @Override
+        protected Trades compute() {
+            if (toSegment - fromSegment <= 1)
+                return resolve();
+
+            int midSegment = (fromSegment + toSegment) >>> 1;
+
+            Resolve left  = new Resolve(channel, orders, boundaries, fromSegment, midSegment);
+            Resolve right = new Resolve(channel, orders, boundaries, midSegment, toSegment);
+
+            right.fork();
+
+            Trades trades = left.compute();
+
+            return Trades.merge(trades, right.join());
+        }
+
+        private Trades resolve() {
+            long start = boundaries.getLong(fromSegment);
+            long end   = boundaries.getLong(toSegment);
+
+            Trades trades = new Trades();
+
+            PMRParser parser = new PMRParser(new Resolver(orders, trades));
+
+            try {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+                while (buffer.hasRemaining()) {
+                    int length = buffer.getShort(buffer.position()) & 0xffff;
+
+                    parse(parser, buffer, buffer.position() + LENGTH_PREFIX, length);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return trades;
+        }
+
+    }
+
+    private static class Indexer implements PMRListener {
+
+        private final Orders orders;
+
+        Indexer(Orders orders) {
+            this.orders = orders;
+        }
+
+        @Override
+        public void version(PMR.Version message) {
+            if (message.version != PMR.VERSION)
+                error("Unsupported protocol version");
+        }
+
+        @Override
+        public void orderEntered(PMR.OrderEntered message) {
+            orders.add(message);
+        }
+
+        @Override
+        public void orderAdded(PMR.OrderAdded message) {
+        }
+
+        @Override
+        public void orderCanceled(PMR.OrderCanceled message) {
+        }
+
+        @Override
+        public void trade(PMR.Trade message) {
+        }
+
+    }
+
+    private static class Resolver implements PMRListener {
+
+        private final Orders orders;
+
+        private final Trades trades;
+
+        Resolver(Orders orders, Trades trades) {
+            this.orders = orders;
+            this.trades = trades;
+        }
+
+        @Override
+        public void version(PMR.Version message) {
+        }
+
+        @Override
+        public void orderEntered(PMR.OrderEntered message) {
+        }
+
+        @Override
+        public void orderAdded(PMR.OrderAdded message) {
+        }
+
+        @Override
+        public void orderCanceled(PMR.OrderCanceled message) {
+        }
+
+        @Override
+        public void trade(PMR.Trade message) {
+            int resting  = orders.get(message.restingOrderNumber);
+            int incoming = orders.get(message.incomingOrderNumber);
+
+            if (resting < 0 || incoming < 0)
+                return;
+
+            int buy  = orders.sides[resting] == PMR.BUY  ? resting : incoming;
+            int sell = orders.sides[resting] == PMR.SELL ? resting : incoming;
+
+            long buyOrderNumber = orders.sides[resting] == PMR.BUY ?
+                    message.restingOrderNumber : message.incomingOrderNumber;
+
+            long sellOrderNumber = orders.sides[resting] == PMR.SELL ?
+                    message.restingOrderNumber : message.incomingOrderNumber;
+
+            trades.add(message.timestamp / 1_000_000, message.matchNumber,
+                    orders.instruments[resting], message.quantity, orders.prices[resting],
+                    orders.usernames[buy], buyOrderNumber, orders.usernames[sell],
+                    sellOrderNumber);
+        }
+
+    }
+
+    /*
+     * The entered orders in columns, indexed by their order numbers. The
+     * index is only read once it is complete, so that the resolving tasks
+     * can share it.
+     */
+    private static class Orders {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final Long2IntOpenHashMap indices;
+
+        long[] usernames;
+        byte[] sides;
+        long[] instruments;
+        long[] prices;
+
+        private int size;
+
+        Orders() {
+            this.indices = new Long2IntOpenHashMap();
+            this.indices.defaultReturnValue(-1);
+
+            this.usernames   = new long[INITIAL_CAPACITY];
+            this.sides       = new byte[INITIAL_CAPACITY];
+            this.instruments = new long[INITIAL_CAPACITY];
+            this.prices      = new long[INITIAL_CAPACITY];
+        }
+
+        void add(PMR.OrderEntered message) {
+            if (size == usernames.length) {
+                int capacity = 2 * size;
+
+                usernames   = Arrays.copyOf(usernames, capacity);
+                sides       = Arrays.copyOf(sides, capacity);
+                instruments = Arrays.copyOf(instruments, capacity);
+                prices      = Arrays.copyOf(prices, capacity);
+            }
+
+            usernames[size]   = message.username;
+            sides[size]       = message.side;
+            instruments[size] = message.instrument;
+            prices[size]      = message.price;
+
+            indices.put(message.orderNumber, size++);
+        }
+
+        int get(long orderNumber) {
+            return indices.get(orderNumber);
+        }
+
+    }
+
+    /*
+     * Resolved trades in columns. The trades of a segment are in match
+     * number order as in the file.
+     */
+    private static class Trades {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        long[] timestamps;
+        long[] matchNumbers;
+        long[] instruments;
+        long[] quantities;
+        long[] prices;
+        long[] buyers;
+        long[] buyOrderNumbers;
+        long[] sellers;
+        long[] sellOrderNumbers;
+
+        int size;
+
+        Trades() {
+            this(INITIAL_CAPACITY);
+        }
+
+        Trades(int capacity) {
+            timestamps       = new long[capacity];
+            matchNumbers     = new long[capacity];
+            instruments      = new long[capacity];
+            quantities       = new long[capacity];
+            prices           = new long[capacity];
+            buyers           = new long[capacity];
+            buyOrderNumbers  = new long[capacity];
+            sellers          = new long[capacity];
+            sellOrderNumbers = new long[capacity];
+        }
+
+        void add(long timestamp, long matchNumber, long instrument, long quantity,
+                long price, long buyer, long buyOrderNumber, long seller,
+                long sellOrderNumber) {
+            if (size == timestamps.length)
+                grow();
+
+            timestamps[size]       = timestamp;
+            matchNumbers[size]     = matchNumber;
+            instruments[size]      = instrument;
+            quantities[size]       = quantity;
+            prices[size]           = price;
+            buyers[size]           = buyer;
+            buyOrderNumbers[size]  = buyOrderNumber;
+            sellers[size]          = seller;
+            sellOrderNumbers[size] = sellOrderNumber;
+
+            size++;
+        }
+
+        private void grow() {
+            int capacity = Math.max(2 * timestamps.length, INITIAL_CAPACITY);
+
+            timestamps       = Arrays.copyOf(timestamps, capacity);
+            matchNumbers     = Arrays.copyOf(matchNumbers, capacity);
+            instruments      = Arrays.copyOf(instruments, capacity);
+            quantities       = Arrays.copyOf(quantities, capacity);
+            prices           = Arrays.copyOf(prices, capacity);
+            buyers           = Arrays.copyOf(buyers, capacity);
+            buyOrderNumbers  = Arrays.copyOf(buyOrderNumbers, capacity);
+            sellers          = Arrays.copyOf(sellers, capacity);
+            sellOrderNumbers = Arrays.copyOf(sellOrderNumbers, capacity);
+        }
+
+        private void add(Trades other, int i) {
+            add(other.timestamps[i], other.matchNumbers[i], other.instruments[i],
+                    other.quantities[i], other.prices[i], other.buyers[i],
+                    other.buyOrderNumbers[i], other.sellers[i], other.sellOrderNumbers[i]);
+        }
+
+        /*
+         * Merge two trade sequences in match number order.
+         */
+        static Trades merge(Trades a, Trades b) {
+            if (b.size == 0)
+                return a;
+
+            if (a.size == 0)
+                return b;
+
+            Trades trades = new Trades(a.size + b.size);
+
+            int i = 0;
+            int j = 0;
+
+            while (i < a.size && j < b.size) {
+                if (a.matchNumbers[i] <= b.matchNumbers[j])
+                    trades.add(a, i++);
+                else
+                    trades.add(b, j++);
+            }
+
+            while (i < a.size)
+                trades.add(a, i++);
+
+            while (j < b.size)
+                trades.add(b, j++);
+
+            return trades;
+        }
+
+    }
+
+}
@@ -17,23 +17,38 @@ package com.paritytrading.parity.reporter;
 
 import static org.jvirtanen.util.Applications.*;
 
-import com.paritytrading.foundation.ASCII;
 import com.paritytrading.parity.net.pmr.PMR;
 import com.paritytrading.parity.net.pmr.PMRListener;
-import com.paritytrading.parity.util.Timestamps;
-import java.util.HashMap;
-import java.util.Map;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 
+/*
+ * The trade processor does not allocate in steady state: the orders are
+ * indexed by their primitive order numbers and reused through a pool, and
+ * the usernames and instruments are unpacked into strings once.
+ */
 class TradeProcessor implements PMRListener {
 
-    private final Map<Long, Order> orders;
+    private static final int POOL_CAPACITY = 1024;
+
+    private final Long2ObjectOpenHashMap<Order> orders;
+
+    private final Order[] pool;
+
+    private int poolCount;
+
+    private final Names names;
 
     private final Trade trade;
 
     private final TradeListener listener;
 
     TradeProcessor(TradeListener listener) {
-        this.orders = new HashMap<>();
+        this.orders = new Long2ObjectOpenHashMap<>();
+
+        this.pool      = new Order[POOL_CAPACITY];
+        this.poolCount = 0;
+
+        this.names = new Names();
 
         this.trade = new Trade();
 
@@ -48,7 +63,15 @@ class TradeProcessor implements PMRListener {
 
     @Override
     public void orderEntered(PMR.OrderEntered message) {
-        orders.put(message.orderNumber, new Order(message));
+        Order order = allocate();
+
+        order.username          = message.username;
+        order.side              = message.side;
+        order.instrument        = message.instrument;
+        order.price             = message.price;
+        order.remainingQuantity = message.quantity;
+
+        orders.put(message.orderNumber, order);
     }
 
     @Override
@@ -62,7 +85,7 @@ class TradeProcessor implements PMRListener {
         order.remainingQuantity -= message.canceledQuantity;
 
         if (order.remainingQuantity == 0)
-            orders.remove(message.orderNumber);
+            release(orders.remove(message.orderNumber));
     }
 
     @Override
@@ -79,14 +102,14 @@ class TradeProcessor implements PMRListener {
         long sellOrderNumber = resting.side == PMR.SELL ?
                 message.restingOrderNumber : message.incomingOrderNumber;
 
-        trade.timestamp       = Timestamps.format(message.timestamp / 1_000_000);
+        trade.timestamp       = message.timestamp / 1_000_000;
         trade.matchNumber     = message.matchNumber;
-        trade.instrument      = ASCII.unpackLong(resting.instrument).trim();
+        trade.instrument      = names.get(resting.instrument);
         trade.quantity        = message.quantity;
         trade.price           = resting.price;
-        trade.buyer           = ASCII.unpackLong(buy.username).trim();
+        trade.buyer           = names.get(buy.username);
         trade.buyOrderNumber  = buyOrderNumber;
-        trade.seller          = ASCII.unpackLong(sell.username).trim();
+        trade.seller          = names.get(sell.username);
         trade.sellOrderNumber = sellOrderNumber;
 
         listener.trade(trade);
@@ -95,10 +118,35 @@ class TradeProcessor implements PMRListener {
         incoming.remainingQuantity -= message.quantity;
 
         if (resting.remainingQuantity == 0)
-            orders.remove(message.restingOrderNumber);
+            release(orders.remove(message.restingOrderNumber));
 
         if (incoming.remainingQuantity == 0)
-            orders.remove(message.incomingOrderNumber);
+            release(orders.remove(message.incomingOrderNumber));
+    }
+
+    /*
+     * Reuse an order whose remaining quantity has gone to zero, or allocate
+     * a new one while the pool is empty. The caller overwrites every field.
+     */
+    private Order allocate() {
+        if (poolCount == 0)
+            return new Order();
+
+        Order order = pool[--poolCount];
+
+        pool[poolCount] = null;
+
+        return order;
+    }
+
+    /*
+     * Keep a filled or canceled order for the next OrderEntered message. The
+     * pool keeps at most POOL_CAPACITY orders, as the number of orders open
+     * at once is bounded only by the market, and drops the rest.
+     */
+    private void release(Order order) {
+        if (poolCount < pool.length)
+            pool[poolCount++] = order;
     }
 
     private static class Order {
@@ -107,14 +155,6 @@ class TradeProcessor implements PMRListener {
         long instrument;
         long price;
         long remainingQuantity;
-
-        Order(PMR.OrderEntered message) {
-            this.username          = message.username;
-            this.side              = message.side;
-            this.instrument        = message.instrument;
-            this.price             = message.price;
-            this.remainingQuantity = message.quantity;
-        }
     }
 
 }
@@ -15,6 +15,7 @@
  */
 package com.paritytrading.parity.reporter;
 
+import static java.util.Arrays.*;
 import static org.jvirtanen.util.Applications.*;
 
 import com.paritytrading.nassau.MessageListener;
@@ -24,6 +25,7 @@ import com.paritytrading.parity.net.pmr.PMRParser;
 import com.paritytrading.parity.util.Instruments;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigException;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetAddress;
@@ -33,23 +35,16 @@ import org.jvirtanen.config.Configs;
 
 class TradeReporter {
 
-    private static final String USAGE = "parity-reporter [-t] <configuration-file>";
+    private static final String USAGE = "parity-reporter [-t] <configuration-file> [<input-file>]";
 
     public static void main(String[] args) {
-        if (args.length != 1 && args.length != 2)
+        if (args.length < 1)
             usage(USAGE);
 
-        boolean tsv = false;
-
-        if (args.length == 2) {
-            if (!args[0].equals("-t"))
-                usage(USAGE);
-
-            tsv = true;
-        }
+        boolean tsv = args[0].equals("-t");
 
         try {
-            main(config(args[tsv ? 1 : 0]), tsv);
+            main(tsv, tsv ? copyOfRange(args, 1, args.length) : args);
         } catch (ConfigException | FileNotFoundException e) {
             error(e);
         } catch (IOException e) {
@@ -57,7 +52,21 @@ class TradeReporter {
         }
     }
 
-    private static void main(Config config, boolean tsv) throws IOException {
+    private static void main(boolean tsv, String[] args) throws IOException {
+        switch (args.length) {
+        case 1:
+            listen(tsv, config(args[0]));
+            return;
+        case 2:
+            read(tsv, config(args[0]), new File(args[1]));
+            return;
+        default:
+            usage(USAGE);
+            return;
+        }
+    }
+
+    private static void listen(boolean tsv, Config config) throws IOException {
         Instruments instruments = Instruments.fromConfig(config, "instruments");
 
         MessageListener listener = new PMRParser(new TradeProcessor(tsv ?
@@ -82,4 +91,15 @@ class TradeReporter {
         }
     }
 
+    private static void read(boolean tsv, Config config, File file) throws IOException {
+        if (!file.isFile())
+            throw new FileNotFoundException(file.getPath());
+
+        Instruments instruments = Instruments.fromConfig(config, "instruments");
+
+        TradeListener listener = tsv ? new TSVFormat(instruments) : new DisplayFormat(instruments);
+
+        new TradeFileProcessor(file, TradeFileProcessor.DEFAULT_SEGMENT_SIZE).process(listener);
+    }
+
 }
@@ -15,42 +15,74 @@
  */
 package com.paritytrading.parity.system;
 
+import com.paritytrading.parity.util.WaitStrategy;
 import java.io.IOException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 class Events implements Runnable {
 
     private static final int TIMEOUT_MILLIS = 1000;
 
+    static final long KEEP_ALIVE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     private final MarketData      marketData;
     private final MarketReporting marketReporting;
     private final OrderEntry      orderEntry;
+    private final OrderBooks      books;
+    private final Primary         primary;
 
     private final List<Session> toKeepAlive;
     private final List<Session> toCleanUp;
 
     private final Selector selector;
 
+    private final WaitStrategy waitStrategy;
+
+    private final boolean spin;
+
+    private long lastKeepAliveNanos;
+
+    /*
+     * In the spin mode, the network thread polls its selector instead of
+     * blocking in it and waits for work with the wait strategy. The matching
+     * and order entry threads then no longer need to wake it up.
+     */
     Events(MarketData marketData, MarketReporting marketReporting,
-            OrderEntry orderEntry) throws IOException {
+            OrderEntry orderEntry, OrderBooks books, Primary primary,
+            WaitStrategy waitStrategy, boolean spin) throws IOException {
         this.marketData      = marketData;
         this.marketReporting = marketReporting;
         this.orderEntry      = orderEntry;
+        this.books           = books;
+        this.primary         = primary;
 
         this.toKeepAlive = new ArrayList<>();
         this.toCleanUp   = new ArrayList<>();
 
         this.selector = Selector.open();
 
-        this.marketData.getRequestTransport().getChannel().register(this.selector,
-                SelectionKey.OP_READ, this.marketData);
-        this.marketReporting.getRequestTransport().getChannel().register(this.selector,
-                SelectionKey.OP_READ, this.marketReporting);
-        this.orderEntry.getChannel().register(this.selector, SelectionKey.OP_ACCEPT, null);
+        this.waitStrategy = waitStrategy;
+        this.spin         = spin;
+
+        Selector wakeUp = spin ? null : this.selector;
+
+        register(this.marketData.getPublisher());
+        register(this.marketReporting.getPublisher());
+
+        if (this.orderEntry.hasReactors())
+            this.orderEntry.start(wakeUp, waitStrategy, spin);
+        else
+            this.orderEntry.getChannel().register(this.selector, SelectionKey.OP_ACCEPT, null);
+
+        if (this.primary != null)
+            this.primary.getChannel().register(this.selector, SelectionKey.OP_ACCEPT, this.primary);
+
+        this.books.start(wakeUp, waitStrategy);
     }
 
     @Override
@@ -59,7 +91,7 @@ class Events implements Runnable {
 
         while (true) {
             try {
-                numKeys = selector.select(TIMEOUT_MILLIS);
+                numKeys = spin ? selector.selectNow() : selector.select(TIMEOUT_MILLIS);
             } catch (IOException e) {
                 break;
             }
@@ -70,15 +102,17 @@ class Events implements Runnable {
                 while (keys.hasNext()) {
                     SelectionKey key = keys.next();
 
-                    if (key.isAcceptable())
-                        accept();
+                    if (key.isAcceptable()) {
+                        if (key.attachment() instanceof Primary)
+                            primary.accept(selector);
+                        else
+                            accept();
+                    }
 
                     if (key.isReadable()) {
                         Object attachment = key.attachment();
-                        if (attachment == marketData)
-                            marketData.serve();
-                        else if (attachment == marketReporting)
-                            marketReporting.serve();
+                        if (attachment instanceof Publisher)
+                            ((Publisher)attachment).serve();
                         else
                             receive((Session)attachment);
                     }
@@ -87,12 +121,43 @@ class Events implements Runnable {
                 }
             }
 
-            keepAlive();
+            int work = numKeys;
+
+            work += orderEntry.drain();
+
+            work += books.drain();
+
+            books.sync();
+
+            orderEntry.flush();
+
+            marketData.flush();
+            marketReporting.flush();
+
+            long now = System.nanoTime();
+
+            if (now - lastKeepAliveNanos >= KEEP_ALIVE_INTERVAL_NANOS) {
+                keepAlive();
+
+                lastKeepAliveNanos = now;
+            }
 
             cleanUp();
+
+            if (spin && work == 0)
+                waitStrategy.idle();
         }
     }
 
+    /*
+     * A started publisher serves its retransmission requests on its own
+     * fan-out thread.
+     */
+    private void register(Publisher publisher) throws IOException {
+        if (!publisher.isStarted())
+            publisher.getRequestTransport().getChannel().register(selector, SelectionKey.OP_READ, publisher);
+    }
+
     private void accept() {
         try {
             Session session = orderEntry.accept();
@@ -115,15 +180,16 @@ class Events implements Runnable {
     }
 
     private void keepAlive() {
-        try {
-            marketData.getTransport().keepAlive();
-        } catch (IOException e) {
-        }
+        if (primary != null)
+            primary.keepAlive();
 
-        try {
-            marketReporting.getTransport().keepAlive();
-        } catch (IOException e) {
-        }
+        books.expire();
+
+        if (!marketData.getPublisher().isStarted())
+            marketData.getPublisher().keepAlive();
+
+        if (!marketReporting.getPublisher().isStarted())
+            marketReporting.getPublisher().keepAlive();
 
         for (int i = 0; i < toKeepAlive.size(); i++) {
             Session session = toKeepAlive.get(i);
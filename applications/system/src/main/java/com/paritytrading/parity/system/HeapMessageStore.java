@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import com.paritytrading.nassau.moldudp64.MoldUDP64DefaultMessageStore;
+import com.paritytrading.nassau.moldudp64.MoldUDP64DownstreamPacket;
+
+/*
+ * A message store that keeps the messages on the heap.
+ */
+class HeapMessageStore extends MoldUDP64DefaultMessageStore implements MessageStore {
+
+    private long size;
+
+    @Override
+    public void put(MoldUDP64DownstreamPacket packet) {
+        size += packet.messageCount();
+
+        super.put(packet);
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+}
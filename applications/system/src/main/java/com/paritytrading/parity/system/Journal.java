@@ -0,0 +1,428 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * A write-ahead journal of the accepted order entry commands.
+ *
+ * Every accepted order and every cancellation is appended to the journal,
+ * with the order number assigned to it, before it is matched. Replaying
+ * the journal through the order books rebuilds them deterministically.
+ *
+ * The journal consists of memory-mapped, append-only segment files. A
+ * segment file holds a header with the length of its records followed by
+ * the records. Appending only writes to the mapping; the records are
+ * forced to the storage device in groups by calling sync(), typically
+ * once for each event loop iteration.
+ *
+ * The header only covers records that are on the storage device: sync()
+ * forces the records first and only then advances the header and forces
+ * it, as forcing a mapping does not order the writes of its pages. On
+ * opening, the last segment is truncated at the first record that is not
+ * whole, in case the header was written by a version without this
+ * ordering or the storage device lost a record.
+ *
+ * A segment that is no longer appended to is complete and can be read by
+ * other threads, for example to take a snapshot of the order books.
+ */
+class Journal {
+
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int MIN_SEGMENT_SIZE = 4096;
+
+    static final int MAX_RECORD_LENGTH = 58;
+
+    private static final byte ENTER    = 'E';
+    private static final byte CANCEL   = 'X';
+    private static final byte COUNTERS = 'C';
+
+    private static final int ENTER_LENGTH    = 58;
+    private static final int CANCEL_LENGTH   = 17;
+    private static final int COUNTERS_LENGTH = 17;
+
+    private static final int ORDER_ID_LENGTH = 16;
+
+    static final int HEADER_LENGTH = 4;
+
+    private static final String SUFFIX = ".journal";
+
+    interface Listener {
+
+        void enter(long orderNumber, long username, byte[] orderId, byte side,
+                long instrument, long quantity, long price);
+
+        void cancel(long orderNumber, long quantity);
+
+        void counters(long nextOrderNumber, long nextMatchNumber);
+
+    }
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private MappedByteBuffer segment;
+
+    private volatile long segmentNumber;
+
+    private int position;
+
+    private boolean dirty;
+
+    Journal(File directory, int segmentSize) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE)
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create directory: " + directory);
+
+        this.directory = directory;
+
+        this.segmentSize = segmentSize;
+
+        long[] segmentNumbers = segmentNumbers();
+
+        if (segmentNumbers.length == 0) {
+            create(1);
+        } else {
+            segmentNumber = segmentNumbers[segmentNumbers.length - 1];
+
+            segment = map(segmentNumber, FileChannel.MapMode.READ_WRITE);
+
+            position = truncate(segment);
+        }
+    }
+
+    void enter(long orderNumber, long username, byte[] orderId, byte side,
+            long instrument, long quantity, long price) {
+        reserve(ENTER_LENGTH);
+
+        commit(putEnter(segment, position, orderNumber, username, orderId, side,
+                instrument, quantity, price));
+    }
+
+    void cancel(long orderNumber, long quantity) {
+        reserve(CANCEL_LENGTH);
+
+        commit(putCancel(segment, position, orderNumber, quantity));
+    }
+
+    void counters(long nextOrderNumber, long nextMatchNumber) {
+        reserve(COUNTERS_LENGTH);
+
+        commit(putCounters(segment, position, nextOrderNumber, nextMatchNumber));
+    }
+
+    /*
+     * Force the records appended since the previous call to the storage
+     * device and then make them part of the journal by advancing the header.
+     */
+    void sync() {
+        if (!dirty)
+            return;
+
+        segment.force();
+
+        segment.putInt(0, position - HEADER_LENGTH);
+
+        segment.force();
+
+        dirty = false;
+    }
+
+    /*
+     * Return true if the journal holds no records.
+     */
+    boolean isEmpty() {
+        return segmentNumber == 1 && position == HEADER_LENGTH;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /*
+     * Return the number of the segment that is currently appended to. The
+     * segments before it are complete. This can be called from any thread.
+     */
+    long getSegmentNumber() {
+        return segmentNumber;
+    }
+
+    /*
+     * Return a segment for reading. The records of a segment start at the
+     * header length and end at the offset returned by end(). The segment
+     * that is currently appended to can only be read on the thread
+     * appending to the journal.
+     */
+    ByteBuffer segment(long number) throws IOException {
+        return number == segmentNumber ? segment.duplicate() : map(number, FileChannel.MapMode.READ_ONLY);
+    }
+
+    /*
+     * Return the offset at which the records of a segment end. For the
+     * segment that is currently appended to, the records appended since the
+     * previous sync() are not included.
+     */
+    static int end(ByteBuffer segment) {
+        return HEADER_LENGTH + segment.getInt(0);
+    }
+
+    /*
+     * Replay the segments from the first segment number to the last segment
+     * number, inclusive. Return the number of records.
+     *
+     * Only complete segments can be replayed from other threads than the one
+     * appending to the journal.
+     */
+    long replay(Listener listener, long first, long last) throws IOException {
+        byte[] orderId = new byte[ORDER_ID_LENGTH];
+
+        long records = 0;
+
+        for (long number : segmentNumbers()) {
+            if (number < first || number > last)
+                continue;
+
+            MappedByteBuffer buffer = number == segmentNumber ? segment : map(number, FileChannel.MapMode.READ_ONLY);
+
+            int end = end(buffer);
+
+            int offset = HEADER_LENGTH;
+
+            while (offset < end) {
+                offset += read(buffer, offset, listener, orderId);
+
+                records++;
+            }
+        }
+
+        return records;
+    }
+
+    /*
+     * Write an Enter record to a buffer at an offset. Return the record
+     * length.
+     */
+    static int putEnter(ByteBuffer buffer, int offset, long orderNumber, long username,
+            byte[] orderId, byte side, long instrument, long quantity, long price) {
+        buffer.put(offset, ENTER);
+        buffer.putLong(offset + 1, orderNumber);
+        buffer.putLong(offset + 9, username);
+
+        for (int i = 0; i < ORDER_ID_LENGTH; i++)
+            buffer.put(offset + 17 + i, orderId[i]);
+
+        buffer.put(offset + 33, side);
+        buffer.putLong(offset + 34, instrument);
+        buffer.putLong(offset + 42, quantity);
+        buffer.putLong(offset + 50, price);
+
+        return ENTER_LENGTH;
+    }
+
+    /*
+     * Write a Cancel record to a buffer at an offset. Return the record
+     * length.
+     */
+    static int putCancel(ByteBuffer buffer, int offset, long orderNumber, long quantity) {
+        buffer.put(offset, CANCEL);
+        buffer.putLong(offset + 1, orderNumber);
+        buffer.putLong(offset + 9, quantity);
+
+        return CANCEL_LENGTH;
+    }
+
+    /*
+     * Write a Counters record to a buffer at an offset. Return the record
+     * length.
+     */
+    static int putCounters(ByteBuffer buffer, int offset, long nextOrderNumber, long nextMatchNumber) {
+        buffer.put(offset, COUNTERS);
+        buffer.putLong(offset + 1, nextOrderNumber);
+        buffer.putLong(offset + 9, nextMatchNumber);
+
+        return COUNTERS_LENGTH;
+    }
+
+    /*
+     * Return the length of the record at an offset in a buffer or zero if
+     * the buffer does not hold the whole record before the limit.
+     */
+    static int length(ByteBuffer buffer, int offset, int limit) throws IOException {
+        if (offset >= limit)
+            return 0;
+
+        int length = length(buffer.get(offset));
+
+        return offset + length <= limit ? length : 0;
+    }
+
+    /*
+     * Read the record at an offset in a buffer and pass it to a listener.
+     * Return the record length.
+     */
+    static int read(ByteBuffer buffer, int offset, Listener listener, byte[] orderId) throws IOException {
+        byte type = buffer.get(offset);
+
+        switch (type) {
+        case ENTER:
+            for (int i = 0; i < ORDER_ID_LENGTH; i++)
+                orderId[i] = buffer.get(offset + 17 + i);
+
+            listener.enter(buffer.getLong(offset + 1), buffer.getLong(offset + 9), orderId,
+                    buffer.get(offset + 33), buffer.getLong(offset + 34),
+                    buffer.getLong(offset + 42), buffer.getLong(offset + 50));
+            break;
+        case CANCEL:
+            listener.cancel(buffer.getLong(offset + 1), buffer.getLong(offset + 9));
+            break;
+        case COUNTERS:
+            listener.counters(buffer.getLong(offset + 1), buffer.getLong(offset + 9));
+            break;
+        }
+
+        return length(type);
+    }
+
+    private static int length(byte type) throws IOException {
+        int length = recordLength(type);
+        if (length == 0)
+            throw new IOException("Unknown record type: " + type);
+
+        return length;
+    }
+
+    /*
+     * Return the length of a record of a type or zero if the type is
+     * unknown.
+     */
+    private static int recordLength(byte type) {
+        switch (type) {
+        case ENTER:
+            return ENTER_LENGTH;
+        case CANCEL:
+            return CANCEL_LENGTH;
+        case COUNTERS:
+            return COUNTERS_LENGTH;
+        default:
+            return 0;
+        }
+    }
+
+    /*
+     * Truncate a segment at the first record that is not whole, such as a
+     * zeroed or torn record. Return the offset at which its records end.
+     */
+    private static int truncate(MappedByteBuffer segment) {
+        int end = (int)Math.min(end(segment), segment.capacity());
+
+        int offset = HEADER_LENGTH;
+
+        while (offset < end) {
+            int length = recordLength(segment.get(offset));
+            if (length == 0 || offset + length > end)
+                break;
+
+            offset += length;
+        }
+
+        if (offset != end(segment)) {
+            segment.putInt(0, offset - HEADER_LENGTH);
+
+            segment.force();
+        }
+
+        return offset;
+    }
+
+    private void reserve(int length) {
+        if (position + length <= segment.capacity())
+            return;
+
+        sync();
+
+        try {
+            create(segmentNumber + 1);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Advance past an appended record. The record becomes part of the
+     * journal on the next sync().
+     */
+    private void commit(int length) {
+        position += length;
+
+        dirty = true;
+    }
+
+    private void create(long number) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file(number), "rw")) {
+            raf.setLength(segmentSize);
+        }
+
+        segment = map(number, FileChannel.MapMode.READ_WRITE);
+
+        position = HEADER_LENGTH;
+
+        segmentNumber = number;
+    }
+
+    private long[] segmentNumbers() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null)
+            throw new IOException("Cannot list directory: " + directory);
+
+        long[] numbers = new long[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+
+            try {
+                numbers[i] = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed journal file name: " + files[i]);
+            }
+        }
+
+        Arrays.sort(numbers);
+
+        return numbers;
+    }
+
+    private MappedByteBuffer map(long number, FileChannel.MapMode mode) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file(number), mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")) {
+            return raf.getChannel().map(mode, 0, raf.length());
+        }
+    }
+
+    private File file(long number) {
+        return new File(directory, String.format("%019d%s", number, SUFFIX));
+    }
+
+}
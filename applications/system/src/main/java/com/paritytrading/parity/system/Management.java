@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+class Management {
+
+    private Management() {
+    }
+
+    /*
+     * Register an MXBean as "com.paritytrading.parity.system:type=<type>,name=<name>".
+     */
+    static void register(Object bean, String type, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean,
+                    new ObjectName("com.paritytrading.parity.system:type=" + type + ",name=" + name));
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import com.paritytrading.nassau.moldudp64.MoldUDP64DownstreamPacket;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/*
+ * A message store backed by memory-mapped, append-only segment files.
+ *
+ * A segment file holds a header, a sparse index and the messages of a
+ * range of sequence numbers. A message is stored as in a MoldUDP64 packet,
+ * a two-byte length followed by the message, so that a run of messages is
+ * copied from the mapping into a retransmission in one bulk copy. The index
+ * holds the offset of every INDEX_INTERVAL-th message.
+ *
+ * Only the segment being written and a few recently read segments are
+ * mapped at a time, so the heap footprint does not depend on the number of
+ * messages. An existing store is recovered on opening.
+ */
+class MappedMessageStore implements MessageStore {
+
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+
+    private static final int INDEX_INTERVAL = 64;
+
+    /*
+     * An empty message takes only its two-byte length.
+     */
+    private static final int MIN_BLOCK_LENGTH = 2;
+
+    private static final int MAX_MAPPED_SEGMENTS = 4;
+
+    private static final String SUFFIX = ".seg";
+
+    /*
+     * The header holds the number of messages and the length of the
+     * messages in the segment.
+     */
+    private static final int MESSAGE_COUNT = 0;
+    private static final int DATA_LENGTH   = 8;
+
+    private static final int HEADER_LENGTH = 16;
+
+    private final File directory;
+
+    private final int indexLength;
+    private final int segmentSize;
+
+    private final LongArrayList firstSequenceNumbers;
+
+    private final Segment[] mapped;
+
+    private int nextMapped;
+
+    private Segment current;
+
+    private int currentMessageCount;
+    private int currentDataLength;
+
+    private long nextSequenceNumber;
+
+    /*
+     * Open a message store in a directory. The segment size is the maximum
+     * length of the messages in one segment file.
+     */
+    MappedMessageStore(File directory, int segmentSize) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE)
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+
+        long indexLength = (segmentSize / MIN_BLOCK_LENGTH / INDEX_INTERVAL + 1) * 4L;
+
+        if (HEADER_LENGTH + indexLength + segmentSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Segment size too large: " + segmentSize);
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create directory: " + directory);
+
+        this.directory = directory;
+
+        this.indexLength = (int)indexLength;
+        this.segmentSize = segmentSize;
+
+        this.firstSequenceNumbers = new LongArrayList();
+
+        this.mapped = new Segment[MAX_MAPPED_SEGMENTS];
+
+        recover();
+    }
+
+    @Override
+    public long size() {
+        return nextSequenceNumber - 1;
+    }
+
+    @Override
+    public void put(MoldUDP64DownstreamPacket packet) {
+        ByteBuffer payload = packet.payload();
+
+        int length = payload.remaining();
+
+        if (currentDataLength + length > segmentSize)
+            roll();
+
+        ByteBuffer buffer = current.buffer;
+
+        int dataStart = HEADER_LENGTH + indexLength;
+
+        int offset = currentDataLength;
+
+        for (int i = 0; i < packet.messageCount(); i++) {
+            if (currentMessageCount % INDEX_INTERVAL == 0)
+                buffer.putInt(HEADER_LENGTH + currentMessageCount / INDEX_INTERVAL * 4, offset);
+
+            offset += 2 + (payload.getShort(payload.position() + offset - currentDataLength) & 0xffff);
+
+            currentMessageCount++;
+        }
+
+        ByteBuffer view = current.view;
+
+        view.limit(dataStart + currentDataLength + length);
+        view.position(dataStart + currentDataLength);
+        view.put(payload);
+
+        currentDataLength += length;
+
+        buffer.putInt(DATA_LENGTH, currentDataLength);
+        buffer.putLong(MESSAGE_COUNT, currentMessageCount);
+
+        nextSequenceNumber += packet.messageCount();
+    }
+
+    @Override
+    public int get(ByteBuffer buffer, long sequenceNumber, int requestedMessageCount) {
+        if (sequenceNumber < 1)
+            return 0;
+
+        long lastSequenceNumber = Math.min(sequenceNumber + requestedMessageCount, nextSequenceNumber);
+
+        int count = 0;
+
+        while (sequenceNumber + count < lastSequenceNumber) {
+            int segmentCount = get(buffer, sequenceNumber + count, lastSequenceNumber);
+            if (segmentCount == 0)
+                break;
+
+            count += segmentCount;
+        }
+
+        return count;
+    }
+
+    /*
+     * Get messages from the segment holding the first sequence number.
+     */
+    private int get(ByteBuffer buffer, long sequenceNumber, long lastSequenceNumber) {
+        int i = LongArrays.binarySearch(firstSequenceNumbers.elements(), 0,
+                firstSequenceNumbers.size(), sequenceNumber);
+        if (i < 0)
+            i = -i - 2;
+
+        long firstSequenceNumber = firstSequenceNumbers.getLong(i);
+
+        Segment segment;
+
+        if (i == firstSequenceNumbers.size() - 1) {
+            segment = current;
+        } else {
+            segment = map(firstSequenceNumber);
+
+            lastSequenceNumber = Math.min(lastSequenceNumber, firstSequenceNumbers.getLong(i + 1));
+        }
+
+        ByteBuffer data = segment.buffer;
+
+        int dataStart = HEADER_LENGTH + indexLength;
+
+        int message = (int)(sequenceNumber - firstSequenceNumber);
+
+        int start = data.getInt(HEADER_LENGTH + message / INDEX_INTERVAL * 4);
+
+        for (int j = message % INDEX_INTERVAL; j > 0; j--)
+            start += 2 + (data.getShort(dataStart + start) & 0xffff);
+
+        int end   = start;
+        int count = 0;
+
+        while (sequenceNumber + count < lastSequenceNumber) {
+            int blockLength = 2 + (data.getShort(dataStart + end) & 0xffff);
+            if (end + blockLength - start > buffer.remaining())
+                break;
+
+            end += blockLength;
+
+            count++;
+        }
+
+        ByteBuffer view = segment.view;
+
+        view.limit(dataStart + end);
+        view.position(dataStart + start);
+
+        buffer.put(view);
+
+        return count;
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null)
+            throw new IOException("Cannot list directory: " + directory);
+
+        long[] sequenceNumbers = new long[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+
+            try {
+                sequenceNumbers[i] = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed segment file name: " + files[i]);
+            }
+        }
+
+        Arrays.sort(sequenceNumbers);
+
+        if (sequenceNumbers.length == 0) {
+            create(1);
+            return;
+        }
+
+        firstSequenceNumbers.addElements(0, sequenceNumbers);
+
+        long firstSequenceNumber = sequenceNumbers[sequenceNumbers.length - 1];
+
+        current = new Segment(firstSequenceNumber, map(file(firstSequenceNumber), FileChannel.MapMode.READ_WRITE));
+
+        currentMessageCount = (int)current.buffer.getLong(MESSAGE_COUNT);
+        currentDataLength   = current.buffer.getInt(DATA_LENGTH);
+
+        nextSequenceNumber = firstSequenceNumber + currentMessageCount;
+    }
+
+    /*
+     * Start a new segment at the next sequence number. The previous segment
+     * is unmapped once it is no longer referenced.
+     */
+    private void roll() {
+        try {
+            create(nextSequenceNumber);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void create(long firstSequenceNumber) throws IOException {
+        File file = file(firstSequenceNumber);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(HEADER_LENGTH + indexLength + segmentSize);
+        }
+
+        current = new Segment(firstSequenceNumber, map(file, FileChannel.MapMode.READ_WRITE));
+
+        currentMessageCount = 0;
+        currentDataLength   = 0;
+
+        nextSequenceNumber = firstSequenceNumber;
+
+        firstSequenceNumbers.add(firstSequenceNumber);
+    }
+
+    private Segment map(long firstSequenceNumber) {
+        for (int i = 0; i < mapped.length; i++) {
+            if (mapped[i] != null && mapped[i].firstSequenceNumber == firstSequenceNumber)
+                return mapped[i];
+        }
+
+        Segment segment;
+
+        try {
+            segment = new Segment(firstSequenceNumber, map(file(firstSequenceNumber), FileChannel.MapMode.READ_ONLY));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        mapped[nextMapped] = segment;
+
+        nextMapped = (nextMapped + 1) % mapped.length;
+
+        return segment;
+    }
+
+    private ByteBuffer map(File file, FileChannel.MapMode mode) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")) {
+            return raf.getChannel().map(mode, 0, raf.length());
+        }
+    }
+
+    private File file(long firstSequenceNumber) {
+        return new File(directory, String.format("%019d%s", firstSequenceNumber, SUFFIX));
+    }
+
+    private static class Segment {
+
+        final long firstSequenceNumber;
+
+        final ByteBuffer buffer;
+
+        /*
+         * A view for bulk copies, reused so that copies do not allocate.
+         */
+        final ByteBuffer view;
+
+        Segment(long firstSequenceNumber, ByteBuffer buffer) {
+            this.firstSequenceNumber = firstSequenceNumber;
+
+            this.buffer = buffer;
+            this.view   = buffer.duplicate();
+        }
+
+    }
+
+}
@@ -15,10 +15,6 @@
  */
 package com.paritytrading.parity.system;
 
-import static org.jvirtanen.util.Applications.*;
-
-import com.paritytrading.nassau.moldudp64.MoldUDP64DefaultMessageStore;
-import com.paritytrading.nassau.moldudp64.MoldUDP64DownstreamPacket;
 import com.paritytrading.nassau.moldudp64.MoldUDP64RequestServer;
 import com.paritytrading.nassau.moldudp64.MoldUDP64Server;
 import com.paritytrading.parity.net.pmd.PMD;
@@ -27,7 +23,6 @@ import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.StandardProtocolFamily;
 import java.net.StandardSocketOptions;
-import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 
 class MarketData {
@@ -37,41 +32,27 @@ class MarketData {
     private final PMD.OrderExecuted orderExecuted;
     private final PMD.OrderCanceled orderCanceled;
 
-    private final MoldUDP64Server transport;
-
-    private final MoldUDP64RequestServer requestTransport;
-
-    private final MoldUDP64DefaultMessageStore messages;
-
-    private final MoldUDP64DownstreamPacket packet;
+    private final Publisher publisher;
 
-    private final ByteBuffer buffer;
-
-    private MarketData(MoldUDP64Server transport, MoldUDP64RequestServer requestTransport) {
+    private MarketData(MoldUDP64Server transport, MoldUDP64RequestServer requestTransport,
+            MessageStore messages, boolean batching) {
         this.version       = new PMD.Version();
         this.orderAdded    = new PMD.OrderAdded();
         this.orderExecuted = new PMD.OrderExecuted();
         this.orderCanceled = new PMD.OrderCanceled();
 
-        this.transport = transport;
-
-        this.requestTransport = requestTransport;
-
-        this.messages = new MoldUDP64DefaultMessageStore();
-
-        this.packet = new MoldUDP64DownstreamPacket();
-        this.buffer = ByteBuffer.allocateDirect(1024);
+        this.publisher = new Publisher(transport, requestTransport, messages, batching);
     }
 
     static MarketData open(String session, NetworkInterface multicastInterface,
             InetSocketAddress multicastGroup,
-            InetSocketAddress requestAddress) throws IOException {
+            InetSocketAddress requestAddress, MessageStore messages, boolean batching) throws IOException {
         DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
 
         channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, multicastInterface);
         channel.connect(multicastGroup);
 
-        MoldUDP64Server transport = new MoldUDP64Server(channel, session);
+        MoldUDP64Server transport = new ResumableServer(channel, session, messages.size() + 1);
 
         DatagramChannel requestChannel = DatagramChannel.open();
 
@@ -80,23 +61,15 @@ class MarketData {
 
         MoldUDP64RequestServer requestTransport = new MoldUDP64RequestServer(requestChannel);
 
-        return new MarketData(transport, requestTransport);
-    }
-
-    MoldUDP64Server getTransport() {
-        return transport;
+        return new MarketData(transport, requestTransport, messages, batching);
     }
 
-    MoldUDP64RequestServer getRequestTransport() {
-        return requestTransport;
+    Publisher getPublisher() {
+        return publisher;
     }
 
-    void serve() {
-        try {
-            requestTransport.serve(messages);
-        } catch (IOException e) {
-            fatal(e);
-        }
+    void flush() {
+        publisher.flush();
     }
 
     void version() {
@@ -138,23 +111,9 @@ class MarketData {
     }
 
     private void send(PMD.Message message) {
-        buffer.clear();
-        message.put(buffer);
-        buffer.flip();
-
-        try {
-            packet.put(buffer);
-
-            transport.send(packet);
-
-            packet.payload().flip();
-
-            messages.put(packet);
+        message.put(publisher.claim());
 
-            packet.clear();
-        } catch (IOException e) {
-            fatal(e);
-        }
+        publisher.publish();
     }
 
 }
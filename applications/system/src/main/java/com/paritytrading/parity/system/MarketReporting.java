@@ -15,10 +15,6 @@
  */
 package com.paritytrading.parity.system;
 
-import static org.jvirtanen.util.Applications.*;
-
-import com.paritytrading.nassau.moldudp64.MoldUDP64DefaultMessageStore;
-import com.paritytrading.nassau.moldudp64.MoldUDP64DownstreamPacket;
 import com.paritytrading.nassau.moldudp64.MoldUDP64RequestServer;
 import com.paritytrading.nassau.moldudp64.MoldUDP64Server;
 import com.paritytrading.parity.net.pmr.PMR;
@@ -27,7 +23,6 @@ import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.StandardProtocolFamily;
 import java.net.StandardSocketOptions;
-import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 
 class MarketReporting {
@@ -38,42 +33,28 @@ class MarketReporting {
     private final PMR.OrderCanceled orderCanceled;
     private final PMR.Trade         trade;
 
-    private final MoldUDP64Server transport;
-
-    private final MoldUDP64RequestServer requestTransport;
-
-    private final MoldUDP64DefaultMessageStore messages;
-
-    private final MoldUDP64DownstreamPacket packet;
+    private final Publisher publisher;
 
-    private final ByteBuffer buffer;
-
-    private MarketReporting(MoldUDP64Server transport, MoldUDP64RequestServer requestTransport) {
+    private MarketReporting(MoldUDP64Server transport, MoldUDP64RequestServer requestTransport,
+            MessageStore messages, boolean batching) {
         this.version       = new PMR.Version();
         this.orderEntered  = new PMR.OrderEntered();
         this.orderAdded    = new PMR.OrderAdded();
         this.orderCanceled = new PMR.OrderCanceled();
         this.trade         = new PMR.Trade();
 
-        this.transport = transport;
-
-        this.requestTransport = requestTransport;
-
-        this.messages = new MoldUDP64DefaultMessageStore();
-
-        this.packet = new MoldUDP64DownstreamPacket();
-        this.buffer = ByteBuffer.allocateDirect(1024);
+        this.publisher = new Publisher(transport, requestTransport, messages, batching);
     }
 
     static MarketReporting open(String session, NetworkInterface multicastInterface,
             InetSocketAddress multicastGroup,
-            InetSocketAddress requestAddress) throws IOException {
+            InetSocketAddress requestAddress, MessageStore messages, boolean batching) throws IOException {
         DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
 
         channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, multicastInterface);
         channel.connect(multicastGroup);
 
-        MoldUDP64Server transport = new MoldUDP64Server(channel, session);
+        MoldUDP64Server transport = new ResumableServer(channel, session, messages.size() + 1);
 
         DatagramChannel requestChannel = DatagramChannel.open();
 
@@ -82,23 +63,15 @@ class MarketReporting {
 
         MoldUDP64RequestServer requestTransport = new MoldUDP64RequestServer(requestChannel);
 
-        return new MarketReporting(transport, requestTransport);
-    }
-
-    MoldUDP64Server getTransport() {
-        return transport;
+        return new MarketReporting(transport, requestTransport, messages, batching);
     }
 
-    MoldUDP64RequestServer getRequestTransport() {
-        return requestTransport;
+    Publisher getPublisher() {
+        return publisher;
     }
 
-    void serve() {
-        try {
-            requestTransport.serve(messages);
-        } catch (IOException e) {
-            fatal(e);
-        }
+    void flush() {
+        publisher.flush();
     }
 
     void version() {
@@ -146,23 +119,9 @@ class MarketReporting {
     }
 
     private void send(PMR.Message message) {
-        buffer.clear();
-        message.put(buffer);
-        buffer.flip();
-
-        try {
-            packet.put(buffer);
-
-            transport.send(packet);
-
-            packet.payload().flip();
-
-            messages.put(packet);
+        message.put(publisher.claim());
 
-            packet.clear();
-        } catch (IOException e) {
-            fatal(e);
-        }
+        publisher.publish();
     }
 
     private long timestamp() {
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import com.paritytrading.nassau.moldudp64.MoldUDP64DownstreamPacket;
+import com.paritytrading.nassau.moldudp64.MoldUDP64MessageStore;
+
+/*
+ * A store for the messages of a MoldUDP64 session.
+ */
+interface MessageStore extends MoldUDP64MessageStore {
+
+    /*
+     * Store the messages of a packet that has been sent. The packet's
+     * payload is positioned at its first message.
+     */
+    void put(MoldUDP64DownstreamPacket packet);
+
+    /*
+     * Get the number of messages in the store.
+     */
+    long size();
+
+}
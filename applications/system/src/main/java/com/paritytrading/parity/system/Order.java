@@ -21,13 +21,22 @@ class Order {
 
     private final byte[]    orderId;
     private final long      orderNumber;
-    private final Session   session;
+    private final long      username;
+    private final long      instrument;
     private final OrderBook book;
 
-    Order(byte[] orderId, long orderNumber, Session session, OrderBook book) {
+    private Session session;
+
+    /*
+     * An order recovered from the journal has no session until a session
+     * with the same username adopts it.
+     */
+    Order(byte[] orderId, long orderNumber, long username, Session session, long instrument, OrderBook book) {
         this.orderId     = orderId.clone();
         this.orderNumber = orderNumber;
+        this.username    = username;
         this.session     = session;
+        this.instrument  = instrument;
         this.book        = book;
     }
 
@@ -39,10 +48,22 @@ class Order {
         return orderNumber;
     }
 
+    long getUsername() {
+        return username;
+    }
+
     Session getSession() {
         return session;
     }
 
+    void adopt(Session session) {
+        this.session = session;
+    }
+
+    long getInstrument() {
+        return instrument;
+    }
+
     OrderBook getBook() {
         return book;
     }
@@ -21,8 +21,13 @@ import com.paritytrading.parity.match.OrderBookListener;
 import com.paritytrading.parity.match.Side;
 import com.paritytrading.parity.net.pmd.PMD;
 import com.paritytrading.parity.net.poe.POE;
+import com.paritytrading.parity.util.WaitStrategy;
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.longs.Long2ObjectArrayMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
 import java.util.List;
 
 class OrderBooks {
@@ -32,9 +37,27 @@ class OrderBooks {
         SYSTEM,
     }
 
+    private static final int SHARD_CAPACITY = 65536;
+
     private final Long2ObjectArrayMap<OrderBook> books;
     private final Long2ObjectOpenHashMap<Order>  orders;
 
+    private final Shard[] shards;
+
+    private final EventHandler handler;
+
+    private final RecoveryHandler recoveryHandler;
+
+    private final Journal journal;
+
+    private final Primary primary;
+
+    private final Follower follower;
+
+    private final List<Session> held;
+
+    private final long adoptionTimeoutNanos;
+
     private final MarketData      marketData;
     private final MarketReporting marketReporting;
 
@@ -43,18 +66,53 @@ class OrderBooks {
 
     private Order handling;
 
-    private long instrument;
-
     private CancelReason cancelReason;
 
-    OrderBooks(List<String> instruments, MarketData marketData, MarketReporting marketReporting) {
+    private boolean recovering;
+
+    private long adoptionDeadlineNanos;
+
+    /*
+     * With zero shards, matching takes place on the network thread. With one
+     * or more shards, each instrument is assigned to a shard by its hash and
+     * matching takes place on the shard's matching thread.
+     *
+     * The journal and the primary are optional.
+     *
+     * The orders recovered from the journal or taken over from the primary
+     * that no session has adopted within the adoption timeout are canceled.
+     */
+    OrderBooks(List<String> instruments, MarketData marketData, MarketReporting marketReporting,
+            int shards, Journal journal, Primary primary, long adoptionTimeoutNanos) {
         this.books  = new Long2ObjectArrayMap<>();
         this.orders = new Long2ObjectOpenHashMap<>();
 
-        EventHandler handler = new EventHandler();
+        this.shards = new Shard[shards];
+
+        for (int i = 0; i < shards; i++)
+            this.shards[i] = new Shard(SHARD_CAPACITY);
 
-        for (String instrument : instruments)
-            books.put(ASCII.packLong(instrument), new OrderBook(handler));
+        this.handler = new EventHandler();
+
+        this.recoveryHandler = new RecoveryHandler();
+
+        for (String instrument : instruments) {
+            long packedInstrument = ASCII.packLong(instrument);
+
+            OrderBookListener listener = shards > 0 ? shard(packedInstrument).getListener() : handler;
+
+            books.put(packedInstrument, new OrderBook(new Listener(listener)));
+        }
+
+        this.journal = journal;
+
+        this.primary = primary;
+
+        this.follower = new Follower();
+
+        this.held = new ArrayList<>();
+
+        this.adoptionTimeoutNanos = adoptionTimeoutNanos;
 
         this.marketData      = marketData;
         this.marketReporting = marketReporting;
@@ -82,34 +140,280 @@ class OrderBooks {
 
         long orderNumber = nextOrderNumber++;
 
-        handling = new Order(message.orderId, orderNumber, session, book);
+        Order order = new Order(message.orderId, orderNumber, session.getUsername(), session,
+                message.instrument, book);
 
-        instrument = message.instrument;
+        if (journal != null) {
+            journal.enter(orderNumber, session.getUsername(), message.orderId, message.side,
+                    message.instrument, message.quantity, message.price);
+        }
 
-        session.orderAccepted(message, handling);
+        if (primary != null) {
+            primary.enter(orderNumber, session.getUsername(), message.orderId, message.side,
+                    message.instrument, message.quantity, message.price);
+        }
+
+        session.orderAccepted(message, order);
 
         marketReporting.orderEntered(session.getUsername(), orderNumber, message.side,
-                instrument, message.quantity, message.price);
+                message.instrument, message.quantity, message.price);
+
+        if (shards.length > 0) {
+            /*
+             * Track the order right away so that it can be canceled before
+             * the matching thread has processed it.
+             */
+            track(order);
+
+            Shard.Command command = claim(order);
+
+            command.type     = Shard.ENTER;
+            command.side     = side(message.side);
+            command.price    = message.price;
+            command.quantity = message.quantity;
+
+            shard(order.getInstrument()).getCommands().publish();
+        } else {
+            handling = order;
 
-        book.enter(orderNumber, side(message.side), message.price, message.quantity);
+            book.enter(orderNumber, side(message.side), message.price, message.quantity);
+        }
     }
 
     void cancelOrder(POE.CancelOrder message, Order order) {
-        handling = order;
+        if (journal != null)
+            journal.cancel(order.getOrderNumber(), message.quantity);
+
+        if (primary != null)
+            primary.cancel(order.getOrderNumber(), message.quantity);
+
+        if (shards.length > 0) {
+            cancel(order, message.quantity, false);
+        } else {
+            handling = order;
 
-        cancelReason = CancelReason.REQUEST;
+            cancelReason = CancelReason.REQUEST;
 
-        order.getBook().cancel(order.getOrderNumber(), message.quantity);
+            order.getBook().cancel(order.getOrderNumber(), message.quantity);
+        }
     }
 
     void cancel(Order order) {
-        handling = order;
+        if (journal != null)
+            journal.cancel(order.getOrderNumber(), 0);
 
-        cancelReason = CancelReason.SYSTEM;
+        if (primary != null)
+            primary.cancel(order.getOrderNumber(), 0);
 
-        order.getBook().cancel(order.getOrderNumber(), 0);
+        if (shards.length > 0) {
+            cancel(order, 0, true);
+        } else {
+            handling = order;
 
-        orders.remove(order.getOrderNumber());
+            cancelReason = CancelReason.SYSTEM;
+
+            order.getBook().cancel(order.getOrderNumber(), 0);
+        }
+    }
+
+    /*
+     * Rebuild the order books by loading the latest snapshot and replaying
+     * the journal after it. The orders that are left resting have no session
+     * until a session with the same username adopts them. Call this before
+     * starting the matching threads.
+     */
+    long recover() throws IOException {
+        recovering = true;
+
+        long segmentNumber = Snapshotter.load(journal.getDirectory(), recoveryHandler);
+
+        long records = journal.replay(recoveryHandler, segmentNumber, Long.MAX_VALUE);
+
+        recovering = false;
+
+        adoptionDeadlineNanos = System.nanoTime() + adoptionTimeoutNanos;
+
+        return records;
+    }
+
+    /*
+     * Follow a primary as its standby until the connection to the primary
+     * is lost. The records streamed from the primary are journaled and
+     * applied to the order books. Call this before starting the matching
+     * threads.
+     */
+    long follow(Standby standby) throws IOException {
+        recovering = true;
+
+        long records = standby.follow(follower);
+
+        recovering = false;
+
+        adoptionDeadlineNanos = System.nanoTime() + adoptionTimeoutNanos;
+
+        return records;
+    }
+
+    /*
+     * Return true if the order entry responses must be held until the next
+     * call to sync().
+     */
+    boolean isHolding() {
+        return journal != null || (primary != null && primary.isSynchronous());
+    }
+
+    /*
+     * Hold the order entry responses of a session until the next call to
+     * sync().
+     */
+    void hold(Session session) {
+        held.add(session);
+    }
+
+    /*
+     * Force the journal records of the current event loop iteration to the
+     * storage device and replicate them to the standby. Then release the
+     * held order entry responses, so that a response is only sent once the
+     * command that it answers has been journaled and, with a synchronous
+     * primary, acknowledged by the standby.
+     */
+    void sync() {
+        if (journal != null)
+            journal.sync();
+
+        if (primary != null)
+            primary.flush();
+
+        for (int i = 0; i < held.size(); i++)
+            held.get(i).release();
+
+        held.clear();
+    }
+
+    /*
+     * Cancel the recovered orders that no session has adopted once the
+     * adoption timeout has passed. Call this periodically.
+     */
+    void expire() {
+        if (adoptionDeadlineNanos == 0 || System.nanoTime() - adoptionDeadlineNanos < 0)
+            return;
+
+        adoptionDeadlineNanos = 0;
+
+        List<Order> orphans = new ArrayList<>();
+
+        for (Order order : orders.values()) {
+            if (order.getSession() == null)
+                orphans.add(order);
+        }
+
+        for (int i = 0; i < orphans.size(); i++)
+            cancel(orphans.get(i));
+    }
+
+    /*
+     * Hand the recovered orders of a username over to a session that has
+     * logged in with it.
+     */
+    void adopt(Session session) {
+        for (Order order : orders.values()) {
+            if (order.getSession() == null && order.getUsername() == session.getUsername()) {
+                order.adopt(session);
+
+                session.adopt(order);
+            }
+        }
+    }
+
+    void start(Selector selector, WaitStrategy waitStrategy) {
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+
+            Stage.register("matching-" + i, shard.getCommands());
+            Stage.register("matching-" + i + "-events", shard.getEvents());
+
+            shard.start("parity-match-" + i, selector, waitStrategy);
+        }
+    }
+
+    /*
+     * Process the events published by the matching threads. Return the
+     * number of events.
+     */
+    int drain() {
+        int count = 0;
+
+        for (int i = 0; i < shards.length; i++) {
+            RingBuffer<Shard.Event> events = shards[i].getEvents();
+
+            Shard.Event event = events.poll();
+
+            while (event != null) {
+                handle(event);
+
+                event.order = null;
+
+                events.release();
+
+                count++;
+
+                event = events.poll();
+            }
+        }
+
+        return count;
+    }
+
+    private void handle(Shard.Event event) {
+        handling = event.order;
+
+        switch (event.type) {
+        case Shard.ORDER_ADDED:
+            handler.add(handling.getOrderNumber(), event.side, event.price, event.quantity);
+            break;
+        case Shard.ORDER_EXECUTED:
+            handler.match(event.restingOrderNumber, handling.getOrderNumber(), event.side,
+                    event.price, event.quantity, event.remainingQuantity);
+            break;
+        case Shard.ORDER_CANCELED:
+            cancelReason = event.system ? CancelReason.SYSTEM : CancelReason.REQUEST;
+
+            handler.cancel(handling.getOrderNumber(), event.quantity, event.remainingQuantity);
+            break;
+        case Shard.ORDER_RELEASED:
+            release(handling);
+            break;
+        }
+    }
+
+    private void cancel(Order order, long quantity, boolean system) {
+        Shard.Command command = claim(order);
+
+        command.type     = Shard.CANCEL;
+        command.quantity = quantity;
+        command.system   = system;
+
+        shard(order.getInstrument()).getCommands().publish();
+    }
+
+    private Shard.Command claim(Order order) {
+        RingBuffer<Shard.Command> commands = shard(order.getInstrument()).getCommands();
+
+        Shard.Command command = commands.claim();
+
+        while (command == null) {
+            drain();
+
+            command = commands.claim();
+        }
+
+        command.order = order;
+
+        return command;
+    }
+
+    private Shard shard(long instrument) {
+        return shards[(int)((HashCommon.mix(instrument) & Long.MAX_VALUE) % shards.length)];
     }
 
     private void track(Order order) {
@@ -119,7 +423,9 @@ class OrderBooks {
     }
 
     private void release(Order order) {
-        order.getSession().release(order);
+        Session session = order.getSession();
+        if (session != null)
+            session.release(order);
 
         orders.remove(order.getOrderNumber());
     }
@@ -137,8 +443,11 @@ class OrderBooks {
 
             marketData.orderExecuted(restingOrderNumber, executedQuantity, matchNumber);
 
-            resting.getSession().orderExecuted(price, executedQuantity, POE.LIQUIDITY_FLAG_ADDED_LIQUIDITY,
-                    matchNumber, resting);
+            Session restingSession = resting.getSession();
+            if (restingSession != null) {
+                restingSession.orderExecuted(price, executedQuantity, POE.LIQUIDITY_FLAG_ADDED_LIQUIDITY,
+                        matchNumber, resting);
+            }
 
             handling.getSession().orderExecuted(price, executedQuantity, POE.LIQUIDITY_FLAG_REMOVED_LIQUIDITY,
                     matchNumber, handling);
@@ -151,11 +460,12 @@ class OrderBooks {
 
         @Override
         public void add(long orderNumber, Side side, long price, long size) {
-            marketData.orderAdded(orderNumber, side(side), instrument, size, price);
+            marketData.orderAdded(orderNumber, side(side), handling.getInstrument(), size, price);
 
             marketReporting.orderAdded(orderNumber);
 
-            track(handling);
+            if (shards.length == 0)
+                track(handling);
         }
 
         @Override
@@ -167,8 +477,150 @@ class OrderBooks {
 
             marketReporting.orderCanceled(orderNumber, canceledQuantity);
 
-            if (remainingQuantity == 0 && cancelReason == CancelReason.REQUEST)
-                release(handling);
+            if (remainingQuantity == 0) {
+                if (cancelReason == CancelReason.REQUEST)
+                    release(handling);
+                else
+                    orders.remove(orderNumber);
+            }
+        }
+
+    }
+
+    /*
+     * Rebuilds the order books from the snapshot and the journal without
+     * sending anything.
+     */
+    private class RecoveryHandler implements Journal.Listener, OrderBookListener {
+
+        private long      username;
+        private byte[]    orderId;
+        private long      instrument;
+        private OrderBook book;
+
+        /*
+         * Create the order only once it rests in the order book, so that an
+         * order that is filled on entry does not allocate.
+         */
+        @Override
+        public void enter(long orderNumber, long username, byte[] orderId, byte side,
+                long instrument, long quantity, long price) {
+            nextOrderNumber = orderNumber + 1;
+
+            OrderBook book = books.get(instrument);
+            if (book == null)
+                return;
+
+            this.username   = username;
+            this.orderId    = orderId;
+            this.instrument = instrument;
+            this.book       = book;
+
+            book.enter(orderNumber, side(side), price, quantity);
+        }
+
+        @Override
+        public void cancel(long orderNumber, long quantity) {
+            Order order = orders.get(orderNumber);
+            if (order == null)
+                return;
+
+            order.getBook().cancel(orderNumber, quantity);
+        }
+
+        @Override
+        public void counters(long nextOrderNumber, long nextMatchNumber) {
+            OrderBooks.this.nextOrderNumber = nextOrderNumber;
+            OrderBooks.this.nextMatchNumber = nextMatchNumber;
+        }
+
+        @Override
+        public void match(long restingOrderNumber, long incomingOrderNumber, Side incomingSide,
+                long price, long executedQuantity, long remainingQuantity) {
+            nextMatchNumber++;
+
+            if (remainingQuantity == 0)
+                orders.remove(restingOrderNumber);
+        }
+
+        @Override
+        public void add(long orderNumber, Side side, long price, long size) {
+            orders.put(orderNumber, new Order(orderId, orderNumber, username, null, instrument, book));
+        }
+
+        @Override
+        public void cancel(long orderNumber, long canceledQuantity, long remainingQuantity) {
+            if (remainingQuantity == 0)
+                orders.remove(orderNumber);
+        }
+
+    }
+
+    /*
+     * Journals the records streamed from the primary and applies them to
+     * the order books.
+     */
+    private class Follower implements Standby.Listener {
+
+        @Override
+        public void enter(long orderNumber, long username, byte[] orderId, byte side,
+                long instrument, long quantity, long price) {
+            if (journal != null)
+                journal.enter(orderNumber, username, orderId, side, instrument, quantity, price);
+
+            recoveryHandler.enter(orderNumber, username, orderId, side, instrument, quantity, price);
+        }
+
+        @Override
+        public void cancel(long orderNumber, long quantity) {
+            if (journal != null)
+                journal.cancel(orderNumber, quantity);
+
+            recoveryHandler.cancel(orderNumber, quantity);
+        }
+
+        @Override
+        public void counters(long nextOrderNumber, long nextMatchNumber) {
+            if (journal != null)
+                journal.counters(nextOrderNumber, nextMatchNumber);
+
+            recoveryHandler.counters(nextOrderNumber, nextMatchNumber);
+        }
+
+        @Override
+        public void sync() {
+            OrderBooks.this.sync();
+        }
+
+    }
+
+    /*
+     * Directs the events of an order book to the recovery handler while the
+     * order books are being recovered.
+     */
+    private class Listener implements OrderBookListener {
+
+        private final OrderBookListener listener;
+
+        Listener(OrderBookListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void match(long restingOrderNumber, long incomingOrderNumber, Side incomingSide,
+                long price, long executedQuantity, long remainingQuantity) {
+            (recovering ? recoveryHandler : listener).match(restingOrderNumber, incomingOrderNumber,
+                    incomingSide, price, executedQuantity, remainingQuantity);
+        }
+
+        @Override
+        public void add(long orderNumber, Side side, long price, long size) {
+            (recovering ? recoveryHandler : listener).add(orderNumber, side, price, size);
+        }
+
+        @Override
+        public void cancel(long orderNumber, long canceledQuantity, long remainingQuantity) {
+            (recovering ? recoveryHandler : listener).cancel(orderNumber, canceledQuantity, remainingQuantity);
         }
 
     }
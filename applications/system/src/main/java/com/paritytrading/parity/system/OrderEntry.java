@@ -15,46 +15,179 @@
  */
 package com.paritytrading.parity.system;
 
+import com.paritytrading.parity.util.WaitStrategy;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.StandardSocketOptions;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
-class OrderEntry {
+class OrderEntry implements AcceptorMXBean, Runnable {
+
+    private static final int REACTOR_CAPACITY = 16384;
+
+    private static final long ACCEPT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
     private final ServerSocketChannel serverChannel;
 
     private final OrderBooks books;
 
-    private OrderEntry(ServerSocketChannel serverChannel, OrderBooks books) {
+    private final Reactor[] reactors;
+
+    private int nextReactor;
+
+    private final AtomicLong acceptFailures;
+
+    /*
+     * With zero reactors, the sessions are served on the network thread.
+     * With one or more reactors, an acceptor thread assigns the sessions to
+     * the reactor threads in turn.
+     */
+    private OrderEntry(ServerSocketChannel serverChannel, OrderBooks books, int reactors) throws IOException {
         this.serverChannel = serverChannel;
 
         this.books = books;
+
+        this.reactors = new Reactor[reactors];
+
+        for (int i = 0; i < reactors; i++)
+            this.reactors[i] = new Reactor(REACTOR_CAPACITY, books);
+
+        this.acceptFailures = new AtomicLong();
     }
 
-    static OrderEntry open(InetSocketAddress address, OrderBooks books) throws IOException {
+    static OrderEntry open(InetSocketAddress address, OrderBooks books, int reactors) throws IOException {
         ServerSocketChannel serverChannel = ServerSocketChannel.open();
 
         serverChannel.bind(address);
         serverChannel.configureBlocking(false);
 
-        return new OrderEntry(serverChannel, books);
+        return new OrderEntry(serverChannel, books, reactors);
     }
 
     ServerSocketChannel getChannel() {
         return serverChannel;
     }
 
+    boolean hasReactors() {
+        return reactors.length > 0;
+    }
+
     Session accept() throws IOException {
-        SocketChannel channel = serverChannel.accept();
+        SocketChannel channel;
+
+        try {
+            channel = serverChannel.accept();
+        } catch (IOException e) {
+            acceptFailed();
+
+            throw e;
+        }
+
         if (channel == null)
             return null;
 
+        configure(channel);
+
+        return new Session(channel, books, null);
+    }
+
+    void start(Selector selector, WaitStrategy waitStrategy, boolean spin) throws IOException {
+        for (int i = 0; i < reactors.length; i++) {
+            Reactor reactor = reactors[i];
+
+            Stage.register("order-entry-" + i, reactor.getCommands());
+            Stage.register("order-entry-" + i + "-responses", reactor.getResponses());
+
+            reactor.start("parity-oe-" + i, selector, waitStrategy, spin);
+        }
+
+        serverChannel.configureBlocking(true);
+
+        Thread thread = new Thread(this, "parity-acceptor");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * If accepting a connection fails, for example because the process has
+     * run out of file descriptors, count the failure and pause before
+     * trying again instead of spinning on the error.
+     */
+    @Override
+    public void run() {
+        while (true) {
+            SocketChannel channel;
+
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                acceptFailed();
+
+                LockSupport.parkNanos(ACCEPT_BACKOFF_NANOS);
+                continue;
+            }
+
+            try {
+                configure(channel);
+            } catch (IOException e1) {
+                try {
+                    channel.close();
+                } catch (IOException e2) {
+                }
+
+                continue;
+            }
+
+            reactors[nextReactor].register(channel);
+
+            nextReactor = (nextReactor + 1) % reactors.length;
+        }
+    }
+
+    /*
+     * Handle the commands received by the reactor threads. Return the number
+     * of commands.
+     */
+    int drain() {
+        int count = 0;
+
+        for (int i = 0; i < reactors.length; i++)
+            count += reactors[i].drain();
+
+        return count;
+    }
+
+    /*
+     * Send the responses through the reactor threads. Call this at the end
+     * of each event loop iteration.
+     */
+    void flush() {
+        for (int i = 0; i < reactors.length; i++)
+            reactors[i].flush();
+    }
+
+    private static void configure(SocketChannel channel) throws IOException {
         channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
         channel.configureBlocking(false);
+    }
+
+    @Override
+    public long getAcceptFailures() {
+        return acceptFailures.get();
+    }
 
-        return new Session(channel, books);
+    /*
+     * Connections are accepted either on the network thread or on the
+     * acceptor thread, never both, so the count has a single writer.
+     */
+    private void acceptFailed() {
+        acceptFailures.lazySet(acceptFailures.get() + 1);
     }
 
 }
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The primary side of replication.
+ *
+ * The primary streams the accepted order entry commands, in the journal
+ * record format and with the order numbers assigned to them, to a standby
+ * over TCP. When a standby connects, the primary first catches it up by
+ * sending the latest snapshot and the journal after it. The catch-up is
+ * streamed from the event loop one buffer at a time, so that a standby
+ * never stalls order entry while it is being caught up. Once the standby
+ * has caught up, the primary streams the commands as they are accepted.
+ * The standby acknowledges the records it has applied by sending the
+ * number of records received over the connection.
+ *
+ * In synchronous mode, the primary waits for a standby that has caught up
+ * to acknowledge the records before the order entry responses that follow
+ * them are released. If the standby does not acknowledge the records, or
+ * take the records waiting to be sent, within the timeout, it is
+ * disconnected.
+ */
+class Primary implements Journal.Listener {
+
+    static final byte HEARTBEAT = 'H';
+
+    private static final int BUFFER_CAPACITY = 65536;
+
+    private static final long HEARTBEAT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ServerSocketChannel serverChannel;
+
+    private final Journal journal;
+
+    private final boolean synchronous;
+
+    private final long timeoutNanos;
+
+    private final Selector selector;
+
+    private final ByteBuffer records;
+    private final ByteBuffer acks;
+
+    private final Backlog backlog;
+
+    private SocketChannel channel;
+
+    private SelectionKey key;
+
+    private SelectionKey wakeUpKey;
+
+    private Snapshotter.Reader snapshot;
+
+    private ByteBuffer segment;
+    private long       segmentNumber;
+    private int        segmentOffset;
+
+    private long commands;
+
+    private long written;
+    private long acknowledged;
+
+    private long lastWriteNanos;
+
+    private Primary(ServerSocketChannel serverChannel, Journal journal, boolean synchronous,
+            long timeoutNanos) throws IOException {
+        this.serverChannel = serverChannel;
+
+        this.journal = journal;
+
+        this.synchronous  = synchronous;
+        this.timeoutNanos = timeoutNanos;
+
+        this.selector = Selector.open();
+
+        this.records = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+        this.acks    = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+
+        this.backlog = new Backlog();
+    }
+
+    /*
+     * Without a journal, a standby can only be caught up before the first
+     * command has been accepted.
+     */
+    static Primary open(InetSocketAddress address, Journal journal, boolean synchronous,
+            long timeoutMillis) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+
+        return new Primary(serverChannel, journal, synchronous, TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    ServerSocketChannel getChannel() {
+        return serverChannel;
+    }
+
+    boolean isSynchronous() {
+        return synchronous;
+    }
+
+    /*
+     * Accept a standby. While the standby is being caught up or records
+     * are waiting to be sent to it, the connection is registered for
+     * writing with the selector of the event loop, so that the event loop
+     * wakes up to make progress.
+     */
+    void accept(Selector wakeUp) {
+        SocketChannel channel;
+
+        try {
+            channel = serverChannel.accept();
+        } catch (IOException e) {
+            return;
+        }
+
+        if (channel == null)
+            return;
+
+        if (this.channel != null || (journal == null && commands > 0)) {
+            close(channel);
+            return;
+        }
+
+        this.channel = channel;
+
+        this.written      = 0;
+        this.acknowledged = 0;
+
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+
+            key       = channel.register(selector, SelectionKey.OP_READ);
+            wakeUpKey = channel.register(wakeUp, 0, this);
+
+            if (journal != null) {
+                snapshot = Snapshotter.open(journal.getDirectory());
+
+                segmentNumber = snapshot != null ? snapshot.getSegmentNumber() : 1;
+                segment       = journal.segment(segmentNumber);
+                segmentOffset = Journal.HEADER_LENGTH;
+            }
+
+            update();
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    @Override
+    public void enter(long orderNumber, long username, byte[] orderId, byte side,
+            long instrument, long quantity, long price) {
+        commands++;
+
+        if (reserve(Journal.MAX_RECORD_LENGTH))
+            append(Journal.putEnter(records, records.position(), orderNumber, username, orderId, side,
+                    instrument, quantity, price));
+    }
+
+    @Override
+    public void cancel(long orderNumber, long quantity) {
+        commands++;
+
+        if (reserve(Journal.MAX_RECORD_LENGTH))
+            append(Journal.putCancel(records, records.position(), orderNumber, quantity));
+    }
+
+    @Override
+    public void counters(long nextOrderNumber, long nextMatchNumber) {
+        if (reserve(Journal.MAX_RECORD_LENGTH))
+            append(Journal.putCounters(records, records.position(), nextOrderNumber, nextMatchNumber));
+    }
+
+    /*
+     * Continue catching up the standby, send the records to it and, in
+     * synchronous mode, wait for the standby to acknowledge them. Call this
+     * at the end of each event loop iteration, before releasing the held
+     * order entry responses.
+     *
+     * The responses are not held for a standby that is still being caught
+     * up, as it could not take over from the primary anyway.
+     */
+    void flush() {
+        if (channel != null) {
+            try {
+                if (isCatchingUp())
+                    catchUp();
+
+                write();
+
+                if (synchronous && !isCatchingUp())
+                    await();
+                else
+                    receive();
+
+                update();
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+    }
+
+    void keepAlive() {
+        if (channel == null || System.nanoTime() - lastWriteNanos < HEARTBEAT_INTERVAL_NANOS)
+            return;
+
+        if (!reserve(1))
+            return;
+
+        records.put(HEARTBEAT);
+
+        try {
+            write();
+
+            update();
+        } catch (IOException e) {
+            disconnect();
+        }
+    }
+
+    private boolean isCatchingUp() {
+        return segment != null;
+    }
+
+    /*
+     * Fill the buffer with the next records of the snapshot and the
+     * journal. The records accepted while the standby is being caught up
+     * are sent from the journal.
+     */
+    private void catchUp() throws IOException {
+        while (snapshot != null && records.remaining() >= Journal.MAX_RECORD_LENGTH) {
+            if (!snapshot.read(backlog)) {
+                snapshot.close();
+                snapshot = null;
+            }
+        }
+
+        while (snapshot == null && segment != null && records.remaining() >= Journal.MAX_RECORD_LENGTH) {
+            int end = Journal.end(segment);
+
+            if (segmentOffset == end) {
+                if (segmentNumber == journal.getSegmentNumber()) {
+                    segment = null;
+                    break;
+                }
+
+                segment       = journal.segment(++segmentNumber);
+                segmentOffset = Journal.HEADER_LENGTH;
+                continue;
+            }
+
+            int limit  = Math.min(end, segmentOffset + records.remaining());
+            int offset = segmentOffset;
+
+            while (true) {
+                int length = Journal.length(segment, offset, limit);
+                if (length == 0)
+                    break;
+
+                offset += length;
+
+                written++;
+            }
+
+            ByteBuffer chunk = segment.duplicate();
+
+            chunk.limit(offset);
+            chunk.position(segmentOffset);
+
+            records.put(chunk);
+
+            segmentOffset = offset;
+        }
+    }
+
+    /*
+     * Make room for a record of the given length in the buffer. If the
+     * standby does not take the records waiting to be sent within the
+     * timeout, disconnect it. Return false if there is no standby to send
+     * the record to.
+     */
+    private boolean reserve(int length) {
+        if (channel == null || isCatchingUp())
+            return false;
+
+        if (records.remaining() < length) {
+            try {
+                drain(length);
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+
+        return channel != null;
+    }
+
+    private void append(int length) {
+        records.position(records.position() + length);
+
+        written++;
+    }
+
+    /*
+     * Send as much of the buffer as the connection takes without blocking.
+     */
+    private void write() throws IOException {
+        if (records.position() == 0)
+            return;
+
+        records.flip();
+
+        int length = channel.write(records);
+
+        records.compact();
+
+        if (length > 0)
+            lastWriteNanos = System.nanoTime();
+    }
+
+    private void drain(int length) throws IOException {
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        write();
+
+        while (channel != null && records.remaining() < length) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                disconnect();
+                break;
+            }
+
+            select(SelectionKey.OP_WRITE, remainingNanos);
+
+            write();
+        }
+    }
+
+    private void await() throws IOException {
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        receive();
+
+        while (channel != null && acknowledged < written) {
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                disconnect();
+                break;
+            }
+
+            select(records.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ,
+                    remainingNanos);
+
+            write();
+
+            receive();
+        }
+    }
+
+    private void select(int interestOps, long timeoutNanos) throws IOException {
+        key.interestOps(interestOps);
+
+        selector.select(Math.max(TimeUnit.NANOSECONDS.toMillis(timeoutNanos), 1));
+        selector.selectedKeys().clear();
+
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void receive() throws IOException {
+        if (channel.read(acks) < 0) {
+            disconnect();
+            return;
+        }
+
+        acks.flip();
+
+        while (acks.remaining() >= 8)
+            acknowledged = acks.getLong();
+
+        acks.compact();
+    }
+
+    /*
+     * Wake up the event loop when the connection becomes writable only
+     * while there is something to send.
+     */
+    private void update() {
+        if (channel != null)
+            wakeUpKey.interestOps(isCatchingUp() || records.position() > 0 ? SelectionKey.OP_WRITE : 0);
+    }
+
+    private void disconnect() {
+        close(channel);
+
+        channel = null;
+
+        if (snapshot != null) {
+            try {
+                snapshot.close();
+            } catch (IOException e) {
+            }
+
+            snapshot = null;
+        }
+
+        segment = null;
+
+        records.clear();
+        acks.clear();
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /*
+     * Appends the snapshot records to the buffer while the standby is being
+     * caught up.
+     */
+    private class Backlog implements Journal.Listener {
+
+        @Override
+        public void enter(long orderNumber, long username, byte[] orderId, byte side,
+                long instrument, long quantity, long price) {
+            append(Journal.putEnter(records, records.position(), orderNumber, username, orderId, side,
+                    instrument, quantity, price));
+        }
+
+        @Override
+        public void cancel(long orderNumber, long quantity) {
+            append(Journal.putCancel(records, records.position(), orderNumber, quantity));
+        }
+
+        @Override
+        public void counters(long nextOrderNumber, long nextMatchNumber) {
+            append(Journal.putCounters(records, records.position(), nextOrderNumber, nextMatchNumber));
+        }
+
+    }
+
+}
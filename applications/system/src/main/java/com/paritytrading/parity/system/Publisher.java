@@ -0,0 +1,291 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.nassau.moldudp64.MoldUDP64DownstreamPacket;
+import com.paritytrading.nassau.moldudp64.MoldUDP64RequestServer;
+import com.paritytrading.nassau.moldudp64.MoldUDP64Server;
+import com.paritytrading.parity.util.WaitStrategy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The sending side of a MoldUDP64 session.
+ *
+ * By default, messages are sent and stored on the calling thread, and the
+ * network thread serves the retransmission requests. Once started, the
+ * publisher is a fan-out stage: messages are passed through a ring buffer
+ * to a fan-out thread that sends and stores them and serves the
+ * retransmission requests, so that a slow multicast send does not hold up
+ * the network thread.
+ *
+ * In batching mode, messages are accumulated into the current packet
+ * until either the packet is full or the sending thread reaches the end
+ * of its event loop iteration, and the packet is then sent in one
+ * datagram.
+ */
+class Publisher implements PublisherMXBean, Runnable {
+
+    /*
+     * Longer than any PMD or PMR message.
+     */
+    private static final int MAX_MESSAGE_LENGTH = 64;
+
+    private final MoldUDP64Server transport;
+
+    private final MoldUDP64RequestServer requestTransport;
+
+    private final MessageStore messages;
+
+    private final MoldUDP64DownstreamPacket packet;
+
+    private final ByteBuffer buffer;
+
+    private final boolean batching;
+
+    private final AtomicLong packets;
+    private final AtomicLong messageCount;
+    private final AtomicLong payloadLength;
+
+    private RingBuffer<ByteBuffer> queue;
+
+    private WaitStrategy waitStrategy;
+
+    private Selector selector;
+
+    private ByteBuffer claimed;
+
+    Publisher(MoldUDP64Server transport, MoldUDP64RequestServer requestTransport,
+            MessageStore messages, boolean batching) {
+        this.transport = transport;
+
+        this.requestTransport = requestTransport;
+
+        this.messages = messages;
+
+        this.packet = new MoldUDP64DownstreamPacket();
+        this.buffer = ByteBuffer.allocateDirect(MAX_MESSAGE_LENGTH);
+
+        this.batching = batching;
+
+        this.packets       = new AtomicLong();
+        this.messageCount  = new AtomicLong();
+        this.payloadLength = new AtomicLong();
+    }
+
+    MoldUDP64Server getTransport() {
+        return transport;
+    }
+
+    MoldUDP64RequestServer getRequestTransport() {
+        return requestTransport;
+    }
+
+    boolean isStarted() {
+        return queue != null;
+    }
+
+    RingBuffer<ByteBuffer> getQueue() {
+        return queue;
+    }
+
+    void start(String name, int capacity, WaitStrategy waitStrategy) throws IOException {
+        this.queue = new RingBuffer<>(capacity, () -> ByteBuffer.allocateDirect(MAX_MESSAGE_LENGTH));
+
+        this.waitStrategy = waitStrategy;
+
+        this.selector = Selector.open();
+
+        requestTransport.getChannel().register(selector, SelectionKey.OP_READ);
+
+        Thread thread = new Thread(this, name);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Claim a buffer for the next message. Once the message has been put
+     * into the buffer, publish it.
+     */
+    ByteBuffer claim() {
+        if (queue == null) {
+            claimed = buffer;
+        } else {
+            claimed = queue.claim();
+
+            while (claimed == null) {
+                waitStrategy.idle();
+
+                claimed = queue.claim();
+            }
+        }
+
+        claimed.clear();
+
+        return claimed;
+    }
+
+    void publish() {
+        claimed.flip();
+
+        if (queue == null)
+            send(claimed);
+        else
+            queue.publish();
+    }
+
+    /*
+     * Send the current packet. Call this at the end of each event loop
+     * iteration. Once the publisher has been started, the fan-out thread
+     * sends the current packet itself.
+     */
+    void flush() {
+        if (queue == null)
+            transmit();
+    }
+
+    void serve() {
+        try {
+            requestTransport.serve(messages);
+        } catch (IOException e) {
+            fatal(e);
+        }
+    }
+
+    void keepAlive() {
+        try {
+            transport.keepAlive();
+        } catch (IOException e) {
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                int sent = drain();
+
+                if (sent > 0)
+                    transmit();
+
+                if (selector.selectNow() > 0) {
+                    serve();
+
+                    selector.selectedKeys().clear();
+                }
+
+                keepAlive();
+
+                if (sent == 0)
+                    waitStrategy.idle();
+            }
+        } catch (IOException e) {
+            fatal(e);
+        }
+    }
+
+    /*
+     * Send at most one ring buffer's worth of messages so that
+     * retransmission requests are served under a sustained load, too.
+     */
+    private int drain() {
+        int sent = 0;
+
+        ByteBuffer message = queue.poll();
+
+        while (message != null) {
+            send(message);
+
+            queue.release();
+
+            if (++sent == queue.capacity())
+                break;
+
+            message = queue.poll();
+        }
+
+        return sent;
+    }
+
+    private void send(ByteBuffer message) {
+        if (packet.remaining() < message.remaining())
+            transmit();
+
+        try {
+            packet.put(message);
+        } catch (IOException e) {
+            fatal(e);
+        }
+
+        if (!batching)
+            transmit();
+    }
+
+    private void transmit() {
+        int count = packet.messageCount();
+        if (count == 0)
+            return;
+
+        int length = packet.payload().position();
+
+        try {
+            transport.send(packet);
+
+            packet.payload().flip();
+
+            messages.put(packet);
+
+            packet.clear();
+        } catch (IOException e) {
+            fatal(e);
+        }
+
+        packets.lazySet(packets.get() + 1);
+        messageCount.lazySet(messageCount.get() + count);
+        payloadLength.lazySet(payloadLength.get() + length);
+    }
+
+    @Override
+    public long getPackets() {
+        return packets.get();
+    }
+
+    @Override
+    public long getMessages() {
+        return messageCount.get();
+    }
+
+    @Override
+    public double getMessagesPerPacket() {
+        long sent = packets.get();
+
+        return sent > 0 ? (double)messageCount.get() / sent : 0.0;
+    }
+
+    @Override
+    public double getFillRatio() {
+        long sent = packets.get();
+
+        return sent > 0 ? (double)payloadLength.get() / (sent * packet.payload().capacity()) : 0.0;
+    }
+
+}
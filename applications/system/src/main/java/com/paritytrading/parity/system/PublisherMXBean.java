@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+/**
+ * The statistics of a MoldUDP64 session.
+ */
+public interface PublisherMXBean {
+
+    /**
+     * Get the number of packets sent, that is, the number of send system
+     * calls made.
+     *
+     * @return the number of packets sent
+     */
+    long getPackets();
+
+    /**
+     * Get the number of messages sent.
+     *
+     * @return the number of messages sent
+     */
+    long getMessages();
+
+    /**
+     * Get the mean number of messages per packet.
+     *
+     * @return the mean number of messages per packet
+     */
+    double getMessagesPerPacket();
+
+    /**
+     * Get the mean ratio of the payload length to the maximum payload
+     * length of a packet.
+     *
+     * @return the mean fill ratio of a packet
+     */
+    double getFillRatio();
+
+}
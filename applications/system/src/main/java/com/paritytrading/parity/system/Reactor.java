@@ -0,0 +1,417 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.parity.net.poe.POE;
+import com.paritytrading.parity.util.WaitStrategy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * An order entry thread that owns the connections of a group of sessions.
+ *
+ * The reactor thread receives and decodes the inbound messages of its
+ * sessions and keeps the sessions alive. The decoded commands are fed to
+ * the network thread, which handles the orders, through an inbound ring
+ * buffer. The responses are fed back to the reactor thread, which sends
+ * them, through an outbound ring buffer.
+ */
+class Reactor implements Runnable {
+
+    static final byte LOGIN  = 'L';
+    static final byte ENTER  = 'E';
+    static final byte CANCEL = 'X';
+    static final byte CLOSE  = 'C';
+
+    private static final int TIMEOUT_MILLIS = 1000;
+
+    static class Command {
+        byte    type;
+        Session session;
+
+        final POE.EnterOrder  enterOrder  = new POE.EnterOrder();
+        final POE.CancelOrder cancelOrder = new POE.CancelOrder();
+    }
+
+    static class Response {
+        Session session;
+
+        final ByteBuffer payload = ByteBuffer.allocateDirect(POE.MAX_OUTBOUND_MESSAGE_LENGTH);
+    }
+
+    private final OrderBooks books;
+
+    private final RingBuffer<Command>  commands;
+    private final RingBuffer<Response> responses;
+
+    private final Queue<SocketChannel> channels;
+
+    private final List<Session> toKeepAlive;
+    private final List<Session> toCleanUp;
+
+    private final Selector selector;
+
+    private Selector networkSelector;
+
+    private WaitStrategy waitStrategy;
+
+    private boolean spin;
+
+    private long lastKeepAliveNanos;
+
+    private boolean commandsClaimed;
+    private boolean responsesClaimed;
+
+    Reactor(int capacity, OrderBooks books) throws IOException {
+        this.books = books;
+
+        this.commands  = new RingBuffer<>(capacity, Command::new);
+        this.responses = new RingBuffer<>(capacity, Response::new);
+
+        this.channels = new ConcurrentLinkedQueue<>();
+
+        this.toKeepAlive = new ArrayList<>();
+        this.toCleanUp   = new ArrayList<>();
+
+        this.selector = Selector.open();
+    }
+
+    RingBuffer<Command> getCommands() {
+        return commands;
+    }
+
+    RingBuffer<Response> getResponses() {
+        return responses;
+    }
+
+    /*
+     * The selector of the network thread is woken up after each batch of
+     * commands. If the network thread spins instead of blocking in its
+     * selector, the selector is null.
+     *
+     * If the reactor thread spins, it polls its selector and waits for work
+     * with the wait strategy.
+     */
+    void start(String name, Selector networkSelector, WaitStrategy waitStrategy, boolean spin) {
+        this.networkSelector = networkSelector;
+        this.waitStrategy    = waitStrategy;
+        this.spin            = spin;
+
+        Thread thread = new Thread(this, name);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Hand a connection over to this reactor. This can be called from any
+     * thread.
+     */
+    void register(SocketChannel channel) {
+        channels.add(channel);
+
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            int numKeys = 0;
+
+            try {
+                numKeys = spin ? selector.selectNow() : selector.select(TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                fatal(e);
+            }
+
+            int work = numKeys + accept();
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+            while (keys.hasNext()) {
+                receive((Session)keys.next().attachment());
+
+                keys.remove();
+            }
+
+            work += transmit();
+
+            long now = System.nanoTime();
+
+            if (now - lastKeepAliveNanos >= Events.KEEP_ALIVE_INTERVAL_NANOS) {
+                keepAlive();
+
+                lastKeepAliveNanos = now;
+            }
+
+            cleanUp();
+
+            publishCommands();
+
+            if (spin && work == 0)
+                waitStrategy.idle();
+        }
+    }
+
+    /*
+     * The following methods are called on the reactor thread.
+     */
+
+    void login(Session session) {
+        claimCommand(LOGIN, session);
+    }
+
+    void enterOrder(Session session, POE.EnterOrder message) {
+        POE.EnterOrder enterOrder = claimCommand(ENTER, session).enterOrder;
+
+        System.arraycopy(message.orderId, 0, enterOrder.orderId, 0, enterOrder.orderId.length);
+        enterOrder.side       = message.side;
+        enterOrder.instrument = message.instrument;
+        enterOrder.quantity   = message.quantity;
+        enterOrder.price      = message.price;
+    }
+
+    void cancelOrder(Session session, POE.CancelOrder message) {
+        POE.CancelOrder cancelOrder = claimCommand(CANCEL, session).cancelOrder;
+
+        System.arraycopy(message.orderId, 0, cancelOrder.orderId, 0, cancelOrder.orderId.length);
+        cancelOrder.quantity = message.quantity;
+    }
+
+    void close(Session session) {
+        claimCommand(CLOSE, session);
+    }
+
+    /*
+     * The following methods are called on the network thread.
+     */
+
+    void send(Session session, ByteBuffer payload) {
+        Response response = responses.claim();
+
+        while (response == null) {
+            publishResponses();
+
+            waitStrategy.idle();
+
+            response = responses.claim();
+        }
+
+        response.session = session;
+
+        response.payload.clear();
+        response.payload.put(payload);
+        response.payload.flip();
+
+        responsesClaimed = true;
+    }
+
+    /*
+     * Handle the commands published by the reactor thread. Return the number
+     * of commands.
+     */
+    int drain() {
+        int count = 0;
+
+        Command command = commands.poll();
+
+        while (command != null) {
+            Session session = command.session;
+
+            switch (command.type) {
+            case LOGIN:
+                books.adopt(session);
+                break;
+            case ENTER:
+                session.enter(command.enterOrder);
+                break;
+            case CANCEL:
+                session.cancel(command.cancelOrder);
+                break;
+            case CLOSE:
+                session.cancelAll();
+                break;
+            }
+
+            command.session = null;
+
+            commands.release();
+
+            count++;
+
+            command = commands.poll();
+        }
+
+        return count;
+    }
+
+    /*
+     * Publish the responses to the reactor thread. Call this at the end of
+     * each event loop iteration.
+     */
+    void flush() {
+        publishResponses();
+    }
+
+    private Command claimCommand(byte type, Session session) {
+        Command command = commands.claim();
+
+        while (command == null) {
+            publishCommands();
+
+            /*
+             * Keep sending the responses so that the network thread can make
+             * progress.
+             */
+            transmit();
+
+            waitStrategy.idle();
+
+            command = commands.claim();
+        }
+
+        command.type    = type;
+        command.session = session;
+
+        commandsClaimed = true;
+
+        return command;
+    }
+
+    private void publishCommands() {
+        if (!commandsClaimed)
+            return;
+
+        commands.publish();
+
+        commandsClaimed = false;
+
+        if (networkSelector != null)
+            networkSelector.wakeup();
+    }
+
+    private void publishResponses() {
+        if (!responsesClaimed)
+            return;
+
+        responses.publish();
+
+        responsesClaimed = false;
+
+        if (!spin)
+            selector.wakeup();
+    }
+
+    private int accept() {
+        int count = 0;
+
+        SocketChannel channel = channels.poll();
+
+        while (channel != null) {
+            Session session = new Session(channel, books, this);
+
+            try {
+                channel.register(selector, SelectionKey.OP_READ, session);
+
+                toKeepAlive.add(session);
+            } catch (IOException e) {
+                session.close();
+            }
+
+            count++;
+
+            channel = channels.poll();
+        }
+
+        return count;
+    }
+
+    private void receive(Session session) {
+        try {
+            if (session.getTransport().receive() < 0)
+                toCleanUp.add(session);
+        } catch (IOException e) {
+            toCleanUp.add(session);
+        }
+    }
+
+    private int transmit() {
+        int count = 0;
+
+        Response response = responses.poll();
+
+        while (response != null) {
+            Session session = response.session;
+
+            if (!session.isClosed()) {
+                try {
+                    session.getTransport().send(response.payload);
+                } catch (IOException e) {
+                    toCleanUp.add(session);
+                }
+            }
+
+            response.session = null;
+
+            responses.release();
+
+            count++;
+
+            response = responses.poll();
+        }
+
+        return count;
+    }
+
+    private void keepAlive() {
+        for (int i = 0; i < toKeepAlive.size(); i++) {
+            Session session = toKeepAlive.get(i);
+
+            try {
+                session.getTransport().keepAlive();
+
+                if (session.isTerminated())
+                    toCleanUp.add(session);
+            } catch (IOException e) {
+                toCleanUp.add(session);
+            }
+        }
+    }
+
+    private void cleanUp() {
+        for (int i = 0; i < toCleanUp.size(); i++) {
+            Session session = toCleanUp.get(i);
+
+            toKeepAlive.remove(session);
+
+            session.close();
+        }
+
+        if (!toCleanUp.isEmpty())
+            toCleanUp.clear();
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import com.paritytrading.nassau.moldudp64.MoldUDP64Server;
+import java.nio.channels.DatagramChannel;
+
+/*
+ * A MoldUDP64 server that continues a session from a sequence number, so
+ * that a session whose messages have been recovered from a message store
+ * carries on where it left off.
+ */
+class ResumableServer extends MoldUDP64Server {
+
+    ResumableServer(DatagramChannel channel, String session, long nextSequenceNumber) {
+        super(channel, session);
+
+        this.nextSequenceNumber = nextSequenceNumber;
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/*
+ * A bounded single-producer, single-consumer ring buffer of preallocated,
+ * reusable entries.
+ *
+ * The producer claims one or more entries, fills them in and publishes
+ * them together. The consumer polls an entry, processes it and releases it.
+ *
+ * The ring buffer keeps track of its latency, that is, the time from
+ * publishing an entry to releasing it.
+ */
+class RingBuffer<E> {
+
+    private final E[] entries;
+
+    private final long[] timestamps;
+
+    private final int mask;
+
+    private final AtomicLong head;
+    private final AtomicLong tail;
+
+    private final AtomicLong releases;
+    private final AtomicLong totalLatency;
+    private final AtomicLong maxLatency;
+
+    private long claimed;
+    private long published;
+    private long cachedHead;
+
+    private long consumed;
+    private long cachedTail;
+
+    @SuppressWarnings("unchecked")
+    RingBuffer(int capacity, Supplier<E> factory) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two");
+
+        this.entries = (E[])new Object[capacity];
+
+        for (int i = 0; i < capacity; i++)
+            this.entries[i] = factory.get();
+
+        this.timestamps = new long[capacity];
+
+        this.mask = capacity - 1;
+
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+
+        this.releases     = new AtomicLong();
+        this.totalLatency = new AtomicLong();
+        this.maxLatency   = new AtomicLong();
+    }
+
+    int capacity() {
+        return entries.length;
+    }
+
+    int size() {
+        return (int)(tail.get() - head.get());
+    }
+
+    long getReleases() {
+        return releases.get();
+    }
+
+    long getTotalLatencyNanos() {
+        return totalLatency.get();
+    }
+
+    long getMaxLatencyNanos() {
+        return maxLatency.get();
+    }
+
+    E claim() {
+        if (claimed - cachedHead == entries.length) {
+            cachedHead = head.get();
+
+            if (claimed - cachedHead == entries.length)
+                return null;
+        }
+
+        return entries[(int)claimed++ & mask];
+    }
+
+    void publish() {
+        if (published == claimed)
+            return;
+
+        long timestamp = System.nanoTime();
+
+        for (long i = published; i < claimed; i++)
+            timestamps[(int)i & mask] = timestamp;
+
+        published = claimed;
+
+        tail.lazySet(claimed);
+    }
+
+    E poll() {
+        if (consumed == cachedTail) {
+            cachedTail = tail.get();
+
+            if (consumed == cachedTail)
+                return null;
+        }
+
+        return entries[(int)consumed & mask];
+    }
+
+    void release() {
+        long latency = System.nanoTime() - timestamps[(int)consumed & mask];
+
+        releases.lazySet(releases.get() + 1);
+        totalLatency.lazySet(totalLatency.get() + latency);
+
+        if (latency > maxLatency.get())
+            maxLatency.lazySet(latency);
+
+        head.lazySet(++consumed);
+    }
+
+}
@@ -30,11 +30,14 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 
 class Session implements Closeable, SoupBinTCPServerStatusListener, POEServerListener {
 
     private static final byte SPACE = ' ';
 
+    private static final int HOLD_CAPACITY = 65536;
+
     private static final SoupBinTCP.LoginAccepted loginAccepted;
 
     private static final POE.OrderAccepted orderAccepted;
@@ -63,18 +66,34 @@ class Session implements Closeable, SoupBinTCPServerStatusListener, POEServerLis
 
     private final OrderBooks books;
 
+    private final Reactor reactor;
+
+    private ByteBuffer held;
+
     private boolean terminated;
 
+    private boolean closed;
+
     private long username;
 
-    Session(SocketChannel channel, OrderBooks books) {
+    /*
+     * With a journal or a synchronous primary, the responses are held until
+     * the order books release them.
+     *
+     * The reactor is optional. Without a reactor, the session is served on
+     * the network thread. With a reactor, the reactor thread receives the
+     * inbound messages and sends the outbound messages, while the orders
+     * of the session are handled on the network thread.
+     */
+    Session(SocketChannel channel, OrderBooks books, Reactor reactor) {
         this.transport = new SoupBinTCPServer(channel, POE.MAX_INBOUND_MESSAGE_LENGTH,
                 new POEServerParser(this), this);
 
         this.orders   = new Object2ObjectOpenCustomHashMap<>(HASH_STRATEGY);
         this.orderIds = new ObjectOpenCustomHashSet<>(HASH_STRATEGY);
 
-        this.books = books;
+        this.books   = books;
+        this.reactor = reactor;
 
         this.terminated = false;
     }
@@ -91,10 +110,21 @@ class Session implements Closeable, SoupBinTCPServerStatusListener, POEServerLis
         return terminated;
     }
 
+    boolean isClosed() {
+        return closed;
+    }
+
     @Override
     public void close() {
-        for (Order order : orders.values())
-            books.cancel(order);
+        if (closed)
+            return;
+
+        closed = true;
+
+        if (reactor != null)
+            reactor.close(this);
+        else
+            cancelAll();
 
         try {
             transport.close();
@@ -124,6 +154,11 @@ class Session implements Closeable, SoupBinTCPServerStatusListener, POEServerLis
         }
 
         username = ByteArrays.packLong(payload.username, SPACE);
+
+        if (reactor != null)
+            reactor.login(this);
+        else
+            books.adopt(this);
     }
 
     @Override
@@ -138,10 +173,10 @@ class Session implements Closeable, SoupBinTCPServerStatusListener, POEServerLis
             return;
         }
 
-        if (orderIds.contains(message.orderId))
-            return;
-
-        books.enterOrder(message, this);
+        if (reactor != null)
+            reactor.enterOrder(this, message);
+        else
+            enter(message);
     }
 
     @Override
@@ -151,6 +186,20 @@ class Session implements Closeable, SoupBinTCPServerStatusListener, POEServerLis
             return;
         }
 
+        if (reactor != null)
+            reactor.cancelOrder(this, message);
+        else
+            cancel(message);
+    }
+
+    void enter(POE.EnterOrder message) {
+        if (orderIds.contains(message.orderId))
+            return;
+
+        books.enterOrder(message, this);
+    }
+
+    void cancel(POE.CancelOrder message) {
         Order order = orders.get(message.orderId);
         if (order == null)
             return;
@@ -158,10 +207,21 @@ class Session implements Closeable, SoupBinTCPServerStatusListener, POEServerLis
         books.cancelOrder(message, order);
     }
 
+    void cancelAll() {
+        for (Order order : new ArrayList<>(orders.values()))
+            books.cancel(order);
+    }
+
     void track(Order order) {
         orders.put(order.getOrderId().clone(), order);
     }
 
+    void adopt(Order order) {
+        track(order);
+
+        orderIds.add(order.getOrderId().clone());
+    }
+
     void release(Order order) {
         orders.remove(order.getOrderId());
     }
@@ -209,16 +269,83 @@ class Session implements Closeable, SoupBinTCPServerStatusListener, POEServerLis
         send(orderCanceled);
     }
 
+    /*
+     * Send the held responses.
+     */
+    void release() {
+        held.flip();
+
+        while (held.hasRemaining()) {
+            int length = held.get();
+
+            buffer.clear();
+
+            for (int i = 0; i < length; i++)
+                buffer.put(held.get());
+
+            buffer.flip();
+
+            send(buffer);
+        }
+
+        held.clear();
+    }
+
     private void send(POE.OutboundMessage message) {
+        if (books.isHolding()) {
+            hold(message);
+            return;
+        }
+
         buffer.clear();
         message.put(buffer);
         buffer.flip();
 
+        send(buffer);
+    }
+
+    private void send(ByteBuffer payload) {
+        if (reactor != null) {
+            reactor.send(this, payload);
+            return;
+        }
+
         try {
-            transport.send(buffer);
+            transport.send(payload);
         } catch (IOException e) {
-            close();
+            terminated = true;
+        }
+    }
+
+    /*
+     * Hold a response prefixed with its length. The buffer grows instead of
+     * being released early, as a response must not be sent before the
+     * command that it answers has been synced.
+     */
+    private void hold(POE.OutboundMessage message) {
+        if (held == null)
+            held = ByteBuffer.allocate(HOLD_CAPACITY);
+
+        if (held.remaining() < 1 + POE.MAX_OUTBOUND_MESSAGE_LENGTH) {
+            ByteBuffer grown = ByteBuffer.allocate(2 * held.capacity());
+
+            held.flip();
+
+            grown.put(held);
+
+            held = grown;
         }
+
+        if (held.position() == 0)
+            books.hold(this);
+
+        int offset = held.position();
+
+        held.position(offset + 1);
+
+        message.put(held);
+
+        held.put(offset, (byte)(held.position() - offset - 1));
     }
 
     private long timestamp() {
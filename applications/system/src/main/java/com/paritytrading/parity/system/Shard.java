@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import com.paritytrading.parity.match.OrderBookListener;
+import com.paritytrading.parity.match.Side;
+import com.paritytrading.parity.util.WaitStrategy;
+import java.nio.channels.Selector;
+
+/*
+ * A matching thread that owns the order books of a group of instruments.
+ *
+ * Commands are fed to the matching thread by the network thread through an
+ * inbound ring buffer. The outcome is fed back to the network thread through
+ * an outbound ring buffer, which the network thread drains to send the
+ * order entry responses, market data and market reports. The events of one
+ * command are published together unless they do not fit in the outbound
+ * ring buffer.
+ */
+class Shard implements Runnable {
+
+    static final byte ENTER  = 'E';
+    static final byte CANCEL = 'X';
+
+    static final byte ORDER_ADDED    = 'A';
+    static final byte ORDER_EXECUTED = 'E';
+    static final byte ORDER_CANCELED = 'X';
+    static final byte ORDER_RELEASED = 'R';
+
+    static class Command {
+        byte    type;
+        Order   order;
+        Side    side;
+        long    price;
+        long    quantity;
+        boolean system;
+    }
+
+    static class Event {
+        byte    type;
+        Order   order;
+        long    restingOrderNumber;
+        Side    side;
+        long    price;
+        long    quantity;
+        long    remainingQuantity;
+        boolean system;
+    }
+
+    private final RingBuffer<Command> commands;
+    private final RingBuffer<Event>   events;
+
+    private final OrderBookListener listener;
+
+    private Selector selector;
+
+    private WaitStrategy waitStrategy;
+
+    private Command handling;
+
+    private boolean added;
+
+    Shard(int capacity) {
+        this.commands = new RingBuffer<>(capacity, Command::new);
+        this.events   = new RingBuffer<>(capacity, Event::new);
+
+        this.listener = new EventHandler();
+    }
+
+    OrderBookListener getListener() {
+        return listener;
+    }
+
+    RingBuffer<Command> getCommands() {
+        return commands;
+    }
+
+    RingBuffer<Event> getEvents() {
+        return events;
+    }
+
+    /*
+     * The selector of the network thread is woken up after each batch of
+     * events. If the network thread spins instead of blocking in its
+     * selector, the selector is null.
+     */
+    void start(String name, Selector selector, WaitStrategy waitStrategy) {
+        this.selector     = selector;
+        this.waitStrategy = waitStrategy;
+
+        Thread thread = new Thread(this, name);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Command command = commands.poll();
+            if (command == null) {
+                waitStrategy.idle();
+                continue;
+            }
+
+            while (command != null) {
+                execute(command);
+
+                commands.release();
+
+                events.publish();
+
+                command = commands.poll();
+            }
+
+            if (selector != null)
+                selector.wakeup();
+        }
+    }
+
+    private void execute(Command command) {
+        handling = command;
+
+        Order order = command.order;
+
+        switch (command.type) {
+        case ENTER:
+            added = false;
+
+            order.getBook().enter(order.getOrderNumber(), command.side, command.price, command.quantity);
+
+            if (!added)
+                event(ORDER_RELEASED);
+            break;
+        case CANCEL:
+            order.getBook().cancel(order.getOrderNumber(), command.quantity);
+            break;
+        }
+
+        handling.order = null;
+    }
+
+    /*
+     * A command can trigger more events than fit in the outbound ring
+     * buffer, for example when an order sweeps through many resting
+     * orders. The network thread can only release the space once it sees
+     * the events, so they are published before waiting for space.
+     */
+    private Event event(byte type) {
+        Event event = events.claim();
+
+        if (event == null) {
+            events.publish();
+
+            if (selector != null)
+                selector.wakeup();
+        }
+
+        while (event == null) {
+            waitStrategy.idle();
+
+            event = events.claim();
+        }
+
+        event.type  = type;
+        event.order = handling.order;
+
+        return event;
+    }
+
+    private class EventHandler implements OrderBookListener {
+
+        @Override
+        public void match(long restingOrderNumber, long incomingOrderNumber, Side incomingSide,
+                long price, long executedQuantity, long remainingQuantity) {
+            Event event = event(ORDER_EXECUTED);
+
+            event.restingOrderNumber = restingOrderNumber;
+            event.side               = incomingSide;
+            event.price              = price;
+            event.quantity           = executedQuantity;
+            event.remainingQuantity  = remainingQuantity;
+        }
+
+        @Override
+        public void add(long orderNumber, Side side, long price, long size) {
+            Event event = event(ORDER_ADDED);
+
+            event.side     = side;
+            event.price    = price;
+            event.quantity = size;
+
+            added = true;
+        }
+
+        @Override
+        public void cancel(long orderNumber, long canceledQuantity, long remainingQuantity) {
+            Event event = event(ORDER_CANCELED);
+
+            event.quantity          = canceledQuantity;
+            event.remainingQuantity = remainingQuantity;
+            event.system            = handling.system;
+        }
+
+    }
+
+}
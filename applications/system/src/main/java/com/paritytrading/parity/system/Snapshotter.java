@@ -0,0 +1,464 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.parity.match.OrderBook;
+import com.paritytrading.parity.match.OrderBookListener;
+import com.paritytrading.parity.match.Side;
+import com.paritytrading.parity.net.poe.POE;
+import it.unimi.dsi.fastutil.longs.Long2ObjectArrayMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Takes snapshots of the order books off the hot path.
+ *
+ * The snapshotter keeps a replica of the order books on its own thread by
+ * replaying the complete journal segments through its own matching engine.
+ * Whenever one or more journal segments have been completed, it writes a
+ * snapshot that covers the journal up to and including them. Recovery then loads the
+ * latest snapshot and replays only the journal segments after it.
+ *
+ * A snapshot file is named after the first journal segment that it does not
+ * cover. It holds the next order number, the next match number and, for
+ * each instrument, the resting orders in time priority together with the
+ * usernames that own them. As an order never loses time priority, the time
+ * priority of the orders in an order book follows their order numbers.
+ */
+class Snapshotter implements Runnable {
+
+    private static final String SUFFIX = ".snapshot";
+
+    private static final int ORDER_ID_LENGTH = 16;
+
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Journal journal;
+
+    private final Long2ObjectArrayMap<Instrument> instruments;
+    private final Long2ObjectOpenHashMap<Resting>  orders;
+
+    private final Replica replica;
+
+    private long nextOrderNumber;
+    private long nextMatchNumber;
+
+    private long nextSegmentNumber;
+
+    private long username;
+    private byte[] orderId;
+    private Instrument instrument;
+
+    Snapshotter(List<String> instruments, Journal journal) {
+        this.journal = journal;
+
+        this.instruments = new Long2ObjectArrayMap<>();
+        this.orders      = new Long2ObjectOpenHashMap<>();
+
+        this.replica = new Replica();
+
+        for (String instrument : instruments) {
+            long packedInstrument = ASCII.packLong(instrument);
+
+            this.instruments.put(packedInstrument, new Instrument(packedInstrument, replica));
+        }
+
+        this.nextOrderNumber = 1;
+        this.nextMatchNumber = 1;
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "parity-snapshot");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            load();
+
+            while (true) {
+                update();
+
+                LockSupport.parkNanos(INTERVAL_NANOS);
+            }
+        } catch (IOException e) {
+            fatal(e);
+        }
+    }
+
+    /*
+     * Load the latest snapshot into the replica.
+     */
+    void load() throws IOException {
+        nextSegmentNumber = load(journal.getDirectory(), replica);
+    }
+
+    /*
+     * Replay the journal segments completed since the previous call into the
+     * replica and take a snapshot after them.
+     */
+    void update() throws IOException {
+        long segmentNumber = journal.getSegmentNumber();
+        if (segmentNumber == nextSegmentNumber)
+            return;
+
+        journal.replay(replica, nextSegmentNumber, segmentNumber - 1);
+
+        nextSegmentNumber = segmentNumber;
+
+        save();
+    }
+
+    /*
+     * Load the latest snapshot from a directory. Return the number of the
+     * first journal segment that the snapshot does not cover or, if there
+     * is no snapshot, the number of the first journal segment.
+     */
+    static long load(File directory, Journal.Listener listener) throws IOException {
+        try (Reader reader = open(directory)) {
+            if (reader == null)
+                return 1;
+
+            while (reader.read(listener));
+
+            return reader.getSegmentNumber();
+        }
+    }
+
+    /*
+     * Open the latest snapshot in a directory for reading. Return null if
+     * there is no snapshot.
+     */
+    static Reader open(File directory) throws IOException {
+        long segmentNumber = latest(directory);
+        if (segmentNumber == 0)
+            return null;
+
+        return new Reader(file(directory, segmentNumber), segmentNumber);
+    }
+
+    /*
+     * Write the snapshot to a temporary file, force it to the storage device
+     * and move it in place so that a partially written snapshot is never
+     * loaded. Then delete the older snapshots.
+     */
+    private void save() throws IOException {
+        File directory = journal.getDirectory();
+
+        File temporary = new File(directory, SUFFIX + ".tmp");
+
+        try (FileOutputStream stream = new FileOutputStream(temporary)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+            out.writeLong(nextOrderNumber);
+            out.writeLong(nextMatchNumber);
+
+            out.writeInt(instruments.size());
+
+            for (Instrument instrument : instruments.values()) {
+                out.writeLong(instrument.instrument);
+
+                out.writeInt(instrument.orders.size());
+
+                for (Resting order : instrument.orders.values()) {
+                    out.writeLong(order.orderNumber);
+                    out.writeLong(order.username);
+                    out.write(order.orderId);
+                    out.writeByte(order.side);
+                    out.writeLong(order.quantity);
+                    out.writeLong(order.price);
+                }
+            }
+
+            out.flush();
+
+            stream.getFD().sync();
+        }
+
+        Files.move(temporary.toPath(), file(directory, nextSegmentNumber).toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+
+        for (File file : snapshots(directory)) {
+            if (number(file) < nextSegmentNumber)
+                Files.delete(file.toPath());
+        }
+    }
+
+    private static long latest(File directory) throws IOException {
+        long latest = 0;
+
+        for (File file : snapshots(directory))
+            latest = Math.max(latest, number(file));
+
+        return latest;
+    }
+
+    private static File[] snapshots(File directory) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null)
+            throw new IOException("Cannot list directory: " + directory);
+
+        return files;
+    }
+
+    private static long number(File file) throws IOException {
+        String name = file.getName();
+
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed snapshot file name: " + file);
+        }
+    }
+
+    private static File file(File directory, long segmentNumber) {
+        return new File(directory, String.format("%019d%s", segmentNumber, SUFFIX));
+    }
+
+    /*
+     * Reads a snapshot one record at a time, so that it can be streamed
+     * without loading it as a whole. The resting orders come first and the
+     * counters last.
+     */
+    static class Reader implements Closeable {
+
+        private final DataInputStream in;
+
+        private final long segmentNumber;
+
+        private final long nextOrderNumber;
+        private final long nextMatchNumber;
+
+        private final byte[] orderId;
+
+        private int instruments;
+
+        private long instrument;
+
+        private int orders;
+
+        private boolean done;
+
+        private Reader(File file, long segmentNumber) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            this.segmentNumber = segmentNumber;
+
+            try {
+                this.nextOrderNumber = in.readLong();
+                this.nextMatchNumber = in.readLong();
+
+                this.instruments = in.readInt();
+            } catch (IOException e) {
+                in.close();
+
+                throw e;
+            }
+
+            this.orderId = new byte[ORDER_ID_LENGTH];
+        }
+
+        /*
+         * Return the number of the first journal segment that the snapshot
+         * does not cover.
+         */
+        long getSegmentNumber() {
+            return segmentNumber;
+        }
+
+        /*
+         * Pass the next record to a listener. Return false if all records
+         * have already been read.
+         */
+        boolean read(Journal.Listener listener) throws IOException {
+            while (orders == 0) {
+                if (instruments == 0) {
+                    if (done)
+                        return false;
+
+                    listener.counters(nextOrderNumber, nextMatchNumber);
+
+                    done = true;
+
+                    return true;
+                }
+
+                instrument = in.readLong();
+                orders     = in.readInt();
+
+                instruments--;
+            }
+
+            long orderNumber = in.readLong();
+            long username    = in.readLong();
+
+            in.readFully(orderId);
+
+            byte side     = in.readByte();
+            long quantity = in.readLong();
+            long price    = in.readLong();
+
+            orders--;
+
+            listener.enter(orderNumber, username, orderId, side, instrument, quantity, price);
+
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+    private static class Instrument {
+
+        final long instrument;
+
+        final OrderBook book;
+
+        /*
+         * The resting orders in insertion order, which is time priority.
+         */
+        final Long2ObjectLinkedOpenHashMap<Resting> orders;
+
+        Instrument(long instrument, OrderBookListener listener) {
+            this.instrument = instrument;
+
+            this.book = new OrderBook(listener);
+
+            this.orders = new Long2ObjectLinkedOpenHashMap<>();
+        }
+
+    }
+
+    private static class Resting {
+
+        final long       orderNumber;
+        final long       username;
+        final byte[]     orderId;
+        final byte       side;
+        final long       price;
+        final Instrument instrument;
+
+        long quantity;
+
+        Resting(long orderNumber, long username, byte[] orderId, byte side, long price,
+                long quantity, Instrument instrument) {
+            this.orderNumber = orderNumber;
+            this.username    = username;
+            this.orderId     = orderId.clone();
+            this.side        = side;
+            this.price       = price;
+            this.quantity    = quantity;
+            this.instrument  = instrument;
+        }
+
+    }
+
+    /*
+     * Applies the journal records and the snapshot to the replica.
+     */
+    private class Replica implements Journal.Listener, OrderBookListener {
+
+        @Override
+        public void enter(long orderNumber, long username, byte[] orderId, byte side,
+                long instrument, long quantity, long price) {
+            nextOrderNumber = orderNumber + 1;
+
+            Instrument entering = instruments.get(instrument);
+            if (entering == null)
+                return;
+
+            Snapshotter.this.username   = username;
+            Snapshotter.this.orderId    = orderId;
+            Snapshotter.this.instrument = entering;
+
+            entering.book.enter(orderNumber, side == POE.BUY ? Side.BUY : Side.SELL, price, quantity);
+        }
+
+        @Override
+        public void cancel(long orderNumber, long quantity) {
+            Resting order = orders.get(orderNumber);
+            if (order == null)
+                return;
+
+            order.instrument.book.cancel(orderNumber, quantity);
+        }
+
+        @Override
+        public void counters(long nextOrderNumber, long nextMatchNumber) {
+            Snapshotter.this.nextOrderNumber = nextOrderNumber;
+            Snapshotter.this.nextMatchNumber = nextMatchNumber;
+        }
+
+        @Override
+        public void match(long restingOrderNumber, long incomingOrderNumber, Side incomingSide,
+                long price, long executedQuantity, long remainingQuantity) {
+            nextMatchNumber++;
+
+            update(restingOrderNumber, remainingQuantity);
+        }
+
+        @Override
+        public void add(long orderNumber, Side side, long price, long size) {
+            Resting order = new Resting(orderNumber, username, orderId,
+                    side == Side.BUY ? POE.BUY : POE.SELL, price, size, instrument);
+
+            orders.put(orderNumber, order);
+
+            instrument.orders.put(orderNumber, order);
+        }
+
+        @Override
+        public void cancel(long orderNumber, long canceledQuantity, long remainingQuantity) {
+            update(orderNumber, remainingQuantity);
+        }
+
+        private void update(long orderNumber, long remainingQuantity) {
+            if (remainingQuantity > 0) {
+                orders.get(orderNumber).quantity = remainingQuantity;
+            } else {
+                Resting order = orders.remove(orderNumber);
+
+                order.instrument.orders.remove(orderNumber);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+/*
+ * The statistics of a pipeline stage, exposed through JMX as
+ * "com.paritytrading.parity.system:type=Stage,name=<name>".
+ */
+class Stage implements StageMXBean {
+
+    private final RingBuffer<?> queue;
+
+    private Stage(RingBuffer<?> queue) {
+        this.queue = queue;
+    }
+
+    static void register(String name, RingBuffer<?> queue) {
+        Management.register(new Stage(queue), "Stage", name);
+    }
+
+    @Override
+    public int getCapacity() {
+        return queue.capacity();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public long getProcessed() {
+        return queue.getReleases();
+    }
+
+    @Override
+    public long getMeanLatencyNanos() {
+        long releases = queue.getReleases();
+
+        return releases > 0 ? queue.getTotalLatencyNanos() / releases : 0;
+    }
+
+    @Override
+    public long getMaxLatencyNanos() {
+        return queue.getMaxLatencyNanos();
+    }
+
+}
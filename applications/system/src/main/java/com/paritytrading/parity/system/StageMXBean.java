@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+/**
+ * The statistics of a pipeline stage.
+ */
+public interface StageMXBean {
+
+    /**
+     * Get the capacity of the stage's ring buffer.
+     *
+     * @return the capacity of the stage's ring buffer
+     */
+    int getCapacity();
+
+    /**
+     * Get the number of entries waiting in the stage's ring buffer.
+     *
+     * @return the number of entries waiting in the stage's ring buffer
+     */
+    int getQueueDepth();
+
+    /**
+     * Get the number of entries processed by the stage.
+     *
+     * @return the number of entries processed by the stage
+     */
+    long getProcessed();
+
+    /**
+     * Get the mean time from publishing an entry to the stage to the stage
+     * having processed it.
+     *
+     * @return the mean latency in nanoseconds
+     */
+    long getMeanLatencyNanos();
+
+    /**
+     * Get the maximum time from publishing an entry to the stage to the
+     * stage having processed it.
+     *
+     * @return the maximum latency in nanoseconds
+     */
+    long getMaxLatencyNanos();
+
+}
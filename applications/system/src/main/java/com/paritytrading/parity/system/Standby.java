@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import com.paritytrading.parity.net.poe.POE;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * The standby side of replication.
+ *
+ * The standby connects to the primary, applies the records streamed from
+ * it and acknowledges them once they have been applied and synced. When
+ * the connection to the primary is lost or the primary stays silent for
+ * longer than the timeout, the standby stops following the primary so
+ * that it can take over.
+ */
+class Standby {
+
+    private static final int BUFFER_CAPACITY = 65536;
+
+    private static final long RECONNECT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    interface Listener extends Journal.Listener {
+
+        /*
+         * Make the records applied so far durable before they are
+         * acknowledged.
+         */
+        void sync();
+
+    }
+
+    private final InetSocketAddress address;
+
+    private final long timeoutMillis;
+
+    Standby(InetSocketAddress address, long timeoutMillis) {
+        this.address       = address;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /*
+     * Follow the primary until the connection to it is lost. Return the
+     * number of records applied.
+     */
+    long follow(Listener listener) throws IOException {
+        SocketChannel channel = connect();
+
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+        ByteBuffer ack    = ByteBuffer.allocateDirect(8);
+
+        byte[] orderId = new byte[POE.ORDER_ID_LENGTH];
+
+        long records = 0;
+
+        try (Selector selector = Selector.open()) {
+            channel.register(selector, SelectionKey.OP_READ);
+
+            while (selector.select(timeoutMillis) > 0) {
+                selector.selectedKeys().clear();
+
+                if (channel.read(buffer) < 0)
+                    break;
+
+                int limit = buffer.position();
+
+                int offset = 0;
+
+                long applied = records;
+
+                while (offset < limit) {
+                    if (buffer.get(offset) == Primary.HEARTBEAT) {
+                        offset++;
+                        continue;
+                    }
+
+                    int length = Journal.length(buffer, offset, limit);
+                    if (length == 0)
+                        break;
+
+                    Journal.read(buffer, offset, listener, orderId);
+
+                    offset += length;
+
+                    records++;
+                }
+
+                buffer.flip();
+                buffer.position(offset);
+                buffer.compact();
+
+                if (records > applied) {
+                    listener.sync();
+
+                    ack.clear();
+                    ack.putLong(records);
+                    ack.flip();
+
+                    while (ack.hasRemaining())
+                        channel.write(ack);
+                }
+            }
+        } catch (IOException e) {
+        } finally {
+            channel.close();
+        }
+
+        return records;
+    }
+
+    private SocketChannel connect() {
+        while (true) {
+            try {
+                return SocketChannel.open(address);
+            } catch (IOException e) {
+                LockSupport.parkNanos(RECONNECT_INTERVAL_NANOS);
+            }
+        }
+    }
+
+}
@@ -17,8 +17,10 @@ package com.paritytrading.parity.system;
 
 import static org.jvirtanen.util.Applications.*;
 
+import com.paritytrading.parity.util.WaitStrategy;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigException;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetAddress;
@@ -27,6 +29,7 @@ import java.net.NetworkInterface;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.jvirtanen.config.Configs;
 
 class TradingSystem {
@@ -34,6 +37,12 @@ class TradingSystem {
     static final long EPOCH_MILLIS = LocalDate.now().atStartOfDay(ZoneId.systemDefault())
         .toInstant().toEpochMilli();
 
+    private static final int FAN_OUT_CAPACITY = 65536;
+
+    private static final long REPLICATION_TIMEOUT_MILLIS = 5000;
+
+    private static final long ADOPTION_TIMEOUT_MILLIS = 60000;
+
     public static void main(String[] args) throws IOException {
         if (args.length != 1)
             usage("parity-system <configuration-file>");
@@ -50,16 +59,95 @@ class TradingSystem {
 
         MarketReporting marketReporting = marketReporting(config);
 
+        Management.register(marketData.getPublisher(), "Publisher", "market-data");
+        Management.register(marketReporting.getPublisher(), "Publisher", "market-report");
+
         List<String> instruments = config.getStringList("instruments");
 
-        OrderBooks books = new OrderBooks(instruments, marketData, marketReporting);
+        int shards = config.hasPath("matching.shards") ? config.getInt("matching.shards") : 0;
+
+        WaitStrategy waitStrategy = waitStrategy(config);
+
+        boolean spin = spin(config);
+
+        Journal journal = journal(config);
+
+        String role = role(config);
+
+        Primary primary = "primary".equals(role) ? primary(config, journal) : null;
+
+        long adoptionTimeout = adoptionTimeout(config);
+
+        OrderBooks books = new OrderBooks(instruments, marketData, marketReporting, shards, journal, primary,
+                TimeUnit.MILLISECONDS.toNanos(adoptionTimeout));
+
+        if ("standby".equals(role)) {
+            if (journal != null && !journal.isEmpty())
+                throw new ConfigException.BadValue(config.origin(), "journal.directory", "Not empty in standby mode");
+
+            snapshots(config, instruments, journal);
+
+            books.follow(standby(config));
+        } else if (journal != null) {
+            books.recover();
+
+            snapshots(config, instruments, journal);
+        }
+
+        if (config.hasPath("pipeline.fan-out") && config.getBoolean("pipeline.fan-out")) {
+            start(marketData.getPublisher(), "market-data", "parity-md", waitStrategy);
+            start(marketReporting.getPublisher(), "market-report", "parity-mr", waitStrategy);
+        }
 
         OrderEntry orderEntry = orderEntry(config, books);
 
+        Management.register(orderEntry, "Acceptor", "order-entry");
+
         marketData.version();
         marketReporting.version();
 
-        new Events(marketData, marketReporting, orderEntry).run();
+        marketData.flush();
+        marketReporting.flush();
+
+        Thread.currentThread().setName("parity-network");
+
+        new Events(marketData, marketReporting, orderEntry, books, primary, waitStrategy, spin).run();
+    }
+
+    private static WaitStrategy waitStrategy(Config config) {
+        if (!config.hasPath("pipeline.wait-strategy"))
+            return WaitStrategy.YIELD;
+
+        String value = config.getString("pipeline.wait-strategy");
+
+        try {
+            return WaitStrategy.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigException.BadValue(config.origin(), "pipeline.wait-strategy", e.getMessage());
+        }
+    }
+
+    private static boolean spin(Config config) {
+        if (!config.hasPath("pipeline.event-loop"))
+            return false;
+
+        String value = config.getString("pipeline.event-loop");
+
+        switch (value) {
+        case "select":
+            return false;
+        case "spin":
+            return true;
+        default:
+            throw new ConfigException.BadValue(config.origin(), "pipeline.event-loop", "Unknown event loop: " + value);
+        }
+    }
+
+    private static void start(Publisher publisher, String name, String thread,
+            WaitStrategy waitStrategy) throws IOException {
+        publisher.start(thread, FAN_OUT_CAPACITY, waitStrategy);
+
+        Stage.register(name, publisher.getQueue());
     }
 
     private static MarketData marketData(Config config) throws IOException {
@@ -69,10 +157,12 @@ class TradingSystem {
         int              multicastPort      = Configs.getPort(config, "market-data.multicast-port");
         InetAddress      requestAddress     = Configs.getInetAddress(config, "market-data.request-address");
         int              requestPort        = Configs.getPort(config, "market-data.request-port");
+        boolean          batching           = config.hasPath("market-data.batching") && config.getBoolean("market-data.batching");
+        MessageStore     messages           = messageStore(config, "market-data.store");
 
         return MarketData.open(session, multicastInterface,
                 new InetSocketAddress(multicastGroup, multicastPort),
-                new InetSocketAddress(requestAddress, requestPort));
+                new InetSocketAddress(requestAddress, requestPort), messages, batching);
     }
 
     private static MarketReporting marketReporting(Config config) throws IOException {
@@ -82,17 +172,91 @@ class TradingSystem {
         int              multicastPort      = Configs.getPort(config, "market-report.multicast-port");
         InetAddress      requestAddress     = Configs.getInetAddress(config, "market-report.request-address");
         int              requestPort        = Configs.getPort(config, "market-report.request-port");
+        boolean          batching           = config.hasPath("market-report.batching") && config.getBoolean("market-report.batching");
+        MessageStore     messages           = messageStore(config, "market-report.store");
 
         return MarketReporting.open(session, multicastInterface,
                 new InetSocketAddress(multicastGroup, multicastPort),
-                new InetSocketAddress(requestAddress, requestPort));
+                new InetSocketAddress(requestAddress, requestPort), messages, batching);
+    }
+
+    private static MessageStore messageStore(Config config, String path) throws IOException {
+        if (!config.hasPath(path))
+            return new HeapMessageStore();
+
+        return new MappedMessageStore(new File(config.getString(path)), MappedMessageStore.DEFAULT_SEGMENT_SIZE);
+    }
+
+    private static Journal journal(Config config) throws IOException {
+        if (!config.hasPath("journal.directory"))
+            return null;
+
+        File directory = new File(config.getString("journal.directory"));
+
+        long segmentSize = config.hasPath("journal.segment-size") ?
+            config.getBytes("journal.segment-size") : Journal.DEFAULT_SEGMENT_SIZE;
+
+        try {
+            return new Journal(directory, (int)Math.min(segmentSize, Integer.MAX_VALUE));
+        } catch (IllegalArgumentException e) {
+            throw new ConfigException.BadValue(config.origin(), "journal.segment-size", e.getMessage());
+        }
+    }
+
+    private static void snapshots(Config config, List<String> instruments, Journal journal) {
+        if (journal != null && config.hasPath("journal.snapshots") && config.getBoolean("journal.snapshots"))
+            new Snapshotter(instruments, journal).start();
+    }
+
+    private static String role(Config config) {
+        if (!config.hasPath("replication.role"))
+            return null;
+
+        String role = config.getString("replication.role");
+
+        if (!"primary".equals(role) && !"standby".equals(role))
+            throw new ConfigException.BadValue(config.origin(), "replication.role", "Unknown role: " + role);
+
+        return role;
+    }
+
+    private static Primary primary(Config config, Journal journal) throws IOException {
+        InetAddress address     = Configs.getInetAddress(config, "replication.address");
+        int         port        = Configs.getPort(config, "replication.port");
+        boolean     synchronous = config.hasPath("replication.synchronous") && config.getBoolean("replication.synchronous");
+        long        timeout     = replicationTimeout(config);
+
+        return Primary.open(new InetSocketAddress(address, port), journal, synchronous, timeout);
+    }
+
+    private static Standby standby(Config config) {
+        InetAddress address = Configs.getInetAddress(config, "replication.address");
+        int         port    = Configs.getPort(config, "replication.port");
+        long        timeout = replicationTimeout(config);
+
+        return new Standby(new InetSocketAddress(address, port), timeout);
+    }
+
+    private static long replicationTimeout(Config config) {
+        if (!config.hasPath("replication.timeout"))
+            return REPLICATION_TIMEOUT_MILLIS;
+
+        return config.getDuration("replication.timeout", TimeUnit.MILLISECONDS);
+    }
+
+    private static long adoptionTimeout(Config config) {
+        if (!config.hasPath("order-entry.adoption-timeout"))
+            return ADOPTION_TIMEOUT_MILLIS;
+
+        return config.getDuration("order-entry.adoption-timeout", TimeUnit.MILLISECONDS);
     }
 
     private static OrderEntry orderEntry(Config config, OrderBooks books) throws IOException {
-        InetAddress address = Configs.getInetAddress(config, "order-entry.address");
-        int         port    = Configs.getPort(config, "order-entry.port");
+        InetAddress address  = Configs.getInetAddress(config, "order-entry.address");
+        int         port     = Configs.getPort(config, "order-entry.port");
+        int         reactors = config.hasPath("order-entry.reactors") ? config.getInt("order-entry.reactors") : 0;
 
-        return OrderEntry.open(new InetSocketAddress(address, port), books);
+        return OrderEntry.open(new InetSocketAddress(address, port), books, reactors);
     }
 
 }
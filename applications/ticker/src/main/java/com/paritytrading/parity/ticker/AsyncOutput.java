@@ -0,0 +1,270 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.ticker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Writes the output on a background thread.
+ *
+ * The market data thread copies the encoded records into a ring of
+ * buffers and publishes them by advancing the published byte count. It
+ * never makes a system call. The writer thread writes the published bytes
+ * to the file channel with one gathering write once they reach the flush
+ * size or have been pending for the flush interval, and then advances the
+ * consumed byte count to release the space.
+ *
+ * When a record does not fit in the ring, the market data thread either
+ * drops it and counts it, so that it never blocks, or waits for the writer
+ * thread to release space.
+ */
+class AsyncOutput implements WritableByteChannel, Runnable {
+
+    static final int SLOT_CAPACITY = 64 * 1024;
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final FileChannel channel;
+
+    private final long capacity;
+
+    private final long flushSize;
+
+    private final long flushIntervalNanos;
+
+    private final boolean drop;
+
+    private final ByteBuffer[] producerSlots;
+    private final ByteBuffer[] consumerSlots;
+
+    private final ByteBuffer[] batch;
+
+    private final AtomicLong published;
+    private final AtomicLong consumed;
+
+    private final Thread thread;
+
+    private volatile boolean closing;
+
+    private volatile IOException failure;
+
+    private long dropped;
+
+    AsyncOutput(FileChannel channel, long capacity, long flushSize, long flushIntervalNanos, boolean drop) {
+        int slots = (int)Math.max(2, (capacity + SLOT_CAPACITY - 1) / SLOT_CAPACITY);
+
+        this.channel = channel;
+
+        this.capacity = (long)slots * SLOT_CAPACITY;
+
+        this.flushSize          = Math.min(flushSize, this.capacity);
+        this.flushIntervalNanos = flushIntervalNanos;
+
+        this.drop = drop;
+
+        this.producerSlots = new ByteBuffer[slots];
+        this.consumerSlots = new ByteBuffer[slots];
+
+        for (int i = 0; i < slots; i++) {
+            ByteBuffer slot = ByteBuffer.allocateDirect(SLOT_CAPACITY);
+
+            producerSlots[i] = slot;
+            consumerSlots[i] = slot.duplicate();
+        }
+
+        this.batch = new ByteBuffer[slots];
+
+        this.published = new AtomicLong();
+        this.consumed  = new AtomicLong();
+
+        this.thread = new Thread(this, "parity-taq-writer");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Copy the bytes into the ring. Called on the market data thread. The
+     * bytes are either published or dropped as a whole.
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (closing)
+            throw new ClosedChannelException();
+
+        if (failure != null)
+            throw failure;
+
+        int length = src.remaining();
+
+        long position = published.get();
+
+        while (capacity - (position - consumed.get()) < length) {
+            if (failure != null)
+                throw failure;
+
+            if (drop || length > capacity) {
+                dropped++;
+
+                src.position(src.limit());
+
+                return length;
+            }
+
+            Thread.yield();
+        }
+
+        while (src.hasRemaining()) {
+            ByteBuffer slot = producerSlots[(int)(position / SLOT_CAPACITY % producerSlots.length)];
+
+            int offset = (int)(position % SLOT_CAPACITY);
+            int count  = Math.min(SLOT_CAPACITY - offset, src.remaining());
+
+            int limit = src.limit();
+
+            slot.clear();
+            slot.position(offset);
+
+            src.limit(src.position() + count);
+            slot.put(src);
+            src.limit(limit);
+
+            position += count;
+        }
+
+        published.lazySet(position);
+
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closing;
+    }
+
+    /*
+     * Write the remaining bytes and stop the writer thread. Called on the
+     * market data thread or on a shutdown hook after the last write.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closing)
+            return;
+
+        closing = true;
+
+        LockSupport.unpark(thread);
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public void run() {
+        long position     = 0;
+        long pendingSince = 0;
+
+        try {
+            while (true) {
+                boolean closing = this.closing;
+
+                long pending = published.get() - position;
+
+                if (pending == 0) {
+                    if (closing)
+                        break;
+
+                    LockSupport.parkNanos(MAX_PARK_NANOS);
+                    continue;
+                }
+
+                long now = System.nanoTime();
+
+                if (pendingSince == 0)
+                    pendingSince = now;
+
+                long remainingNanos = pendingSince + flushIntervalNanos - now;
+
+                if (pending < flushSize && remainingNanos > 0 && !closing) {
+                    LockSupport.parkNanos(Math.min(remainingNanos, MAX_PARK_NANOS));
+                    continue;
+                }
+
+                position = write(position, published.get());
+
+                consumed.lazySet(position);
+
+                pendingSince = 0;
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /*
+     * Write the bytes between the positions with gathering writes. A batch
+     * ends before it would wrap around to its first slot again.
+     */
+    private long write(long position, long end) throws IOException {
+        while (position < end) {
+            long batchEnd = Math.min(end, position - position % SLOT_CAPACITY + capacity);
+
+            int count = 0;
+
+            for (long p = position; p < batchEnd; ) {
+                ByteBuffer slot = consumerSlots[(int)(p / SLOT_CAPACITY % consumerSlots.length)];
+
+                int offset = (int)(p % SLOT_CAPACITY);
+                int length = (int)Math.min(SLOT_CAPACITY - offset, batchEnd - p);
+
+                slot.clear();
+                slot.position(offset);
+                slot.limit(offset + length);
+
+                batch[count++] = slot;
+
+                p += length;
+            }
+
+            long remaining = batchEnd - position;
+
+            while (remaining > 0)
+                remaining -= channel.write(batch, 0, count);
+
+            position = batchEnd;
+        }
+
+        return position;
+    }
+
+}
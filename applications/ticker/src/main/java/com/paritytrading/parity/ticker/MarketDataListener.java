@@ -16,6 +16,7 @@
 package com.paritytrading.parity.ticker;
 
 import com.paritytrading.parity.book.MarketListener;
+import java.io.IOException;
 
 abstract class MarketDataListener implements MarketListener {
 
@@ -29,4 +30,7 @@ abstract class MarketDataListener implements MarketListener {
         return timestamp / 1_000_000;
     }
 
+    void close() throws IOException {
+    }
+
 }
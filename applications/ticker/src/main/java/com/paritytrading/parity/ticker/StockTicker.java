@@ -29,11 +29,14 @@ import com.paritytrading.parity.util.Instruments;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigException;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
+import java.util.concurrent.TimeUnit;
 import org.jvirtanen.config.Configs;
 
 class StockTicker {
@@ -42,10 +45,20 @@ class StockTicker {
         if (args.length < 1)
             usage();
 
-        boolean taq = args[0].equals("-t");
+        boolean taq  = args[0].equals("-t");
+        File    tick = null;
+
+        if (args[0].equals("-b")) {
+            if (args.length < 2)
+                usage();
+
+            tick = new File(args[1]);
+        }
+
+        int options = taq ? 1 : tick != null ? 2 : 0;
 
         try {
-            main(taq, taq ? copyOfRange(args, 1, args.length) : args);
+            main(taq, tick, copyOfRange(args, options, args.length));
         } catch (ConfigException | FileNotFoundException e) {
             error(e);
         } catch (IOException e) {
@@ -53,13 +66,13 @@ class StockTicker {
         }
     }
 
-    private static void main(boolean taq, String[] args) throws IOException {
+    private static void main(boolean taq, File tick, String[] args) throws IOException {
         switch (args.length) {
         case 1:
-            listen(taq, config(args[0]));
+            listen(taq, tick, config(args[0]));
             return;
         case 2:
-            read(taq, config(args[0]), new File(args[1]));
+            read(taq, tick, config(args[0]), new File(args[1]));
             return;
         default:
             usage();
@@ -67,10 +80,12 @@ class StockTicker {
         }
     }
 
-    private static void listen(boolean taq, Config config) throws IOException {
+    private static void listen(boolean taq, File tick, Config config) throws IOException {
         Instruments instruments = Instruments.fromConfig(config, "instruments");
 
-        MarketDataListener listener = taq ? new TAQFormat(instruments) : new DisplayFormat(instruments);
+        MarketDataListener listener = listener(taq, tick, config, instruments, true);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close(listener)));
 
         Market market = new Market(listener);
 
@@ -102,10 +117,10 @@ class StockTicker {
         }
     }
 
-    private static void read(boolean taq, Config config, File file) throws IOException {
+    private static void read(boolean taq, File tick, Config config, File file) throws IOException {
         Instruments instruments = Instruments.fromConfig(config, "instruments");
 
-        MarketDataListener listener = taq ? new TAQFormat(instruments) : new DisplayFormat(instruments);
+        MarketDataListener listener = listener(taq, tick, config, instruments, false);
 
         Market market = new Market(listener);
 
@@ -115,10 +130,61 @@ class StockTicker {
         MarketDataProcessor processor = new MarketDataProcessor(market, listener);
 
         BinaryFILE.read(file, new PMDParser(processor));
+
+        listener.close();
+    }
+
+    /*
+     * When listening to a live market data feed, the asynchronous TAQ
+     * output drops the records that do not fit in its buffer instead of
+     * blocking the receive thread. When reading a file, it waits for the
+     * buffer to drain instead.
+     */
+    private static MarketDataListener listener(boolean taq, File tick, Config config,
+            Instruments instruments, boolean live) throws IOException {
+        if (tick != null)
+            return new TickFormat(instruments, tick);
+
+        if (!taq)
+            return new DisplayFormat(instruments);
+
+        if (!config.hasPath("taq.async") || !config.getBoolean("taq.async"))
+            return new TAQFormat(instruments);
+
+        return new TAQFormat(instruments, output(config, live));
+    }
+
+    private static AsyncOutput output(Config config, boolean live) {
+        long bufferSize    = getBytes(config, "taq.buffer-size", 4 * 1024 * 1024);
+        long flushSize     = getBytes(config, "taq.flush-size", 64 * 1024);
+        long flushInterval = config.hasPath("taq.flush-interval") ?
+            config.getDuration("taq.flush-interval", TimeUnit.NANOSECONDS) : TimeUnit.MILLISECONDS.toNanos(100);
+
+        return new AsyncOutput(new FileOutputStream(FileDescriptor.out).getChannel(),
+                bufferSize, flushSize, flushInterval, live);
+    }
+
+    private static long getBytes(Config config, String path, long defaultValue) {
+        if (!config.hasPath(path))
+            return defaultValue;
+
+        long value = config.getBytes(path);
+        if (value <= 0)
+            throw new ConfigException.BadValue(config.origin(), path, "Must be positive");
+
+        return value;
+    }
+
+    private static void close(MarketDataListener listener) {
+        try {
+            listener.close();
+        } catch (IOException e) {
+            System.err.println("parity-ticker: " + e.getMessage());
+        }
     }
 
     private static void usage() {
-        System.err.println("Usage: parity-ticker [-t] <configuration-file> [<input-file>]");
+        System.err.println("Usage: parity-ticker [-t | -b <output-file>] <configuration-file> [<input-file>]");
         System.exit(2);
     }
 
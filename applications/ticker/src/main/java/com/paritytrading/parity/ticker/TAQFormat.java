@@ -16,6 +16,7 @@
 package com.paritytrading.parity.ticker;
 
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
+import static org.jvirtanen.util.Applications.*;
 
 import com.paritytrading.parity.book.OrderBook;
 import com.paritytrading.parity.book.Side;
@@ -24,6 +25,8 @@ import com.paritytrading.parity.file.taq.TAQConfig;
 import com.paritytrading.parity.file.taq.TAQWriter;
 import com.paritytrading.parity.util.Instrument;
 import com.paritytrading.parity.util.Instruments;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.time.LocalDate;
 
@@ -36,12 +39,27 @@ class TAQFormat extends MarketDataListener {
 
     private final TAQWriter writer;
 
+    private final AsyncOutput output;
+
+    private boolean closed;
+
     TAQFormat(Instruments instruments) {
+        this(instruments, (AsyncOutput)null);
+    }
+
+    /*
+     * Write the records to the output instead of the standard output. The
+     * writer is flushed into the output after each record, which only
+     * copies the record into the ring of buffers of the output.
+     */
+    TAQFormat(Instruments instruments, AsyncOutput output) {
         this.instruments = instruments;
 
         this.quote = new TAQ.Quote();
         this.trade = new TAQ.Trade();
 
+        this.output = output;
+
         String date = ISO_LOCAL_DATE.format(LocalDate.now());
 
         quote.date = date;
@@ -58,23 +76,52 @@ class TAQFormat extends MarketDataListener {
             builder.setSizeFractionDigits(instrument.asString(),  sizeFractionDigits);
         }
 
-        writer = new TAQWriter(System.out, builder.build());
+        if (output != null)
+            writer = new TAQWriter(output, builder.build());
+        else
+            writer = new TAQWriter(System.out, builder.build());
+
         writer.flush();
     }
 
+    /*
+     * Exiting on an I/O error runs the shutdown hook, which closes the
+     * writer and needs the lock, so the error is handled only after the
+     * lock has been released.
+     */
     @Override
     public void update(OrderBook book, boolean bbo) {
         if (!bbo)
             return;
 
-        Instrument instrument = instruments.get(book.getInstrument());
+        try {
+            quote(book);
+        } catch (UncheckedIOException e) {
+            fatal(e.getCause());
+        }
+    }
 
-        double priceFactor = instrument.getPriceFactor();
-        double sizeFactor  = instrument.getSizeFactor();
+    @Override
+    public void trade(OrderBook book, Side side, long price, long size) {
+        try {
+            trade(book, side == Side.BUY, price, size);
+        } catch (UncheckedIOException e) {
+            fatal(e.getCause());
+        }
+    }
+
+    private synchronized void quote(OrderBook book) {
+        if (closed)
+            return;
+
+        Instrument instrument = instruments.get(book.getInstrument());
 
         long bidPrice = book.getBestBidPrice();
         long askPrice = book.getBestAskPrice();
 
+        double priceFactor = instrument.getPriceFactor();
+        double sizeFactor  = instrument.getSizeFactor();
+
         quote.timestampMillis = timestampMillis();
         quote.instrument      = instrument.asString();
         quote.bidPrice        = bidPrice / priceFactor;
@@ -86,22 +133,45 @@ class TAQFormat extends MarketDataListener {
         writer.flush();
     }
 
-    @Override
-    public void trade(OrderBook book, Side side, long price, long size) {
+    private synchronized void trade(OrderBook book, boolean buy, long price, long size) {
+        if (closed)
+            return;
+
         Instrument instrument = instruments.get(book.getInstrument());
 
         trade.timestampMillis = timestampMillis();
         trade.instrument      = instrument.asString();
         trade.price           = price / instrument.getPriceFactor();
         trade.size            = size  / instrument.getSizeFactor();
-        trade.side            = side(side);
+        trade.side            = buy ? TAQ.BUY : TAQ.SELL;
 
         writer.write(trade);
         writer.flush();
     }
 
-    private char side(Side side) {
-        return side == Side.BUY ? TAQ.BUY : TAQ.SELL;
+    /*
+     * The output must be drained before exiting. Closing may happen on a
+     * shutdown hook while the receive thread is still delivering market
+     * events, so the writes are synchronized and the events after closing
+     * are dropped.
+     */
+    @Override
+    synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+
+        if (output != null) {
+            try {
+                writer.close();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            if (output.getDropped() > 0)
+                System.err.println("parity-ticker: Dropped " + output.getDropped() + " records");
+        }
     }
 
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.ticker;
+
+import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.parity.book.OrderBook;
+import com.paritytrading.parity.book.Side;
+import com.paritytrading.parity.file.tick.Tick;
+import com.paritytrading.parity.file.tick.TickWriter;
+import com.paritytrading.parity.util.Instrument;
+import com.paritytrading.parity.util.Instruments;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+
+/*
+ * Write the records to the file in the Tick format. The prices and sizes
+ * are written as they are in the market data.
+ */
+class TickFormat extends MarketDataListener {
+
+    private final Instruments instruments;
+
+    private final Tick.Quote quote;
+    private final Tick.Trade trade;
+
+    private final TickWriter writer;
+
+    private boolean closed;
+
+    TickFormat(Instruments instruments, File file) throws IOException {
+        this.instruments = instruments;
+
+        this.quote = new Tick.Quote();
+        this.trade = new Tick.Trade();
+
+        this.writer = new TickWriter(file, ISO_LOCAL_DATE.format(LocalDate.now()));
+
+        for (Instrument instrument : instruments) {
+            int priceFractionDigits = instrument.getPriceFractionDigits();
+            int sizeFractionDigits  = instrument.getSizeFractionDigits();
+
+            writer.setFractionDigits(instrument.asString(), priceFractionDigits, sizeFractionDigits);
+        }
+    }
+
+    /*
+     * Exiting on an I/O error runs the shutdown hook, which closes the
+     * writer and needs the lock, so the error is handled only after the
+     * lock has been released.
+     */
+    @Override
+    public void update(OrderBook book, boolean bbo) {
+        if (!bbo)
+            return;
+
+        try {
+            quote(book);
+        } catch (IOException e) {
+            fatal(e);
+        } catch (UncheckedIOException e) {
+            fatal(e.getCause());
+        }
+    }
+
+    @Override
+    public void trade(OrderBook book, Side side, long price, long size) {
+        try {
+            trade(book, side == Side.BUY, price, size);
+        } catch (IOException e) {
+            fatal(e);
+        } catch (UncheckedIOException e) {
+            fatal(e.getCause());
+        }
+    }
+
+    private synchronized void quote(OrderBook book) throws IOException {
+        if (closed)
+            return;
+
+        Instrument instrument = instruments.get(book.getInstrument());
+
+        long bidPrice = book.getBestBidPrice();
+        long askPrice = book.getBestAskPrice();
+
+        quote.timestampMillis = timestampMillis();
+        quote.instrument      = instrument.asString();
+        quote.bidPrice        = bidPrice;
+        quote.bidSize         = book.getBidSize(bidPrice);
+        quote.askPrice        = askPrice;
+        quote.askSize         = book.getAskSize(askPrice);
+
+        writer.write(quote);
+    }
+
+    private synchronized void trade(OrderBook book, boolean buy, long price, long size) throws IOException {
+        if (closed)
+            return;
+
+        Instrument instrument = instruments.get(book.getInstrument());
+
+        trade.timestampMillis = timestampMillis();
+        trade.instrument      = instrument.asString();
+        trade.price           = price;
+        trade.size            = size;
+        trade.side            = buy ? Tick.BUY : Tick.SELL;
+
+        writer.write(trade);
+    }
+
+    /*
+     * A Tick file is complete only once its block index has been written
+     * on close. Closing may happen on a shutdown hook while the receive
+     * thread is still delivering market events, so the writes are
+     * synchronized and the events after closing are dropped.
+     */
+    @Override
+    synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+
+        writer.close();
+    }
+
+}
@@ -26,6 +26,19 @@ public class TAQ {
     static final char RECORD_TYPE_QUOTE = 'Q';
     static final char RECORD_TYPE_TRADE = 'T';
 
+    static final String HEADER = "" +
+        "Date"        + FIELD_SEPARATOR +
+        "Timestamp"   + FIELD_SEPARATOR +
+        "Instrument"  + FIELD_SEPARATOR +
+        "Record Type" + FIELD_SEPARATOR +
+        "Bid Price"   + FIELD_SEPARATOR +
+        "Bid Size"    + FIELD_SEPARATOR +
+        "Ask Price"   + FIELD_SEPARATOR +
+        "Ask Size"    + FIELD_SEPARATOR +
+        "Trade Price" + FIELD_SEPARATOR +
+        "Trade Size"  + FIELD_SEPARATOR +
+        "Trade Side"  + RECORD_SEPARATOR;
+
     public static final char BUY     = 'B';
     public static final char SELL    = 'S';
     public static final char UNKNOWN = ' ';
@@ -85,6 +85,26 @@ public class TAQConfig {
         return sizeFormats.getOrDefault(instrument, defaultSizeFormat);
     }
 
+    /**
+     * Get the number of digits in the fractional part of a price.
+     *
+     * @param instrument the instrument
+     * @return the number of digits in the fractional part of a price
+     */
+    public int getPriceFractionDigits(String instrument) {
+        return getPriceFormat(instrument).getMaximumFractionDigits();
+    }
+
+    /**
+     * Get the number of digits in the fractional part of a size.
+     *
+     * @param instrument the instrument
+     * @return the number of digits in the fractional part of a size
+     */
+    public int getSizeFractionDigits(String instrument) {
+        return getSizeFormat(instrument).getMaximumFractionDigits();
+    }
+
     /**
      * A configuration builder. The builder uses the following default values:
      *
@@ -0,0 +1,614 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.taq;
+
+import static com.paritytrading.parity.file.taq.TAQ.*;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * A reader.
+ *
+ * <p>The file must start with the header line that the writer writes.
+ * The reader checks the header line and skips it.</p>
+ *
+ * <p>The reader memory-maps the file and parses the fields in place. Prices
+ * and sizes are parsed to scaled integers using the number of digits in
+ * their fractional part given by the configuration and then divided by the
+ * scale, which yields the same doubles as parsing them as decimal numbers.
+ * A field with more digits in its fractional part than the configuration
+ * allows is rejected.</p>
+ *
+ * <p>The reader reuses one Quote and one Trade record and the strings for
+ * dates and instruments, so it does not allocate per record. The listener
+ * must copy any record it wants to keep.</p>
+ */
+public class TAQReader {
+
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    private static final byte[] HEADER_BYTES = HEADER.getBytes(US_ASCII);
+
+    private static final long[] POWERS_OF_TEN = {
+        1L,
+        10L,
+        100L,
+        1000L,
+        10000L,
+        100000L,
+        1000000L,
+        10000000L,
+        100000000L,
+        1000000000L,
+        10000000000L,
+        100000000000L,
+        1000000000000L,
+        10000000000000L,
+        100000000000000L,
+        1000000000000000L,
+        10000000000000000L,
+        100000000000000000L,
+        1000000000000000000L,
+    };
+
+    private final File file;
+
+    private final TAQConfig config;
+
+    /**
+     * Create a reader that reads the specified file using the default
+     * configuration.
+     *
+     * @param file a file
+     */
+    public TAQReader(File file) {
+        this(file, TAQConfig.DEFAULTS);
+    }
+
+    /**
+     * Create a reader that reads the specified file.
+     *
+     * @param file a file
+     * @param config the configuration
+     */
+    public TAQReader(File file, TAQConfig config) {
+        this.file   = file;
+        this.config = config;
+    }
+
+    /**
+     * Read the file.
+     *
+     * @param listener a listener for records
+     * @throws IOException if an I/O error occurs or a record is malformed
+     */
+    public void read(TAQListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            new Parser(channel, listener).parse(0, channel.size());
+        }
+    }
+
+    /**
+     * Read the file in parallel. The file is split into the specified number
+     * of chunks of about the same size. A chunk consists of the records that
+     * start within it, so the chunks are aligned on record boundaries.
+     *
+     * <p>The chunks are read on the common fork-join pool, each into the
+     * listener returned by the listener factory for its index. The records
+     * of a chunk are passed to its listener in file order, but the chunks
+     * are read concurrently.</p>
+     *
+     * @param chunks the number of chunks
+     * @param listeners a factory for listeners by chunk index
+     * @throws IOException if an I/O error occurs or a record is malformed
+     */
+    public void read(int chunks, IntFunction<TAQListener> listeners) throws IOException {
+        if (chunks < 1)
+            throw new IllegalArgumentException("Invalid number of chunks: " + chunks);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            List<Chunk> tasks = new ArrayList<>(chunks);
+
+            for (int i = 0; i < chunks; i++) {
+                long start = size * i / chunks;
+                long end   = size * (i + 1) / chunks;
+
+                tasks.add(new Chunk(new Parser(channel, listeners.apply(i)), start, end));
+            }
+
+            try {
+                ForkJoinTask.invokeAll(tasks);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static class Chunk extends RecursiveAction {
+
+        private final Parser parser;
+
+        private final long start;
+        private final long end;
+
+        Chunk(Parser parser, long start, long end) {
+            this.parser = parser;
+            this.start  = start;
+            this.end    = end;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                parser.parse(start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    private class Parser {
+
+        private final FileChannel channel;
+
+        private final TAQListener listener;
+
+        private final TAQ.Quote quote;
+        private final TAQ.Trade trade;
+
+        private Instrument[] instruments;
+
+        private int instrumentCount;
+
+        private byte[] date;
+
+        private String dateString;
+
+        private ByteBuffer buffer;
+
+        private long base;
+
+        private int position;
+        private int end;
+
+        Parser(FileChannel channel, TAQListener listener) {
+            this.channel  = channel;
+            this.listener = listener;
+
+            this.quote = new TAQ.Quote();
+            this.trade = new TAQ.Trade();
+
+            this.instruments = new Instrument[16];
+
+            this.date = new byte[0];
+        }
+
+        /*
+         * Parse the records that start within the range. The file is mapped
+         * in windows. A record that does not end within its window is
+         * parsed from the next window. The first window starts just before
+         * the range, so that a record that starts at the beginning of the
+         * range is found after the record separator before it.
+         *
+         * The range that starts at the beginning of the file has no record
+         * separator before it, so its first line, the header line, is
+         * skipped in the same way. The header line is checked first, so
+         * that the first record of a file without one is not skipped
+         * silently.
+         */
+        void parse(long start, long stop) throws IOException {
+            long size = channel.size();
+
+            boolean aligned = false;
+
+            base = Math.max(start - 1, 0);
+
+            while (base < stop) {
+                long length = Math.min(WINDOW_SIZE, size - base);
+
+                boolean last = base + length == size;
+
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+
+                int offset = 0;
+
+                if (!aligned) {
+                    if (base == 0)
+                        header();
+
+                    while (offset < length && buffer.get(offset) != RECORD_SEPARATOR)
+                        offset++;
+
+                    if (offset == length) {
+                        base += length;
+                        continue;
+                    }
+
+                    offset++;
+
+                    aligned = true;
+                }
+
+                int first = offset;
+
+                while (base + offset < stop) {
+                    int next = record(offset, last);
+                    if (next < 0)
+                        break;
+
+                    offset = next;
+                }
+
+                if (offset == 0 && first == 0)
+                    throw new IOException("Record too long at offset " + base);
+
+                base += offset;
+            }
+        }
+
+        /*
+         * Check the header line at the beginning of the file. A file that
+         * ends with the header line may omit its record separator.
+         */
+        private void header() throws IOException {
+            int length = Math.min(HEADER_BYTES.length, buffer.limit());
+
+            if (length < HEADER_BYTES.length - 1)
+                throw new IOException("Not a TAQ file: " + file);
+
+            for (int i = 0; i < length; i++)
+                if (buffer.get(i) != HEADER_BYTES[i])
+                    throw new IOException("Not a TAQ file: " + file);
+        }
+
+        /*
+         * Parse the record that starts at the offset and return the offset
+         * of the next record, or -1 if the record does not end within the
+         * window.
+         */
+        private int record(int offset, boolean last) throws IOException {
+            int limit = buffer.limit();
+
+            int end = offset;
+
+            while (end < limit && buffer.get(end) != RECORD_SEPARATOR)
+                end++;
+
+            if (end == limit && !last)
+                return -1;
+
+            if (end == offset)
+                return end + 1;
+
+            this.position = offset;
+            this.end      = end;
+
+            String     date            = date();
+            long       timestampMillis = timestamp();
+            Instrument instrument      = instrument();
+
+            byte recordType = recordType();
+
+            switch (recordType) {
+            case RECORD_TYPE_QUOTE:
+                quote.date            = date;
+                quote.timestampMillis = timestampMillis;
+                quote.instrument      = instrument.name;
+                quote.bidPrice        = decimal(instrument.priceFractionDigits);
+                quote.bidSize         = decimal(instrument.sizeFractionDigits);
+                quote.askPrice        = decimal(instrument.priceFractionDigits);
+                quote.askSize         = decimal(instrument.sizeFractionDigits);
+
+                empty();
+                empty();
+                empty();
+
+                listener.quote(quote);
+                break;
+            case RECORD_TYPE_TRADE:
+                empty();
+                empty();
+                empty();
+                empty();
+
+                trade.date            = date;
+                trade.timestampMillis = timestampMillis;
+                trade.instrument      = instrument.name;
+                trade.price           = decimal(instrument.priceFractionDigits);
+                trade.size            = decimal(instrument.sizeFractionDigits);
+                trade.side            = side();
+
+                listener.trade(trade);
+                break;
+            default:
+                throw malformed();
+            }
+
+            if (position <= end)
+                throw malformed();
+
+            return end + 1;
+        }
+
+        private String date() throws IOException {
+            int fieldEnd = fieldEnd();
+
+            int length = fieldEnd - position;
+
+            boolean same = length == date.length;
+
+            for (int i = 0; same && i < length; i++)
+                same = buffer.get(position + i) == date[i];
+
+            if (!same) {
+                date = new byte[length];
+
+                for (int i = 0; i < length; i++)
+                    date[i] = buffer.get(position + i);
+
+                dateString = new String(date, config.getEncoding());
+            }
+
+            position = fieldEnd + 1;
+
+            return dateString;
+        }
+
+        private long timestamp() throws IOException {
+            int fieldEnd = fieldEnd();
+
+            if (fieldEnd - position != 12 || buffer.get(position + 2) != ':' ||
+                    buffer.get(position + 5) != ':' || buffer.get(position + 8) != '.')
+                throw malformed();
+
+            long hours   = digits(position, 2);
+            long minutes = digits(position + 3, 2);
+            long seconds = digits(position + 6, 2);
+            long millis  = digits(position + 9, 3);
+
+            position = fieldEnd + 1;
+
+            return ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+        }
+
+        private Instrument instrument() throws IOException {
+            int fieldEnd = fieldEnd();
+
+            int length = fieldEnd - position;
+
+            int hash = 0;
+
+            for (int i = position; i < fieldEnd; i++)
+                hash = 31 * hash + buffer.get(i);
+
+            int mask = instruments.length - 1;
+
+            for (int i = (hash ^ (hash >>> 16)) & mask; ; i = (i + 1) & mask) {
+                Instrument instrument = instruments[i];
+
+                if (instrument == null) {
+                    instrument = add(position, length, hash);
+
+                    position = fieldEnd + 1;
+
+                    return instrument;
+                }
+
+                if (instrument.hash == hash && instrument.matches(buffer, position, length)) {
+                    position = fieldEnd + 1;
+
+                    return instrument;
+                }
+            }
+        }
+
+        private Instrument add(int offset, int length, int hash) {
+            byte[] bytes = new byte[length];
+
+            for (int i = 0; i < length; i++)
+                bytes[i] = buffer.get(offset + i);
+
+            String name = new String(bytes, config.getEncoding());
+
+            Instrument instrument = new Instrument(bytes, hash, name,
+                    config.getPriceFractionDigits(name), config.getSizeFractionDigits(name));
+
+            if (2 * (instrumentCount + 1) > instruments.length) {
+                Instrument[] table = instruments;
+
+                instruments = new Instrument[2 * table.length];
+
+                for (Instrument entry : table) {
+                    if (entry != null)
+                        put(entry);
+                }
+            }
+
+            put(instrument);
+
+            instrumentCount++;
+
+            return instrument;
+        }
+
+        private void put(Instrument instrument) {
+            int mask = instruments.length - 1;
+
+            int i = (instrument.hash ^ (instrument.hash >>> 16)) & mask;
+
+            while (instruments[i] != null)
+                i = (i + 1) & mask;
+
+            instruments[i] = instrument;
+        }
+
+        private byte recordType() throws IOException {
+            int fieldEnd = fieldEnd();
+
+            if (fieldEnd - position != 1)
+                throw malformed();
+
+            byte recordType = buffer.get(position);
+
+            position = fieldEnd + 1;
+
+            return recordType;
+        }
+
+        private double decimal(int fractionDigits) throws IOException {
+            int fieldEnd = fieldEnd();
+
+            long value = 0;
+
+            int digits = -1;
+
+            boolean negative = false;
+
+            for (int i = position; i < fieldEnd; i++) {
+                byte b = buffer.get(i);
+
+                if (b >= '0' && b <= '9') {
+                    value = 10 * value + (b - '0');
+
+                    if (digits >= 0)
+                        digits++;
+                } else if (b == '.' && digits < 0) {
+                    digits = 0;
+                } else if (b == '-' && i == position) {
+                    negative = true;
+                } else {
+                    throw malformed();
+                }
+            }
+
+            if (digits > fractionDigits)
+                throw malformed();
+
+            position = fieldEnd + 1;
+
+            value *= POWERS_OF_TEN[fractionDigits - Math.max(digits, 0)];
+
+            return (negative ? -value : value) / (double)POWERS_OF_TEN[fractionDigits];
+        }
+
+        private char side() throws IOException {
+            int fieldEnd = fieldEnd();
+
+            char side = UNKNOWN;
+
+            switch (fieldEnd - position) {
+            case 0:
+                break;
+            case 1:
+                side = (char)buffer.get(position);
+                break;
+            default:
+                throw malformed();
+            }
+
+            position = fieldEnd + 1;
+
+            return side;
+        }
+
+        private void empty() throws IOException {
+            if (fieldEnd() != position)
+                throw malformed();
+
+            position++;
+        }
+
+        private int fieldEnd() throws IOException {
+            if (position > end)
+                throw malformed();
+
+            int fieldEnd = position;
+
+            while (fieldEnd < end && buffer.get(fieldEnd) != FIELD_SEPARATOR)
+                fieldEnd++;
+
+            return fieldEnd;
+        }
+
+        private long digits(int offset, int length) throws IOException {
+            long value = 0;
+
+            for (int i = offset; i < offset + length; i++) {
+                byte b = buffer.get(i);
+                if (b < '0' || b > '9')
+                    throw malformed();
+
+                value = 10 * value + (b - '0');
+            }
+
+            return value;
+        }
+
+        private IOException malformed() {
+            return new IOException("Malformed record at offset " + (base + position));
+        }
+
+    }
+
+    private static class Instrument {
+
+        final byte[] bytes;
+
+        final int hash;
+
+        final String name;
+
+        final int priceFractionDigits;
+        final int sizeFractionDigits;
+
+        Instrument(byte[] bytes, int hash, String name, int priceFractionDigits, int sizeFractionDigits) {
+            this.bytes = bytes;
+            this.hash  = hash;
+            this.name  = name;
+
+            this.priceFractionDigits = priceFractionDigits;
+            this.sizeFractionDigits  = sizeFractionDigits;
+        }
+
+        boolean matches(ByteBuffer buffer, int offset, int length) {
+            if (length != bytes.length)
+                return false;
+
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(offset + i) != bytes[i])
+                    return false;
+            }
+
+            return true;
+        }
+
+    }
+
+}
@@ -16,51 +16,113 @@
 package com.paritytrading.parity.file.taq;
 
 import static com.paritytrading.parity.file.taq.TAQ.*;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
-import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.Flushable;
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.Writer;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.DecimalFormat;
 import java.text.FieldPosition;
 import java.text.NumberFormat;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.time.DateTimeException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * A writer.
+ *
+ * <p>The writer encodes the records directly into a byte buffer and writes
+ * the buffer out when it is full or when the writer is flushed. Prices and
+ * sizes that are exact in the configured number of digits in their
+ * fractional part are formatted as scaled integers, and other values with
+ * the configured decimal formats, so the output is the same as with the
+ * decimal formats alone.</p>
+ *
+ * <p>If the encoding is not compatible with ASCII, such as UTF-16, the
+ * writer encodes the records in UTF-8 and transcodes the buffer into the
+ * encoding when it writes the buffer out.</p>
  */
 public class TAQWriter implements Closeable, Flushable {
 
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    private static final int BUFFER_CAPACITY = 64 * 1024;
+
+    private static final int FALLBACK_CAPACITY = 32;
+
+    private static final String ASCII_CHARACTERS = ascii();
 
-    private static final int BUFFER_CAPACITY = 32;
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
 
-    private static final String HEADER = "" +
-        "Date"        + FIELD_SEPARATOR +
-        "Timestamp"   + FIELD_SEPARATOR +
-        "Instrument"  + FIELD_SEPARATOR +
-        "Record Type" + FIELD_SEPARATOR +
-        "Bid Price"   + FIELD_SEPARATOR +
-        "Bid Size"    + FIELD_SEPARATOR +
-        "Ask Price"   + FIELD_SEPARATOR +
-        "Ask Size"    + FIELD_SEPARATOR +
-        "Trade Price" + FIELD_SEPARATOR +
-        "Trade Size"  + FIELD_SEPARATOR +
-        "Trade Side"  + RECORD_SEPARATOR;
+    /*
+     * A scaled value below this limit is the only one in its number of
+     * digits in the fractional part that rounds to its double, even when
+     * the decimal format rounds a longer representation of the double.
+     */
+    private static final long MAX_SCALED_VALUE = 1L << 51;
+
+    private static final long[] POWERS_OF_TEN = {
+        1L,
+        10L,
+        100L,
+        1000L,
+        10000L,
+        100000L,
+        1000000L,
+        10000000L,
+        100000000L,
+        1000000000L,
+        10000000000L,
+        100000000000L,
+        1000000000000L,
+        10000000000000L,
+        100000000000000L,
+        1000000000000000L,
+    };
 
     private final TAQConfig config;
 
-    private final FieldPosition position;
+    /*
+     * The encoding of the buffer, and the encoder that transcodes the buffer
+     * into an encoding not compatible with ASCII, or null.
+     */
+    private final Charset encoding;
+
+    private final CharsetEncoder encoder;
 
-    private final StringBuffer buffer;
+    private final OutputStream out;
 
-    private final PrintWriter sink;
+    private final WritableByteChannel channel;
+
+    private ByteBuffer buffer;
+
+    private ByteBuffer encoded;
+
+    private final Map<String, Instrument> instruments;
+
+    private String date;
+    private byte[] dateBytes;
+
+    private long second;
+
+    private final byte[] secondBytes;
+
+    private final FieldPosition position;
+
+    private final StringBuffer fallback;
 
     /**
      * Create a writer that writes to the specified file using the default
@@ -81,7 +143,7 @@ public class TAQWriter implements Closeable, Flushable {
      * @throws FileNotFoundException if the file cannot be opened
      */
     public TAQWriter(File file, TAQConfig config) throws FileNotFoundException {
-        this(new BufferedOutputStream(new FileOutputStream(file)), config);
+        this(null, new FileOutputStream(file).getChannel(), config);
     }
 
     /**
@@ -101,124 +163,415 @@ public class TAQWriter implements Closeable, Flushable {
      * @param config the configuration
      */
     public TAQWriter(OutputStream out, TAQConfig config) {
-        this(new OutputStreamWriter(out, config.getEncoding()), config);
+        this(out, Channels.newChannel(out), config);
+    }
+
+    /**
+     * Create a writer that writes to the specified channel. The writer
+     * writes to the channel only when its buffer is full or when it is
+     * flushed or closed.
+     *
+     * @param channel a channel
+     * @param config the configuration
+     */
+    public TAQWriter(WritableByteChannel channel, TAQConfig config) {
+        this(null, channel, config);
     }
 
-    private TAQWriter(Writer writer, TAQConfig config) {
+    private TAQWriter(OutputStream out, WritableByteChannel channel, TAQConfig config) {
         this.config = config;
 
-        this.position = new FieldPosition(NumberFormat.INTEGER_FIELD);
+        if (isASCIICompatible(config.getEncoding())) {
+            this.encoding = config.getEncoding();
+            this.encoder  = null;
+        } else {
+            this.encoding = UTF_8;
+            this.encoder  = config.getEncoding().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
 
-        this.buffer = new StringBuffer(BUFFER_CAPACITY);
+        this.out     = out;
+        this.channel = channel;
 
-        this.sink = new PrintWriter(writer);
+        this.buffer = ByteBuffer.allocate(BUFFER_CAPACITY);
 
-        sink.print(HEADER);
+        this.instruments = new HashMap<>();
+
+        this.second      = -1;
+        this.secondBytes = new byte[8];
+
+        this.position = new FieldPosition(NumberFormat.INTEGER_FIELD);
+
+        this.fallback = new StringBuffer(FALLBACK_CAPACITY);
+
+        buffer.put(HEADER.getBytes(encoding));
     }
 
     /**
      * Write a Trade record.
      *
      * @param record a Trade record
+     * @throws DateTimeException if the timestamp is negative
+     * @throws UncheckedIOException if an I/O error occurs
      */
     public void write(Trade record) {
-        sink.print(record.date);
-        sink.print(FIELD_SEPARATOR);
+        Instrument instrument = instrument(record.instrument);
+
+        writeDate(record.date);
         writeTimestamp(record.timestampMillis);
-        sink.print(FIELD_SEPARATOR);
-        sink.print(record.instrument);
-        sink.print(FIELD_SEPARATOR);
-        sink.print(RECORD_TYPE_TRADE);
-        sink.print(FIELD_SEPARATOR);
+        write(instrument.bytes);
+        writeByte(RECORD_TYPE_TRADE);
+        writeByte(FIELD_SEPARATOR);
         // bid price
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
         // bid size
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
         // ask price
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
         // ask size
-        sink.print(FIELD_SEPARATOR);
-        writePrice(record.instrument, record.price);
-        sink.print(FIELD_SEPARATOR);
-        writeSize(record.instrument, record.size);
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
+        writePrice(instrument, record.price);
+        writeByte(FIELD_SEPARATOR);
+        writeSize(instrument, record.size);
+        writeByte(FIELD_SEPARATOR);
 
         if (record.side != UNKNOWN)
-            sink.print(record.side);
+            writeChar(record.side);
 
-        sink.print(RECORD_SEPARATOR);
+        writeByte(RECORD_SEPARATOR);
     }
 
     /**
      * Write a Quote record.
      *
      * @param record a Quote record
+     * @throws DateTimeException if the timestamp is negative
+     * @throws UncheckedIOException if an I/O error occurs
      */
     public void write(Quote record) {
-        sink.print(record.date);
-        sink.print(FIELD_SEPARATOR);
+        Instrument instrument = instrument(record.instrument);
+
+        writeDate(record.date);
         writeTimestamp(record.timestampMillis);
-        sink.print(FIELD_SEPARATOR);
-        sink.print(record.instrument);
-        sink.print(FIELD_SEPARATOR);
-        sink.print(RECORD_TYPE_QUOTE);
-        sink.print(FIELD_SEPARATOR);
+        write(instrument.bytes);
+        writeByte(RECORD_TYPE_QUOTE);
+        writeByte(FIELD_SEPARATOR);
 
         if (record.bidSize > 0)
-            writePrice(record.instrument, record.bidPrice);
+            writePrice(instrument, record.bidPrice);
 
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
 
         if (record.bidSize > 0)
-            writeSize(record.instrument, record.bidSize);
+            writeSize(instrument, record.bidSize);
 
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
 
         if (record.askSize > 0)
-            writePrice(record.instrument, record.askPrice);
+            writePrice(instrument, record.askPrice);
 
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
 
         if (record.askSize > 0)
-            writeSize(record.instrument, record.askSize);
+            writeSize(instrument, record.askSize);
 
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
         // trade price
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
         // trade size
-        sink.print(FIELD_SEPARATOR);
+        writeByte(FIELD_SEPARATOR);
         // trade side
-        sink.print(RECORD_SEPARATOR);
+        writeByte(RECORD_SEPARATOR);
     }
 
+    /**
+     * Close the writer.
+     *
+     * @throws UncheckedIOException if an I/O error occurs
+     */
     @Override
     public void close() {
-        sink.close();
+        try {
+            drain();
+
+            if (encoder != null)
+                finish();
+
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
+    /**
+     * Flush the writer.
+     *
+     * @throws UncheckedIOException if an I/O error occurs
+     */
     @Override
     public void flush() {
-        sink.flush();
+        try {
+            drain();
+
+            if (out != null)
+                out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
+    private Instrument instrument(String name) {
+        Instrument instrument = instruments.get(name);
+        if (instrument == null) {
+            instrument = new Instrument((name + FIELD_SEPARATOR).getBytes(encoding),
+                    config.getPriceFormat(name), config.getSizeFormat(name));
+
+            instruments.put(name, instrument);
+        }
+
+        return instrument;
+    }
+
+    private void writeDate(String date) {
+        if (!date.equals(this.date)) {
+            this.date      = date;
+            this.dateBytes = (date + FIELD_SEPARATOR).getBytes(encoding);
+        }
+
+        write(dateBytes);
+    }
+
+    /*
+     * Write the time of day of the timestamp. A timestamp of one day or more
+     * wraps around to the time of day, as a timestamp counted from the
+     * midnight at startup passes one day when the system runs past
+     * midnight.
+     */
     private void writeTimestamp(long timestampMillis) {
-        FORMATTER.formatTo(LocalTime.ofNanoOfDay(timestampMillis % (24 * 60 * 60 * 1000) * 1_000_000), sink);
+        long millisOfDay = timestampMillis % MILLIS_PER_DAY;
+        if (millisOfDay < 0)
+            throw new DateTimeException("Invalid timestamp: " + timestampMillis);
+
+        long second = millisOfDay / 1000;
+
+        if (second != this.second) {
+            this.second = second;
+
+            putDigits(secondBytes, 0, second / 3600, 2);
+            secondBytes[2] = ':';
+            putDigits(secondBytes, 3, second / 60 % 60, 2);
+            secondBytes[5] = ':';
+            putDigits(secondBytes, 6, second % 60, 2);
+        }
+
+        ensure(secondBytes.length + 5);
+
+        buffer.put(secondBytes);
+        buffer.put((byte)'.');
+
+        int millis = (int)(millisOfDay % 1000);
+
+        buffer.put((byte)('0' + millis / 100));
+        buffer.put((byte)('0' + millis / 10 % 10));
+        buffer.put((byte)('0' + millis % 10));
+        buffer.put((byte)FIELD_SEPARATOR);
     }
 
-    private void writePrice(String instrument, double price) {
-        buffer.setLength(0);
+    private void writePrice(Instrument instrument, double price) {
+        writeDecimal(price, instrument.priceFractionDigits, instrument.priceFormat);
+    }
 
-        config.getPriceFormat(instrument).format(price, buffer, position);
+    private void writeSize(Instrument instrument, double size) {
+        writeDecimal(size, instrument.sizeFractionDigits, instrument.sizeFormat);
+    }
+
+    private void writeDecimal(double value, int fractionDigits, DecimalFormat format) {
+        if (fractionDigits < POWERS_OF_TEN.length) {
+            double factor = POWERS_OF_TEN[fractionDigits];
+
+            long scaled = Math.round(value * factor);
+
+            if (Math.abs(scaled) < MAX_SCALED_VALUE && scaled / factor == value &&
+                    (scaled != 0 || Double.doubleToRawLongBits(value) == 0)) {
+                writeScaled(scaled, fractionDigits);
+                return;
+            }
+        }
 
-        sink.append(buffer);
+        fallback.setLength(0);
+
+        format.format(value, fallback, position);
+
+        write(fallback.toString().getBytes(encoding));
     }
 
-    private void writeSize(String instrument, double size) {
-        buffer.setLength(0);
+    private void writeScaled(long scaled, int fractionDigits) {
+        ensure(fractionDigits + 22);
+
+        if (scaled < 0) {
+            buffer.put((byte)'-');
+
+            scaled = -scaled;
+        }
+
+        long integer  = scaled / POWERS_OF_TEN[fractionDigits];
+        long fraction = scaled % POWERS_OF_TEN[fractionDigits];
+
+        int integerDigits = 1;
+
+        while (integerDigits < POWERS_OF_TEN.length && integer >= POWERS_OF_TEN[integerDigits])
+            integerDigits++;
+
+        putDigits(integer, integerDigits);
+
+        if (fractionDigits > 0) {
+            buffer.put((byte)'.');
+
+            putDigits(fraction, fractionDigits);
+        }
+    }
+
+    private void putDigits(long value, int digits) {
+        int offset = buffer.position();
+
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer.put(i, (byte)('0' + value % 10));
+
+            value /= 10;
+        }
+
+        buffer.position(offset + digits);
+    }
+
+    private static void putDigits(byte[] bytes, int offset, long value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            bytes[i] = (byte)('0' + value % 10);
+
+            value /= 10;
+        }
+    }
+
+    private void writeChar(char c) {
+        if (c < 0x80)
+            writeByte(c);
+        else
+            write(String.valueOf(c).getBytes(encoding));
+    }
+
+    private void writeByte(char c) {
+        ensure(1);
+
+        buffer.put((byte)c);
+    }
+
+    private void write(byte[] bytes) {
+        ensure(bytes.length);
+
+        buffer.put(bytes);
+    }
+
+    private void ensure(int length) {
+        if (buffer.remaining() >= length)
+            return;
+
+        try {
+            drain();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (buffer.capacity() < length)
+            buffer = ByteBuffer.allocate(length);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+
+        if (encoder != null)
+            transcode(UTF_8.decode(buffer), false);
+        else
+            writeFully(buffer);
+
+        buffer.clear();
+    }
+
+    private void finish() throws IOException {
+        transcode(CharBuffer.allocate(0), true);
+
+        CoderResult result;
+
+        do {
+            encoded.clear();
+
+            result = encoder.flush(encoded);
+
+            encoded.flip();
+
+            writeFully(encoded);
+        } while (result.isOverflow());
+    }
+
+    /*
+     * The buffer holds whole records and headers, so it decodes from UTF-8
+     * without a partial character at its end.
+     */
+    private void transcode(CharBuffer chars, boolean endOfInput) throws IOException {
+        if (encoded == null)
+            encoded = ByteBuffer.allocate(2 * BUFFER_CAPACITY);
+
+        CoderResult result;
+
+        do {
+            encoded.clear();
+
+            result = encoder.encode(chars, encoded, endOfInput);
+
+            encoded.flip();
+
+            writeFully(encoded);
+        } while (result.isOverflow());
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+
+    private static boolean isASCIICompatible(Charset charset) {
+        return charset.canEncode() &&
+            Arrays.equals(ASCII_CHARACTERS.getBytes(charset), ASCII_CHARACTERS.getBytes(US_ASCII));
+    }
+
+    private static String ascii() {
+        StringBuilder characters = new StringBuilder(0x80);
+
+        for (char c = 0; c < 0x80; c++)
+            characters.append(c);
+
+        return characters.toString();
+    }
+
+    private static class Instrument {
+
+        final byte[] bytes;
+
+        final DecimalFormat priceFormat;
+        final DecimalFormat sizeFormat;
+
+        final int priceFractionDigits;
+        final int sizeFractionDigits;
+
+        Instrument(byte[] bytes, DecimalFormat priceFormat, DecimalFormat sizeFormat) {
+            this.bytes = bytes;
+
+            this.priceFormat = priceFormat;
+            this.sizeFormat  = sizeFormat;
 
-        config.getSizeFormat(instrument).format(size, buffer, position);
+            this.priceFractionDigits = priceFormat.getMaximumFractionDigits();
+            this.sizeFractionDigits  = sizeFormat.getMaximumFractionDigits();
+        }
 
-        sink.append(buffer);
     }
 
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.tick;
+
+/**
+ * Common definitions.
+ */
+public class Tick {
+
+    static final int MAGIC = 0x5449434b;
+
+    static final short VERSION = 1;
+
+    static final byte RECORD_TYPE_QUOTE = 'Q';
+    static final byte RECORD_TYPE_TRADE = 'T';
+
+    static final int DATE_LENGTH = 10;
+
+    static final int HEADER_LENGTH = 6 + DATE_LENGTH;
+
+    static final int TRAILER_LENGTH = 12;
+
+    static final int INDEX_ENTRY_LENGTH = 37;
+
+    static final int MAX_INSTRUMENT_LENGTH = 255;
+
+    public static final char BUY     = 'B';
+    public static final char SELL    = 'S';
+    public static final char UNKNOWN = ' ';
+
+    private Tick() {
+    }
+
+    /**
+     * A Quote record.
+     */
+    public static class Quote {
+
+        /**
+         * The timestamp in milliseconds.
+         */
+        public long timestampMillis;
+
+        /**
+         * The instrument.
+         */
+        public String instrument;
+
+        /**
+         * The bid price or zero if no bid price is available. The price is
+         * scaled by the number of digits in the fractional part of a price.
+         */
+        public long bidPrice;
+
+        /**
+         * The bid size or zero if no bid size is available. The size is
+         * scaled by the number of digits in the fractional part of a size.
+         */
+        public long bidSize;
+
+        /**
+         * The ask price or zero if no ask price is available. The price is
+         * scaled by the number of digits in the fractional part of a price.
+         */
+        public long askPrice;
+
+        /**
+         * The ask size or zero if no ask size is available. The size is
+         * scaled by the number of digits in the fractional part of a size.
+         */
+        public long askSize;
+    }
+
+    /**
+     * A Trade record.
+     */
+    public static class Trade {
+
+        /**
+         * The timestamp in milliseconds.
+         */
+        public long timestampMillis;
+
+        /**
+         * The instrument.
+         */
+        public String instrument;
+
+        /**
+         * The trade price. The price is scaled by the number of digits in the
+         * fractional part of a price.
+         */
+        public long price;
+
+        /**
+         * The trade size. The size is scaled by the number of digits in the
+         * fractional part of a size.
+         */
+        public long size;
+
+        /**
+         * The side of the incoming order or {@code UNKNOWN} if the side of
+         * the incoming order is not available.
+         */
+        public char side;
+    }
+
+}
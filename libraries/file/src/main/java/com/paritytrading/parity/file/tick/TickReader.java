@@ -0,0 +1,425 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.tick;
+
+import static com.paritytrading.parity.file.tick.Tick.*;
+import static com.paritytrading.parity.file.tick.TickWriter.*;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reader.
+ *
+ * <p>The reader memory-maps the block index and decodes the blocks in
+ * place through a window that it maps over the blocks as a scan reaches
+ * them, so the size of the file is not limited by the size of a mapping. It
+ * reuses one Quote and one Trade record for all scans, so the listeners
+ * must copy any record they want to keep. The reader is not
+ * thread-safe.</p>
+ */
+public class TickReader implements Closeable {
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int windowSize;
+
+    private ByteBuffer window;
+
+    private long windowPosition;
+
+    private final ByteBuffer index;
+
+    private final String date;
+
+    private final String[] instruments;
+
+    private final int[] priceFractionDigits;
+    private final int[] sizeFractionDigits;
+
+    private final Map<String, Integer> instrumentIndices;
+
+    private final int blocks;
+
+    private final int indexPosition;
+
+    private final int[] positions;
+
+    private final long[] values;
+
+    private final Tick.Quote quote;
+    private final Tick.Trade trade;
+
+    /**
+     * Open a reader for the specified file.
+     *
+     * @param file a file
+     * @throws IOException if an I/O error occurs or the file is not a Tick
+     *     file
+     */
+    public TickReader(File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    TickReader(File file, int windowSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        this.windowSize = windowSize;
+
+        try {
+            this.size = channel.size();
+
+            if (size < HEADER_LENGTH + TRAILER_LENGTH)
+                throw new IOException("Not a Tick file: " + file);
+
+            ByteBuffer header  = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+            ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_LENGTH, TRAILER_LENGTH);
+
+            if (header.getInt(0) != MAGIC || trailer.getInt(8) != MAGIC)
+                throw new IOException("Not a Tick file: " + file);
+
+            if (header.getShort(4) != VERSION)
+                throw new IOException("Unsupported version: " + header.getShort(4));
+
+            byte[] bytes = new byte[DATE_LENGTH];
+
+            header.position(6);
+            header.get(bytes);
+
+            this.date = new String(bytes, US_ASCII);
+
+            long indexOffset = trailer.getLong(0);
+
+            if (indexOffset < HEADER_LENGTH || indexOffset > size - TRAILER_LENGTH)
+                throw new IOException("Not a Tick file: " + file);
+
+            if (size - TRAILER_LENGTH - indexOffset > Integer.MAX_VALUE)
+                throw new IOException("Block index too large: " + file);
+
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset,
+                    size - TRAILER_LENGTH - indexOffset);
+
+            int count = index.getInt();
+
+            this.instruments = new String[count];
+
+            this.priceFractionDigits = new int[count];
+            this.sizeFractionDigits  = new int[count];
+
+            this.instrumentIndices = new HashMap<>();
+
+            for (int i = 0; i < count; i++) {
+                bytes = new byte[index.get() & 0xFF];
+                index.get(bytes);
+
+                instruments[i] = new String(bytes, US_ASCII);
+
+                priceFractionDigits[i] = index.get();
+                sizeFractionDigits[i]  = index.get();
+
+                instrumentIndices.put(instruments[i], i);
+            }
+
+            this.blocks = index.getInt();
+
+            this.indexPosition = index.position();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+
+            throw e;
+        }
+
+        this.positions = new int[QUOTE_ENCODINGS.length];
+
+        this.values = new long[QUOTE_ENCODINGS.length];
+
+        this.quote = new Tick.Quote();
+        this.trade = new Tick.Trade();
+    }
+
+    /**
+     * Get the date.
+     *
+     * @return the date as {@code YYYY-MM-DD}
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * Get the instruments.
+     *
+     * @return the instruments
+     */
+    public List<String> getInstruments() {
+        return Collections.unmodifiableList(Arrays.asList(instruments));
+    }
+
+    /**
+     * Get the number of digits in the fractional part of a price.
+     *
+     * @param instrument the instrument
+     * @return the number of digits in the fractional part of a price
+     * @throws IllegalArgumentException if the instrument is not in the file
+     */
+    public int getPriceFractionDigits(String instrument) {
+        return priceFractionDigits[index(instrument)];
+    }
+
+    /**
+     * Get the number of digits in the fractional part of a size.
+     *
+     * @param instrument the instrument
+     * @return the number of digits in the fractional part of a size
+     * @throws IllegalArgumentException if the instrument is not in the file
+     */
+    public int getSizeFractionDigits(String instrument) {
+        return sizeFractionDigits[index(instrument)];
+    }
+
+    /**
+     * Scan the Quote records of an instrument.
+     *
+     * @param instrument the instrument
+     * @param listener a listener for Quote records
+     * @throws IOException if an I/O error occurs
+     */
+    public void scanQuotes(String instrument, QuoteListener listener) throws IOException {
+        scanQuotes(instrument, Long.MIN_VALUE, Long.MAX_VALUE, listener);
+    }
+
+    /**
+     * Scan the Quote records of an instrument within a time range. Blocks
+     * outside the time range are skipped using the block index.
+     *
+     * @param instrument the instrument
+     * @param fromMillis the start of the time range, inclusive
+     * @param toMillis the end of the time range, exclusive
+     * @param listener a listener for Quote records
+     * @throws IOException if an I/O error occurs
+     */
+    public void scanQuotes(String instrument, long fromMillis, long toMillis,
+            QuoteListener listener) throws IOException {
+        Integer index = instrumentIndices.get(instrument);
+        if (index == null)
+            return;
+
+        quote.instrument = instruments[index];
+
+        scan(index, RECORD_TYPE_QUOTE, QUOTE_ENCODINGS, fromMillis, toMillis, listener, null);
+    }
+
+    /**
+     * Scan the Trade records of an instrument.
+     *
+     * @param instrument the instrument
+     * @param listener a listener for Trade records
+     * @throws IOException if an I/O error occurs
+     */
+    public void scanTrades(String instrument, TradeListener listener) throws IOException {
+        scanTrades(instrument, Long.MIN_VALUE, Long.MAX_VALUE, listener);
+    }
+
+    /**
+     * Scan the Trade records of an instrument within a time range. Blocks
+     * outside the time range are skipped using the block index.
+     *
+     * @param instrument the instrument
+     * @param fromMillis the start of the time range, inclusive
+     * @param toMillis the end of the time range, exclusive
+     * @param listener a listener for Trade records
+     * @throws IOException if an I/O error occurs
+     */
+    public void scanTrades(String instrument, long fromMillis, long toMillis,
+            TradeListener listener) throws IOException {
+        Integer index = instrumentIndices.get(instrument);
+        if (index == null)
+            return;
+
+        trade.instrument = instruments[index];
+
+        scan(index, RECORD_TYPE_TRADE, TRADE_ENCODINGS, fromMillis, toMillis, null, listener);
+    }
+
+    /**
+     * Close the underlying channel.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int index(String instrument) {
+        Integer index = instrumentIndices.get(instrument);
+        if (index == null)
+            throw new IllegalArgumentException("Unknown instrument: " + instrument);
+
+        return index;
+    }
+
+    private void scan(int instrument, byte recordType, byte[] encodings, long fromMillis,
+            long toMillis, QuoteListener quoteListener, TradeListener tradeListener) throws IOException {
+        for (int i = 0; i < blocks; i++) {
+            int entry = indexPosition + i * INDEX_ENTRY_LENGTH;
+
+            if (index.getInt(entry) != instrument || index.get(entry + 4) != recordType)
+                continue;
+
+            int  count        = index.getInt(entry + 5);
+            long minTimestamp = index.getLong(entry + 9);
+            long maxTimestamp = index.getLong(entry + 17);
+            long offset       = index.getLong(entry + 25);
+            int  blockLength  = index.getInt(entry + 33);
+
+            if (maxTimestamp < fromMillis || minTimestamp >= toMillis)
+                continue;
+
+            int position = map(offset, blockLength);
+
+            for (int j = 0; j < encodings.length; j++) {
+                positions[j] = position;
+
+                long length = getVarLong(j);
+
+                position = positions[j] + (int)length;
+
+                values[j] = 0;
+            }
+
+            for (int j = 0; j < count; j++) {
+                for (int k = 0; k < encodings.length; k++)
+                    values[k] = decode(encodings[k], k, values[k]);
+
+                if (values[0] < fromMillis || values[0] >= toMillis)
+                    continue;
+
+                if (quoteListener != null) {
+                    quote.timestampMillis = values[0];
+                    quote.bidPrice        = values[1];
+                    quote.bidSize         = values[2];
+                    quote.askPrice        = values[3];
+                    quote.askSize         = values[4];
+
+                    quoteListener.quote(quote);
+                } else {
+                    trade.timestampMillis = values[0];
+                    trade.price           = values[1];
+                    trade.size            = values[2];
+                    trade.side            = (char)values[3];
+
+                    tradeListener.trade(trade);
+                }
+            }
+        }
+    }
+
+    /*
+     * Map the window over the block unless it already covers the block, and
+     * return the position of the block within the window. The window starts
+     * at the block, so a scan moving forward remaps it only once it has
+     * passed the window.
+     */
+    private int map(long offset, int length) throws IOException {
+        if (offset < HEADER_LENGTH || length < 0 || offset + length > size - TRAILER_LENGTH)
+            throw new IOException("Invalid block: " + offset);
+
+        if (window == null || offset < windowPosition || offset + length > windowPosition + window.capacity()) {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    Math.min(Math.max(windowSize, length), size - TRAILER_LENGTH - offset));
+
+            windowPosition = offset;
+        }
+
+        return (int)(offset - windowPosition);
+    }
+
+    private long decode(byte encoding, int column, long previous) {
+        switch (encoding) {
+        case ENCODING_DELTA:
+            long value = getVarLong(column);
+
+            return previous + ((value >>> 1) ^ -(value & 1));
+        case ENCODING_PLAIN:
+            return getVarLong(column);
+        default:
+            return window.get(positions[column]++);
+        }
+    }
+
+    private long getVarLong(int column) {
+        int position = positions[column];
+
+        long value = 0;
+
+        for (int shift = 0; ; shift += 7) {
+            byte b = window.get(position++);
+
+            value |= (long)(b & 0x7F) << shift;
+
+            if (b >= 0)
+                break;
+        }
+
+        positions[column] = position;
+
+        return value;
+    }
+
+    /**
+     * The interface for inbound Quote records.
+     */
+    public interface QuoteListener {
+
+        /**
+         * Receive a Quote record.
+         *
+         * @param record a Quote record
+         */
+        void quote(Tick.Quote record);
+
+    }
+
+    /**
+     * The interface for inbound Trade records.
+     */
+    public interface TradeListener {
+
+        /**
+         * Receive a Trade record.
+         *
+         * @param record a Trade record
+         */
+        void trade(Tick.Trade record);
+
+    }
+
+}
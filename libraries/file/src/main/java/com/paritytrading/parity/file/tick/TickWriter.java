@@ -0,0 +1,421 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.tick;
+
+import static com.paritytrading.parity.file.tick.Tick.*;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A writer.
+ *
+ * <p>The writer collects the records of each instrument and record type into
+ * columns and writes them out as a block once the block is full. The
+ * remaining records and the block index are written when the writer is
+ * closed.</p>
+ */
+public class TickWriter implements Closeable {
+
+    static final int BLOCK_CAPACITY = 4096;
+
+    static final byte ENCODING_DELTA = 'D';
+    static final byte ENCODING_PLAIN = 'P';
+    static final byte ENCODING_BYTE  = 'B';
+
+    static final byte[] QUOTE_ENCODINGS = {
+        ENCODING_DELTA, // timestamp
+        ENCODING_DELTA, // bid price
+        ENCODING_PLAIN, // bid size
+        ENCODING_DELTA, // ask price
+        ENCODING_PLAIN, // ask size
+    };
+
+    static final byte[] TRADE_ENCODINGS = {
+        ENCODING_DELTA, // timestamp
+        ENCODING_DELTA, // price
+        ENCODING_PLAIN, // size
+        ENCODING_BYTE,  // side
+    };
+
+    private static final int DEFAULT_PRICE_FRACTION_DIGITS = 2;
+    private static final int DEFAULT_SIZE_FRACTION_DIGITS  = 0;
+
+    private static final int MAX_VARINT_LENGTH = 10;
+
+    private static final int INITIAL_COLUMN_CAPACITY = 16;
+
+    private static final int COLUMN_CAPACITY = BLOCK_CAPACITY * MAX_VARINT_LENGTH;
+
+    private final WritableByteChannel channel;
+
+    private final Map<String, Instrument> instruments;
+
+    private final List<Instrument> instrumentList;
+
+    private final ByteBuffer block;
+    private final ByteBuffer column;
+
+    private ByteBuffer index;
+
+    private int blocks;
+
+    private long position;
+
+    /**
+     * Create a writer that writes to the specified file.
+     *
+     * @param file a file
+     * @param date the date as {@code YYYY-MM-DD}
+     * @throws IOException if an I/O error occurs
+     */
+    public TickWriter(File file, String date) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), date);
+    }
+
+    /**
+     * Create a writer that writes to the specified output stream.
+     *
+     * @param out an output stream
+     * @param date the date as {@code YYYY-MM-DD}
+     * @throws IOException if an I/O error occurs
+     */
+    public TickWriter(OutputStream out, String date) throws IOException {
+        this(Channels.newChannel(out), date);
+    }
+
+    private TickWriter(WritableByteChannel channel, String date) throws IOException {
+        if (date.length() != DATE_LENGTH)
+            throw new IllegalArgumentException("Invalid date: " + date);
+
+        this.channel = channel;
+
+        this.instruments    = new HashMap<>();
+        this.instrumentList = new ArrayList<>();
+
+        this.block  = ByteBuffer.allocate(QUOTE_ENCODINGS.length * (MAX_VARINT_LENGTH + COLUMN_CAPACITY));
+        this.column = ByteBuffer.allocate(COLUMN_CAPACITY);
+
+        this.index = ByteBuffer.allocate(64 * INDEX_ENTRY_LENGTH);
+
+        block.putInt(MAGIC);
+        block.putShort(VERSION);
+        block.put(date.getBytes(US_ASCII));
+
+        write(block);
+    }
+
+    /**
+     * Set the number of digits in the fractional part of a price and a size
+     * for an instrument. The number of digits must be set before the first
+     * record of the instrument is written. By default, a price has two and a
+     * size has zero digits in the fractional part.
+     *
+     * @param instrument the instrument
+     * @param priceFractionDigits the number of digits in the fractional part
+     *     of a price
+     * @param sizeFractionDigits the number of digits in the fractional part
+     *     of a size
+     */
+    public void setFractionDigits(String instrument, int priceFractionDigits, int sizeFractionDigits) {
+        if (priceFractionDigits < 0 || priceFractionDigits > 18)
+            throw new IllegalArgumentException("Invalid price fraction digits: " + priceFractionDigits);
+
+        if (sizeFractionDigits < 0 || sizeFractionDigits > 18)
+            throw new IllegalArgumentException("Invalid size fraction digits: " + sizeFractionDigits);
+
+        Instrument entry = instrument(instrument);
+
+        if (entry.quotes.blocks > 0 || entry.quotes.count > 0 || entry.trades.blocks > 0 || entry.trades.count > 0)
+            throw new IllegalStateException("Records already written: " + instrument);
+
+        entry.priceFractionDigits = priceFractionDigits;
+        entry.sizeFractionDigits  = sizeFractionDigits;
+    }
+
+    /**
+     * Write a Quote record.
+     *
+     * @param record a Quote record
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Tick.Quote record) throws IOException {
+        Instrument instrument = instrument(record.instrument);
+
+        Columns columns = instrument.quotes;
+
+        int i = columns.add();
+
+        columns.values[0][i] = record.timestampMillis;
+        columns.values[1][i] = record.bidPrice;
+        columns.values[2][i] = record.bidSize;
+        columns.values[3][i] = record.askPrice;
+        columns.values[4][i] = record.askSize;
+
+        if (columns.count == BLOCK_CAPACITY)
+            write(instrument, columns);
+    }
+
+    /**
+     * Write a Trade record.
+     *
+     * @param record a Trade record
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(Tick.Trade record) throws IOException {
+        Instrument instrument = instrument(record.instrument);
+
+        Columns columns = instrument.trades;
+
+        int i = columns.add();
+
+        columns.values[0][i] = record.timestampMillis;
+        columns.values[1][i] = record.price;
+        columns.values[2][i] = record.size;
+        columns.values[3][i] = record.side;
+
+        if (columns.count == BLOCK_CAPACITY)
+            write(instrument, columns);
+    }
+
+    /**
+     * Write the remaining records and the block index and close the
+     * underlying channel.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Instrument instrument : instrumentList) {
+                if (instrument.quotes.count > 0)
+                    write(instrument, instrument.quotes);
+
+                if (instrument.trades.count > 0)
+                    write(instrument, instrument.trades);
+            }
+
+            long indexOffset = position;
+
+            ByteBuffer instrumentTable = ByteBuffer.allocate(4 + instrumentList.size() * (3 + MAX_INSTRUMENT_LENGTH) + 4);
+
+            instrumentTable.putInt(instrumentList.size());
+
+            for (Instrument instrument : instrumentList) {
+                instrumentTable.put((byte)instrument.name.length);
+                instrumentTable.put(instrument.name);
+                instrumentTable.put((byte)instrument.priceFractionDigits);
+                instrumentTable.put((byte)instrument.sizeFractionDigits);
+            }
+
+            instrumentTable.putInt(blocks);
+
+            write(instrumentTable);
+            write(index);
+
+            block.putLong(indexOffset);
+            block.putInt(MAGIC);
+
+            write(block);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private Instrument instrument(String name) {
+        Instrument instrument = instruments.get(name);
+        if (instrument == null) {
+            byte[] bytes = name.getBytes(US_ASCII);
+            if (bytes.length > MAX_INSTRUMENT_LENGTH)
+                throw new IllegalArgumentException("Instrument too long: " + name);
+
+            instrument = new Instrument(bytes, instrumentList.size());
+
+            instruments.put(name, instrument);
+            instrumentList.add(instrument);
+        }
+
+        return instrument;
+    }
+
+    private void write(Instrument instrument, Columns columns) throws IOException {
+        byte[] encodings = columns.encodings;
+
+        int count = columns.count;
+
+        for (int i = 0; i < encodings.length; i++) {
+            encode(encodings[i], columns.values[i], count);
+
+            putVarLong(block, column.remaining());
+            block.put(column);
+        }
+
+        long[] timestamps = columns.values[0];
+
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+
+        for (int i = 0; i < count; i++) {
+            minTimestamp = Math.min(minTimestamp, timestamps[i]);
+            maxTimestamp = Math.max(maxTimestamp, timestamps[i]);
+        }
+
+        if (index.remaining() < INDEX_ENTRY_LENGTH) {
+            ByteBuffer newIndex = ByteBuffer.allocate(2 * index.capacity());
+
+            index.flip();
+            newIndex.put(index);
+
+            index = newIndex;
+        }
+
+        index.putInt(instrument.index);
+        index.put(columns.recordType);
+        index.putInt(count);
+        index.putLong(minTimestamp);
+        index.putLong(maxTimestamp);
+        index.putLong(position);
+        index.putInt(block.position());
+
+        blocks++;
+
+        columns.blocks++;
+        columns.count = 0;
+
+        write(block);
+    }
+
+    private void encode(byte encoding, long[] values, int count) {
+        column.clear();
+
+        switch (encoding) {
+        case ENCODING_DELTA:
+            long previous = 0;
+
+            for (int i = 0; i < count; i++) {
+                putVarLong(column, zigzag(values[i] - previous));
+
+                previous = values[i];
+            }
+            break;
+        case ENCODING_PLAIN:
+            for (int i = 0; i < count; i++)
+                putVarLong(column, values[i]);
+            break;
+        case ENCODING_BYTE:
+            for (int i = 0; i < count; i++)
+                column.put((byte)values[i]);
+            break;
+        }
+
+        column.flip();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        position += buffer.remaining();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte)(value & 0x7F | 0x80));
+
+            value >>>= 7;
+        }
+
+        buffer.put((byte)value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static class Instrument {
+
+        final byte[] name;
+
+        final int index;
+
+        int priceFractionDigits;
+        int sizeFractionDigits;
+
+        final Columns quotes;
+        final Columns trades;
+
+        Instrument(byte[] name, int index) {
+            this.name  = name;
+            this.index = index;
+
+            this.priceFractionDigits = DEFAULT_PRICE_FRACTION_DIGITS;
+            this.sizeFractionDigits  = DEFAULT_SIZE_FRACTION_DIGITS;
+
+            this.quotes = new Columns(RECORD_TYPE_QUOTE, QUOTE_ENCODINGS);
+            this.trades = new Columns(RECORD_TYPE_TRADE, TRADE_ENCODINGS);
+        }
+
+    }
+
+    private static class Columns {
+
+        final byte recordType;
+
+        final byte[] encodings;
+
+        final long[][] values;
+
+        int count;
+
+        int blocks;
+
+        Columns(byte recordType, byte[] encodings) {
+            this.recordType = recordType;
+            this.encodings  = encodings;
+
+            this.values = new long[encodings.length][INITIAL_COLUMN_CAPACITY];
+        }
+
+        int add() {
+            if (count == values[0].length) {
+                for (int i = 0; i < values.length; i++)
+                    values[i] = Arrays.copyOf(values[i], 2 * count);
+            }
+
+            return count++;
+        }
+
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.taq;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Arrays.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TAQReaderTest {
+
+    private static final TAQConfig CONFIG = new TAQConfig.Builder()
+        .setPriceFractionDigits("FOO", 6)
+        .setSizeFractionDigits("FOO", 8)
+        .build();
+
+    private static final String HEADER = "" +
+        "Date\t" +
+        "Timestamp\t" +
+        "Instrument\t" +
+        "Record Type\t" +
+        "Bid Price\t" +
+        "Bid Size\t" +
+        "Ask Price\t" +
+        "Ask Size\t" +
+        "Trade Price\t" +
+        "Trade Size\t" +
+        "Trade Side\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile();
+    }
+
+    @Test
+    public void readWrittenRecords() throws Exception {
+        TAQ.Quote quote = new TAQ.Quote();
+
+        quote.date            = "2016-01-01";
+        quote.timestampMillis = 8 * 60 * 60 * 1000 + 1;
+        quote.instrument      = "BAR";
+        quote.bidPrice        = 100.50;
+        quote.bidSize         = 1000;
+        quote.askPrice        = 0;
+        quote.askSize         = 0;
+
+        TAQ.Trade trade = new TAQ.Trade();
+
+        trade.date            = "2016-01-01";
+        trade.timestampMillis = 8 * 60 * 60 * 1000 + 5 * 1000;
+        trade.instrument      = "FOO";
+        trade.price           = 0.975000;
+        trade.size            = 0.00000100;
+        trade.side            = TAQ.SELL;
+
+        try (TAQWriter writer = new TAQWriter(file, CONFIG)) {
+            writer.write(quote);
+            writer.write(trade);
+
+            trade.side = TAQ.UNKNOWN;
+
+            writer.write(trade);
+        }
+
+        assertEquals(asList(
+                    "Q 2016-01-01 28800001 BAR 100.5 1000.0 0.0 0.0",
+                    "T 2016-01-01 28805000 FOO 0.975 1.0E-6 S",
+                    "T 2016-01-01 28805000 FOO 0.975 1.0E-6  "),
+                read(new TAQReader(file, CONFIG)));
+    }
+
+    @Test
+    public void readInParallel() throws Exception {
+        List<String> expected = new ArrayList<>();
+
+        try (TAQWriter writer = new TAQWriter(file, CONFIG)) {
+            TAQ.Trade trade = new TAQ.Trade();
+
+            for (int i = 0; i < 1000; i++) {
+                trade.date            = "2016-01-01";
+                trade.timestampMillis = 8 * 60 * 60 * 1000 + i;
+                trade.instrument      = i % 3 == 0 ? "FOO" : "BAR";
+                trade.price           = (10000 + i) / 100.0;
+                trade.size            = i;
+                trade.side            = TAQ.BUY;
+
+                writer.write(trade);
+
+                expected.add(toString(trade));
+            }
+        }
+
+        TAQReader reader = new TAQReader(file, CONFIG);
+
+        assertEquals(expected, read(reader));
+
+        for (int chunks : new int[] { 1, 2, 3, 7, 64, 1000 }) {
+            List<List<String>> results = new ArrayList<>();
+
+            for (int i = 0; i < chunks; i++)
+                results.add(new ArrayList<>());
+
+            reader.read(chunks, (i) -> new Listener(results.get(i)));
+
+            List<String> actual = new ArrayList<>();
+
+            for (List<String> result : results)
+                actual.addAll(result);
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void readWithoutRecordSeparatorAtEnd() throws Exception {
+        write(HEADER + "2016-01-01\t08:00:00.000\tBAR\tT\t\t\t\t\t1.25\t100\tB");
+
+        assertEquals(asList("T 2016-01-01 28800000 BAR 1.25 100.0 B"), read(new TAQReader(file)));
+    }
+
+    @Test
+    public void readHeaderWithoutRecordSeparatorAtEnd() throws Exception {
+        write(HEADER.substring(0, HEADER.length() - 1));
+
+        assertEquals(asList(), read(new TAQReader(file)));
+    }
+
+    @Test(expected=IOException.class)
+    public void missingHeader() throws Exception {
+        write("2016-01-01\t08:00:00.000\tBAR\tT\t\t\t\t\t1.25\t100\tB\n" +
+                "2016-01-01\t08:00:00.001\tBAR\tT\t\t\t\t\t1.25\t100\tB\n");
+
+        read(new TAQReader(file));
+    }
+
+    @Test(expected=IOException.class)
+    public void tooManyFractionDigits() throws Exception {
+        write(HEADER + "2016-01-01\t08:00:00.000\tBAR\tT\t\t\t\t\t1.255\t100\tB\n");
+
+        read(new TAQReader(file));
+    }
+
+    @Test(expected=IOException.class)
+    public void missingFields() throws Exception {
+        write(HEADER + "2016-01-01\t08:00:00.000\tBAR\tT\t\t\t\t\t1.25\n");
+
+        read(new TAQReader(file));
+    }
+
+    @Test(expected=IOException.class)
+    public void malformedInParallel() throws Exception {
+        write(HEADER + "2016-01-01\t08:00:00.000\tBAR\tX\t\t\t\t\t\t\t\n");
+
+        new TAQReader(file).read(2, (i) -> new Listener(new ArrayList<>()));
+    }
+
+    private void write(String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(US_ASCII));
+    }
+
+    private static List<String> read(TAQReader reader) throws IOException {
+        List<String> records = new ArrayList<>();
+
+        reader.read(new Listener(records));
+
+        return records;
+    }
+
+    private static String toString(TAQ.Trade trade) {
+        return "T " + trade.date + " " + trade.timestampMillis + " " + trade.instrument + " " +
+            trade.price + " " + trade.size + " " + trade.side;
+    }
+
+    private static class Listener implements TAQListener {
+
+        private final List<String> records;
+
+        Listener(List<String> records) {
+            this.records = records;
+        }
+
+        @Override
+        public void quote(TAQ.Quote quote) {
+            records.add("Q " + quote.date + " " + quote.timestampMillis + " " + quote.instrument +
+                    " " + quote.bidPrice + " " + quote.bidSize + " " + quote.askPrice + " " +
+                    quote.askSize);
+        }
+
+        @Override
+        public void trade(TAQ.Trade trade) {
+            records.add(TAQReaderTest.toString(trade));
+        }
+
+    }
+
+}
@@ -15,9 +15,13 @@
  */
 package com.paritytrading.parity.file.taq;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_16;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayOutputStream;
+import java.time.DateTimeException;
+import java.util.Random;
 import org.junit.Test;
 
 public class TAQWriterTest {
@@ -117,4 +121,126 @@ public class TAQWriterTest {
         }
     }
 
+    @Test
+    public void writeWithEncodingNotCompatibleWithASCII() throws Exception {
+        TAQConfig config = new TAQConfig.Builder()
+            .setEncoding(UTF_16)
+            .build();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual   = new ByteArrayOutputStream();
+
+        try (TAQWriter asciiWriter = new TAQWriter(expected);
+                TAQWriter utf16Writer = new TAQWriter(actual, config)) {
+            TAQ.Trade trade = new TAQ.Trade();
+
+            trade.date       = "2016-01-01";
+            trade.instrument = "FOO";
+            trade.size       = 100;
+            trade.side       = TAQ.BUY;
+
+            for (int i = 0; i < 10000; i++) {
+                trade.timestampMillis = 8 * 60 * 60 * 1000 + i;
+                trade.price           = 100 + i / 100.0;
+
+                asciiWriter.write(trade);
+                utf16Writer.write(trade);
+            }
+        }
+
+        assertEquals(new String(expected.toByteArray(), US_ASCII),
+                new String(actual.toByteArray(), UTF_16));
+    }
+
+    @Test
+    public void timestampAfterEndOfDay() throws Exception {
+        TAQ.Trade trade = new TAQ.Trade();
+
+        trade.date            = "2016-01-01";
+        trade.timestampMillis = (24 + 8) * 60 * 60 * 1000 + 5;
+        trade.instrument      = "FOO";
+        trade.price           = 100.50;
+        trade.size            = 100;
+        trade.side            = TAQ.BUY;
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
+                TAQWriter writer = new TAQWriter(out)) {
+            writer.write(trade);
+            writer.flush();
+
+            String output = out.toString("US-ASCII");
+
+            assertEquals("2016-01-01\t08:00:00.005\tFOO\tT\t\t\t\t\t100.50\t100\tB\n",
+                    output.substring(output.indexOf('\n') + 1));
+        }
+    }
+
+    @Test(expected=DateTimeException.class)
+    public void negativeTimestamp() throws Exception {
+        TAQ.Trade trade = new TAQ.Trade();
+
+        trade.date            = "2016-01-01";
+        trade.timestampMillis = -1;
+        trade.instrument      = "FOO";
+        trade.price           = 100.50;
+        trade.size            = 100;
+        trade.side            = TAQ.BUY;
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
+                TAQWriter writer = new TAQWriter(out)) {
+            writer.write(trade);
+        }
+    }
+
+    @Test
+    public void writeSameDecimalsAsDecimalFormat() throws Exception {
+        double[] values = {
+            0.0, -0.0, 0.125, 0.005, 1.005, 2.675, -0.5, -0.001, 0.1 + 0.2,
+            1e15, 1e17, 123456789.123456789, Double.MIN_VALUE, Double.MAX_VALUE,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        };
+
+        Random random = new Random(1);
+
+        for (int fractionDigits = 0; fractionDigits <= 8; fractionDigits++) {
+            TAQConfig config = new TAQConfig.Builder()
+                .setPriceFractionDigits(fractionDigits)
+                .build();
+
+            for (double value : values)
+                assertSameDecimal(config, value);
+
+            for (int i = 0; i < 10000; i++) {
+                long scaled = random.nextLong() % 10_000_000_000L;
+
+                assertSameDecimal(config, scaled / Math.pow(10, random.nextInt(9)));
+                assertSameDecimal(config, scaled / 100.0 + scaled / 1000.0);
+                assertSameDecimal(config, random.nextDouble() * Math.pow(10, random.nextInt(20) - 5));
+            }
+        }
+    }
+
+    private static void assertSameDecimal(TAQConfig config, double value) throws Exception {
+        TAQ.Trade trade = new TAQ.Trade();
+
+        trade.date            = "2016-01-01";
+        trade.timestampMillis = 0;
+        trade.instrument      = "FOO";
+        trade.price           = value;
+        trade.size            = 1;
+        trade.side            = TAQ.UNKNOWN;
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
+                TAQWriter writer = new TAQWriter(out, config)) {
+            writer.write(trade);
+            writer.flush();
+
+            String[] fields = out.toString("US-ASCII").split("\n")[1].split("\t");
+
+            String expected = config.getPriceFormat("FOO").format(value);
+
+            assertEquals(Double.toString(value), new String(expected.getBytes(US_ASCII), US_ASCII), fields[8]);
+        }
+    }
+
 }
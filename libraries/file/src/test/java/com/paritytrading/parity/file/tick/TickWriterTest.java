@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.tick;
+
+import static java.util.Arrays.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TickWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = folder.newFile();
+    }
+
+    @Test
+    public void readWrittenRecords() throws Exception {
+        try (TickWriter writer = new TickWriter(file, "2016-01-01")) {
+            writer.setFractionDigits("BAR", 6, 8);
+
+            writer.write(quote("FOO", 8 * 60 * 60 * 1000, 10050, 1000, 10075, 250));
+            writer.write(trade("BAR", 8 * 60 * 60 * 1000 + 5, 975000, 100, Tick.SELL));
+            writer.write(quote("FOO", 8 * 60 * 60 * 1000 + 1, 0, 0, 10100, 100));
+            writer.write(trade("FOO", 8 * 60 * 60 * 1000 + 3, 10075, 250, Tick.UNKNOWN));
+        }
+
+        try (TickReader reader = new TickReader(file)) {
+            assertEquals("2016-01-01", reader.getDate());
+            assertEquals(asList("BAR", "FOO"), reader.getInstruments());
+
+            assertEquals(2, reader.getPriceFractionDigits("FOO"));
+            assertEquals(0, reader.getSizeFractionDigits("FOO"));
+            assertEquals(6, reader.getPriceFractionDigits("BAR"));
+            assertEquals(8, reader.getSizeFractionDigits("BAR"));
+
+            assertEquals(asList(
+                        "FOO 28800000 10050 1000 10075 250",
+                        "FOO 28800001 0 0 10100 100"),
+                    quotes(reader, "FOO", Long.MIN_VALUE, Long.MAX_VALUE));
+
+            assertEquals(asList("FOO 28800003 10075 250  "),
+                    trades(reader, "FOO", Long.MIN_VALUE, Long.MAX_VALUE));
+
+            assertEquals(asList("BAR 28800005 975000 100 S"),
+                    trades(reader, "BAR", Long.MIN_VALUE, Long.MAX_VALUE));
+
+            assertEquals(asList(), quotes(reader, "BAR", Long.MIN_VALUE, Long.MAX_VALUE));
+            assertEquals(asList(), quotes(reader, "BAZ", Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void readMultipleBlocks() throws Exception {
+        int records = 3 * TickWriter.BLOCK_CAPACITY + 1;
+
+        List<String> expected = new ArrayList<>();
+
+        try (TickWriter writer = new TickWriter(file, "2016-01-01")) {
+            for (int i = 0; i < records; i++) {
+                Tick.Trade trade = trade("FOO", 1000 + 2 * i, 10000 + (i % 7) - 3, i + 1, i % 2 == 0 ? Tick.BUY : Tick.SELL);
+
+                writer.write(trade);
+                writer.write(quote("BAR", 1000 + i, 0, 0, 0, 0));
+
+                if (trade.timestampMillis >= 10_000 && trade.timestampMillis < 20_000)
+                    expected.add(toString(trade));
+            }
+        }
+
+        try (TickReader reader = new TickReader(file)) {
+            assertEquals(records, trades(reader, "FOO", Long.MIN_VALUE, Long.MAX_VALUE).size());
+            assertEquals(records, quotes(reader, "BAR", Long.MIN_VALUE, Long.MAX_VALUE).size());
+
+            assertEquals(expected, trades(reader, "FOO", 10_000, 20_000));
+        }
+    }
+
+    @Test
+    public void readThroughSmallWindow() throws Exception {
+        int records = 3 * TickWriter.BLOCK_CAPACITY + 1;
+
+        try (TickWriter writer = new TickWriter(file, "2016-01-01")) {
+            for (int i = 0; i < records; i++) {
+                writer.write(trade("FOO", 1000 + i, 10000 + i, i + 1, Tick.BUY));
+                writer.write(quote("BAR", 1000 + i, 0, 0, 0, 0));
+            }
+        }
+
+        try (TickReader expected = new TickReader(file);
+                TickReader actual = new TickReader(file, 1)) {
+            assertEquals(trades(expected, "FOO", Long.MIN_VALUE, Long.MAX_VALUE),
+                    trades(actual, "FOO", Long.MIN_VALUE, Long.MAX_VALUE));
+            assertEquals(quotes(expected, "BAR", Long.MIN_VALUE, Long.MAX_VALUE),
+                    quotes(actual, "BAR", Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void readEmptyFile() throws Exception {
+        new TickWriter(file, "2016-01-01").close();
+
+        try (TickReader reader = new TickReader(file)) {
+            assertEquals("2016-01-01", reader.getDate());
+            assertEquals(asList(), reader.getInstruments());
+
+            assertEquals(asList(), quotes(reader, "FOO", Long.MIN_VALUE, Long.MAX_VALUE));
+            assertEquals(asList(), trades(reader, "FOO", Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void readLongestInstrument() throws Exception {
+        String instrument = String.join("", Collections.nCopies(Tick.MAX_INSTRUMENT_LENGTH, "X"));
+
+        try (TickWriter writer = new TickWriter(file, "2016-01-01")) {
+            writer.write(trade(instrument, 1000, 10000, 100, Tick.BUY));
+        }
+
+        try (TickReader reader = new TickReader(file)) {
+            assertEquals(asList(instrument), reader.getInstruments());
+
+            assertEquals(asList(instrument + " 1000 10000 100 B"),
+                    trades(reader, instrument, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidDate() throws Exception {
+        new TickWriter(file, "20160101").close();
+    }
+
+    @Test(expected=IOException.class)
+    public void notTickFile() throws Exception {
+        new TickReader(file).close();
+    }
+
+    private static List<String> quotes(TickReader reader, String instrument, long fromMillis,
+            long toMillis) throws IOException {
+        List<String> quotes = new ArrayList<>();
+
+        reader.scanQuotes(instrument, fromMillis, toMillis, (quote) -> quotes.add(toString(quote)));
+
+        return quotes;
+    }
+
+    private static List<String> trades(TickReader reader, String instrument, long fromMillis,
+            long toMillis) throws IOException {
+        List<String> trades = new ArrayList<>();
+
+        reader.scanTrades(instrument, fromMillis, toMillis, (trade) -> trades.add(toString(trade)));
+
+        return trades;
+    }
+
+    private static Tick.Quote quote(String instrument, long timestampMillis, long bidPrice,
+            long bidSize, long askPrice, long askSize) {
+        Tick.Quote quote = new Tick.Quote();
+
+        quote.timestampMillis = timestampMillis;
+        quote.instrument      = instrument;
+        quote.bidPrice        = bidPrice;
+        quote.bidSize         = bidSize;
+        quote.askPrice        = askPrice;
+        quote.askSize         = askSize;
+
+        return quote;
+    }
+
+    private static Tick.Trade trade(String instrument, long timestampMillis, long price,
+            long size, char side) {
+        Tick.Trade trade = new Tick.Trade();
+
+        trade.timestampMillis = timestampMillis;
+        trade.instrument      = instrument;
+        trade.price           = price;
+        trade.size            = size;
+        trade.side            = side;
+
+        return trade;
+    }
+
+    private static String toString(Tick.Quote quote) {
+        return quote.instrument + " " + quote.timestampMillis + " " + quote.bidPrice + " " +
+            quote.bidSize + " " + quote.askPrice + " " + quote.askSize;
+    }
+
+    private static String toString(Tick.Trade trade) {
+        return trade.instrument + " " + trade.timestampMillis + " " + trade.price + " " +
+            trade.size + " " + trade.side;
+    }
+
+}
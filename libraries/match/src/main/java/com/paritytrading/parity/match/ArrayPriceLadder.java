@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+/*
+ * Price levels are kept in a circular array indexed by tick. On the buy
+ * side, ticks are negated so that, on both sides, the best price level has
+ * the lowest key and the worst price level the highest key. All price levels
+ * must fit within a window of as many ticks as there are slots.
+ *
+ * A bitmap with one bit per slot tracks the non-empty price levels. When the
+ * best or the worst price level is removed, the bitmap is scanned for the
+ * next non-empty price level.
+ */
+class ArrayPriceLadder implements PriceLadder {
+
+    private final Side side;
+
+    private final long tickSize;
+
+    private final PriceLevel[] levels;
+
+    private final long[] bitmap;
+
+    private final int mask;
+
+    private PriceLevel bestLevel;
+    private PriceLevel worstLevel;
+
+    private long bestKey;
+    private long worstKey;
+
+    ArrayPriceLadder(Side side, long tickSize, int capacity) {
+        if (tickSize <= 0)
+            throw new IllegalArgumentException("Tick size must be positive");
+
+        if (capacity < Long.SIZE || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two and at least " + Long.SIZE);
+
+        this.side     = side;
+        this.tickSize = tickSize;
+        this.levels   = new PriceLevel[capacity];
+        this.bitmap   = new long[capacity / Long.SIZE];
+        this.mask     = capacity - 1;
+    }
+
+    @Override
+    public boolean isValid(long price) {
+        return price % tickSize == 0;
+    }
+
+    @Override
+    public boolean accepts(long price) {
+        if (!isValid(price))
+            return false;
+
+        if (bestLevel == null)
+            return true;
+
+        long key = key(price);
+
+        return Math.max(key, worstKey) - Math.min(key, bestKey) < levels.length;
+    }
+
+    @Override
+    public PriceLevel getBestLevel() {
+        return bestLevel;
+    }
+
+    @Override
+    public PriceLevel getOrAdd(long price) {
+        long key = key(price);
+        int slot = (int)key & mask;
+
+        PriceLevel level = levels[slot];
+
+        if ((bitmap[slot >>> 6] & (1L << slot)) != 0)
+            return level;
+
+        if (level == null) {
+            level = new PriceLevel(side, price);
+            levels[slot] = level;
+        } else {
+            level.init(side, price);
+        }
+
+        bitmap[slot >>> 6] |= 1L << slot;
+
+        if (bestLevel == null) {
+            bestLevel  = level;
+            bestKey    = key;
+            worstLevel = level;
+            worstKey   = key;
+        } else if (key < bestKey) {
+            bestLevel = level;
+            bestKey   = key;
+        } else if (key > worstKey) {
+            worstLevel = level;
+            worstKey   = key;
+        }
+
+        return level;
+    }
+
+    @Override
+    public void remove(PriceLevel level) {
+        int slot = (int)key(level.getPrice()) & mask;
+
+        bitmap[slot >>> 6] &= ~(1L << slot);
+
+        if (level == bestLevel && level == worstLevel) {
+            bestLevel  = null;
+            worstLevel = null;
+        } else if (level == bestLevel) {
+            bestLevel = levels[next(slot)];
+            bestKey   = key(bestLevel.getPrice());
+        } else if (level == worstLevel) {
+            worstLevel = levels[previous(slot)];
+            worstKey   = key(worstLevel.getPrice());
+        }
+    }
+
+    private long key(long price) {
+        long tick = price / tickSize;
+
+        return side == Side.BUY ? -tick : tick;
+    }
+
+    private int next(int slot) {
+        int start = (slot + 1) & mask;
+        int index = start >>> 6;
+
+        long bits = bitmap[index] & (-1L << start);
+
+        while (bits == 0) {
+            index = (index + 1) % bitmap.length;
+            bits  = bitmap[index];
+        }
+
+        return (index << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private int previous(int slot) {
+        int start = (slot - 1) & mask;
+        int index = start >>> 6;
+
+        long bits = bitmap[index] & (-1L >>> (63 - (start & 63)));
+
+        while (bits == 0) {
+            index = (index + bitmap.length - 1) % bitmap.length;
+            bits  = bitmap[index];
+        }
+
+        return (index << 6) + 63 - Long.numberOfLeadingZeros(bits);
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+import static com.paritytrading.parity.match.OrderStore.NONE;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectRBTreeMap;
+import it.unimi.dsi.fastutil.longs.LongComparators;
+
+/**
+ * An order book that keeps its resting orders off-heap.
+ *
+ * <p>The order identifier, remaining quantity, price and side of each
+ * resting order as well as the links between the resting orders at the same
+ * price level are kept in a direct byte buffer, together with an index from
+ * order identifiers to orders. Only the price levels are kept on the heap.
+ * This keeps a deep order book out of the garbage-collected heap.</p>
+ *
+ * <p>The events triggered by this order book are the same as the events
+ * triggered by {@link OrderBook}.</p>
+ */
+public class OffHeapOrderBook {
+
+    private final Levels bids;
+    private final Levels asks;
+
+    private final OrderStore orders;
+
+    private final OrderBookListener listener;
+
+    /**
+     * Create an order book.
+     *
+     * <p>The space for resting orders is doubled whenever it runs out.</p>
+     *
+     * @param listener a listener for outbound events from the order book
+     * @param capacity the initial number of resting orders
+     */
+    public OffHeapOrderBook(OrderBookListener listener, int capacity) {
+        this.bids = new Levels(Side.BUY);
+        this.asks = new Levels(Side.SELL);
+
+        this.orders = new OrderStore(capacity);
+
+        this.listener = listener;
+    }
+
+    /**
+     * Get the number of resting orders in this order book.
+     *
+     * @return the number of resting orders in this order book
+     */
+    public int size() {
+        return orders.size();
+    }
+
+    /**
+     * Enter an order to this order book.
+     *
+     * @param orderId an order identifier
+     * @param side the side
+     * @param price the limit price
+     * @param size the size
+     * @see OrderBook#enter(long, Side, long, long)
+     */
+    public void enter(long orderId, Side side, long price, long size) {
+        if (orders.find(orderId) != NONE)
+            return;
+
+        if (side == Side.BUY)
+            buy(orderId, price, size);
+        else
+            sell(orderId, price, size);
+    }
+
+    private void buy(long orderId, long price, long size) {
+        long remainingQuantity = size;
+
+        Level bestLevel = asks.getBestLevel();
+
+        while (remainingQuantity > 0 && bestLevel != null && bestLevel.price <= price) {
+            remainingQuantity = match(bestLevel, orderId, Side.BUY, remainingQuantity);
+
+            if (bestLevel.isEmpty())
+                asks.remove(bestLevel);
+
+            bestLevel = asks.getBestLevel();
+        }
+
+        if (remainingQuantity > 0) {
+            add(bids, orderId, price, remainingQuantity);
+
+            listener.add(orderId, Side.BUY, price, remainingQuantity);
+        }
+    }
+
+    private void sell(long orderId, long price, long size) {
+        long remainingQuantity = size;
+
+        Level bestLevel = bids.getBestLevel();
+
+        while (remainingQuantity > 0 && bestLevel != null && bestLevel.price >= price) {
+            remainingQuantity = match(bestLevel, orderId, Side.SELL, remainingQuantity);
+
+            if (bestLevel.isEmpty())
+                bids.remove(bestLevel);
+
+            bestLevel = bids.getBestLevel();
+        }
+
+        if (remainingQuantity > 0) {
+            add(asks, orderId, price, remainingQuantity);
+
+            listener.add(orderId, Side.SELL, price, remainingQuantity);
+        }
+    }
+
+    /**
+     * Cancel a quantity of an order in this order book.
+     *
+     * @param orderId the order identifier
+     * @param size the new size
+     * @see OrderBook#cancel(long, long)
+     */
+    public void cancel(long orderId, long size) {
+        int order = orders.find(orderId);
+        if (order == NONE)
+            return;
+
+        long remainingQuantity = orders.getRemainingQuantity(order);
+
+        if (size >= remainingQuantity)
+            return;
+
+        Levels levels = orders.getSide(order) == Side.BUY ? bids : asks;
+
+        Level level = levels.get(orders.getPrice(order));
+
+        if (size > 0) {
+            orders.setRemainingQuantity(order, size);
+
+            level.totalQuantity -= remainingQuantity - size;
+        } else {
+            unlink(level, order);
+
+            if (level.isEmpty())
+                levels.remove(level);
+
+            orders.remove(order);
+        }
+
+        listener.cancel(orderId, remainingQuantity - size, size);
+    }
+
+    private long match(Level level, long orderId, Side side, long quantity) {
+        while (quantity > 0 && !level.isEmpty()) {
+            int resting = level.head;
+
+            long restingId = orders.getId(resting);
+
+            long restingQuantity = orders.getRemainingQuantity(resting);
+
+            if (restingQuantity > quantity) {
+                orders.setRemainingQuantity(resting, restingQuantity - quantity);
+
+                level.totalQuantity -= quantity;
+
+                listener.match(restingId, orderId, side, level.price, quantity, restingQuantity - quantity);
+
+                quantity = 0;
+            } else {
+                unlink(level, resting);
+
+                orders.remove(resting);
+
+                listener.match(restingId, orderId, side, level.price, restingQuantity, 0);
+
+                quantity -= restingQuantity;
+            }
+        }
+
+        return quantity;
+    }
+
+    private void add(Levels levels, long orderId, long price, long size) {
+        Level level = levels.getOrAdd(price);
+
+        int order = orders.add(orderId, levels.side, price, size);
+
+        if (level.tail == NONE) {
+            level.head = order;
+        } else {
+            orders.setNext(level.tail, order);
+            orders.setPrevious(order, level.tail);
+        }
+
+        level.tail = order;
+
+        level.totalQuantity += size;
+    }
+
+    private void unlink(Level level, int order) {
+        int previous = orders.getPrevious(order);
+        int next     = orders.getNext(order);
+
+        if (previous == NONE)
+            level.head = next;
+        else
+            orders.setNext(previous, next);
+
+        if (next == NONE)
+            level.tail = previous;
+        else
+            orders.setPrevious(next, previous);
+
+        level.totalQuantity -= orders.getRemainingQuantity(order);
+    }
+
+    private static class Level {
+
+        final long price;
+
+        int head;
+        int tail;
+
+        long totalQuantity;
+
+        Level(long price) {
+            this.price = price;
+            this.head  = NONE;
+            this.tail  = NONE;
+        }
+
+        boolean isEmpty() {
+            return head == NONE;
+        }
+
+    }
+
+    private static class Levels {
+
+        final Side side;
+
+        private final Long2ObjectRBTreeMap<Level> levels;
+
+        private Level bestLevel;
+
+        Levels(Side side) {
+            this.side   = side;
+            this.levels = new Long2ObjectRBTreeMap<>(side == Side.BUY ?
+                    LongComparators.OPPOSITE_COMPARATOR : LongComparators.NATURAL_COMPARATOR);
+        }
+
+        Level getBestLevel() {
+            return bestLevel;
+        }
+
+        Level get(long price) {
+            return levels.get(price);
+        }
+
+        Level getOrAdd(long price) {
+            Level level = levels.get(price);
+            if (level == null) {
+                level = new Level(price);
+                levels.put(price, level);
+
+                if (bestLevel == null || levels.comparator().compare(price, bestLevel.price) < 0)
+                    bestLevel = level;
+            }
+
+            return level;
+        }
+
+        void remove(Level level) {
+            levels.remove(level.price);
+
+            if (level == bestLevel)
+                bestLevel = levels.isEmpty() ? null : levels.get(levels.firstLongKey());
+        }
+
+    }
+
+}
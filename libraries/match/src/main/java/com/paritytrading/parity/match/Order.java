@@ -17,13 +17,16 @@ package com.paritytrading.parity.match;
 
 class Order {
 
-    private final PriceLevel level;
+    private PriceLevel level;
 
-    private final long id;
+    private long id;
 
     private long remainingQuantity;
 
-    Order(PriceLevel level, long id, long size) {
+    private Order previous;
+    private Order next;
+
+    void init(PriceLevel level, long id, long size) {
         this.level = level;
 
         this.id = id;
@@ -51,4 +54,20 @@ class Order {
         remainingQuantity = size;
     }
 
+    Order getPrevious() {
+        return previous;
+    }
+
+    void setPrevious(Order previous) {
+        this.previous = previous;
+    }
+
+    Order getNext() {
+        return next;
+    }
+
+    void setNext(Order next) {
+        this.next = next;
+    }
+
 }
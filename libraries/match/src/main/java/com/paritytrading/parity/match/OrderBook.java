@@ -16,32 +16,99 @@
 package com.paritytrading.parity.match;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectRBTreeMap;
-import it.unimi.dsi.fastutil.longs.LongComparators;
 
 /**
  * An order book.
  */
 public class OrderBook {
 
-    private final Long2ObjectRBTreeMap<PriceLevel> bids;
-    private final Long2ObjectRBTreeMap<PriceLevel> asks;
+    private final PriceLadder bids;
+    private final PriceLadder asks;
 
     private final Long2ObjectOpenHashMap<Order> orders;
 
+    private final OrderBookPool pool;
+
     private final OrderBookListener listener;
 
+    private PriceLevel recentLevel;
+
     /**
      * Create an order book.
      *
+     * <p>The price levels are kept in a tree. Any price is accepted.</p>
+     *
      * @param listener a listener for outbound events from the order book
      */
     public OrderBook(OrderBookListener listener) {
-        this.bids = new Long2ObjectRBTreeMap<>(LongComparators.OPPOSITE_COMPARATOR);
-        this.asks = new Long2ObjectRBTreeMap<>(LongComparators.NATURAL_COMPARATOR);
+        this(listener, new OrderBookPool(0, 0));
+    }
+
+    /**
+     * Create an order book that takes orders and price levels from a pool.
+     *
+     * <p>The price levels are kept in a tree. Any price is accepted.</p>
+     *
+     * @param listener a listener for outbound events from the order book
+     * @param pool a pool of orders and price levels
+     */
+    public OrderBook(OrderBookListener listener, OrderBookPool pool) {
+        this(listener, new TreePriceLadder(Side.BUY, pool), new TreePriceLadder(Side.SELL, pool), pool);
+    }
+
+    /**
+     * Create an order book for an instrument with a bounded price range.
+     *
+     * <p>The price levels are kept in a circular array indexed by tick. On
+     * each side, the resting orders must fit within a window of at most
+     * the given number of ticks. Entering an order with a price that is not
+     * a multiple of the tick size fails with an {@link
+     * IllegalArgumentException}. So does entering an order whose remaining
+     * quantity would rest outside the window, but only after the order has
+     * been matched: an order that is filled completely is never
+     * rejected.</p>
+     *
+     * @param listener a listener for outbound events from the order book
+     * @param tickSize the tick size
+     * @param capacity the number of ticks on each side, a power of two and
+     *   at least 64
+     * @throws IllegalArgumentException if the tick size is not positive or
+     *   if the capacity is invalid
+     */
+    public OrderBook(OrderBookListener listener, long tickSize, int capacity) {
+        this(listener, tickSize, capacity, new OrderBookPool(0, 0));
+    }
+
+    /**
+     * Create an order book for an instrument with a bounded price range that
+     * takes orders from a pool.
+     *
+     * <p>The price levels are kept in a circular array indexed by tick as
+     * described in {@link #OrderBook(OrderBookListener, long, int)}. They
+     * are allocated once and reused, so they are not taken from the
+     * pool.</p>
+     *
+     * @param listener a listener for outbound events from the order book
+     * @param tickSize the tick size
+     * @param capacity the number of ticks on each side, a power of two and
+     *   at least 64
+     * @param pool a pool of orders
+     * @throws IllegalArgumentException if the tick size is not positive or
+     *   if the capacity is invalid
+     */
+    public OrderBook(OrderBookListener listener, long tickSize, int capacity, OrderBookPool pool) {
+        this(listener, new ArrayPriceLadder(Side.BUY, tickSize, capacity),
+                new ArrayPriceLadder(Side.SELL, tickSize, capacity), pool);
+    }
+
+    private OrderBook(OrderBookListener listener, PriceLadder bids, PriceLadder asks, OrderBookPool pool) {
+        this.bids = bids;
+        this.asks = asks;
 
         this.orders = new Long2ObjectOpenHashMap<>();
 
+        this.pool = pool;
+
         this.listener = listener;
     }
 
@@ -61,33 +128,71 @@ public class OrderBook {
      * @param side the side
      * @param price the limit price
      * @param size the size
+     * @throws IllegalArgumentException if the price is not accepted by this
+     *   order book. If the remaining quantity cannot be added, the Match
+     *   events have already been triggered.
      */
     public void enter(long orderId, Side side, long price, long size) {
         if (orders.containsKey(orderId))
             return;
 
+        if (!(side == Side.BUY ? bids : asks).isValid(price))
+            throw new IllegalArgumentException("Price not accepted: " + price);
+
         if (side == Side.BUY)
             buy(orderId, price, size);
         else
             sell(orderId, price, size);
     }
 
+    /**
+     * Enter orders to this order book.
+     *
+     * <p>The orders are entered in sequence as if by calling {@link
+     * #enter(long, Side, long, long)} for each order, and the events are
+     * triggered in the same order.</p>
+     *
+     * <p>The best price level on each side is kept by its price ladder and
+     * the most recently used price level by this order book, so both stay
+     * cached across the batch: an order is matched against the best level
+     * without a lookup, and successive orders at the same side and price
+     * are added to the same level without a lookup.</p>
+     *
+     * <p>If an order is not accepted, the orders before it have been
+     * entered and the orders after it are not entered.</p>
+     *
+     * @param orderIds the order identifiers
+     * @param sides the sides
+     * @param prices the limit prices
+     * @param sizes the sizes
+     * @param count the number of orders
+     * @throws IllegalArgumentException if a price is not accepted by this
+     *   order book
+     */
+    public void enterAll(long[] orderIds, Side[] sides, long[] prices, long[] sizes, int count) {
+        for (int i = 0; i < count; i++)
+            enter(orderIds[i], sides[i], prices[i], sizes[i]);
+    }
+
     private void buy(long orderId, long price, long size) {
         long remainingQuantity = size;
 
-        PriceLevel bestLevel = getBestLevel(asks);
+        PriceLevel bestLevel = asks.getBestLevel();
 
         while (remainingQuantity > 0 && bestLevel != null && bestLevel.getPrice() <= price) {
-            remainingQuantity = bestLevel.match(orderId, Side.BUY, remainingQuantity, orders, listener);
+            remainingQuantity = bestLevel.match(orderId, Side.BUY, remainingQuantity, orders, pool, listener);
 
             if (bestLevel.isEmpty())
-                asks.remove(bestLevel.getPrice());
+                remove(asks, bestLevel);
 
-            bestLevel = getBestLevel(asks);
+            bestLevel = asks.getBestLevel();
         }
 
         if (remainingQuantity > 0) {
-            orders.put(orderId, add(bids, orderId, Side.BUY, price, remainingQuantity));
+            if (!bids.accepts(price))
+                throw new IllegalArgumentException("Price not accepted: " + price);
+
+            orders.put(orderId, add(bids, Side.BUY, orderId, price, remainingQuantity));
 
             listener.add(orderId, Side.BUY, price, remainingQuantity);
         }
@@ -96,19 +201,22 @@ public class OrderBook {
     private void sell(long orderId, long price, long size) {
         long remainingQuantity = size;
 
-        PriceLevel bestLevel = getBestLevel(bids);
+        PriceLevel bestLevel = bids.getBestLevel();
 
         while (remainingQuantity > 0 && bestLevel != null && bestLevel.getPrice() >= price) {
-            remainingQuantity = bestLevel.match(orderId, Side.SELL, remainingQuantity, orders, listener);
+            remainingQuantity = bestLevel.match(orderId, Side.SELL, remainingQuantity, orders, pool, listener);
 
             if (bestLevel.isEmpty())
-                bids.remove(bestLevel.getPrice());
+                remove(bids, bestLevel);
 
-            bestLevel = getBestLevel(bids);
+            bestLevel = bids.getBestLevel();
         }
 
         if (remainingQuantity > 0) {
-            orders.put(orderId, add(asks, orderId, Side.SELL, price, remainingQuantity));
+            if (!asks.accepts(price))
+                throw new IllegalArgumentException("Price not accepted: " + price);
+
+            orders.put(orderId, add(asks, Side.SELL, orderId, price, remainingQuantity));
 
             listener.add(orderId, Side.SELL, price, remainingQuantity);
         }
@@ -137,31 +245,54 @@ public class OrderBook {
             return;
 
         if (size > 0) {
-            order.resize(size);
+            order.getLevel().resize(order, size);
         } else {
             delete(order);
 
             orders.remove(orderId);
+
+            pool.release(order);
         }
 
         listener.cancel(orderId, remainingQuantity - size, size);
     }
 
-    private PriceLevel getBestLevel(Long2ObjectRBTreeMap<PriceLevel> levels) {
-        if (levels.isEmpty())
-            return null;
-
-        return levels.get(levels.firstLongKey());
+    /**
+     * Cancel quantities of orders in this order book.
+     *
+     * <p>The orders are canceled in sequence as if by calling {@link
+     * #cancel(long, long)} for each order, and the events are triggered in
+     * the same order.</p>
+     *
+     * @param orderIds the order identifiers
+     * @param sizes the new sizes
+     * @param count the number of orders
+     */
+    public void cancelAll(long[] orderIds, long[] sizes, int count) {
+        for (int i = 0; i < count; i++)
+            cancel(orderIds[i], sizes[i]);
     }
 
-    private Order add(Long2ObjectRBTreeMap<PriceLevel> levels, long orderId, Side side, long price, long size) {
-        PriceLevel level = levels.get(price);
-        if (level == null) {
-            level = new PriceLevel(side, price);
-            levels.put(price, level);
+    private Order add(PriceLadder levels, Side side, long orderId, long price, long size) {
+        PriceLevel level = recentLevel;
+
+        /*
+         * The most recently used price level is forgotten when it is
+         * removed, so it is always a live price level of this order book
+         * and can be reused without looking it up. Once removed, a price
+         * level may go back to a pool shared with other order books.
+         */
+        if (level == null || level.getSide() != side || level.getPrice() != price) {
+            level = levels.getOrAdd(price);
+
+            recentLevel = level;
         }
 
-        return level.add(orderId, size);
+        Order order = pool.allocateOrder(level, orderId, size);
+
+        level.add(order);
+
+        return order;
     }
 
     private void delete(Order order) {
@@ -176,12 +307,19 @@ public class OrderBook {
     private void delete(PriceLevel level) {
         switch (level.getSide()) {
         case BUY:
-            bids.remove(level.getPrice());
+            remove(bids, level);
             break;
         case SELL:
-            asks.remove(level.getPrice());
+            remove(asks, level);
             break;
         }
     }
 
+    private void remove(PriceLadder levels, PriceLevel level) {
+        if (level == recentLevel)
+            recentLevel = null;
+
+        levels.remove(level);
+    }
+
 }
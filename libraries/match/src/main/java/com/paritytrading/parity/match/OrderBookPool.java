@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+/**
+ * A pool of preallocated orders and price levels for order books.
+ *
+ * <p>An order book that uses a pool takes orders and price levels from the
+ * pool and returns them to the pool when they are filled, canceled or
+ * emptied. If the pool is exhausted, an order or a price level is allocated
+ * and the corresponding exhaustion count is incremented.</p>
+ *
+ * <p>A pool can be shared by order books that are used from the same
+ * thread.</p>
+ */
+public class OrderBookPool {
+
+    private final Order[] orders;
+
+    private int orderCount;
+
+    private final PriceLevel[] levels;
+
+    private int levelCount;
+
+    private long orderExhaustions;
+    private long levelExhaustions;
+
+    /**
+     * Create a pool.
+     *
+     * @param orderCapacity the number of orders
+     * @param levelCapacity the number of price levels
+     */
+    public OrderBookPool(int orderCapacity, int levelCapacity) {
+        this.orders = new Order[orderCapacity];
+        this.levels = new PriceLevel[levelCapacity];
+
+        for (int i = 0; i < orderCapacity; i++)
+            this.orders[i] = new Order();
+
+        for (int i = 0; i < levelCapacity; i++)
+            this.levels[i] = new PriceLevel(Side.BUY, 0);
+
+        this.orderCount = orderCapacity;
+        this.levelCount = levelCapacity;
+    }
+
+    /**
+     * Get the number of orders available in this pool.
+     *
+     * @return the number of orders available in this pool
+     */
+    public int getAvailableOrders() {
+        return orderCount;
+    }
+
+    /**
+     * Get the number of price levels available in this pool.
+     *
+     * @return the number of price levels available in this pool
+     */
+    public int getAvailableLevels() {
+        return levelCount;
+    }
+
+    /**
+     * Get the number of times an order was allocated because this pool was
+     * exhausted.
+     *
+     * @return the number of order exhaustions
+     */
+    public long getOrderExhaustions() {
+        return orderExhaustions;
+    }
+
+    /**
+     * Get the number of times a price level was allocated because this pool
+     * was exhausted.
+     *
+     * @return the number of price level exhaustions
+     */
+    public long getLevelExhaustions() {
+        return levelExhaustions;
+    }
+
+    Order allocateOrder(PriceLevel level, long id, long size) {
+        Order order;
+
+        if (orderCount > 0) {
+            order = orders[--orderCount];
+            orders[orderCount] = null;
+        } else {
+            order = new Order();
+
+            orderExhaustions++;
+        }
+
+        order.init(level, id, size);
+
+        return order;
+    }
+
+    void release(Order order) {
+        if (orderCount < orders.length)
+            orders[orderCount++] = order;
+    }
+
+    PriceLevel allocateLevel(Side side, long price) {
+        PriceLevel level;
+
+        if (levelCount > 0) {
+            level = levels[--levelCount];
+            levels[levelCount] = null;
+        } else {
+            level = new PriceLevel(side, price);
+
+            levelExhaustions++;
+        }
+
+        level.init(side, price);
+
+        return level;
+    }
+
+    void release(PriceLevel level) {
+        if (levelCount < levels.length)
+            levels[levelCount++] = level;
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * Orders are kept in fixed-size records in a direct byte buffer. A record
+ * is addressed by its slot. The records of resting orders at the same price
+ * level are linked together in time priority, and the records of free slots
+ * are linked together through the next slot field.
+ *
+ * Order identifiers are mapped to slots with an open-addressing hash index
+ * with linear probing, also in a direct byte buffer. An index entry holds
+ * the slot plus one, or zero if the entry is empty. The order identifier of
+ * an entry is read from its record.
+ *
+ * Both buffers are doubled when the store runs out of slots.
+ */
+class OrderStore {
+
+    static final int NONE = -1;
+
+    private static final int ID                 = 0;
+    private static final int REMAINING_QUANTITY = 8;
+    private static final int PRICE              = 16;
+    private static final int PREVIOUS           = 24;
+    private static final int NEXT               = 28;
+    private static final int SIDE               = 32;
+
+    private static final int RECORD_LENGTH = 40;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_LENGTH;
+
+    private static final byte BUY  = 'B';
+    private static final byte SELL = 'S';
+
+    private ByteBuffer records;
+
+    private ByteBuffer index;
+
+    private int capacity;
+
+    private int mask;
+
+    private int size;
+
+    private int highWaterMark;
+
+    private int free;
+
+    OrderStore(int capacity) {
+        allocate(Math.min(Math.max(capacity, 1), MAX_CAPACITY));
+
+        this.size          = 0;
+        this.highWaterMark = 0;
+        this.free          = NONE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int find(long id) {
+        int pos = position(id);
+
+        while (true) {
+            int entry = index.getInt(pos << 2);
+            if (entry == 0)
+                return NONE;
+
+            int slot = entry - 1;
+            if (getId(slot) == id)
+                return slot;
+
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    int add(long id, Side side, long price, long size) {
+        if (this.size == capacity)
+            grow();
+
+        int slot;
+
+        if (free != NONE) {
+            slot = free;
+            free = getNext(slot);
+        } else {
+            slot = highWaterMark++;
+        }
+
+        int offset = slot * RECORD_LENGTH;
+
+        records.putLong(offset + ID, id);
+        records.putLong(offset + REMAINING_QUANTITY, size);
+        records.putLong(offset + PRICE, price);
+        records.putInt(offset + PREVIOUS, NONE);
+        records.putInt(offset + NEXT, NONE);
+        records.put(offset + SIDE, side == Side.BUY ? BUY : SELL);
+
+        insert(slot);
+
+        this.size++;
+
+        return slot;
+    }
+
+    void remove(int slot) {
+        long id = getId(slot);
+
+        int pos = position(id);
+
+        while (index.getInt(pos << 2) != slot + 1)
+            pos = (pos + 1) & mask;
+
+        shift(pos);
+
+        setNext(slot, free);
+        free = slot;
+
+        size--;
+    }
+
+    long getId(int slot) {
+        return records.getLong(slot * RECORD_LENGTH + ID);
+    }
+
+    long getRemainingQuantity(int slot) {
+        return records.getLong(slot * RECORD_LENGTH + REMAINING_QUANTITY);
+    }
+
+    void setRemainingQuantity(int slot, long remainingQuantity) {
+        records.putLong(slot * RECORD_LENGTH + REMAINING_QUANTITY, remainingQuantity);
+    }
+
+    long getPrice(int slot) {
+        return records.getLong(slot * RECORD_LENGTH + PRICE);
+    }
+
+    Side getSide(int slot) {
+        return records.get(slot * RECORD_LENGTH + SIDE) == BUY ? Side.BUY : Side.SELL;
+    }
+
+    int getPrevious(int slot) {
+        return records.getInt(slot * RECORD_LENGTH + PREVIOUS);
+    }
+
+    void setPrevious(int slot, int previous) {
+        records.putInt(slot * RECORD_LENGTH + PREVIOUS, previous);
+    }
+
+    int getNext(int slot) {
+        return records.getInt(slot * RECORD_LENGTH + NEXT);
+    }
+
+    void setNext(int slot, int next) {
+        records.putInt(slot * RECORD_LENGTH + NEXT, next);
+    }
+
+    private int position(long id) {
+        return (int)HashCommon.mix(id) & mask;
+    }
+
+    private void insert(int slot) {
+        int pos = position(getId(slot));
+
+        while (index.getInt(pos << 2) != 0)
+            pos = (pos + 1) & mask;
+
+        index.putInt(pos << 2, slot + 1);
+    }
+
+    private void shift(int pos) {
+        while (true) {
+            int last = pos;
+
+            pos = (last + 1) & mask;
+
+            int entry;
+
+            while (true) {
+                entry = index.getInt(pos << 2);
+                if (entry == 0) {
+                    index.putInt(last << 2, 0);
+                    return;
+                }
+
+                int home = position(getId(entry - 1));
+
+                if (last <= pos ? last >= home || home > pos : last >= home && home > pos)
+                    break;
+
+                pos = (pos + 1) & mask;
+            }
+
+            index.putInt(last << 2, entry);
+        }
+    }
+
+    private void grow() {
+        if (capacity == MAX_CAPACITY)
+            throw new IllegalStateException("Order store full");
+
+        ByteBuffer previous = records;
+
+        allocate((int)Math.min(capacity * 2L, MAX_CAPACITY));
+
+        previous.clear();
+        records.put(previous);
+
+        for (int slot = 0; slot < highWaterMark; slot++)
+            insert(slot);
+    }
+
+    private void allocate(int capacity) {
+        int indexCapacity = HashCommon.arraySize(capacity, 0.75f);
+
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_LENGTH).order(ByteOrder.nativeOrder());
+        this.index   = ByteBuffer.allocateDirect(indexCapacity * 4).order(ByteOrder.nativeOrder());
+
+        this.capacity = capacity;
+        this.mask     = indexCapacity - 1;
+    }
+
+}
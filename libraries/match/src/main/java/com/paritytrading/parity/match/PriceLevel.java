@@ -16,20 +16,28 @@
 package com.paritytrading.parity.match;
 
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import java.util.ArrayList;
 
+/*
+ * The resting orders form an intrusive doubly-linked list in time priority.
+ */
 class PriceLevel {
 
-    private final Side side;
+    private Side side;
+
+    private long price;
 
-    private final long price;
+    private Order head;
+    private Order tail;
 
-    private final ArrayList<Order> orders;
+    private long totalQuantity;
 
     PriceLevel(Side side, long price) {
-        this.side   = side;
-        this.price  = price;
-        this.orders = new ArrayList<>();
+        init(side, price);
+    }
+
+    void init(Side side, long price) {
+        this.side  = side;
+        this.price = price;
     }
 
     Side getSide() {
@@ -40,21 +48,31 @@ class PriceLevel {
         return price;
     }
 
+    long getTotalQuantity() {
+        return totalQuantity;
+    }
+
     boolean isEmpty() {
-        return orders.isEmpty();
+        return head == null;
     }
 
-    Order add(long orderId, long size) {
-        Order order = new Order(this, orderId, size);
+    void add(Order order) {
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.setNext(order);
+            order.setPrevious(tail);
+        }
 
-        orders.add(order);
+        tail = order;
 
-        return order;
+        totalQuantity += order.getRemainingQuantity();
     }
 
-    long match(long orderId, Side side, long quantity, Long2ObjectOpenHashMap<Order> orderIds, OrderBookListener listener) {
-        while (quantity > 0 && !orders.isEmpty()) {
-            Order resting = orders.get(0);
+    long match(long orderId, Side side, long quantity, Long2ObjectOpenHashMap<Order> orderIds,
+            OrderBookPool pool, OrderBookListener listener) {
+        while (quantity > 0 && head != null) {
+            Order resting = head;
 
             long restingId = resting.getId();
 
@@ -63,14 +81,18 @@ class PriceLevel {
             if (restingQuantity > quantity) {
                 resting.reduce(quantity);
 
+                totalQuantity -= quantity;
+
                 listener.match(restingId, orderId, side, price, quantity, resting.getRemainingQuantity());
 
                 quantity = 0;
             } else {
-                orders.remove(0);
+                delete(resting);
 
                 orderIds.remove(restingId);
 
+                pool.release(resting);
+
                 listener.match(restingId, orderId, side, price, restingQuantity, 0);
 
                 quantity -= restingQuantity;
@@ -80,8 +102,30 @@ class PriceLevel {
         return quantity;
     }
 
+    void resize(Order order, long size) {
+        totalQuantity -= order.getRemainingQuantity() - size;
+
+        order.resize(size);
+    }
+
     void delete(Order order) {
-        orders.remove(order);
+        Order previous = order.getPrevious();
+        Order next     = order.getNext();
+
+        if (previous == null)
+            head = next;
+        else
+            previous.setNext(next);
+
+        if (next == null)
+            tail = previous;
+        else
+            next.setPrevious(previous);
+
+        order.setPrevious(null);
+        order.setNext(null);
+
+        totalQuantity -= order.getRemainingQuantity();
     }
 
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectRBTreeMap;
+import it.unimi.dsi.fastutil.longs.LongComparators;
+
+class TreePriceLadder implements PriceLadder {
+
+    private final Side side;
+
+    private final Long2ObjectRBTreeMap<PriceLevel> levels;
+
+    private final OrderBookPool pool;
+
+    private PriceLevel bestLevel;
+
+    TreePriceLadder(Side side, OrderBookPool pool) {
+        this.side   = side;
+        this.pool   = pool;
+        this.levels = new Long2ObjectRBTreeMap<>(side == Side.BUY ?
+                LongComparators.OPPOSITE_COMPARATOR : LongComparators.NATURAL_COMPARATOR);
+    }
+
+    @Override
+    public boolean isValid(long price) {
+        return true;
+    }
+
+    @Override
+    public boolean accepts(long price) {
+        return true;
+    }
+
+    @Override
+    public PriceLevel getBestLevel() {
+        return bestLevel;
+    }
+
+    @Override
+    public PriceLevel getOrAdd(long price) {
+        PriceLevel level = levels.get(price);
+        if (level == null) {
+            level = pool.allocateLevel(side, price);
+            levels.put(price, level);
+
+            if (bestLevel == null || levels.comparator().compare(price, bestLevel.getPrice()) < 0)
+                bestLevel = level;
+        }
+
+        return level;
+    }
+
+    @Override
+    public void remove(PriceLevel level) {
+        levels.remove(level.getPrice());
+
+        if (level == bestLevel)
+            bestLevel = levels.isEmpty() ? null : levels.get(levels.firstLongKey());
+
+        pool.release(level);
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArrayPriceLadderTest {
+
+    private ArrayPriceLadder bids;
+    private ArrayPriceLadder asks;
+
+    @Before
+    public void setUp() {
+        bids = new ArrayPriceLadder(Side.BUY,  10, 128);
+        asks = new ArrayPriceLadder(Side.SELL, 10, 128);
+    }
+
+    @Test
+    public void bestBid() {
+        bids.getOrAdd(1000);
+        bids.getOrAdd(1020);
+        bids.getOrAdd(990);
+
+        assertEquals(1020, bids.getBestLevel().getPrice());
+    }
+
+    @Test
+    public void bestAsk() {
+        asks.getOrAdd(1000);
+        asks.getOrAdd(1020);
+        asks.getOrAdd(990);
+
+        assertEquals(990, asks.getBestLevel().getPrice());
+    }
+
+    @Test
+    public void sameLevel() {
+        PriceLevel level = asks.getOrAdd(1000);
+
+        assertSame(level, asks.getOrAdd(1000));
+    }
+
+    @Test
+    public void removeBestBid() {
+        PriceLevel best = bids.getOrAdd(1000);
+        bids.getOrAdd(500);
+
+        bids.remove(best);
+
+        assertEquals(500, bids.getBestLevel().getPrice());
+    }
+
+    @Test
+    public void removeBestAsk() {
+        PriceLevel best = asks.getOrAdd(500);
+        asks.getOrAdd(1000);
+
+        asks.remove(best);
+
+        assertEquals(1000, asks.getBestLevel().getPrice());
+    }
+
+    @Test
+    public void removeAll() {
+        PriceLevel first  = asks.getOrAdd(500);
+        PriceLevel second = asks.getOrAdd(1000);
+
+        asks.remove(second);
+        asks.remove(first);
+
+        assertNull(asks.getBestLevel());
+    }
+
+    @Test
+    public void wrapAround() {
+        asks.getOrAdd(1270);
+        PriceLevel best = asks.getOrAdd(1200);
+        asks.getOrAdd(1290);
+
+        asks.remove(best);
+
+        assertEquals(1270, asks.getBestLevel().getPrice());
+    }
+
+    @Test
+    public void slide() {
+        for (long price = 1000; price < 100000; price += 10) {
+            PriceLevel level = asks.getOrAdd(price);
+
+            assertSame(level, asks.getBestLevel());
+
+            assertTrue(asks.accepts(price + 10));
+
+            asks.getOrAdd(price + 10);
+
+            asks.remove(level);
+        }
+
+        assertEquals(100000, asks.getBestLevel().getPrice());
+    }
+
+    @Test
+    public void window() {
+        bids.getOrAdd(10000);
+
+        assertTrue(bids.accepts(10000 + 127 * 10));
+        assertTrue(bids.accepts(10000 - 127 * 10));
+
+        assertFalse(bids.accepts(10000 + 128 * 10));
+        assertFalse(bids.accepts(10000 - 128 * 10));
+    }
+
+    @Test
+    public void windowAfterRemovingWorst() {
+        asks.getOrAdd(10000);
+        PriceLevel worst = asks.getOrAdd(11000);
+
+        assertFalse(asks.accepts(9500));
+
+        asks.remove(worst);
+
+        assertTrue(asks.accepts(9500));
+    }
+
+    @Test
+    public void tickSize() {
+        assertTrue(asks.accepts(1000));
+
+        assertFalse(asks.accepts(1005));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new ArrayPriceLadder(Side.BUY, 1, 100);
+    }
+
+}
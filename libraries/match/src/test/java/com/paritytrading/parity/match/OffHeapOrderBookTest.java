@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class OffHeapOrderBookTest {
+
+    private static final int OPERATIONS = 100_000;
+
+    @Test
+    public void shallowBook() {
+        check(1, 10, 1_000);
+    }
+
+    @Test
+    public void deepBook() {
+        check(2, 500, 10_000);
+    }
+
+    @Test
+    public void manyOrderIds() {
+        check(3, 100, 1_000_000);
+    }
+
+    @Test
+    public void size() {
+        OffHeapOrderBook book = new OffHeapOrderBook(new OrderBookEvents(), 1);
+
+        for (long orderId = 1; orderId <= 100; orderId++)
+            book.enter(orderId, Side.BUY, 1000 - orderId, 100);
+
+        assertEquals(100, book.size());
+
+        for (long orderId = 1; orderId <= 50; orderId++)
+            book.cancel(orderId, 0);
+
+        assertEquals(50, book.size());
+    }
+
+    private void check(long seed, int priceLevels, int orderIds) {
+        Random random = new Random(seed);
+
+        OrderBookEvents expected = new OrderBookEvents();
+        OrderBookEvents actual   = new OrderBookEvents();
+
+        OrderBook        expectedBook = new OrderBook(expected);
+        OffHeapOrderBook actualBook   = new OffHeapOrderBook(actual, 1);
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            long orderId = 1 + random.nextInt(orderIds);
+
+            if (random.nextInt(3) == 0) {
+                long size = random.nextBoolean() ? 0 : random.nextInt(200);
+
+                expectedBook.cancel(orderId, size);
+                actualBook.cancel(orderId, size);
+            } else {
+                Side side  = random.nextBoolean() ? Side.BUY : Side.SELL;
+                long price = 1000 + random.nextInt(priceLevels) - priceLevels / 2;
+                long size  = 1 + random.nextInt(200);
+
+                expectedBook.enter(orderId, side, price, size);
+                actualBook.enter(orderId, side, price, size);
+            }
+        }
+
+        assertEquals(expected.collect(), actual.collect());
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+import static com.paritytrading.parity.match.OrderBookEvents.*;
+import static java.util.Arrays.*;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OrderBookPoolTest {
+
+    private OrderBookPool pool;
+
+    private OrderBook book;
+
+    @Before
+    public void setUp() {
+        pool = new OrderBookPool(2, 2);
+        book = new OrderBook(new OrderBookEvents(), pool);
+    }
+
+    @Test
+    public void allocate() {
+        book.enter(1, Side.BUY, 1000, 100);
+
+        assertEquals(1, pool.getAvailableOrders());
+        assertEquals(1, pool.getAvailableLevels());
+    }
+
+    @Test
+    public void releaseOnCancel() {
+        book.enter(1, Side.BUY, 1000, 100);
+        book.cancel(1, 0);
+
+        assertEquals(2, pool.getAvailableOrders());
+        assertEquals(2, pool.getAvailableLevels());
+    }
+
+    @Test
+    public void keepOnPartialCancel() {
+        book.enter(1, Side.BUY, 1000, 100);
+        book.cancel(1, 50);
+
+        assertEquals(1, pool.getAvailableOrders());
+        assertEquals(1, pool.getAvailableLevels());
+    }
+
+    @Test
+    public void releaseOnFill() {
+        book.enter(1, Side.BUY,  1000, 100);
+        book.enter(2, Side.SELL, 1000, 100);
+
+        assertEquals(2, pool.getAvailableOrders());
+        assertEquals(2, pool.getAvailableLevels());
+    }
+
+    @Test
+    public void exhaustion() {
+        book.enter(1, Side.BUY, 1000, 100);
+        book.enter(2, Side.BUY,  999, 100);
+        book.enter(3, Side.BUY,  998, 100);
+
+        assertEquals(0, pool.getAvailableOrders());
+        assertEquals(0, pool.getAvailableLevels());
+
+        assertEquals(1, pool.getOrderExhaustions());
+        assertEquals(1, pool.getLevelExhaustions());
+    }
+
+    @Test
+    public void releaseAfterExhaustion() {
+        book.enter(1, Side.BUY, 1000, 100);
+        book.enter(2, Side.BUY,  999, 100);
+        book.enter(3, Side.BUY,  998, 100);
+
+        book.cancel(1, 0);
+        book.cancel(2, 0);
+        book.cancel(3, 0);
+
+        assertEquals(2, pool.getAvailableOrders());
+        assertEquals(2, pool.getAvailableLevels());
+    }
+
+    @Test
+    public void shareBetweenBooks() {
+        OrderBookEvents otherEvents = new OrderBookEvents();
+
+        OrderBook other = new OrderBook(otherEvents, pool);
+
+        book.enter(1, Side.BUY, 1000, 100);
+        book.cancel(1, 0);
+
+        other.enter(2, Side.BUY, 1000, 100);
+
+        book.enter(3, Side.BUY, 1000, 100);
+
+        other.enter(4, Side.SELL, 1000, 200);
+
+        Event otherBid = new Add(2, Side.BUY, 1000, 100);
+        Event match    = new Match(2, 4, Side.SELL, 1000, 100, 0);
+        Event otherAsk = new Add(4, Side.SELL, 1000, 100);
+
+        assertEquals(asList(otherBid, match, otherAsk), otherEvents.collect());
+    }
+
+}
@@ -18,12 +18,26 @@ package com.paritytrading.parity.match;
 import static com.paritytrading.parity.match.OrderBookEvents.*;
 import static java.util.Arrays.*;
 import static org.junit.Assert.*;
+import static org.junit.Assume.*;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
 
+@RunWith(Parameterized.class)
 public class OrderBookTest {
 
+    @Parameters(name = "{0}")
+    public static Iterable<Object> configurations() {
+        return asList("tree", "array", "pooled-tree", "pooled-array");
+    }
+
+    @Parameter
+    public String configuration;
+
     private OrderBookEvents events;
 
     private OrderBook book;
@@ -31,7 +45,22 @@ public class OrderBookTest {
     @Before
     public void setUp() {
         events = new OrderBookEvents();
-        book   = new OrderBook(events);
+        book   = book(configuration, events);
+    }
+
+    private static OrderBook book(String configuration, OrderBookEvents events) {
+        switch (configuration) {
+        case "tree":
+            return new OrderBook(events);
+        case "array":
+            return new OrderBook(events, 1, 1024);
+        case "pooled-tree":
+            return new OrderBook(events, new OrderBookPool(2, 2));
+        case "pooled-array":
+            return new OrderBook(events, 1, 1024, new OrderBookPool(2, 0));
+        default:
+            throw new IllegalArgumentException(configuration);
+        }
     }
 
     @Test
@@ -221,6 +250,111 @@ public class OrderBookTest {
         assertEquals(asList(bid, cancel), events.collect());
     }
 
+    @Test
+    public void enterAll() {
+        long[] orderIds = { 1, 2, 3, 4 };
+        Side[] sides    = { Side.SELL, Side.SELL, Side.SELL, Side.BUY };
+        long[] prices   = { 1000, 1001, 999, 1000 };
+        long[] sizes    = { 100, 100, 50, 200 };
+
+        book.enterAll(orderIds, sides, prices, sizes, 4);
+
+        Event firstAsk  = new Add(1, Side.SELL, 1000, 100);
+        Event secondAsk = new Add(2, Side.SELL, 1001, 100);
+        Event thirdAsk  = new Add(3, Side.SELL,  999,  50);
+
+        Event firstMatch  = new Match(3, 4, Side.BUY,  999,  50, 0);
+        Event secondMatch = new Match(1, 4, Side.BUY, 1000, 100, 0);
+
+        Event bid = new Add(4, Side.BUY, 1000, 50);
+
+        assertEquals(asList(firstAsk, secondAsk, thirdAsk, firstMatch, secondMatch, bid),
+                events.collect());
+    }
+
+    @Test
+    public void enterAllToSameLevel() {
+        long[] orderIds = { 1, 2, 3 };
+        Side[] sides    = { Side.BUY, Side.BUY, Side.SELL };
+        long[] prices   = { 1000, 1000, 1000 };
+        long[] sizes    = { 100, 100, 150 };
+
+        book.enterAll(orderIds, sides, prices, sizes, 3);
+
+        Event firstBid  = new Add(1, Side.BUY, 1000, 100);
+        Event secondBid = new Add(2, Side.BUY, 1000, 100);
+
+        Event firstMatch  = new Match(1, 3, Side.SELL, 1000, 100,  0);
+        Event secondMatch = new Match(2, 3, Side.SELL, 1000,  50, 50);
+
+        assertEquals(asList(firstBid, secondBid, firstMatch, secondMatch), events.collect());
+    }
+
+    @Test
+    public void enterAllCount() {
+        long[] orderIds = { 1, 2 };
+        Side[] sides    = { Side.BUY, Side.SELL };
+        long[] prices   = { 1000, 1000 };
+        long[] sizes    = { 100, 100 };
+
+        book.enterAll(orderIds, sides, prices, sizes, 1);
+
+        Event bid = new Add(1, Side.BUY, 1000, 100);
+
+        assertEquals(asList(bid), events.collect());
+    }
+
+    @Test
+    public void cancelAll() {
+        book.enter(1, Side.BUY, 1000, 100);
+        book.enter(2, Side.BUY,  999, 100);
+
+        long[] orderIds = { 1, 2, 3 };
+        long[] sizes    = { 0, 75, 0 };
+
+        book.cancelAll(orderIds, sizes, 3);
+
+        Event firstBid  = new Add(1, Side.BUY, 1000, 100);
+        Event secondBid = new Add(2, Side.BUY,  999, 100);
+
+        Event firstCancel  = new Cancel(1, 100,  0);
+        Event secondCancel = new Cancel(2,  25, 75);
+
+        assertEquals(asList(firstBid, secondBid, firstCancel, secondCancel), events.collect());
+    }
+
+    @Test
+    public void cancelAllAndEnterAllToSameLevel() {
+        long[] orderIds = { 1, 2 };
+        Side[] sides    = { Side.BUY, Side.BUY };
+        long[] prices   = { 1000, 1000 };
+        long[] sizes    = { 100, 100 };
+
+        book.enterAll(orderIds, sides, prices, sizes, 2);
+        book.cancelAll(orderIds, new long[] { 0, 0 }, 2);
+
+        orderIds[0] = 3;
+        orderIds[1] = 4;
+
+        book.enterAll(orderIds, sides, prices, sizes, 2);
+        book.enter(5, Side.SELL, 1000, 200);
+
+        Event firstBid  = new Add(1, Side.BUY, 1000, 100);
+        Event secondBid = new Add(2, Side.BUY, 1000, 100);
+
+        Event firstCancel  = new Cancel(1, 100, 0);
+        Event secondCancel = new Cancel(2, 100, 0);
+
+        Event thirdBid  = new Add(3, Side.BUY, 1000, 100);
+        Event fourthBid = new Add(4, Side.BUY, 1000, 100);
+
+        Event firstMatch  = new Match(3, 5, Side.SELL, 1000, 100, 0);
+        Event secondMatch = new Match(4, 5, Side.SELL, 1000, 100, 0);
+
+        assertEquals(asList(firstBid, secondBid, firstCancel, secondCancel, thirdBid, fourthBid,
+                    firstMatch, secondMatch), events.collect());
+    }
+
     @Test
     public void reuseOrderId() {
         book.enter(1, Side.BUY,  1000, 100);
@@ -234,4 +368,40 @@ public class OrderBookTest {
         assertEquals(asList(firstBid, match, secondBid), events.collect());
     }
 
+    @Test
+    public void fillOutsideWindow() {
+        book.enter(1, Side.BUY,   100, 100);
+        book.enter(2, Side.SELL, 1000, 100);
+        book.enter(3, Side.BUY,  5000, 100);
+
+        Event bid   = new Add(1, Side.BUY,   100, 100);
+        Event ask   = new Add(2, Side.SELL, 1000, 100);
+        Event match = new Match(2, 3, Side.BUY, 1000, 100, 0);
+
+        assertEquals(asList(bid, ask, match), events.collect());
+    }
+
+    @Test
+    public void restOutsideWindow() {
+        assumeTrue(configuration.endsWith("array"));
+
+        book.enter(1, Side.BUY,   100, 100);
+        book.enter(2, Side.SELL, 1000, 100);
+
+        try {
+            book.enter(3, Side.BUY, 5000, 150);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+
+        book.enter(4, Side.SELL, 100, 100);
+
+        Event bid         = new Add(1, Side.BUY,   100, 100);
+        Event ask         = new Add(2, Side.SELL, 1000, 100);
+        Event firstMatch  = new Match(2, 3, Side.BUY, 1000, 100, 0);
+        Event secondMatch = new Match(1, 4, Side.SELL, 100, 100, 0);
+
+        assertEquals(asList(bid, ask, firstMatch, secondMatch), events.collect());
+    }
+
 }
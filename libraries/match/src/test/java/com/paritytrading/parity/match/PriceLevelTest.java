@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match;
+
+import static com.paritytrading.parity.match.OrderBookEvents.*;
+import static java.util.Arrays.*;
+import static org.junit.Assert.*;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PriceLevelTest {
+
+    private OrderBookEvents events;
+
+    private Long2ObjectOpenHashMap<Order> orders;
+
+    private OrderBookPool pool;
+
+    private PriceLevel level;
+
+    @Before
+    public void setUp() {
+        events = new OrderBookEvents();
+        orders = new Long2ObjectOpenHashMap<>();
+        pool   = new OrderBookPool(0, 0);
+        level  = new PriceLevel(Side.SELL, 1000);
+    }
+
+    @Test
+    public void totalQuantity() {
+        add(1, 100);
+        add(2, 200);
+
+        assertEquals(300, level.getTotalQuantity());
+    }
+
+    @Test
+    public void deleteFirst() {
+        Order first = add(1, 100);
+        add(2, 200);
+        add(3, 300);
+
+        level.delete(first);
+
+        assertEquals(500, level.getTotalQuantity());
+
+        match(500);
+
+        assertEquals(asList(new Match(2, 4, Side.BUY, 1000, 200, 0),
+                    new Match(3, 4, Side.BUY, 1000, 300, 0)), events.collect());
+    }
+
+    @Test
+    public void deleteMiddle() {
+        add(1, 100);
+        Order second = add(2, 200);
+        add(3, 300);
+
+        level.delete(second);
+
+        assertEquals(400, level.getTotalQuantity());
+
+        match(400);
+
+        assertEquals(asList(new Match(1, 4, Side.BUY, 1000, 100, 0),
+                    new Match(3, 4, Side.BUY, 1000, 300, 0)), events.collect());
+    }
+
+    @Test
+    public void deleteLast() {
+        add(1, 100);
+        Order second = add(2, 200);
+
+        level.delete(second);
+
+        add(3, 300);
+
+        match(400);
+
+        assertEquals(asList(new Match(1, 4, Side.BUY, 1000, 100, 0),
+                    new Match(3, 4, Side.BUY, 1000, 300, 0)), events.collect());
+    }
+
+    @Test
+    public void deleteAll() {
+        Order first  = add(1, 100);
+        Order second = add(2, 200);
+
+        level.delete(second);
+        level.delete(first);
+
+        assertTrue(level.isEmpty());
+        assertEquals(0, level.getTotalQuantity());
+    }
+
+    @Test
+    public void resize() {
+        Order first = add(1, 100);
+        add(2, 200);
+
+        level.resize(first, 25);
+
+        assertEquals(225, level.getTotalQuantity());
+    }
+
+    @Test
+    public void partialMatch() {
+        add(1, 100);
+        add(2, 200);
+
+        assertEquals(0, match(150));
+
+        assertEquals(150, level.getTotalQuantity());
+
+        assertEquals(asList(new Match(1, 4, Side.BUY, 1000, 100,   0),
+                    new Match(2, 4, Side.BUY, 1000,  50, 150)), events.collect());
+    }
+
+    @Test
+    public void fullMatch() {
+        add(1, 100);
+
+        assertEquals(50, match(150));
+
+        assertTrue(level.isEmpty());
+        assertTrue(orders.isEmpty());
+    }
+
+    private Order add(long orderId, long size) {
+        Order order = pool.allocateOrder(level, orderId, size);
+
+        level.add(order);
+
+        orders.put(orderId, order);
+
+        return order;
+    }
+
+    private long match(long quantity) {
+        return level.match(4, Side.BUY, quantity, orders, pool, events);
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A strategy for a thread to wait when it has no work, such as a pipeline
+ * stage with an empty ring buffer or a spinning event loop.
+ */
+public enum WaitStrategy {
+
+    /**
+     * Return immediately. Lowest latency, but occupies a core.
+     */
+    BUSY_SPIN {
+
+        @Override
+        public void idle() {
+        }
+
+    },
+
+    /**
+     * Yield the processor to other threads.
+     */
+    YIELD {
+
+        @Override
+        public void idle() {
+            Thread.yield();
+        }
+
+    },
+
+    /**
+     * Park the thread for a short while. Least processor usage, but adds
+     * the scheduler's wake-up latency.
+     */
+    PARK {
+
+        @Override
+        public void idle() {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+
+    };
+
+    private static final long PARK_NANOS = 1000;
+
+    /**
+     * Wait once because there is no work.
+     */
+    public abstract void idle();
+
+    /**
+     * Parse a wait strategy.
+     *
+     * @param value "busy-spin", "yield" or "park"
+     * @return the wait strategy
+     * @throws IllegalArgumentException if the value is unknown
+     */
+    public static WaitStrategy parse(String value) {
+        switch (value) {
+        case "busy-spin":
+            return BUSY_SPIN;
+        case "yield":
+            return YIELD;
+        case "park":
+            return PARK;
+        default:
+            throw new IllegalArgumentException("Unknown wait strategy: " + value);
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.perf;
+
+import com.paritytrading.parity.file.taq.TAQ;
+import com.paritytrading.parity.file.taq.TAQConfig;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+/*
+ * The TAQ writer before it encoded the records directly into bytes. It
+ * formats the prices and sizes with the decimal formats and writes the
+ * records through a print writer. The benchmarks compare the TAQ writer
+ * to it, in speed and in output.
+ */
+class LegacyTAQWriter implements Closeable, Flushable {
+
+    private static final char FIELD_SEPARATOR  = '\t';
+    private static final char RECORD_SEPARATOR = '\n';
+
+    private static final char RECORD_TYPE_QUOTE = 'Q';
+    private static final char RECORD_TYPE_TRADE = 'T';
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private static final int BUFFER_CAPACITY = 32;
+
+    private static final String HEADER = "" +
+        "Date"        + FIELD_SEPARATOR +
+        "Timestamp"   + FIELD_SEPARATOR +
+        "Instrument"  + FIELD_SEPARATOR +
+        "Record Type" + FIELD_SEPARATOR +
+        "Bid Price"   + FIELD_SEPARATOR +
+        "Bid Size"    + FIELD_SEPARATOR +
+        "Ask Price"   + FIELD_SEPARATOR +
+        "Ask Size"    + FIELD_SEPARATOR +
+        "Trade Price" + FIELD_SEPARATOR +
+        "Trade Size"  + FIELD_SEPARATOR +
+        "Trade Side"  + RECORD_SEPARATOR;
+
+    private final TAQConfig config;
+
+    private final FieldPosition position;
+
+    private final StringBuffer buffer;
+
+    private final PrintWriter sink;
+
+    LegacyTAQWriter(File file, TAQConfig config) throws FileNotFoundException {
+        this(new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)),
+                    config.getEncoding()), config);
+    }
+
+    private LegacyTAQWriter(Writer writer, TAQConfig config) {
+        this.config = config;
+
+        this.position = new FieldPosition(NumberFormat.INTEGER_FIELD);
+
+        this.buffer = new StringBuffer(BUFFER_CAPACITY);
+
+        this.sink = new PrintWriter(writer);
+
+        sink.print(HEADER);
+    }
+
+    void write(TAQ.Trade record) {
+        sink.print(record.date);
+        sink.print(FIELD_SEPARATOR);
+        writeTimestamp(record.timestampMillis);
+        sink.print(FIELD_SEPARATOR);
+        sink.print(record.instrument);
+        sink.print(FIELD_SEPARATOR);
+        sink.print(RECORD_TYPE_TRADE);
+        sink.print(FIELD_SEPARATOR);
+        // bid price
+        sink.print(FIELD_SEPARATOR);
+        // bid size
+        sink.print(FIELD_SEPARATOR);
+        // ask price
+        sink.print(FIELD_SEPARATOR);
+        // ask size
+        sink.print(FIELD_SEPARATOR);
+        writePrice(record.instrument, record.price);
+        sink.print(FIELD_SEPARATOR);
+        writeSize(record.instrument, record.size);
+        sink.print(FIELD_SEPARATOR);
+
+        if (record.side != TAQ.UNKNOWN)
+            sink.print(record.side);
+
+        sink.print(RECORD_SEPARATOR);
+    }
+
+    void write(TAQ.Quote record) {
+        sink.print(record.date);
+        sink.print(FIELD_SEPARATOR);
+        writeTimestamp(record.timestampMillis);
+        sink.print(FIELD_SEPARATOR);
+        sink.print(record.instrument);
+        sink.print(FIELD_SEPARATOR);
+        sink.print(RECORD_TYPE_QUOTE);
+        sink.print(FIELD_SEPARATOR);
+
+        if (record.bidSize > 0)
+            writePrice(record.instrument, record.bidPrice);
+
+        sink.print(FIELD_SEPARATOR);
+
+        if (record.bidSize > 0)
+            writeSize(record.instrument, record.bidSize);
+
+        sink.print(FIELD_SEPARATOR);
+
+        if (record.askSize > 0)
+            writePrice(record.instrument, record.askPrice);
+
+        sink.print(FIELD_SEPARATOR);
+
+        if (record.askSize > 0)
+            writeSize(record.instrument, record.askSize);
+
+        sink.print(FIELD_SEPARATOR);
+        // trade price
+        sink.print(FIELD_SEPARATOR);
+        // trade size
+        sink.print(FIELD_SEPARATOR);
+        // trade side
+        sink.print(RECORD_SEPARATOR);
+    }
+
+    @Override
+    public void close() {
+        sink.close();
+    }
+
+    @Override
+    public void flush() {
+        sink.flush();
+    }
+
+    private void writeTimestamp(long timestampMillis) {
+        FORMATTER.formatTo(LocalTime.ofNanoOfDay(timestampMillis % (24 * 60 * 60 * 1000) * 1_000_000), sink);
+    }
+
+    private void writePrice(String instrument, double price) {
+        buffer.setLength(0);
+
+        config.getPriceFormat(instrument).format(price, buffer, position);
+
+        sink.append(buffer);
+    }
+
+    private void writeSize(String instrument, double size) {
+        buffer.setLength(0);
+
+        config.getSizeFormat(instrument).format(size, buffer, position);
+
+        sink.append(buffer);
+    }
+
+}
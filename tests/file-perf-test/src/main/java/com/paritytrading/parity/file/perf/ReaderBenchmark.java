@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.perf;
+
+import static com.paritytrading.parity.file.perf.SyntheticDay.*;
+
+import com.paritytrading.parity.file.taq.TAQ;
+import com.paritytrading.parity.file.taq.TAQConfig;
+import com.paritytrading.parity.file.taq.TAQListener;
+import com.paritytrading.parity.file.taq.TAQReader;
+import com.paritytrading.parity.file.taq.TAQWriter;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Measures the read throughput of the TAQ reader on a synthetic day of
+ * market data, sequentially and in parallel on all available processors,
+ * against splitting the lines into strings and parsing the numbers as
+ * doubles. Each operation is one record.
+ */
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class ReaderBenchmark {
+
+    private File file;
+
+    private TAQReader reader;
+
+    private int chunks;
+
+    @Setup
+    public void prepare() throws IOException {
+        file = File.createTempFile("parity-", ".taq");
+
+        TAQConfig config = SyntheticDay.taqConfig();
+
+        try (TAQWriter writer = new TAQWriter(file, config)) {
+            new SyntheticDay().write(writer::write, writer::write);
+        }
+
+        reader = new TAQReader(file, config);
+
+        chunks = Runtime.getRuntime().availableProcessors();
+    }
+
+    @TearDown
+    public void dispose() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void read(Blackhole blackhole) throws IOException {
+        reader.read(new Listener(blackhole));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void readInParallel(Blackhole blackhole) throws IOException {
+        reader.read(chunks, (chunk) -> new Listener(blackhole));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void split(Blackhole blackhole) throws IOException {
+        try (BufferedReader lines = new BufferedReader(new FileReader(file))) {
+            lines.readLine();
+
+            for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+                String[] fields = line.split("\t", -1);
+
+                blackhole.consume(fields[0]);
+                blackhole.consume(fields[2]);
+
+                for (int i = 4; i < 10; i++) {
+                    if (!fields[i].isEmpty())
+                        blackhole.consume(Double.parseDouble(fields[i]));
+                }
+            }
+        }
+    }
+
+    private static class Listener implements TAQListener {
+
+        private final Blackhole blackhole;
+
+        Listener(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void quote(TAQ.Quote record) {
+            blackhole.consume(record.timestampMillis);
+            blackhole.consume(record.bidPrice);
+            blackhole.consume(record.askPrice);
+        }
+
+        @Override
+        public void trade(TAQ.Trade record) {
+            blackhole.consume(record.timestampMillis);
+            blackhole.consume(record.price);
+        }
+
+    }
+
+}
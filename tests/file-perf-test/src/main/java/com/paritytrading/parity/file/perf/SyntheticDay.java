@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.perf;
+
+import com.paritytrading.parity.file.taq.TAQ;
+import com.paritytrading.parity.file.taq.TAQConfig;
+import com.paritytrading.parity.file.tick.Tick;
+import com.paritytrading.parity.file.tick.TickWriter;
+import java.io.IOException;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/*
+ * A synthetic day of market data: quotes and trades of three instruments
+ * with prices that follow a random walk. Every fifth record is a trade.
+ */
+class SyntheticDay {
+
+    static final String DATE = "2016-01-01";
+
+    static final String[] INSTRUMENTS = { "AAPL", "ETH-BTC", "EUR-USD" };
+
+    static final int[] PRICE_FRACTION_DIGITS = { 2, 6, 5 };
+    static final int[] SIZE_FRACTION_DIGITS  = { 0, 3, 0 };
+
+    static final int RECORDS = 1_000_000;
+
+    private static final long[] INITIAL_PRICES = { 10050, 975000, 112345 };
+
+    private static final int TRADE_RATIO = 5;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+    };
+
+    private final TAQ.Quote taqQuote = new TAQ.Quote();
+    private final TAQ.Trade taqTrade = new TAQ.Trade();
+
+    private final Tick.Quote tickQuote = new Tick.Quote();
+    private final Tick.Trade tickTrade = new Tick.Trade();
+
+    private final long[] timestamps;
+    private final int[]  instruments;
+    private final long[] bidPrices;
+    private final long[] bidSizes;
+    private final long[] askPrices;
+    private final long[] askSizes;
+
+    SyntheticDay() {
+        timestamps  = new long[RECORDS];
+        instruments = new int[RECORDS];
+        bidPrices   = new long[RECORDS];
+        bidSizes    = new long[RECORDS];
+        askPrices   = new long[RECORDS];
+        askSizes    = new long[RECORDS];
+
+        Random random = new Random(1);
+
+        long   timestamp = 9 * 60 * 60 * 1000;
+        long[] prices    = INITIAL_PRICES.clone();
+
+        for (int i = 0; i < RECORDS; i++) {
+            int instrument = random.nextInt(INSTRUMENTS.length);
+
+            timestamp += random.nextInt(40);
+
+            prices[instrument] += random.nextInt(5) - 2;
+
+            timestamps[i]  = timestamp;
+            instruments[i] = instrument;
+            bidPrices[i]   = prices[instrument];
+            bidSizes[i]    = 100 * (1 + random.nextInt(50));
+            askPrices[i]   = prices[instrument] + 1 + random.nextInt(3);
+            askSizes[i]    = 100 * (1 + random.nextInt(50));
+        }
+    }
+
+    static TAQConfig taqConfig() {
+        TAQConfig.Builder builder = new TAQConfig.Builder();
+
+        for (int i = 0; i < INSTRUMENTS.length; i++) {
+            builder.setPriceFractionDigits(INSTRUMENTS[i], PRICE_FRACTION_DIGITS[i]);
+            builder.setSizeFractionDigits(INSTRUMENTS[i],  SIZE_FRACTION_DIGITS[i]);
+        }
+
+        return builder.build();
+    }
+
+    /*
+     * The prices and sizes are given to a TAQ writer as doubles, like the
+     * stock ticker does.
+     */
+    void write(Consumer<TAQ.Quote> quotes, Consumer<TAQ.Trade> trades) {
+        for (int i = 0; i < RECORDS; i++) {
+            int instrument = instruments[i];
+
+            double priceFactor = POWERS_OF_TEN[PRICE_FRACTION_DIGITS[instrument]];
+            double sizeFactor  = POWERS_OF_TEN[SIZE_FRACTION_DIGITS[instrument]];
+
+            if (i % TRADE_RATIO == 0) {
+                taqTrade.date            = DATE;
+                taqTrade.timestampMillis = timestamps[i];
+                taqTrade.instrument      = INSTRUMENTS[instrument];
+                taqTrade.price           = bidPrices[i] / priceFactor;
+                taqTrade.size            = bidSizes[i] / sizeFactor;
+                taqTrade.side            = TAQ.SELL;
+
+                trades.accept(taqTrade);
+            } else {
+                taqQuote.date            = DATE;
+                taqQuote.timestampMillis = timestamps[i];
+                taqQuote.instrument      = INSTRUMENTS[instrument];
+                taqQuote.bidPrice        = bidPrices[i] / priceFactor;
+                taqQuote.bidSize         = bidSizes[i] / sizeFactor;
+                taqQuote.askPrice        = askPrices[i] / priceFactor;
+                taqQuote.askSize         = askSizes[i] / sizeFactor;
+
+                quotes.accept(taqQuote);
+            }
+        }
+    }
+
+    void write(TickWriter writer) throws IOException {
+        for (int i = 0; i < INSTRUMENTS.length; i++)
+            writer.setFractionDigits(INSTRUMENTS[i], PRICE_FRACTION_DIGITS[i], SIZE_FRACTION_DIGITS[i]);
+
+        for (int i = 0; i < RECORDS; i++) {
+            int instrument = instruments[i];
+
+            if (i % TRADE_RATIO == 0) {
+                tickTrade.timestampMillis = timestamps[i];
+                tickTrade.instrument      = INSTRUMENTS[instrument];
+                tickTrade.price           = bidPrices[i];
+                tickTrade.size            = bidSizes[i];
+                tickTrade.side            = Tick.SELL;
+
+                writer.write(tickTrade);
+            } else {
+                tickQuote.timestampMillis = timestamps[i];
+                tickQuote.instrument      = INSTRUMENTS[instrument];
+                tickQuote.bidPrice        = bidPrices[i];
+                tickQuote.bidSize         = bidSizes[i];
+                tickQuote.askPrice        = askPrices[i];
+                tickQuote.askSize         = askSizes[i];
+
+                writer.write(tickQuote);
+            }
+        }
+    }
+
+}
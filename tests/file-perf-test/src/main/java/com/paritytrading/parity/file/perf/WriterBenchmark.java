@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.file.perf;
+
+import static com.paritytrading.parity.file.perf.SyntheticDay.*;
+
+import com.paritytrading.parity.file.taq.TAQConfig;
+import com.paritytrading.parity.file.taq.TAQWriter;
+import com.paritytrading.parity.file.tick.TickWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Measures the write throughput of the TAQ and Tick writers on the same
+ * synthetic day of market data and prints the resulting file sizes. Each
+ * operation is one record.
+ *
+ * The TAQ writer is compared to its earlier implementation as well. The
+ * setup checks that both write the same bytes.
+ */
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class WriterBenchmark {
+
+    private SyntheticDay day;
+
+    private TAQConfig taqConfig;
+
+    private File taqFile;
+    private File legacyTAQFile;
+    private File tickFile;
+
+    @Setup
+    public void prepare() throws IOException {
+        day = new SyntheticDay();
+
+        taqConfig = SyntheticDay.taqConfig();
+
+        taqFile       = File.createTempFile("parity-", ".taq");
+        legacyTAQFile = File.createTempFile("parity-legacy-", ".taq");
+        tickFile      = File.createTempFile("parity-", ".tick");
+
+        taq();
+        legacyTAQ();
+
+        if (!Arrays.equals(Files.readAllBytes(taqFile.toPath()), Files.readAllBytes(legacyTAQFile.toPath())))
+            throw new IllegalStateException("TAQ writers differ");
+    }
+
+    @TearDown
+    public void dispose() {
+        report(taqFile);
+        report(tickFile);
+
+        taqFile.delete();
+        legacyTAQFile.delete();
+        tickFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void taq() throws IOException {
+        try (TAQWriter writer = new TAQWriter(taqFile, taqConfig)) {
+            day.write(writer::write, writer::write);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void legacyTAQ() throws IOException {
+        try (LegacyTAQWriter writer = new LegacyTAQWriter(legacyTAQFile, taqConfig)) {
+            day.write(writer::write, writer::write);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void tick() throws IOException {
+        try (TickWriter writer = new TickWriter(tickFile, DATE)) {
+            day.write(writer);
+        }
+    }
+
+    private static void report(File file) {
+        if (file.length() == 0)
+            return;
+
+        System.out.printf("%n%s: %d bytes, %.2f bytes/record%n", file.getName(),
+                file.length(), (double)file.length() / RECORDS);
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.fix;
+
+import static com.paritytrading.philadelphia.fix44.FIX44Enumerations.*;
+import static com.paritytrading.philadelphia.fix44.FIX44MsgTypes.*;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.*;
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.philadelphia.FIXConfig;
+import com.paritytrading.philadelphia.FIXConnection;
+import com.paritytrading.philadelphia.FIXConnectionStatusListener;
+import com.paritytrading.philadelphia.FIXMessage;
+import com.paritytrading.philadelphia.FIXMessageListener;
+import com.paritytrading.philadelphia.FIXValue;
+import com.paritytrading.philadelphia.FIXVersion;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A load generator for measuring how the FIX gateway scales with the number
+ * of FIX sessions.
+ *
+ * Each session runs a closed loop: it enters an order, cancels it once it
+ * has been accepted and enters the next order once it has been canceled.
+ * The round-trip times of the requests are measured after a warmup of one
+ * fifth of the duration. Run the gateway against a trading system that
+ * accepts the AAPL instrument, for example the order entry stub.
+ */
+public class FIXLoad {
+
+    private static final int MAX_SAMPLES = 10_000_000;
+
+    private static final FIXMessage txMessage = new FIXMessage(64, 64);
+
+    private static long[] samples = new long[MAX_SAMPLES];
+
+    private static int sampleCount;
+
+    private static boolean measuring;
+
+    private static int errors;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4)
+            usage("FIXLoad <address> <port> <sessions> <duration-seconds>");
+
+        InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+
+        int  sessionCount  = Integer.parseInt(args[2]);
+        long durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(args[3]));
+
+        Selector selector = Selector.open();
+
+        Session[] sessions = new Session[sessionCount];
+
+        for (int i = 0; i < sessionCount; i++) {
+            sessions[i] = new Session(address, String.format("l%05d", i));
+
+            sessions[i].getChannel().register(selector, SelectionKey.OP_READ, sessions[i]);
+        }
+
+        long start      = System.nanoTime();
+        long warmupEnd  = start + durationNanos / 5;
+        long end        = start + durationNanos;
+
+        long now = start;
+
+        while (now < end) {
+            if (!measuring && now >= warmupEnd)
+                measuring = true;
+
+            selector.select(100);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+            while (keys.hasNext()) {
+                ((Session)keys.next().attachment()).receive();
+
+                keys.remove();
+            }
+
+            for (Session session : sessions)
+                session.keepAlive();
+
+            now = System.nanoTime();
+        }
+
+        double seconds = (double)(end - warmupEnd) / TimeUnit.SECONDS.toNanos(1);
+
+        Arrays.sort(samples, 0, sampleCount);
+
+        System.out.printf("sessions: %d, round trips/s: %.0f, " +
+                "round-trip time (us): p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f, errors: %d\n",
+                sessionCount, sampleCount / seconds, percentile(0.50), percentile(0.99),
+                percentile(0.999), percentile(1.00), errors);
+
+        for (Session session : sessions)
+            session.getChannel().close();
+    }
+
+    private static double percentile(double p) {
+        if (sampleCount == 0)
+            return 0;
+
+        return samples[Math.min((int)(p * sampleCount), sampleCount - 1)] / 1000.0;
+    }
+
+    private static void record(long sentNanos) {
+        if (measuring && sampleCount < MAX_SAMPLES)
+            samples[sampleCount++] = System.nanoTime() - sentNanos;
+    }
+
+    private static class Session implements FIXMessageListener, FIXConnectionStatusListener {
+
+        private final SocketChannel channel;
+
+        private final FIXConnection connection;
+
+        private long nextClOrdId;
+
+        private long sentNanos;
+
+        Session(InetSocketAddress address, String username) throws IOException {
+            channel = SocketChannel.open(address);
+
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+
+            FIXConfig config = new FIXConfig.Builder()
+                .setVersion(FIXVersion.FIX_4_4)
+                .setSenderCompID(username)
+                .setTargetCompID("parity")
+                .build();
+
+            connection = new FIXConnection(channel, config, this, this);
+
+            connection.prepare(txMessage, Logon);
+            txMessage.addField(EncryptMethod).setInt(EncryptMethodValues.None);
+            txMessage.addField(HeartBtInt).setInt(30);
+            txMessage.addField(Username).setString(username);
+            txMessage.addField(Password).setString("");
+
+            connection.send(txMessage);
+        }
+
+        SocketChannel getChannel() {
+            return channel;
+        }
+
+        void receive() throws IOException {
+            connection.receive();
+        }
+
+        void keepAlive() throws IOException {
+            connection.updateCurrentTimestamp();
+            connection.keepAlive();
+        }
+
+        private void enter() throws IOException {
+            connection.prepare(txMessage, NewOrderSingle);
+            txMessage.addField(ClOrdID).setInt(++nextClOrdId);
+            txMessage.addField(Symbol).setString("AAPL");
+            txMessage.addField(Side).setChar(SideValues.Buy);
+            txMessage.addField(OrderQty).setInt(100);
+            txMessage.addField(OrdType).setChar(OrdTypeValues.Limit);
+            txMessage.addField(Price).setString("0.01");
+
+            send();
+        }
+
+        private void cancel() throws IOException {
+            connection.prepare(txMessage, OrderCancelRequest);
+            txMessage.addField(OrigClOrdID).setInt(nextClOrdId);
+            txMessage.addField(ClOrdID).setInt(++nextClOrdId);
+            txMessage.addField(Side).setChar(SideValues.Buy);
+
+            send();
+        }
+
+        private void send() throws IOException {
+            sentNanos = System.nanoTime();
+
+            connection.send(txMessage);
+        }
+
+        @Override
+        public void message(FIXMessage message) throws IOException {
+            FIXValue execType = message.valueOf(ExecType);
+            if (execType == null)
+                return;
+
+            switch (execType.asChar()) {
+            case ExecTypeValues.New:
+                record(sentNanos);
+
+                cancel();
+                break;
+            case ExecTypeValues.Canceled:
+                record(sentNanos);
+
+                enter();
+                break;
+            case ExecTypeValues.Rejected:
+                errors++;
+
+                enter();
+                break;
+            }
+        }
+
+        @Override
+        public void close(FIXConnection connection, String message) {
+            errors++;
+        }
+
+        @Override
+        public void heartbeatTimeout(FIXConnection connection) {
+            errors++;
+        }
+
+        @Override
+        public void logon(FIXConnection connection, FIXMessage message) throws IOException {
+            enter();
+        }
+
+        @Override
+        public void logout(FIXConnection connection, FIXMessage message) {
+            errors++;
+        }
+
+        @Override
+        public void reject(FIXConnection connection, FIXMessage message) {
+            errors++;
+        }
+
+        @Override
+        public void sequenceReset(FIXConnection connection) {
+        }
+
+        @Override
+        public void tooLowMsgSeqNum(FIXConnection connection, long receivedMsgSeqNum, long expectedMsgSeqNum) {
+            errors++;
+        }
+
+    }
+
+}
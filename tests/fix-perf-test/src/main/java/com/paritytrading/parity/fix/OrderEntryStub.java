@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.fix;
+
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCP;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPServer;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPServerStatusListener;
+import com.paritytrading.parity.net.poe.POE;
+import com.paritytrading.parity.net.poe.POEServerListener;
+import com.paritytrading.parity.net.poe.POEServerParser;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+ * A stub trading system for load testing the FIX gateway without the
+ * matching engine. It accepts every order and cancels the requested
+ * quantity of it.
+ */
+public class OrderEntryStub {
+
+    private static final SoupBinTCP.LoginAccepted loginAccepted = new SoupBinTCP.LoginAccepted();
+
+    private static final POE.OrderAccepted orderAccepted = new POE.OrderAccepted();
+    private static final POE.OrderCanceled orderCanceled = new POE.OrderCanceled();
+
+    private static final ByteBuffer buffer = ByteBuffer.allocateDirect(POE.MAX_OUTBOUND_MESSAGE_LENGTH);
+
+    private static long nextOrderNumber = 1;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2)
+            usage("OrderEntryStub <address> <port>");
+
+        InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+
+        Selector selector = Selector.open();
+
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        List<Connection> connections = new ArrayList<>();
+
+        while (true) {
+            selector.select(100);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+
+                if (key.isAcceptable()) {
+                    SocketChannel channel = serverChannel.accept();
+                    if (channel != null) {
+                        Connection connection = new Connection(channel);
+
+                        channel.register(selector, SelectionKey.OP_READ, connection);
+
+                        connections.add(connection);
+                    }
+                } else {
+                    ((Connection)key.attachment()).receive();
+                }
+
+                keys.remove();
+            }
+
+            for (int i = 0; i < connections.size(); i++)
+                connections.get(i).keepAlive();
+
+            connections.removeIf(Connection::isClosed);
+        }
+    }
+
+    private static class Connection implements POEServerListener, SoupBinTCPServerStatusListener {
+
+        private final SoupBinTCPServer transport;
+
+        private final Long2LongOpenHashMap quantities;
+
+        private boolean closed;
+
+        Connection(SocketChannel channel) throws IOException {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.configureBlocking(false);
+
+            transport = new SoupBinTCPServer(channel, POE.MAX_INBOUND_MESSAGE_LENGTH,
+                    new POEServerParser(this), this);
+
+            quantities = new Long2LongOpenHashMap();
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        void receive() {
+            try {
+                if (transport.receive() < 0)
+                    close();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void keepAlive() {
+            if (closed)
+                return;
+
+            try {
+                transport.keepAlive();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        @Override
+        public void enterOrder(POE.EnterOrder message) throws IOException {
+            System.arraycopy(message.orderId, 0, orderAccepted.orderId, 0, orderAccepted.orderId.length);
+
+            orderAccepted.side        = message.side;
+            orderAccepted.instrument  = message.instrument;
+            orderAccepted.quantity    = message.quantity;
+            orderAccepted.price       = message.price;
+            orderAccepted.orderNumber = nextOrderNumber++;
+
+            quantities.put(ASCII.getLong(message.orderId), message.quantity);
+
+            send(orderAccepted);
+        }
+
+        @Override
+        public void cancelOrder(POE.CancelOrder message) throws IOException {
+            long orderId = ASCII.getLong(message.orderId);
+
+            if (!quantities.containsKey(orderId))
+                return;
+
+            long quantity = quantities.get(orderId);
+
+            System.arraycopy(message.orderId, 0, orderCanceled.orderId, 0, orderCanceled.orderId.length);
+
+            orderCanceled.canceledQuantity = Math.max(quantity - message.quantity, 0);
+            orderCanceled.reason           = POE.ORDER_CANCEL_REASON_REQUEST;
+
+            if (message.quantity > 0)
+                quantities.put(orderId, message.quantity);
+            else
+                quantities.remove(orderId);
+
+            send(orderCanceled);
+        }
+
+        @Override
+        public void heartbeatTimeout(SoupBinTCPServer session) {
+            close();
+        }
+
+        @Override
+        public void loginRequest(SoupBinTCPServer session, SoupBinTCP.LoginRequest payload) throws IOException {
+            loginAccepted.session        = payload.requestedSession;
+            loginAccepted.sequenceNumber = payload.requestedSequenceNumber;
+
+            transport.accept(loginAccepted);
+        }
+
+        @Override
+        public void logoutRequest(SoupBinTCPServer session) {
+            close();
+        }
+
+        private void send(POE.OutboundMessage message) throws IOException {
+            buffer.clear();
+            message.put(buffer);
+            buffer.flip();
+
+            transport.send(buffer);
+        }
+
+        private void close() {
+            closed = true;
+
+            try {
+                transport.close();
+            } catch (IOException e) {
+            }
+        }
+
+    }
+
+}
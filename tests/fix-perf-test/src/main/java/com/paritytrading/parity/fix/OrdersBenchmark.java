@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.fix;
+
+import static com.paritytrading.philadelphia.fix44.FIX44Enumerations.*;
+
+import com.paritytrading.parity.util.Instrument;
+import com.paritytrading.parity.util.Instruments;
+import com.paritytrading.philadelphia.FIXValue;
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Measures the order lookups of a FIX session with a number of working
+ * orders: finding an order by an incoming ClOrdID(11), finding an order by
+ * the order entry ID of an incoming order entry message, and entering and
+ * removing an order. The benchmark is in the application's package because
+ * the orders are package-private.
+ */
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class OrdersBenchmark {
+
+    private static final int PROBES = 1024;
+
+    @Param({"10", "1000", "100000"})
+    public int size;
+
+    private Instrument instrument;
+
+    private Orders orders;
+
+    private FIXValue[] clOrdIds;
+
+    private long[] orderEntryIds;
+
+    private int next;
+
+    private long nextOrderEntryId;
+
+    private FIXValue newClOrdId;
+
+    @Setup
+    public void prepare() {
+        instrument = Instruments.fromConfig(ConfigFactory.parseString(
+                "instruments.AAPL { price-fraction-digits = 2, size-fraction-digits = 0 }"),
+                "instruments").get("AAPL");
+
+        orders = new Orders();
+
+        FIXValue clOrdId = new FIXValue(32);
+
+        for (int i = 0; i < size; i++) {
+            clOrdId.setString(clOrdId(i));
+
+            add(i, clOrdId);
+        }
+
+        clOrdIds      = new FIXValue[PROBES];
+        orderEntryIds = new long[PROBES];
+
+        for (int i = 0; i < PROBES; i++) {
+            long orderEntryId = i * (size / PROBES + 1) % size;
+
+            clOrdIds[i] = new FIXValue(32);
+            clOrdIds[i].setString(clOrdId(orderEntryId));
+
+            orderEntryIds[i] = orderEntryId;
+        }
+
+        next = 0;
+
+        nextOrderEntryId = size;
+
+        newClOrdId = new FIXValue(32);
+        newClOrdId.setString("new");
+    }
+
+    @Benchmark
+    public Order findByClOrdID() {
+        next = (next + 1) & (PROBES - 1);
+
+        return orders.findByClOrdID(clOrdIds[next]);
+    }
+
+    @Benchmark
+    public Order findByOrderEntryID() {
+        next = (next + 1) & (PROBES - 1);
+
+        return orders.findByOrderEntryID(orderEntryIds[next]);
+    }
+
+    @Benchmark
+    public void addAndRemove() {
+        long orderEntryId = nextOrderEntryId++;
+
+        add(orderEntryId, newClOrdId);
+
+        orders.release(orders.removeByOrderEntryID(orderEntryId));
+    }
+
+    private void add(long orderEntryId, FIXValue clOrdId) {
+        Order order = orders.allocate();
+
+        order.init(orderEntryId, clOrdId, null, SideValues.Buy, instrument, 100);
+
+        orders.add(order);
+    }
+
+    private static String clOrdId(long orderEntryId) {
+        return String.format("%016d", orderEntryId);
+    }
+
+}
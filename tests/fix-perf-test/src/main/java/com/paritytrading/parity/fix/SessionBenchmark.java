@@ -0,0 +1,412 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.fix;
+
+import static com.paritytrading.philadelphia.fix44.FIX44Enumerations.*;
+import static com.paritytrading.philadelphia.fix44.FIX44MsgTypes.*;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.ClOrdID;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.EncryptMethod;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.HeartBtInt;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.OrdType;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.OrderQty;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.OrigClOrdID;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.Password;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.Price;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.Side;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.Symbol;
+import static com.paritytrading.philadelphia.fix44.FIX44Tags.Username;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCP;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPServer;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPServerStatusListener;
+import com.paritytrading.parity.net.poe.POE;
+import com.paritytrading.parity.net.poe.POEServerListener;
+import com.paritytrading.parity.net.poe.POEServerParser;
+import com.paritytrading.parity.util.Instruments;
+import com.paritytrading.philadelphia.FIXConfig;
+import com.paritytrading.philadelphia.FIXConnection;
+import com.paritytrading.philadelphia.FIXConnectionStatusListener;
+import com.paritytrading.philadelphia.FIXMessage;
+import com.paritytrading.philadelphia.FIXMessageListener;
+import com.paritytrading.philadelphia.FIXVersion;
+import com.typesafe.config.ConfigFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Measures a FIX session of the gateway on the order flow of the test
+ * script in applications/fix/test: a NewOrderSingle, an
+ * OrderCancelReplaceRequest and an OrderCancelRequest, each answered by the
+ * trading system. A FIX client and a stub trading system run on the same
+ * thread as the session and talk to it over loopback connections.
+ *
+ * The fill benchmark measures the execution report throughput instead: the
+ * trading system fills each NewOrderSingle in a number of executions, and
+ * the execution reports per second are reported as a secondary result.
+ *
+ * Run it with the GC profiler to check that the session does not allocate
+ * in steady state. The benchmark is in the application's package because
+ * the session is package-private.
+ */
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class SessionBenchmark {
+
+    private static final int EXECUTION_REPORTS_PER_OPERATION = 5;
+
+    private static final int FILLS = 10;
+
+    private ServerSocketChannel fixServerChannel;
+    private ServerSocketChannel orderEntryServerChannel;
+
+    private Session session;
+
+    private FIXConnection client;
+
+    private SoupBinTCPServer tradingSystem;
+
+    private TradingSystem stub;
+
+    private FIXMessage txMessage;
+
+    private long executionReports;
+
+    private long expectedExecutionReports;
+
+    @Setup
+    public void prepare() throws IOException {
+        InetAddress address = InetAddress.getLoopbackAddress();
+
+        fixServerChannel        = ServerSocketChannel.open().bind(new InetSocketAddress(address, 0));
+        orderEntryServerChannel = ServerSocketChannel.open().bind(new InetSocketAddress(address, 0));
+
+        Instruments instruments = Instruments.fromConfig(ConfigFactory.parseString(
+                "instruments.AAPL { price-fraction-digits = 2, size-fraction-digits = 0 }"),
+                "instruments");
+
+        FIXConfig sessionConfig = new FIXConfig.Builder()
+            .setVersion(FIXVersion.FIX_4_4)
+            .setSenderCompID("parity")
+            .build();
+
+        FIXConfig clientConfig = new FIXConfig.Builder()
+            .setVersion(FIXVersion.FIX_4_4)
+            .setSenderCompID("client")
+            .setTargetCompID("parity")
+            .build();
+
+        SocketChannel clientChannel = connect(fixServerChannel);
+
+        SocketChannel sessionChannel = fixServerChannel.accept();
+        sessionChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        sessionChannel.configureBlocking(false);
+
+        session = new Session(new OrderEntryFactory(
+                (InetSocketAddress)orderEntryServerChannel.getLocalAddress()),
+                null, sessionChannel, sessionConfig, instruments);
+
+        SocketChannel tradingSystemChannel = orderEntryServerChannel.accept();
+        tradingSystemChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        tradingSystemChannel.configureBlocking(false);
+
+        stub = new TradingSystem();
+
+        tradingSystem = new SoupBinTCPServer(tradingSystemChannel, POE.MAX_INBOUND_MESSAGE_LENGTH,
+                new POEServerParser(stub), stub);
+
+        Client listener = new Client();
+
+        client = new FIXConnection(clientChannel, clientConfig, listener, listener);
+
+        txMessage = new FIXMessage(64, 64);
+
+        client.prepare(txMessage, Logon);
+        txMessage.addField(EncryptMethod).setInt(EncryptMethodValues.None);
+        txMessage.addField(HeartBtInt).setInt(30);
+        txMessage.addField(Username).setString("foo");
+        txMessage.addField(Password).setString("bar");
+
+        client.send(txMessage);
+
+        executionReports         = 0;
+        expectedExecutionReports = 0;
+
+        while (!listener.loggedOn)
+            poll();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        session.close();
+        client.close();
+        tradingSystem.close();
+
+        fixServerChannel.close();
+        orderEntryServerChannel.close();
+    }
+
+    @Benchmark
+    public long enterReplaceAndCancel() throws IOException {
+        stub.fills = 0;
+
+        client.prepare(txMessage, NewOrderSingle);
+        txMessage.addField(ClOrdID).setString("1");
+        txMessage.addField(Symbol).setString("AAPL");
+        txMessage.addField(Side).setChar(SideValues.Buy);
+        txMessage.addField(OrderQty).setInt(100);
+        txMessage.addField(OrdType).setChar(OrdTypeValues.Limit);
+        txMessage.addField(Price).setString("150.00");
+
+        client.send(txMessage);
+
+        await(1);
+
+        client.prepare(txMessage, OrderCancelReplaceRequest);
+        txMessage.addField(ClOrdID).setString("2");
+        txMessage.addField(OrigClOrdID).setString("1");
+        txMessage.addField(Side).setChar(SideValues.Buy);
+        txMessage.addField(OrderQty).setInt(50);
+        txMessage.addField(OrdType).setChar(OrdTypeValues.Limit);
+
+        client.send(txMessage);
+
+        await(2);
+
+        client.prepare(txMessage, OrderCancelRequest);
+        txMessage.addField(ClOrdID).setString("3");
+        txMessage.addField(OrigClOrdID).setString("2");
+        txMessage.addField(Side).setChar(SideValues.Buy);
+
+        client.send(txMessage);
+
+        await(EXECUTION_REPORTS_PER_OPERATION - 3);
+
+        return executionReports;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void enterAndFill(Counters counters) throws IOException {
+        stub.fills = FILLS;
+
+        client.prepare(txMessage, NewOrderSingle);
+        txMessage.addField(ClOrdID).setString("1");
+        txMessage.addField(Symbol).setString("AAPL");
+        txMessage.addField(Side).setChar(SideValues.Buy);
+        txMessage.addField(OrderQty).setInt(100 * FILLS);
+        txMessage.addField(OrdType).setChar(OrdTypeValues.Limit);
+        txMessage.addField(Price).setString("150.00");
+
+        client.send(txMessage);
+
+        await(1 + FILLS);
+
+        counters.executionReports += 1 + FILLS;
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long executionReports;
+
+    }
+
+    private void await(int count) throws IOException {
+        expectedExecutionReports += count;
+
+        while (executionReports < expectedExecutionReports)
+            poll();
+    }
+
+    private void poll() throws IOException {
+        client.receive();
+
+        session.getFIX().updateCurrentTimestamp();
+        session.getFIX().receive();
+
+        tradingSystem.receive();
+
+        session.getFIX().updateCurrentTimestamp();
+        session.getOrderEntry().receive();
+    }
+
+    private static SocketChannel connect(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = SocketChannel.open(serverChannel.getLocalAddress());
+
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+
+        return channel;
+    }
+
+    private class Client implements FIXMessageListener, FIXConnectionStatusListener {
+
+        boolean loggedOn;
+
+        @Override
+        public void message(FIXMessage message) {
+            executionReports++;
+        }
+
+        @Override
+        public void close(FIXConnection connection, String message) {
+        }
+
+        @Override
+        public void heartbeatTimeout(FIXConnection connection) {
+        }
+
+        @Override
+        public void logon(FIXConnection connection, FIXMessage message) {
+            loggedOn = true;
+        }
+
+        @Override
+        public void logout(FIXConnection connection, FIXMessage message) {
+        }
+
+        @Override
+        public void reject(FIXConnection connection, FIXMessage message) {
+        }
+
+        @Override
+        public void sequenceReset(FIXConnection connection) {
+        }
+
+        @Override
+        public void tooLowMsgSeqNum(FIXConnection connection, long receivedMsgSeqNum, long expectedMsgSeqNum) {
+        }
+
+    }
+
+    /*
+     * A trading system that accepts each order and cancels the requested
+     * quantity of it or fills it in a number of executions.
+     */
+    private class TradingSystem implements POEServerListener, SoupBinTCPServerStatusListener {
+
+        private final SoupBinTCP.LoginAccepted loginAccepted = new SoupBinTCP.LoginAccepted();
+
+        private final POE.OrderAccepted orderAccepted = new POE.OrderAccepted();
+        private final POE.OrderExecuted orderExecuted = new POE.OrderExecuted();
+        private final POE.OrderCanceled orderCanceled = new POE.OrderCanceled();
+
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(POE.MAX_OUTBOUND_MESSAGE_LENGTH);
+
+        private long orderNumber;
+
+        private long matchNumber;
+
+        private long quantity;
+
+        int fills;
+
+        @Override
+        public void enterOrder(POE.EnterOrder message) throws IOException {
+            System.arraycopy(message.orderId, 0, orderAccepted.orderId, 0, orderAccepted.orderId.length);
+
+            orderAccepted.side        = message.side;
+            orderAccepted.instrument  = message.instrument;
+            orderAccepted.quantity    = message.quantity;
+            orderAccepted.price       = message.price;
+            orderAccepted.orderNumber = ++orderNumber;
+
+            quantity = message.quantity;
+
+            send(orderAccepted);
+
+            if (fills == 0)
+                return;
+
+            System.arraycopy(message.orderId, 0, orderExecuted.orderId, 0, orderExecuted.orderId.length);
+
+            orderExecuted.quantity      = message.quantity / fills;
+            orderExecuted.price         = message.price;
+            orderExecuted.liquidityFlag = POE.LIQUIDITY_FLAG_ADDED_LIQUIDITY;
+
+            for (int i = 0; i < fills; i++) {
+                orderExecuted.matchNumber = ++matchNumber;
+
+                send(orderExecuted);
+            }
+
+            quantity = 0;
+        }
+
+        @Override
+        public void cancelOrder(POE.CancelOrder message) throws IOException {
+            System.arraycopy(message.orderId, 0, orderCanceled.orderId, 0, orderCanceled.orderId.length);
+
+            orderCanceled.canceledQuantity = quantity - message.quantity;
+            orderCanceled.reason           = POE.ORDER_CANCEL_REASON_REQUEST;
+
+            quantity = message.quantity;
+
+            send(orderCanceled);
+        }
+
+        @Override
+        public void heartbeatTimeout(SoupBinTCPServer session) {
+        }
+
+        @Override
+        public void loginRequest(SoupBinTCPServer session, SoupBinTCP.LoginRequest payload) throws IOException {
+            loginAccepted.session        = payload.requestedSession;
+            loginAccepted.sequenceNumber = payload.requestedSequenceNumber;
+
+            session.accept(loginAccepted);
+        }
+
+        @Override
+        public void logoutRequest(SoupBinTCPServer session) {
+        }
+
+        private void send(POE.OutboundMessage message) throws IOException {
+            buffer.clear();
+            message.put(buffer);
+            buffer.flip();
+
+            tradingSystem.send(buffer);
+        }
+
+    }
+
+}
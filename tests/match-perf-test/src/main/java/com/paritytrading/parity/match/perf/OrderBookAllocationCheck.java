@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.match.perf;
+
+import java.util.Collection;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Check that steady-state matching in a pooled order book with an array
+ * price ladder does not allocate. The tree price ladder allocates a tree
+ * entry for each new price level, so it is not checked.
+ */
+public class OrderBookAllocationCheck {
+
+    private static final String ALLOCATION = "·gc.alloc.rate.norm";
+
+    private static final double MAX_BYTES_PER_OPERATION = 1.0;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(OrderBookBenchmark.class.getName() + ".enter(AndCancel|AndMatch)$")
+            .param("configuration", "pooled-array")
+            .mode(Mode.Throughput)
+            .forks(1)
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        boolean allocates = false;
+
+        for (RunResult result : results) {
+            Result allocation = result.getSecondaryResults().get(ALLOCATION);
+
+            String benchmark = result.getParams().getBenchmark() + " (depth = " +
+                result.getParams().getParam("depth") + ")";
+
+            if (allocation == null) {
+                System.err.println(benchmark + ": no allocation profile");
+                allocates = true;
+            } else if (allocation.getScore() >= MAX_BYTES_PER_OPERATION) {
+                System.err.printf("%s: %.3f bytes/op\n", benchmark, allocation.getScore());
+                allocates = true;
+            }
+        }
+
+        if (allocates)
+            System.exit(1);
+    }
+
+}
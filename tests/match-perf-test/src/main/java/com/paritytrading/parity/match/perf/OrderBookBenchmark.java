@@ -17,6 +17,7 @@ package com.paritytrading.parity.match.perf;
 
 import com.paritytrading.parity.match.OrderBook;
 import com.paritytrading.parity.match.OrderBookListener;
+import com.paritytrading.parity.match.OrderBookPool;
 import com.paritytrading.parity.match.Side;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -25,7 +26,9 @@ import org.openjdk.jmh.annotations.Fork;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -39,13 +42,29 @@ import org.openjdk.jmh.annotations.Warmup;
 @BenchmarkMode(Mode.SampleTime)
 public class OrderBookBenchmark {
 
+    private static final long PRICE = 100000;
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"tree", "array", "pooled-tree", "pooled-array"})
+    public String configuration;
+
+    @Param({"0", "1000"})
+    public int depth;
+
     private OrderBook book;
 
     private long nextOrderId;
 
+    private long[] orderIds;
+    private Side[] sides;
+    private long[] prices;
+    private long[] sizes;
+    private long[] newSizes;
+
     @Setup(Level.Iteration)
     public void prepare() {
-        book = new OrderBook(new OrderBookListener() {
+        OrderBookListener listener = new OrderBookListener() {
 
             @Override
             public void match(long restingOrderId, long incomingOrderId, Side incomingSide, long price,
@@ -60,22 +79,85 @@ public class OrderBookBenchmark {
             public void cancel(long orderId, long canceledQuantity, long remainingQuantity) {
             }
 
-        });
+        };
+
+        switch (configuration) {
+        case "tree":
+            book = new OrderBook(listener);
+            break;
+        case "array":
+            book = new OrderBook(listener, 1, 4096);
+            break;
+        case "pooled-tree":
+            book = new OrderBook(listener, new OrderBookPool(4096, 4096));
+            break;
+        case "pooled-array":
+            book = new OrderBook(listener, 1, 4096, new OrderBookPool(4096, 0));
+            break;
+        default:
+            throw new IllegalArgumentException(configuration);
+        }
 
         nextOrderId = 0;
+
+        for (int i = 1; i <= depth; i++) {
+            book.enter(nextOrderId++, Side.BUY,  PRICE - i, 100);
+            book.enter(nextOrderId++, Side.SELL, PRICE + i, 100);
+        }
+
+        orderIds = new long[BATCH_SIZE];
+        sides    = new Side[BATCH_SIZE];
+        prices   = new long[BATCH_SIZE];
+        sizes    = new long[BATCH_SIZE];
+        newSizes = new long[BATCH_SIZE];
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            sides[i]  = Side.BUY;
+            prices[i] = PRICE;
+            sizes[i]  = 100;
+        }
     }
 
     @Benchmark
     public void enter() {
-        book.enter(nextOrderId++, Side.BUY, 100000, 100);
+        book.enter(nextOrderId++, Side.BUY, PRICE, 100);
     }
 
     @Benchmark
     public void enterAndCancel() {
         long orderId = nextOrderId++;
 
-        book.enter(orderId, Side.BUY, 100000, 100);
+        book.enter(orderId, Side.BUY, PRICE, 100);
         book.cancel(orderId, 0);
     }
 
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void enterAndCancelLoop() {
+        for (int i = 0; i < BATCH_SIZE; i++)
+            orderIds[i] = nextOrderId++;
+
+        for (int i = 0; i < BATCH_SIZE; i++)
+            book.enter(orderIds[i], sides[i], prices[i], sizes[i]);
+
+        for (int i = 0; i < BATCH_SIZE; i++)
+            book.cancel(orderIds[i], newSizes[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void enterAndCancelBatch() {
+        for (int i = 0; i < BATCH_SIZE; i++)
+            orderIds[i] = nextOrderId++;
+
+        book.enterAll(orderIds, sides, prices, sizes, BATCH_SIZE);
+        book.cancelAll(orderIds, newSizes, BATCH_SIZE);
+    }
+
+    @Benchmark
+    public void enterAndMatch() {
+        book.enter(nextOrderId++, Side.BUY,  PRICE, 100);
+        book.enter(nextOrderId++, Side.SELL, PRICE, 100);
+    }
+
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.reporter;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.nassau.binaryfile.BinaryFILEWriter;
+import com.paritytrading.parity.net.pmr.PMR;
+import com.paritytrading.parity.net.pmr.PMRParser;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/*
+ * Measures the trade processor on a synthetic PMR file.
+ *
+ * The file starts with a number of resting orders that stay on the books,
+ * followed by cycles of five messages: a buy order is entered and added, a
+ * larger sell order is entered and trades against it, and the rest of the
+ * sell order is canceled. Each operation is one message. The benchmark
+ * replays the cycles from the memory-mapped file, so the resting orders and
+ * the order pool are in the same state before each replay.
+ *
+ * Run it with the GC profiler to check that the trade processor does not
+ * allocate. The benchmark is in the application's package because the
+ * trade processor is package-private.
+ */
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class TradeProcessorBenchmark {
+
+    private static final String[] INSTRUMENTS = { "AAPL", "ETH-BTC", "EUR-USD" };
+
+    private static final int USERNAMES = 100;
+
+    private static final int CYCLES = 100_000;
+
+    private static final int MESSAGES_PER_CYCLE = 5;
+
+    private static final long PRICE = 100000;
+
+    @Param({"1000", "100000"})
+    public int depth;
+
+    private File file;
+
+    private ByteBuffer buffer;
+
+    private int cyclesOffset;
+
+    private PMRParser parser;
+
+    private Listener listener;
+
+    @Setup
+    public void prepare() throws IOException {
+        file = File.createTempFile("parity-pmr", ".bin");
+
+        cyclesOffset = generate(file, depth);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        listener = new Listener();
+
+        parser = new PMRParser(new TradeProcessor(listener));
+
+        replayFrom(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES * MESSAGES_PER_CYCLE)
+    public void replay(Blackhole blackhole) throws IOException {
+        listener.blackhole = blackhole;
+
+        replayFrom(cyclesOffset);
+    }
+
+    /*
+     * Replay the messages from the offset to the end of the file without
+     * slicing the buffer.
+     */
+    private void replayFrom(int offset) throws IOException {
+        int position = offset;
+
+        while (position < buffer.capacity()) {
+            int length = buffer.getShort(position) & 0xffff;
+
+            buffer.limit(position + 2 + length);
+            buffer.position(position + 2);
+
+            parser.message(buffer);
+
+            position += 2 + length;
+
+            buffer.limit(buffer.capacity());
+        }
+    }
+
+    /*
+     * Write the file and return the offset of the cycles.
+     */
+    private static int generate(File file, int depth) throws IOException {
+        Random random = new Random(1);
+
+        long[] usernames = new long[USERNAMES];
+
+        for (int i = 0; i < usernames.length; i++)
+            usernames[i] = ASCII.packLong(String.format("user%03d", i));
+
+        long[] instruments = new long[INSTRUMENTS.length];
+
+        for (int i = 0; i < instruments.length; i++)
+            instruments[i] = ASCII.packLong(INSTRUMENTS[i]);
+
+        PMR.Version       version       = new PMR.Version();
+        PMR.OrderEntered  orderEntered  = new PMR.OrderEntered();
+        PMR.OrderAdded    orderAdded    = new PMR.OrderAdded();
+        PMR.OrderCanceled orderCanceled = new PMR.OrderCanceled();
+        PMR.Trade         trade         = new PMR.Trade();
+
+        ByteBuffer message = ByteBuffer.allocate(64);
+
+        int offset = 0;
+
+        try (BinaryFILEWriter writer = BinaryFILEWriter.open(file)) {
+            version.version = PMR.VERSION;
+
+            offset += write(writer, message, version);
+
+            long orderNumber = 0;
+
+            for (int i = 0; i < depth; i++) {
+                orderEntered.timestamp   = i;
+                orderEntered.username    = usernames[random.nextInt(usernames.length)];
+                orderEntered.orderNumber = ++orderNumber;
+                orderEntered.side        = PMR.BUY;
+                orderEntered.instrument  = instruments[random.nextInt(instruments.length)];
+                orderEntered.quantity    = 100;
+                orderEntered.price       = PRICE - 1 - random.nextInt(100);
+
+                offset += write(writer, message, orderEntered);
+            }
+
+            long matchNumber = 0;
+
+            for (int i = 0; i < CYCLES; i++) {
+                long instrument = instruments[random.nextInt(instruments.length)];
+                long quantity   = 100 * (1 + random.nextInt(5));
+                long timestamp  = TimeUnit.SECONDS.toNanos(i);
+
+                long buyOrderNumber  = orderNumber + 1;
+                long sellOrderNumber = orderNumber + 2;
+
+                orderEntered.timestamp   = timestamp;
+                orderEntered.username    = usernames[random.nextInt(usernames.length)];
+                orderEntered.orderNumber = buyOrderNumber;
+                orderEntered.side        = PMR.BUY;
+                orderEntered.instrument  = instrument;
+                orderEntered.quantity    = quantity;
+                orderEntered.price       = PRICE;
+
+                write(writer, message, orderEntered);
+
+                orderAdded.timestamp   = timestamp;
+                orderAdded.orderNumber = buyOrderNumber;
+
+                write(writer, message, orderAdded);
+
+                orderEntered.username    = usernames[random.nextInt(usernames.length)];
+                orderEntered.orderNumber = sellOrderNumber;
+                orderEntered.side        = PMR.SELL;
+                orderEntered.quantity    = quantity + 100;
+
+                write(writer, message, orderEntered);
+
+                trade.timestamp           = timestamp;
+                trade.restingOrderNumber  = buyOrderNumber;
+                trade.incomingOrderNumber = sellOrderNumber;
+                trade.quantity            = quantity;
+                trade.matchNumber         = ++matchNumber;
+
+                write(writer, message, trade);
+
+                orderCanceled.timestamp        = timestamp;
+                orderCanceled.orderNumber      = sellOrderNumber;
+                orderCanceled.canceledQuantity = 100;
+
+                write(writer, message, orderCanceled);
+
+                orderNumber += 2;
+            }
+        }
+
+        return offset;
+    }
+
+    private static int write(BinaryFILEWriter writer, ByteBuffer buffer,
+            PMR.Message message) throws IOException {
+        buffer.clear();
+        message.put(buffer);
+        buffer.flip();
+
+        int length = buffer.remaining();
+
+        writer.write(buffer);
+
+        return 2 + length;
+    }
+
+    private static class Listener extends TradeListener {
+
+        Blackhole blackhole;
+
+        @Override
+        void trade(Trade event) {
+            if (blackhole == null)
+                return;
+
+            blackhole.consume(event.instrument);
+            blackhole.consume(event.buyer);
+            blackhole.consume(event.seller);
+            blackhole.consume(event.price);
+        }
+
+    }
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import static org.jvirtanen.util.Applications.*;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCP;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPClient;
+import com.paritytrading.nassau.soupbintcp.SoupBinTCPClientStatusListener;
+import com.paritytrading.parity.net.poe.POE;
+import com.paritytrading.parity.net.poe.POEClientListener;
+import com.paritytrading.parity.net.poe.POEClientParser;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A load generator for measuring how order entry scales with the number of
+ * connections.
+ *
+ * Each connection runs a closed loop: it enters an order that does not
+ * match, cancels it once it has been accepted and enters the next order
+ * once it has been canceled. The round-trip times of the commands are
+ * measured after a warmup of one fifth of the duration.
+ */
+public class OrderEntryLoad {
+
+    private static final long INSTRUMENT = ASCII.packLong("AAPL");
+
+    private static final long PRICE = 1;
+
+    private static final long QUANTITY = 100;
+
+    private static final int MAX_SAMPLES = 10_000_000;
+
+    private static final ByteBuffer buffer = ByteBuffer.allocateDirect(POE.MAX_INBOUND_MESSAGE_LENGTH);
+
+    private static long[] samples = new long[MAX_SAMPLES];
+
+    private static int sampleCount;
+
+    private static boolean measuring;
+
+    private static int errors;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4)
+            usage("OrderEntryLoad <address> <port> <connections> <duration-seconds>");
+
+        InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+
+        int  connectionCount = Integer.parseInt(args[2]);
+        long durationNanos   = TimeUnit.SECONDS.toNanos(Long.parseLong(args[3]));
+
+        Selector selector = Selector.open();
+
+        Connection[] connections = new Connection[connectionCount];
+
+        for (int i = 0; i < connectionCount; i++) {
+            connections[i] = new Connection(address, String.format("l%05d", i));
+
+            connections[i].getChannel().register(selector, SelectionKey.OP_READ, connections[i]);
+        }
+
+        for (Connection connection : connections)
+            connection.enter();
+
+        long start      = System.nanoTime();
+        long warmupEnd  = start + durationNanos / 5;
+        long end        = start + durationNanos;
+
+        long now = start;
+
+        while (now < end) {
+            if (!measuring && now >= warmupEnd)
+                measuring = true;
+
+            selector.select(100);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+            while (keys.hasNext()) {
+                ((Connection)keys.next().attachment()).receive();
+
+                keys.remove();
+            }
+
+            for (Connection connection : connections)
+                connection.keepAlive();
+
+            now = System.nanoTime();
+        }
+
+        double seconds = (double)(end - warmupEnd) / TimeUnit.SECONDS.toNanos(1);
+
+        Arrays.sort(samples, 0, sampleCount);
+
+        System.out.printf("connections: %d, round trips/s: %.0f, " +
+                "round-trip time (us): p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f, errors: %d\n",
+                connectionCount, sampleCount / seconds, percentile(0.50), percentile(0.99),
+                percentile(0.999), percentile(1.00), errors);
+
+        for (Connection connection : connections)
+            connection.getChannel().close();
+    }
+
+    private static double percentile(double p) {
+        if (sampleCount == 0)
+            return 0;
+
+        return samples[Math.min((int)(p * sampleCount), sampleCount - 1)] / 1000.0;
+    }
+
+    private static void record(long sentNanos) {
+        if (measuring && sampleCount < MAX_SAMPLES)
+            samples[sampleCount++] = System.nanoTime() - sentNanos;
+    }
+
+    private static class Connection implements POEClientListener, SoupBinTCPClientStatusListener {
+
+        private final SocketChannel channel;
+
+        private final SoupBinTCPClient transport;
+
+        private final POE.EnterOrder  enterOrder;
+        private final POE.CancelOrder cancelOrder;
+
+        private long nextOrderId;
+
+        private long sentNanos;
+
+        Connection(InetSocketAddress address, String username) throws IOException {
+            channel = SocketChannel.open(address);
+
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            transport = new SoupBinTCPClient(channel, POE.MAX_OUTBOUND_MESSAGE_LENGTH,
+                    new POEClientParser(this), this);
+
+            SoupBinTCP.LoginRequest loginRequest = new SoupBinTCP.LoginRequest();
+
+            ASCII.putLeft(loginRequest.username, username);
+            ASCII.putLeft(loginRequest.password, "");
+            ASCII.putLeft(loginRequest.requestedSession, "");
+            ASCII.putLongRight(loginRequest.requestedSequenceNumber, 0);
+
+            transport.login(loginRequest);
+
+            channel.configureBlocking(false);
+
+            enterOrder = new POE.EnterOrder();
+
+            enterOrder.side       = POE.BUY;
+            enterOrder.instrument = INSTRUMENT;
+            enterOrder.quantity   = QUANTITY;
+            enterOrder.price      = PRICE;
+
+            cancelOrder = new POE.CancelOrder();
+
+            cancelOrder.quantity = 0;
+        }
+
+        SocketChannel getChannel() {
+            return channel;
+        }
+
+        void receive() throws IOException {
+            transport.receive();
+        }
+
+        void keepAlive() throws IOException {
+            transport.keepAlive();
+        }
+
+        void enter() throws IOException {
+            ASCII.putLongRight(enterOrder.orderId, ++nextOrderId);
+
+            send(enterOrder);
+        }
+
+        @Override
+        public void orderAccepted(POE.OrderAccepted message) throws IOException {
+            record(sentNanos);
+
+            System.arraycopy(message.orderId, 0, cancelOrder.orderId, 0, cancelOrder.orderId.length);
+
+            send(cancelOrder);
+        }
+
+        @Override
+        public void orderRejected(POE.OrderRejected message) throws IOException {
+            errors++;
+
+            enter();
+        }
+
+        @Override
+        public void orderExecuted(POE.OrderExecuted message) {
+        }
+
+        @Override
+        public void orderCanceled(POE.OrderCanceled message) throws IOException {
+            record(sentNanos);
+
+            enter();
+        }
+
+        @Override
+        public void heartbeatTimeout(SoupBinTCPClient session) {
+            errors++;
+        }
+
+        @Override
+        public void loginAccepted(SoupBinTCPClient session, SoupBinTCP.LoginAccepted payload) {
+        }
+
+        @Override
+        public void loginRejected(SoupBinTCPClient session, SoupBinTCP.LoginRejected payload) {
+            errors++;
+        }
+
+        @Override
+        public void endOfSession(SoupBinTCPClient session) {
+        }
+
+        private void send(POE.InboundMessage message) throws IOException {
+            buffer.clear();
+            message.put(buffer);
+            buffer.flip();
+
+            sentNanos = System.nanoTime();
+
+            transport.send(buffer);
+        }
+
+    }
+
+}
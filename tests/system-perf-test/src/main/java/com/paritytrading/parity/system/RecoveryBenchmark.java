@@ -0,0 +1,239 @@
+/*
+ * Copyright 2014 Parity authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.paritytrading.parity.system;
+
+import com.paritytrading.foundation.ASCII;
+import com.paritytrading.parity.match.OrderBook;
+import com.paritytrading.parity.match.OrderBookListener;
+import com.paritytrading.parity.match.Side;
+import com.paritytrading.parity.net.poe.POE;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Measures the time to rebuild the order books from a journal.
+ *
+ * The journal is generated by running a random order flow through an order
+ * book: orders arrive around the midpoint, some of them crossing the
+ * spread, and resting orders are canceled so that the book stays at a
+ * realistic depth. With a snapshot, recovery loads the snapshot and replays
+ * only the journal after it. The benchmark is in the application's package
+ * because the journal and the order books are package-private.
+ */
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-XX:+UseParallelGC", "-Xms2G", "-Xmx2G"})
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.SingleShotTime)
+public class RecoveryBenchmark {
+
+    private static final List<String> INSTRUMENTS = Arrays.asList("AAPL", "ETH-BTC", "EUR-USD");
+
+    private static final long PRICE = 100000;
+
+    private static final int DEPTH = 10000;
+
+    private static final long USERNAME = ASCII.packLong("user");
+
+    @Param({"50000000"})
+    public int events;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    private File directory;
+
+    private OrderBooks books;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        directory = Files.createTempDirectory("parity-journal").toFile();
+
+        Journal journal = new Journal(directory, Journal.DEFAULT_SEGMENT_SIZE);
+
+        generate(journal, events);
+
+        if (snapshot) {
+            Snapshotter snapshotter = new Snapshotter(INSTRUMENTS, journal);
+
+            snapshotter.load();
+            snapshotter.update();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void prepareBooks() throws IOException {
+        books = new OrderBooks(INSTRUMENTS, null, null, 0, new Journal(directory, Journal.DEFAULT_SEGMENT_SIZE), null, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : directory.listFiles())
+            file.delete();
+
+        directory.delete();
+    }
+
+    @Benchmark
+    public long recover() throws IOException {
+        return books.recover();
+    }
+
+    private static void generate(Journal journal, int events) {
+        Random random = new Random(1);
+
+        byte[] orderId = new byte[POE.ORDER_ID_LENGTH];
+
+        long[] instruments = new long[INSTRUMENTS.size()];
+
+        for (int i = 0; i < instruments.length; i++)
+            instruments[i] = ASCII.packLong(INSTRUMENTS.get(i));
+
+        Resting resting = new Resting();
+
+        OrderBook[] books = new OrderBook[instruments.length];
+
+        for (int i = 0; i < books.length; i++)
+            books[i] = new OrderBook(resting);
+
+        long nextOrderNumber = 1;
+
+        for (int i = 0; i < events; i++) {
+            boolean cancel = resting.size() > 0 && random.nextInt(100) < (resting.size() > DEPTH ? 50 : 20);
+
+            if (cancel) {
+                long orderNumber = resting.get(random.nextInt(resting.size()));
+
+                journal.cancel(orderNumber, 0);
+
+                books[resting.book(orderNumber)].cancel(orderNumber, 0);
+            } else {
+                int  instrument  = random.nextInt(instruments.length);
+                long orderNumber = nextOrderNumber++;
+                Side side        = random.nextBoolean() ? Side.BUY : Side.SELL;
+                long offset      = random.nextInt(22) - 2;
+                long price       = side == Side.BUY ? PRICE - offset : PRICE + offset;
+                long quantity    = 100 * (1 + random.nextInt(5));
+
+                ASCII.putLongRight(orderId, orderNumber);
+
+                journal.enter(orderNumber, USERNAME, orderId, side == Side.BUY ? POE.BUY : POE.SELL,
+                        instruments[instrument], quantity, price);
+
+                resting.entering = instrument;
+
+                books[instrument].enter(orderNumber, side, price, quantity);
+            }
+        }
+
+        journal.sync();
+    }
+
+    /*
+     * The resting orders, for choosing an order to cancel at random.
+     */
+    private static class Resting implements OrderBookListener {
+
+        private final Long2IntOpenHashMap indices;
+
+        private final Long2IntOpenHashMap books;
+
+        private long[] orderNumbers;
+
+        private int size;
+
+        int entering;
+
+        Resting() {
+            this.indices = new Long2IntOpenHashMap();
+            this.books   = new Long2IntOpenHashMap();
+
+            this.orderNumbers = new long[1024];
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(int index) {
+            return orderNumbers[index];
+        }
+
+        int book(long orderNumber) {
+            return books.get(orderNumber);
+        }
+
+        @Override
+        public void match(long restingOrderNumber, long incomingOrderNumber, Side incomingSide,
+                long price, long executedQuantity, long remainingQuantity) {
+            if (remainingQuantity == 0)
+                remove(restingOrderNumber);
+        }
+
+        @Override
+        public void add(long orderNumber, Side side, long price, long size) {
+            if (this.size == orderNumbers.length)
+                orderNumbers = Arrays.copyOf(orderNumbers, 2 * orderNumbers.length);
+
+            indices.put(orderNumber, this.size);
+            books.put(orderNumber, entering);
+
+            orderNumbers[this.size++] = orderNumber;
+        }
+
+        @Override
+        public void cancel(long orderNumber, long canceledQuantity, long remainingQuantity) {
+            if (remainingQuantity == 0)
+                remove(orderNumber);
+        }
+
+        private void remove(long orderNumber) {
+            int index = indices.remove(orderNumber);
+
+            books.remove(orderNumber);
+
+            long last = orderNumbers[--size];
+
+            if (last != orderNumber) {
+                orderNumbers[index] = last;
+
+                indices.put(last, index);
+            }
+        }
+
+    }
+
+}